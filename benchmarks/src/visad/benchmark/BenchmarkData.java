@@ -0,0 +1,194 @@
+//
+// BenchmarkData.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.util.Random;
+
+import visad.FlatField;
+import visad.FunctionType;
+import visad.Gridded2DSet;
+import visad.Gridded3DSet;
+import visad.Linear2DSet;
+import visad.RealTupleType;
+import visad.RealType;
+import visad.VisADException;
+
+/**
+ * Synthetic data shared by the benchmarks.  All data is generated from
+ * fixed seeds so that runs are comparable.
+ */
+public class BenchmarkData {
+
+  public static final RealType X = RealType.getRealType("bench_x");
+  public static final RealType Y = RealType.getRealType("bench_y");
+  public static final RealType Z = RealType.getRealType("bench_z");
+  public static final RealType VALUE = RealType.getRealType("bench_value");
+
+  private BenchmarkData() {
+  }
+
+  /**
+   * @return (x, y)
+   */
+  public static RealTupleType domain2D() throws VisADException {
+    return new RealTupleType(X, Y);
+  }
+
+  /**
+   * @return (x, y, z)
+   */
+  public static RealTupleType domain3D() throws VisADException {
+    return new RealTupleType(X, Y, Z);
+  }
+
+  /**
+   * Smooth, wavy test function with several maxima and minima, so that
+   * contours and iso-surfaces have realistic complexity.
+   */
+  public static float wave(float x, float y, float z) {
+    return (float) (Math.sin(0.05 * x) * Math.cos(0.07 * y) +
+                    0.5 * Math.sin(0.013 * (x + y)) + 0.1 * z);
+  }
+
+  /**
+   * @return rectilinear grid on [0, nx-1] x [0, ny-1]
+   */
+  public static Linear2DSet linear2D(int nx, int ny) throws VisADException {
+    return new Linear2DSet(domain2D(), 0.0, nx - 1, nx, 0.0, ny - 1, ny);
+  }
+
+  /**
+   * @return curvilinear (sheared and warped) grid covering roughly
+   *         [0, nx-1] x [0, ny-1], like a navigated satellite or model grid
+   */
+  public static Gridded2DSet curvilinear2D(int nx, int ny)
+         throws VisADException {
+    float[][] samples = new float[2][nx * ny];
+    int k = 0;
+    for (int j=0; j<ny; j++) {
+      for (int i=0; i<nx; i++) {
+        samples[0][k] = i + 0.05f * j;
+        samples[1][k] = j + 2.0f * (float) Math.sin(i * Math.PI / nx);
+        k++;
+      }
+    }
+    return new Gridded2DSet(domain2D(), samples, nx, ny);
+  }
+
+  /**
+   * @return curvilinear 3-D grid, warped in the vertical like
+   *         terrain-following model levels
+   */
+  public static Gridded3DSet curvilinear3D(int nx, int ny, int nz)
+         throws VisADException {
+    float[][] samples = new float[3][nx * ny * nz];
+    int k = 0;
+    for (int l=0; l<nz; l++) {
+      for (int j=0; j<ny; j++) {
+        for (int i=0; i<nx; i++) {
+          samples[0][k] = i + 0.05f * j;
+          samples[1][k] = j + 0.05f * i;
+          samples[2][k] = l + 0.3f * (float) Math.sin(i * Math.PI / nx);
+          k++;
+        }
+      }
+    }
+    return new Gridded3DSet(domain3D(), samples, nx, ny, nz);
+  }
+
+  /**
+   * @return values of {@link #wave} at each sample of a 2-D grid
+   */
+  public static float[] waveValues(int nx, int ny) {
+    float[] values = new float[nx * ny];
+    int k = 0;
+    for (int j=0; j<ny; j++) {
+      for (int i=0; i<nx; i++) {
+        values[k++] = wave(i, j, 0);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * @return values of {@link #wave} at each sample of a 3-D grid
+   */
+  public static float[] waveValues(int nx, int ny, int nz) {
+    float[] values = new float[nx * ny * nz];
+    int k = 0;
+    for (int l=0; l<nz; l++) {
+      for (int j=0; j<ny; j++) {
+        for (int i=0; i<nx; i++) {
+          values[k++] = wave(i, j, l);
+        }
+      }
+    }
+    return values;
+  }
+
+  /**
+   * @return (x, y) -> value FlatField over a curvilinear or
+   *         rectilinear grid
+   */
+  public static FlatField field2D(int nx, int ny, boolean curvilinear)
+         throws VisADException, java.rmi.RemoteException {
+    FunctionType type = new FunctionType(domain2D(), VALUE);
+    FlatField field = new FlatField(type, curvilinear ?
+                                    curvilinear2D(nx, ny) : linear2D(nx, ny));
+    field.setSamples(new float[][] {waveValues(nx, ny)}, false);
+    return field;
+  }
+
+  /**
+   * @return n points scattered uniformly over [0, width] x [0, height]
+   */
+  public static float[][] randomPoints2D(int n, float width, float height,
+                                         long seed) {
+    Random random = new Random(seed);
+    float[][] points = new float[2][n];
+    for (int i=0; i<n; i++) {
+      points[0][i] = width * random.nextFloat();
+      points[1][i] = height * random.nextFloat();
+    }
+    return points;
+  }
+
+  /**
+   * @return n points scattered uniformly over a box
+   */
+  public static float[][] randomPoints3D(int n, float width, float height,
+                                         float depth, long seed) {
+    Random random = new Random(seed);
+    float[][] points = new float[3][n];
+    for (int i=0; i<n; i++) {
+      points[0][i] = width * random.nextFloat();
+      points[1][i] = height * random.nextFloat();
+      points[2][i] = depth * random.nextFloat();
+    }
+    return points;
+  }
+}
@@ -0,0 +1,116 @@
+//
+// BinaryIOBenchmark.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import visad.DataImpl;
+import visad.FieldImpl;
+import visad.FlatField;
+import visad.FunctionType;
+import visad.Integer1DSet;
+import visad.RealType;
+import visad.data.visad.BinaryReader;
+import visad.data.visad.BinaryWriter;
+
+/**
+ * BinaryWriter and BinaryReader round trips of a time sequence of
+ * gridded fields, in memory so that disk speed does not dominate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BinaryIOBenchmark {
+
+  /** each time step is size x size */
+  @Param({"500", "1000"})
+  public int size;
+
+  private static final int STEPS = 10;
+
+  private FieldImpl sequence;
+  private byte[] encoded;
+
+  @Setup
+  public void setup() throws Exception {
+    FlatField step = BenchmarkData.field2D(size, size, false);
+    RealType time = RealType.getRealType("bench_time");
+    FunctionType type = new FunctionType(time, step.getType());
+    sequence = new FieldImpl(type, new Integer1DSet(time, STEPS));
+    for (int i=0; i<STEPS; i++) {
+      sequence.setSample(i, step, false);
+    }
+    encoded = write().toByteArray();
+  }
+
+  private ByteArrayOutputStream write() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryWriter writer = new BinaryWriter(out);
+    writer.save(sequence);
+    writer.close();
+    return out;
+  }
+
+  @Benchmark
+  public ByteArrayOutputStream save() throws Exception {
+    return write();
+  }
+
+  @Benchmark
+  public DataImpl read() throws Exception {
+    BinaryReader reader = new BinaryReader(new ByteArrayInputStream(encoded));
+    DataImpl data = reader.getData();
+    reader.close();
+    return data;
+  }
+
+  @Benchmark
+  public DataImpl roundTrip() throws Exception {
+    BinaryReader reader =
+      new BinaryReader(new ByteArrayInputStream(write().toByteArray()));
+    DataImpl data = reader.getData();
+    reader.close();
+    return data;
+  }
+}
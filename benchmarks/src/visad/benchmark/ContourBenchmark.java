@@ -0,0 +1,108 @@
+//
+// ContourBenchmark.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import visad.Contour2D;
+import visad.ContourControl;
+import visad.Gridded3DSet;
+
+/**
+ * Contour2D.contour on a model-sized grid with many levels.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContourBenchmark {
+
+  /** grid is size x size */
+  @Param({"500", "2000"})
+  public int size;
+
+  /** number of contour levels */
+  @Param({"10", "40"})
+  public int levels;
+
+  private float[] values;
+  private float[] intervals;
+  private float low;
+  private float high;
+  private Gridded3DSet spatialSet;
+
+  @Setup
+  public void setup() throws Exception {
+    values = BenchmarkData.waveValues(size, size);
+    low = Float.MAX_VALUE;
+    high = -Float.MAX_VALUE;
+    for (int i=0; i<values.length; i++) {
+      if (values[i] < low) low = values[i];
+      if (values[i] > high) high = values[i];
+    }
+    intervals = new float[levels];
+    for (int i=0; i<levels; i++) {
+      intervals[i] = low + (i + 0.5f) * (high - low) / levels;
+    }
+    // flat display-space surface, as built by ShadowType for a 2-D grid
+    float[][] samples = new float[3][size * size];
+    int k = 0;
+    for (int j=0; j<size; j++) {
+      for (int i=0; i<size; i++) {
+        samples[0][k] = -1.0f + 2.0f * i / (size - 1);
+        samples[1][k] = -1.0f + 2.0f * j / (size - 1);
+        k++;
+      }
+    }
+    spatialSet = new Gridded3DSet(BenchmarkData.domain3D(), samples,
+                                  size, size);
+  }
+
+  @Benchmark
+  public Object contour() throws Exception {
+    return Contour2D.contour(values, size, size, intervals, low, high,
+                             0.0f, false, null, new boolean[3], false, null,
+                             new byte[0][levels], new double[] {1.0}, 1.0,
+                             ContourControl.LABEL_FREQ_LO,
+                             ContourControl.EVERY_NTH_DEFAULT, 1.0, true,
+                             null, null, false, spatialSet);
+  }
+}
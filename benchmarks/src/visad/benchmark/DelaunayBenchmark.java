@@ -0,0 +1,81 @@
+//
+// DelaunayBenchmark.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import visad.Delaunay;
+import visad.DelaunayClarkson;
+
+/**
+ * DelaunayClarkson construction for scattered station-like points.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DelaunayBenchmark {
+
+  /** number of points */
+  @Param({"10000", "100000"})
+  public int points;
+
+  private float[][] samples2D;
+  private float[][] samples3D;
+
+  @Setup
+  public void setup() throws Exception {
+    // coordinates like degrees of longitude and latitude
+    samples2D = BenchmarkData.randomPoints2D(points, 360.0f, 180.0f, 3L);
+    samples3D = BenchmarkData.randomPoints3D(points / 10, 360.0f, 180.0f,
+                                             20.0f, 4L);
+  }
+
+  @Benchmark
+  public Delaunay clarkson2D() throws Exception {
+    return new DelaunayClarkson(samples2D);
+  }
+
+  @Benchmark
+  public Delaunay clarkson3D() throws Exception {
+    return new DelaunayClarkson(samples3D);
+  }
+}
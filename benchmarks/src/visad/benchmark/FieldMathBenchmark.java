@@ -0,0 +1,100 @@
+//
+// FieldMathBenchmark.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import visad.Data;
+import visad.FlatField;
+
+/**
+ * FlatField.binary and FlatField.unary on fields sharing a domain set,
+ * the building blocks of derived-quantity expressions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FieldMathBenchmark {
+
+  /** fields are size x size */
+  @Param({"1000", "3000"})
+  public int size;
+
+  private FlatField a;
+  private FlatField b;
+
+  @Setup
+  public void setup() throws Exception {
+    a = BenchmarkData.field2D(size, size, false);
+    b = (FlatField) a.clone();
+    float[][] values = b.getFloats(false);
+    for (int i=0; i<values[0].length; i++) values[0][i] += 2.0f;
+  }
+
+  @Benchmark
+  public Data add() throws Exception {
+    return a.binary(b, Data.ADD, Data.NEAREST_NEIGHBOR, Data.NO_ERRORS);
+  }
+
+  @Benchmark
+  public Data divide() throws Exception {
+    return a.binary(b, Data.DIVIDE, Data.NEAREST_NEIGHBOR, Data.NO_ERRORS);
+  }
+
+  @Benchmark
+  public Data expression() throws Exception {
+    // (a - b) * a / b
+    Data d = a.binary(b, Data.SUBTRACT, Data.NEAREST_NEIGHBOR, Data.NO_ERRORS);
+    d = d.binary(a, Data.MULTIPLY, Data.NEAREST_NEIGHBOR, Data.NO_ERRORS);
+    return d.binary(b, Data.DIVIDE, Data.NEAREST_NEIGHBOR, Data.NO_ERRORS);
+  }
+
+  @Benchmark
+  public Data sqrt() throws Exception {
+    return b.unary(Data.SQRT, Data.NEAREST_NEIGHBOR, Data.NO_ERRORS);
+  }
+
+  @Benchmark
+  public Data cos() throws Exception {
+    return a.unary(Data.COS, Data.NEAREST_NEIGHBOR, Data.NO_ERRORS);
+  }
+}
@@ -0,0 +1,81 @@
+//
+// IsoSurfaceBenchmark.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import visad.Gridded3DSet;
+import visad.VisADGeometryArray;
+
+/**
+ * Gridded3DSet.makeIsoSurface on a 3-D model grid.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IsoSurfaceBenchmark {
+
+  /** horizontal grid is size x size */
+  @Param({"100", "200"})
+  public int size;
+
+  private static final int NZ = 40;
+
+  private Gridded3DSet set;
+  private float[] values;
+
+  @Setup
+  public void setup() throws Exception {
+    set = BenchmarkData.curvilinear3D(size, size, NZ);
+    values = BenchmarkData.waveValues(size, size, NZ);
+  }
+
+  @Benchmark
+  public VisADGeometryArray isoSurface() throws Exception {
+    return set.makeIsoSurface(1.5f, values, null, false);
+  }
+
+  @Benchmark
+  public VisADGeometryArray indexedIsoSurface() throws Exception {
+    return set.makeIsoSurface(1.5f, values, null, true);
+  }
+}
@@ -0,0 +1,92 @@
+//
+// ResampleBenchmark.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import visad.Data;
+import visad.Field;
+import visad.FlatField;
+import visad.Linear2DSet;
+
+/**
+ * FlatField.resample of a gridded field onto a display-sized
+ * rectilinear grid, for rectilinear and curvilinear source grids.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResampleBenchmark {
+
+  /** source grid is size x size */
+  @Param({"1000", "2000"})
+  public int size;
+
+  @Param({"false", "true"})
+  public boolean curvilinear;
+
+  @Param({"WEIGHTED_AVERAGE", "NEAREST_NEIGHBOR"})
+  public String mode;
+
+  @Param({"false", "true"})
+  public boolean parallel;
+
+  private FlatField field;
+  private Linear2DSet target;
+  private int samplingMode;
+
+  @Setup
+  public void setup() throws Exception {
+    field = BenchmarkData.field2D(size, size, curvilinear);
+    // a fixed 1024 x 1024 display grid, offset inside the source grid;
+    // finer than the source at size 1000, coarser at size 2000
+    target = new Linear2DSet(BenchmarkData.domain2D(),
+                             1.5, size - 10.5, 1024, 1.5, size - 10.5, 1024);
+    samplingMode = "NEAREST_NEIGHBOR".equals(mode) ?
+                   Data.NEAREST_NEIGHBOR : Data.WEIGHTED_AVERAGE;
+  }
+
+  @Benchmark
+  public Field resample() throws Exception {
+    return field.resample(target, samplingMode, Data.NO_ERRORS, parallel);
+  }
+}
@@ -0,0 +1,113 @@
+//
+// ValueToGridBenchmark.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import visad.Gridded2DSet;
+import visad.Gridded3DSet;
+
+/**
+ * Gridded2DSet.valueToGrid and Gridded3DSet.valueToGrid on curvilinear
+ * grids, for query points in grid order (as produced by resampling onto
+ * a display grid) and for scattered query points.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValueToGridBenchmark {
+
+  /** query points are scattered randomly rather than in grid order */
+  @Param({"false", "true"})
+  public boolean scattered;
+
+  /** number of query points */
+  @Param({"20000"})
+  public int points;
+
+  private static final int NX2 = 1000;
+  private static final int NY2 = 1000;
+  private static final int NX3 = 200;
+  private static final int NY3 = 200;
+  private static final int NZ3 = 40;
+
+  private Gridded2DSet set2D;
+  private Gridded3DSet set3D;
+  private float[][] points2D;
+  private float[][] points3D;
+
+  @Setup
+  public void setup() throws Exception {
+    set2D = BenchmarkData.curvilinear2D(NX2, NY2);
+    set3D = BenchmarkData.curvilinear3D(NX3, NY3, NZ3);
+    if (scattered) {
+      points2D = BenchmarkData.randomPoints2D(points, NX2 - 1, NY2 - 1, 1L);
+      points3D = BenchmarkData.randomPoints3D(points, NX3 - 1, NY3 - 1,
+                                              NZ3 - 1, 2L);
+    }
+    else {
+      points2D = new float[2][points];
+      int n = (int) Math.sqrt(points);
+      for (int i=0; i<points; i++) {
+        points2D[0][i] = (i % n) * (NX2 - 1.0f) / n;
+        points2D[1][i] = (i / n) * (NY2 - 1.0f) / n;
+      }
+      points3D = new float[3][points];
+      int m = (int) Math.cbrt(points);
+      for (int i=0; i<points; i++) {
+        points3D[0][i] = (i % m) * (NX3 - 1.0f) / m;
+        points3D[1][i] = ((i / m) % m) * (NY3 - 1.0f) / m;
+        points3D[2][i] = (i / (m * m)) * (NZ3 - 1.0f) / m;
+      }
+    }
+  }
+
+  @Benchmark
+  public float[][] valueToGrid2D() throws Exception {
+    return set2D.valueToGrid(points2D);
+  }
+
+  @Benchmark
+  public float[][] valueToGrid3D() throws Exception {
+    return set3D.valueToGrid(points3D);
+  }
+}
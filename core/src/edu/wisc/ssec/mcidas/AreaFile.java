@@ -40,6 +40,7 @@ import java.awt.image.Raster;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -65,6 +66,11 @@ import edu.wisc.ssec.mcidas.adde.GetAreaGUI;
  *
  * <p>This implementation does not check the 'valcode' on each line.</p>
  *
+ * <p>When mapped reading is enabled (see {@link #setMappedReading}),
+ * image data of local, uncompressed files is read through a memory map
+ * of the file, going directly to the lines, elements and band that
+ * are requested.</p>
+ *
  * @author Tom Whittaker, SSEC
  * @author Tommy Jasmin, SSEC
  *
@@ -298,12 +304,28 @@ public class AreaFile implements java.io.Serializable {
   /** flag for remote data */
   private boolean isRemote = false;
 
+  /** flag for whether local files are read through a memory map */
+  private static boolean mappedReading =
+    Boolean.getBoolean("edu.wisc.ssec.mcidas.mapped");
+
+  /** path of the local file, or null if the source is not a local file */
+  private String localFile = null;
+
+  /** memory map of the local file, created when data is first read */
+  transient private MappedAreaData mappedData;
+
+  /** flag for whether the local file could not be mapped */
+  private boolean mapFailed = false;
+
   // master of all subsetting paramters
   private class Subset {
 
     /**  */
     int lineNumber, numLines, lineMag, eleNumber, numEles, eleMag, bandNumber;
 
+    /** index of the band in the original band map */
+    int bandIndex;
+
     /**
      *
      *
@@ -351,6 +373,7 @@ public class AreaFile implements java.io.Serializable {
     try {
       af = new DataInputStream(new BufferedInputStream(new FileInputStream(imageSource),
               2048));
+      localFile = imageSource;
     }
     catch (IOException eIO) {
       // if opening as a file failed, try as a URL
@@ -437,6 +460,14 @@ public class AreaFile implements java.io.Serializable {
     }
 
     isRemote = url.getProtocol().equalsIgnoreCase("adde");
+    if (url.getProtocol().equalsIgnoreCase("file")) {
+      try {
+        localFile = new File(url.toURI()).getPath();
+      }
+      catch (Exception e) {
+        localFile = null;
+      }
+    }
 
     fileok = true;
     position = 0;
@@ -518,6 +549,7 @@ public class AreaFile implements java.io.Serializable {
     subset.numEles = numEles;
     subset.eleMag = eleMag;
     subset.bandNumber = band;
+    subset.bandIndex = bandIdx;
 
     int newDatOffset = startLine * lineLength;
     newDatOffset += linePrefixLength;
@@ -581,6 +613,31 @@ public class AreaFile implements java.io.Serializable {
     return isRemote;
   }
 
+  /**
+   * Set whether image data of local files is read through a memory map
+   * of the file.  With a map, a subset is read directly from the lines
+   * and band it covers instead of streaming through the file, and
+   * {@link #getData(int, int, int, int, int)} reads only the requested
+   * lines without keeping the whole image, so it may be called from
+   * several threads.  PNG compressed files are always streamed.  The
+   * default is taken from the edu.wisc.ssec.mcidas.mapped system
+   * property.
+   *
+   * @param mapped true to map local files
+   */
+  public static void setMappedReading(boolean mapped) {
+    mappedReading = mapped;
+  }
+
+  /**
+   * Is image data of local files read through a memory map.
+   *
+   * @return true if local files are mapped
+   */
+  public static boolean getMappedReading() {
+    return mappedReading;
+  }
+
   /**
    * Read the metadata for an area file (directory, nav, and cal).
    *
@@ -1053,6 +1110,12 @@ public class AreaFile implements java.io.Serializable {
                          int numEles, int bandNumber)
           throws AreaFileException {
 
+    MappedAreaData map = hasReadData ? null : getMappedData();
+    if (map != null && subset == null) {
+      return readMappedWindow(map, lineNumber, eleNumber, numLines, numEles,
+                              bandNumber - 1);
+    }
+
     //data = new int[1][numLines][numEles];
     if (!hasReadData) {
       data = new int[origNumBands][dir[AD_NUMLINES]][dir[AD_NUMELEMS]];
@@ -1129,6 +1192,14 @@ public class AreaFile implements java.io.Serializable {
                      ? 0
                      : Math.abs(eleMag) - 1;
 
+    MappedAreaData map = getMappedData();
+    if (map != null) {
+      readMappedData(map, target, lineNumber, numLines, lineMagMult + 1,
+                     eleNumber, numEles, eleMagMult + 1,
+                     new int[] {subset.bandIndex});
+      return;
+    }
+
     int startLoc = dir[AD_DATAOFFSET];
     int elementSize = origNumBands * dir[AD_DATAWIDTH];
     int readElements = eleMagMult == 0
@@ -1233,6 +1304,17 @@ public class AreaFile implements java.io.Serializable {
       throw new AreaFileException("Error reading AreaFile data");
     }
 
+    MappedAreaData map = getMappedData();
+    if (map != null) {
+      int[] bands = new int[origNumBands];
+      for (k = 0; k < origNumBands; k++) {
+        bands[k] = k;
+      }
+      readMappedData(map, target, 0, numLines, 1, 0, numEles, 1, bands);
+      hasReadData = true;
+      return;
+    }
+
     try {
       DataInputStream df = getInputStreamForData();
       if (df != af) {
@@ -1327,6 +1409,140 @@ public class AreaFile implements java.io.Serializable {
 
   } // end of areaReadData method
 
+  /**
+   * Get the memory map of the local file, mapping it the first time.
+   *
+   * @return the map, or null if mapped reading is off, the source is not
+   *         a local file, or the image data is PNG compressed
+   */
+  private synchronized MappedAreaData getMappedData() {
+    if (mappedData != null) return mappedData;
+    if (!mappedReading || localFile == null || mapFailed) return null;
+    try {
+      MappedAreaData map = new MappedAreaData(localFile);
+      byte[] test = new byte[8];
+      map.read((long)dir[AD_NUMCOMMENTS] * 80 + datLoc, test, 0, 8);
+      if (isPNG(test)) {
+        mapFailed = true;
+        return null;
+      }
+      mappedData = map;
+    }
+    catch (IOException e) {
+      mapFailed = true;
+      return null;
+    }
+    // the stream is no longer needed for data
+    close();
+    return mappedData;
+  }
+
+  /**
+   * Read lines of data from the memory map.  Band <code>b</code> of
+   * the image is read into <code>target[b]</code>.
+   *
+   * @param map        the memory map of the file
+   * @param target     destination array[band][line][element]
+   * @param lineNumber first file line to read
+   * @param numLines   number of lines to read
+   * @param lineStep   file lines between lines read
+   * @param eleNumber  first file element to read
+   * @param numEles    number of elements to read
+   * @param eleStep    file elements between elements read
+   * @param bands      0-based indices of the bands to read
+   */
+  private void readMappedData(MappedAreaData map, int[][][] target,
+                              int lineNumber, int numLines, int lineStep,
+                              int eleNumber, int numEles, int eleStep,
+                              int[] bands) {
+    if (numLines <= 0 || numEles <= 0) return;
+    int width = dir[AD_DATAWIDTH];
+    if (width != 1 && width != 2 && width != 4) return;
+    int elementSize = origNumBands * width;
+    int stride = eleStep * elementSize;
+    int span = (numEles - 1) * stride + elementSize;
+    byte[] buf = new byte[span];
+
+    for (int i = 0; i < numLines; i++) {
+      long pos = datLoc + (long)(lineNumber + i * lineStep) * lineLength +
+                 linePrefixLength + (long)eleNumber * elementSize;
+      map.read(pos, buf, 0, span);
+
+      for (int b = 0; b < bands.length; b++) {
+        int[] row = target[b][i];
+        int p = bands[b] * width;
+        // all 1- and 2-byte data are un-signed!
+        if (width == 1) {
+          for (int j = 0; j < numEles; j++, p += stride) {
+            row[j] = buf[p] & 0xff;
+          }
+        }
+        else if (width == 2) {
+          if (flipwords) {
+            for (int j = 0; j < numEles; j++, p += stride) {
+              row[j] = (buf[p] & 0xff) | ((buf[p + 1] & 0xff) << 8);
+            }
+          }
+          else {
+            for (int j = 0; j < numEles; j++, p += stride) {
+              row[j] = ((buf[p] & 0xff) << 8) | (buf[p + 1] & 0xff);
+            }
+          }
+        }
+        else {
+          if (flipwords) {
+            for (int j = 0; j < numEles; j++, p += stride) {
+              row[j] = (buf[p] & 0xff) | ((buf[p + 1] & 0xff) << 8) |
+                       ((buf[p + 2] & 0xff) << 16) | (buf[p + 3] << 24);
+            }
+          }
+          else {
+            for (int j = 0; j < numEles; j++, p += stride) {
+              row[j] = (buf[p] << 24) | ((buf[p + 1] & 0xff) << 16) |
+                       ((buf[p + 2] & 0xff) << 8) | (buf[p + 3] & 0xff);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Read a window of one band from the memory map.  Values outside
+   * the image are 0.
+   *
+   * @param map        the memory map of the file
+   * @param lineNumber first image line, may be outside the image
+   * @param eleNumber  first image element, may be outside the image
+   * @param numLines   number of lines
+   * @param numEles    number of elements
+   * @param bandIndex  0-based index of the band
+   *
+   * @return int array[lines][elements] with data values
+   */
+  private int[][] readMappedWindow(MappedAreaData map, int lineNumber,
+                                   int eleNumber, int numLines, int numEles,
+                                   int bandIndex) {
+    int[][] window = new int[numLines][numEles];
+    if (bandIndex < 0 || bandIndex >= origNumBands) {
+      throw new ArrayIndexOutOfBoundsException(bandIndex);
+    }
+    int firstLine = Math.max(lineNumber, 0);
+    int lastLine = Math.min(lineNumber + numLines, dir[AD_NUMLINES]);
+    int firstEle = Math.max(eleNumber, 0);
+    int lastEle = Math.min(eleNumber + numEles, dir[AD_NUMELEMS]);
+    if (firstLine >= lastLine || firstEle >= lastEle) return window;
+
+    int[][][] part = new int[1][lastLine - firstLine][lastEle - firstEle];
+    readMappedData(map, part, firstLine, lastLine - firstLine, 1, firstEle,
+                   lastEle - firstEle, 1, new int[] {bandIndex});
+    for (int i = 0; i < part[0].length; i++) {
+      System.arraycopy(part[0][i], 0, window[firstLine - lineNumber + i],
+                       firstEle - eleNumber, part[0][i].length);
+    }
+    return window;
+  }
+
   /**
    * Selectively flip the bytes of words in nav block
    *
@@ -0,0 +1,120 @@
+//
+// MappedAreaData.java
+//
+
+/*
+This source file is part of the edu.wisc.ssec.mcidas package and is
+Copyright (C) 1998 - 2021 by Tom Whittaker, Tommy Jasmin, Tom Rink,
+Don Murray, James Kelly, Bill Hibbard, Dave Glowacki, Curtis Rueden
+and others.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package edu.wisc.ssec.mcidas;
+
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.Arrays;
+
+
+/**
+ * Read-only memory map of a local AREA file, used by {@link AreaFile}
+ * to read the lines and bands it needs without streaming through the
+ * rest of the file.  Files larger than a single mapping are mapped in
+ * several regions.
+ *
+ * <p>Reads use absolute positions, so one instance may be used by
+ * several threads at once.</p>
+ */
+final class MappedAreaData {
+
+  /** maximum number of bytes in one mapped region */
+  private static final int REGION_SIZE = 1 << 30;
+
+  /** the mapped regions, in file order */
+  private final ByteBuffer[] regions;
+
+  /** length of the file */
+  private final long length;
+
+  /**
+   * Map a file.
+   *
+   * @param file  path of the file
+   *
+   * @throws IOException if the file cannot be opened or mapped
+   */
+  MappedAreaData(String file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      length = channel.size();
+      int count = (int)((length + REGION_SIZE - 1) / REGION_SIZE);
+      regions = new ByteBuffer[count];
+      for (int r = 0; r < count; r++) {
+        long start = (long)r * REGION_SIZE;
+        regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                 Math.min(REGION_SIZE, length - start));
+      }
+    }
+    finally {
+      // the mappings stay valid after the channel is closed
+      raf.close();
+    }
+  }
+
+  /**
+   * Get the length of the file.
+   *
+   * @return number of bytes in the file
+   */
+  long length() {
+    return length;
+  }
+
+  /**
+   * Copy bytes from the file.  Bytes beyond the end of the file are
+   * returned as zero.
+   *
+   * @param pos  file position of the first byte
+   * @param dst  destination array
+   * @param off  index in dst of the first byte
+   * @param len  number of bytes to copy
+   */
+  void read(long pos, byte[] dst, int off, int len) {
+    while (len > 0) {
+      if (pos < 0 || pos >= length) {
+        Arrays.fill(dst, off, off + len, (byte)0);
+        return;
+      }
+      int r = (int)(pos / REGION_SIZE);
+      ByteBuffer region = regions[r].duplicate();
+      int start = (int)(pos - (long)r * REGION_SIZE);
+      int n = Math.min(len, region.limit() - start);
+      region.position(start);
+      region.get(dst, off, n);
+      pos += n;
+      off += n;
+      len -= n;
+    }
+  }
+}
@@ -30,6 +30,8 @@ import java.rmi.RemoteException;
 
 import java.util.Enumeration;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import visad.util.ThreadPool;
 
@@ -99,6 +101,16 @@ public abstract class ActionImpl implements Action, Runnable {
   /**           */
   private static Object poolLock = new Object();
 
+  /** run actions in virtual threads rather than a fixed pool */
+  private static boolean virtualThreads =
+    Boolean.getBoolean("visad.actionimpl.virtualthreads");
+
+  /** number of notifications merged into an already queued run */
+  private static final AtomicLong coalesced = new AtomicLong(0);
+
+  /** is a run of this action queued and not yet finished */
+  private final AtomicBoolean queued = new AtomicBoolean(false);
+
   /**           */
   private boolean enabled = true;
 
@@ -132,7 +144,7 @@ public abstract class ActionImpl implements Action, Runnable {
   private long link_id;
 
   /**           */
-  private boolean requeue = false;
+  private volatile boolean requeue = false;
 
   /**
    * construct an ActionImpl
@@ -154,7 +166,7 @@ public abstract class ActionImpl implements Action, Runnable {
       if (pool == null) {
         // ...fill the pool; die if pool wasn't created
         try {
-          pool = new ThreadPool("ActionThread");
+          pool = new ThreadPool("ActionThread", virtualThreads);
         }
         catch (Exception e) {
           System.err.println(e.getClass().getName() + ": " + e.getMessage());
@@ -175,6 +187,53 @@ public abstract class ActionImpl implements Action, Runnable {
   }
 
 
+  /**
+   * return the number of queued action runs waiting for a thread
+   * @return number of queued runs that have not started
+   */
+  public static int getQueueLength() {
+    ThreadPool p = pool;
+    return (p == null) ? 0 : p.getStatistics().getQueueLength();
+  }
+
+  /**
+   * return the number of notifications that did not queue a new run
+   * because a run of the same action was already queued; each queued
+   * run handles all changes made before it starts
+   * @return number of coalesced notifications
+   */
+  public static long getCoalescedCount() {
+    return coalesced.get();
+  }
+
+  /**
+   * return the ThreadPool running actions, e.g. for its statistics
+   * of queue wait and run times
+   * @return the ThreadPool, or null if it has been stopped
+   */
+  public static ThreadPool getThreadPool() {
+    return pool;
+  }
+
+  /**
+   * run actions in virtual threads, one per run, rather than in
+   * a pool of ordinary threads; takes effect when the ThreadPool is
+   * next started, and only if the Java runtime has virtual threads.
+   * The default is set by the visad.actionimpl.virtualthreads
+   * property.
+   * @param virtual - true to use virtual threads
+   */
+  public static void setVirtualThreads(boolean virtual) {
+    virtualThreads = virtual;
+  }
+
+  /**
+   * @return true if actions will be run in virtual threads
+   */
+  public static boolean getVirtualThreads() {
+    return virtualThreads;
+  }
+
   /**
    * 
    */
@@ -229,8 +288,9 @@ public abstract class ActionImpl implements Action, Runnable {
     }
 
     // WLH 17 Dec 2001
-    if (pool != null && !pool.isTerminated()) {
-      pool.queue(this);
+    ThreadPool p = pool;
+    if (p != null && !p.isTerminated()) {
+      queueRun(p);
     }
     run_links = null;
 
@@ -371,6 +431,18 @@ public abstract class ActionImpl implements Action, Runnable {
    * there is a request for activity in this ActionImpl
    */
   public void run() {
+    boolean finished = false;
+    try {
+      runAction();
+      finished = true;
+    }
+    finally {
+      // a failed run must not keep later notifications from queueing
+      if (!finished) queued.set(false);
+    }
+  }
+
+  private void runAction() {
 
     // Save the current thread so we can prohibit it from calling
     // getImage.  This is thread-safe, because only one ActionImpl
@@ -467,13 +539,17 @@ public abstract class ActionImpl implements Action, Runnable {
         }
       } // end if (enabled)
 
-      // if there's more to do, add this to the end of the task list
+      // if there's more to do, add this to the end of the task list;
+      // notifyAction sets requeue before it tests queued, so no
+      // notification is lost between these two steps
+      queued.set(false);
       if (requeue) {
-        if (pool != null) {
+        requeue = false;
+        ThreadPool p = pool;
+        if (p != null) {
 // if (getName() != null) System.out.println("requeue " + getName());
-          pool.queue(this);
+          queueRun(p);
         }
-        requeue = false;
       }
 
     } // end synchronized (lockEnabled)
@@ -548,7 +624,27 @@ public abstract class ActionImpl implements Action, Runnable {
     if (TRACE_STACK) {
       stackTrace = visad.util.Util.getStackTrace();
     }
-    pool.queue(this);
+    queueRun(pool);
+  }
+
+  /**
+   * queue a run of this ActionImpl, unless one is already queued;
+   * the queued run will see this change, so a notification that
+   * arrives while a run is waiting is dropped
+   * @param p ThreadPool in which to queue the run
+   */
+  private void queueRun(ThreadPool p) {
+    if (!queued.compareAndSet(false, true)) {
+      coalesced.incrementAndGet();
+      return;
+    }
+    try {
+      p.queue(this);
+    }
+    catch (RuntimeException e) {
+      queued.set(false);
+      throw e;
+    }
   }
 
   /**
@@ -553,6 +553,64 @@ public class BaseColorControl
     return colors;
   }
 
+  /**
+   * Return a list of colors for specified values as bytes, looked up in
+   * the color table without computing float colors.  Element
+   * <code>[i][j]</code> equals
+   * <code>ShadowType.floatToByte(lookupValues(values)[i][j])</code>,
+   * except that NaN values are assigned the color 0 in every component.
+   *
+   * @param values		The values to look up, as for
+   *				{@link #lookupValues(float[])}.
+   * @return			The list of colors, or <code>null</code> if
+   *				the colors are defined by a function or the
+   *				table contains NaN entries, in which case
+   *				{@link #lookupValues(float[])} should be used.
+   */
+  public byte[][] lookupBytes(float[] values)
+  {
+    if (values == null) {
+      return null;
+    }
+
+    final int valLen = values.length;
+
+    byte[][] colors;
+    synchronized (lock) {
+      if (table == null) {
+        return null;
+      }
+
+      // convert the table once rather than each looked up color
+      byte[][] bytes = new byte[components][tableLength];
+      for (int c=0; c<components; c++) {
+        for (int j=0; j<tableLength; j++) {
+          float f = table[c][j];
+          if (f != f) {
+            return null;
+          }
+          bytes[c][j] = ShadowType.floatToByte(f);
+        }
+      }
+
+      final int tblEnd = tableLength - 1;
+      colors = new byte[components][valLen];
+      float scale = (float) tableLength;
+      for (int c=0; c<components; c++) {
+        byte[] b = bytes[c];
+        byte[] color = colors[c];
+        for (int i=0; i<valLen; i++) {
+          if (values[i] == values[i]) {
+            // same index as lookupValues
+            int j = (int) (scale * values[i]);
+            color[i] = b[(j < 0) ? 0 : ((tableLength <= j) ? tblEnd : j)];
+          }
+        }
+      }
+    }
+    return colors;
+  }
+
   /**
    * Return a list of colors for the specified range.
    */
@@ -31,14 +31,17 @@ import java.util.Arrays;
 
 import visad.util.Util;
 
-import visad.data.ArrayCache;
+import visad.data.FingerprintArrayCache;
 
 
 /**
- * A wrapper class for CoordinateSystems that will cache the last
- * values input and output values of the toReference and fromReference
- * methods.  If the inputs are the same as the last time these
- * methods were called, the previously calculated values are returned.
+ * A wrapper class for CoordinateSystems that will cache the
+ * input and output values of the toReference and fromReference
+ * methods.  If the inputs are the same as those of an earlier call
+ * that is still in the cache, the previously calculated values are
+ * returned.  The cache holds several inputs per method and is shared
+ * by all CachingCoordinateSystems, bounded by the total size of the
+ * cached arrays; see {@link visad.data.FingerprintArrayCache}.
  *
  * @author Don Murray
  * @version $Revision: 1.11 $ $Date: 2009-12-07 12:16:19 $
@@ -48,8 +51,19 @@ public class CachingCoordinateSystem extends CoordinateSystem {
   /** The coordinate system I wrap */
   private CoordinateSystem myCS = null;
 
-  /**  Does the actual caching         */
-  private ArrayCache arrayCache = new ArrayCache();
+  /**  Does the actual caching, for all CachingCoordinateSystems */
+  private static final FingerprintArrayCache arrayCache =
+    FingerprintArrayCache.getShared();
+
+  /**  Number of the next CS, to give each its own keys in arrayCache */
+  private static long nextKey = 0;
+
+  /**  Prefix of this CS's keys in arrayCache */
+  private transient volatile String keyPrefix = null;
+
+  /**  Hit and miss counts of this CS */
+  private transient long hits = 0;
+  private transient long misses = 0;
 
   /** Show time to transform           */
   public static boolean debugTime = 
@@ -91,18 +105,22 @@ public class CachingCoordinateSystem extends CoordinateSystem {
     long t1 = System.currentTimeMillis();
     boolean hit = true;
     String key = "toReferenceD";
-    ArrayCache.DoubleResult results = arrayCache.get(key, inputs);    
-    if (results.values == null) {
-      double[][] tmp = results.cloneForCache(inputs);
-      results.values = myCS.toReference(inputs);
-      arrayCache.put(key, tmp, results);
+    double[][] results = arrayCache.get(getKeyPrefix() + key, inputs);
+    if (results == null) {
+      double[][] tmp = arrayCache.copyForCache(inputs);
+      results = myCS.toReference(inputs);
+      arrayCache.put(getKeyPrefix() + key, tmp, results);
       hit = false;
+      if (tmp != null) count(false);
+    }
+    else {
+      count(true);
     }
-    if(debugTime  && results.getShouldCache())
+    if(debugTime)
         debugTime(inputs[0].length, key +" hit?" + hit, t1,System.currentTimeMillis());
     //    System.err.println (Util.getStackTrace());
 
-    return results.values;
+    return results;
   }
 
     private void debugTime(int size, String msg, long t1, long t2) {
@@ -129,16 +147,20 @@ public class CachingCoordinateSystem extends CoordinateSystem {
     long t1 = System.currentTimeMillis();
     boolean hit = true;
     String key = "fromReferenceD";
-    ArrayCache.DoubleResult results = arrayCache.get(key, inputs);
-    if (results.values == null) {
-      double[][] tmp = results.cloneForCache(inputs);
-      results.values = myCS.fromReference(inputs);
-      arrayCache.put(key, tmp, results);
+    double[][] results = arrayCache.get(getKeyPrefix() + key, inputs);
+    if (results == null) {
+      double[][] tmp = arrayCache.copyForCache(inputs);
+      results = myCS.fromReference(inputs);
+      arrayCache.put(getKeyPrefix() + key, tmp, results);
       hit = false;
+      if (tmp != null) count(false);
     }
-    if(debugTime  && results.getShouldCache())
+    else {
+      count(true);
+    }
+    if(debugTime)
         debugTime(inputs[0].length,key +" hit?" + hit, t1,System.currentTimeMillis());
-    return results.values;
+    return results;
 
   }
 
@@ -163,18 +185,20 @@ public class CachingCoordinateSystem extends CoordinateSystem {
     long t1 = System.currentTimeMillis();
     boolean hit = true;
     String key = "toReferenceF";
-
-    ArrayCache.FloatResult results = arrayCache.get(key, inputs);
-    if (results.values == null) {
-      float[][] tmp = results.cloneForCache(inputs);
-      results.values = myCS.toReference(inputs);
-      arrayCache.put(key, tmp, results);
+    float[][] results = arrayCache.get(getKeyPrefix() + key, inputs);
+    if (results == null) {
+      float[][] tmp = arrayCache.copyForCache(inputs);
+      results = myCS.toReference(inputs);
+      arrayCache.put(getKeyPrefix() + key, tmp, results);
       hit = false;
+      if (tmp != null) count(false);
     }
-
-    if(debugTime  && results.getShouldCache())
+    else {
+      count(true);
+    }
+    if(debugTime)
         debugTime(inputs[0].length,key +" hit?" + hit, t1,System.currentTimeMillis());
-    return results.values;
+    return results;
   }
 
 
@@ -194,16 +218,20 @@ public class CachingCoordinateSystem extends CoordinateSystem {
     long t1 = System.currentTimeMillis();
     boolean hit = true;
     String key = "fromReferenceF";
-    ArrayCache.FloatResult results = arrayCache.get(key, inputs);
-    if (results.values==null) {
-      float[][] tmp = results.cloneForCache(inputs);
-      results.values = myCS.fromReference(inputs);
-      arrayCache.put(key, tmp, results);
+    float[][] results = arrayCache.get(getKeyPrefix() + key, inputs);
+    if (results == null) {
+      float[][] tmp = arrayCache.copyForCache(inputs);
+      results = myCS.fromReference(inputs);
+      arrayCache.put(getKeyPrefix() + key, tmp, results);
       hit = false;
+      if (tmp != null) count(false);
     }
-    if(debugTime  && results.getShouldCache())
+    else {
+      count(true);
+    }
+    if(debugTime)
         debugTime(inputs[0].length,key +" hit?" + hit, t1,System.currentTimeMillis());
-    return results.values;
+    return results;
   }
 
   /**
@@ -226,6 +254,54 @@ public class CachingCoordinateSystem extends CoordinateSystem {
     return myCS;
   }
 
+  /**
+   * Access to the cache of transformed values, e.g. to change its size
+   * limit.  It is shared by all CachingCoordinateSystems.
+   * @return  the cache used by this CS
+   */
+  public FingerprintArrayCache getArrayCache() {
+    return arrayCache;
+  }
+
+  /**
+   * Get the number of transforms served from the cache.
+   * @return  number of cache hits
+   */
+  public synchronized long getCacheHitCount() {
+    return hits;
+  }
+
+  /**
+   * Get the number of transforms that were not in the cache.
+   * @return  number of cache misses
+   */
+  public synchronized long getCacheMissCount() {
+    return misses;
+  }
+
+  /**
+   * Remove all values cached for this CS.
+   */
+  public void clearCache() {
+    arrayCache.clear(getKeyPrefix());
+  }
+
+  /** count a lookup of a transform that could be cached */
+  private synchronized void count(boolean hit) {
+    if (hit) hits++;
+    else misses++;
+  }
+
+  /** @return the prefix of this CS's keys in the shared cache */
+  private String getKeyPrefix() {
+    String prefix = keyPrefix;
+    if (prefix != null) return prefix;
+    synchronized (CachingCoordinateSystem.class) {
+      if (keyPrefix == null) keyPrefix = "CCS" + (nextKey++) + ".";
+      return keyPrefix;
+    }
+  }
+
   /**
    * A decriptive string of this CS.
    * @return a descriptive String
@@ -31,6 +31,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import visad.util.ParallelChunks;
 import visad.util.Trace;
 import visad.util.HersheyFont;
 import java.awt.Font;
@@ -223,6 +224,85 @@ public class Contour2D {
 		return levs;
 	}
 
+	/** Grids with fewer points than this are contoured in a single band. */
+	public static final int TILE_THRESHOLD = 250000;
+
+	/** Minimum number of grid columns in each band. */
+	private static final int MIN_TILE_COLUMNS = 16;
+
+	private static boolean parallelTiles =
+		Boolean.getBoolean("visad.contour.paralleltiles");
+
+	private static int tileCount = Integer.getInteger("visad.contour.tiles", 0);
+
+	/**
+	 * Enable or disable contouring of large grids in bands of adjacent grid
+	 * columns, on the threads of {@link ParallelChunks}.  Line strips are
+	 * stitched within each band and then joined across band boundaries, so
+	 * strips may be ordered and oriented differently than when contouring
+	 * in a single pass.  Disabled by default; also set by the
+	 * <code>visad.contour.paralleltiles</code> system property.
+	 * 
+	 * @param enable true to contour in parallel bands
+	 */
+	public static void setParallelTiles(boolean enable) {
+		parallelTiles = enable;
+	}
+
+	/**
+	 * @return true if large grids are contoured in parallel bands
+	 */
+	public static boolean getParallelTiles() {
+		return parallelTiles;
+	}
+
+	/**
+	 * Set the number of bands used when contouring in parallel bands, or 0
+	 * for four per thread of {@link ParallelChunks}.  Also set by the
+	 * <code>visad.contour.tiles</code> system property.
+	 * 
+	 * @param count number of bands, or 0
+	 */
+	public static void setTileCount(int count) {
+		tileCount = count;
+	}
+
+	/**
+	 * @return number of bands used when contouring in parallel bands, or 0
+	 *         if it depends on the number of threads
+	 */
+	public static int getTileCount() {
+		return tileCount;
+	}
+
+	/**
+	 * @return number of bands in which to contour an nr by nc grid
+	 */
+	static int getTileCount(int nr, int nc) {
+		if (!parallelTiles || (long) nr * nc < TILE_THRESHOLD) {
+			return 1;
+		}
+		int count = tileCount;
+		if (count <= 0) {
+			int parallelism = ParallelChunks.getParallelism();
+			if (parallelism < 2) {
+				return 1;
+			}
+			count = 4 * parallelism;
+		}
+		count = Math.min(count, (nc - 1) / MIN_TILE_COLUMNS);
+		return Math.max(count, 1);
+	}
+
+	private static void runBands(ContourBand[] bands, ParallelChunks.Chunk chunk)
+			throws VisADException {
+		try {
+			ParallelChunks.run(bands.length, 1, chunk);
+		} catch (java.rmi.RemoteException e) {
+			throw new VisADException(e.toString());
+		}
+	}
+
 	/**           */
 	public static int vertexCnt = 0;
 
@@ -241,11 +321,9 @@ public class Contour2D {
 		dash = fill ? false : dash;
 		int ir, ic;
 		int nrm, ncm;
-		int numc, il;
 		int lr, lc, lc2, lrr, lr2, lcc;
-		float xd, yd, xx, yy;
+		float xd, yd;
 		float xdd, ydd;
-		float gg;
 
 		// these are just estimates
 		// int est = 2 * Length; WLH 14 April 2000
@@ -258,9 +336,9 @@ public class Contour2D {
 		// setup colors arrays
 		int interval_length = (interval_colors.length > 0) ? interval_colors[0].length : 0;
 
-		// setup display coordinate arrays
-		float[] vx = new float[maxsize];
-		float[] vy = new float[maxsize];
+		// display coordinate arrays, filled by the bands
+		float[] vx;
+		float[] vy;
 
 		int numv;
 
@@ -348,17 +426,8 @@ public class Contour2D {
 			interval_colors = tmpColors;
 		}
 
-		int low;
-		int hi;
-
-		int t;
-
 		byte[][] auxLevels = null;
 		int naux = (auxValues != null) ? auxValues.length : 0;
-		byte[] auxa = null;
-		byte[] auxb = null;
-		byte[] auxc = null;
-		byte[] auxd = null;
 		if (naux > 0) {
 			for (int i = 0; i < naux; i++) {
 				if (auxValues[i].length != g.length) {
@@ -366,11 +435,6 @@ public class Contour2D {
 							+ "auxValues lengths don't match");
 				}
 			}
-			auxa = new byte[naux];
-			auxb = new byte[naux];
-			auxc = new byte[naux];
-			auxd = new byte[naux];
-			auxLevels = new byte[naux][maxsize];
 		}
 
 		if (values == null)
@@ -383,10 +447,6 @@ public class Contour2D {
 		// flags for each level indicating dashed rendering
 		boolean[] dashFlags = new boolean[myvals.length];
 
-		int numLevels = myvals.length;
-		float minLevelValue = myvals[0];
-		float maxLevelValue = myvals[numLevels - 1];
-
 		/*
 		 * DRM: 1999-05-19 - Not needed since dash is a boolean // check for bad
 		 * contour interval if (interval==0.0) { throw new
@@ -472,1003 +532,314 @@ public class Contour2D {
 		visad.util.Trace.call1("Contour2d.loop", " nrm=" + nrm + " ncm=" + ncm
 				+ " naux=" + naux + " myvals.length=" + myvals.length);
 
-		// compute contours
-		for (ic = 0; ic < ncm; ic++) {
-			int ic_plus1 = ic + 1;
-			yy = ydd * ic + 0.0f; // = ic
-			for (ir = 0; ir < nrm; ir++) {
-				int ir_plus1 = ir + 1;
-				xx = xdd * ir + 0.0f; // = ir
-
-				int ic_times_nr = ic * nr;
-				int ic_plus1_times_nr = ic_plus1 * nr;
+		// compute contours in bands of grid columns
+		int nbands = getTileCount(nr, nc);
+		final ContourBand[] bands = new ContourBand[nbands];
+		for (int b = 0; b < nbands; b++) {
+			int icStart = (int) (((long) ncm * b) / nbands);
+			int icEnd = (int) (((long) ncm * (b + 1)) / nbands);
+			int bandsize = (nbands == 1) ? maxsize : Math.max(1000, maxsize / nbands);
+			// label marks are only kept by a single band, since the
+			// boxes they cover cross band boundaries
+			bands[b] = new ContourBand(icStart, icEnd, bandsize, g, nr, nc,
+					xd, yd, xdd, ydd, myvals, lowlimit, highlimit, base, dash,
+					auxValues, fill, o_flags, n_lines, ctrLow,
+					(nbands == 1) ? mark : null, lr, lc, lr2, lc2, lrr, lcc);
+		}
+		if (nbands == 1) {
+			bands[0].run();
+		} else {
+			runBands(bands, new ParallelChunks.Chunk() {
+				public void run(int start, int end) {
+					for (int b = start; b < end; b++) {
+						bands[b].run();
+					}
+				}
+			});
+		}
 
-				float ga, gb, gc, gd;
-				float gAvg, gMin, gMax;
-				float tmp1, tmp2;
+		// gather the vertices of the bands in grid box order, as fillGridBox
+		// expects
+		final int[] offsets = new int[nbands];
+		numv = 0;
+		for (int b = 0; b < nbands; b++) {
+			offsets[b] = numv;
+			numv += bands[b].numv;
+		}
+		if (nbands == 1) {
+			vx = bands[0].vx;
+			vy = bands[0].vy;
+			auxLevels = bands[0].auxLevels;
+			dashFlags = bands[0].dashFlags;
+		} else {
+			vx = new float[numv];
+			vy = new float[numv];
+			if (naux > 0) {
+				auxLevels = new byte[naux][numv];
+			}
+			for (int b = 0; b < nbands; b++) {
+				ContourBand band = bands[b];
+				System.arraycopy(band.vx, 0, vx, offsets[b], band.numv);
+				System.arraycopy(band.vy, 0, vy, offsets[b], band.numv);
+				for (int i = 0; i < naux; i++) {
+					System.arraycopy(band.auxLevels[i], 0, auxLevels[i],
+							offsets[b], band.numv);
+				}
+				for (int i = 0; i < dashFlags.length; i++) {
+					dashFlags[i] |= band.dashFlags[i];
+				}
+				band.vx = null;
+				band.vy = null;
+				band.auxLevels = null;
+			}
+		}
 
-				// WLH 21 April 2000
-				// if (numv+8 >= maxsize || nump+4 >= 2*maxsize) {
-				if (numv + 8 >= maxsize) {
-					// allocate more space
-					maxsize = 2 * maxsize;
-					/*
-					 * WLH 21 April 2000 int[] tt = ipnt; ipnt = new int[2
-					 * maxsize]; System.arraycopy(tt, 0, ipnt, 0, nump);
-					 */
-					float[] tx = vx;
-					float[] ty = vy;
-					vx = new float[maxsize];
-					vy = new float[maxsize];
-					System.arraycopy(tx, 0, vx, 0, numv);
-					System.arraycopy(ty, 0, vy, 0, numv);
-					tx = null;
-					ty = null;
-					if (naux > 0) {
-						byte[][] ta = auxLevels;
-						auxLevels = new byte[naux][maxsize];
-						for (int i = 0; i < naux; i++) {
-							System.arraycopy(ta[i], 0, auxLevels[i], 0, numv);
-						}
-						ta = null;
+		// build contour strips; bands are stitched separately, then joined
+		// across band boundaries
+		if (nbands == 1) {
+			bands[0].addSegments(ctrSet, vx, vy, 0);
+		} else {
+			final ContourStripSet set = ctrSet;
+			final float[] fvx = vx;
+			final float[] fvy = vy;
+			runBands(bands, new ParallelChunks.Chunk() {
+				public void run(int start, int end) {
+					for (int b = start; b < end; b++) {
+						bands[b].stitch(set, fvx, fvy, offsets[b]);
 					}
 				}
+			});
+			@SuppressWarnings("unchecked")
+			List<ContourStrip>[][] bandOpen = new List[nbands][];
+			@SuppressWarnings("unchecked")
+			List<ContourStrip>[][] bandClosed = new List[nbands][];
+			for (int b = 0; b < nbands; b++) {
+				bandOpen[b] = bands[b].openStrips;
+				bandClosed[b] = bands[b].closedStrips;
+			}
+			ctrSet.joinBands(vx, vy, bandOpen, bandClosed);
+		}
 
-				// save index of first vertex in this grid box
-				// JDM: ipnt[nump++] = numv;
+		// System.err.println ("ii:" + ii1 + " " +ii2 + " " +ii3 + " " +ii4 +
+		// " "
+		// +ii5 + " " +ii6);
+		visad.util.Trace.call2("Contour2d.loop");
 
-				/*
-				 * ga = ( g[ (ic) nr + (ir) ] ); gb = ( g[ (ic) nr + (ir+1) ] );
-				 * gc = ( g[ (ic+1) nr + (ir) ] ); gd = ( g[ (ic+1) nr + (ir+1)
-				 * ] ); boolean miss = false; if (ga != ga || gb != gb || gc !=
-				 * gc || gd != gd) { miss = true; System.out.println("ic, ir = "
-				 * + ic + "  " + ir + " gabcd = " + ga + " " + gb + " " + gc +
-				 * " " + gd); }
-				 */
+		/** ------------------- Color Fill ------------------------- */
+		TriangleStripBuilder triStripBldr = null;
+
+		if (fill) {
+			triStripBldr = new TriangleStripBuilder(ncm, nrm, color_bin.length);
+			fillGridBox(g, n_lines, vx, vy, xd, xdd, yd, ydd, nr, nrm, nc, ncm,
+					ctrLow, o_flags, myvals, color_bin, grd_normals,
+					triStripBldr);
+			// BMF 2006-10-04 do not return, ie. draw labels on filled contours
+			// for now, just return because we don't need to do labels
+			// return;
+		}
+
+		// ---TDR, build Contour Strips
+
+		Trace.call1("Contour2d.getLineColorArrays");
+		ctrSet.getLineColorArrays(vx, vy, auxLevels, labelColor, labelFont,
+				labelAlign, sphericalDisplayCS, dashFlags);
+		Trace.call2("Contour2d.getLineColorArrays");
+
+		return new ContourOutput(ctrSet, triStripBldr);
+	}
+
+	/**
+	 * 
+	 * @param g
+	 * @param n_lines
+	 * @param vx
+	 * @param vy
+	 * @param xd
+	 * @param xdd
+	 * @param yd
+	 * @param ydd
+	 * @param nr
+	 * @param nrm
+	 * @param nc
+	 * @param ncm
+	 * @param ctrLow
+	 * @param o_flags
+	 * @param values
+	 * @param color_bin
+	 * @param grd_normals
+	 * @param triStripBldr
+	 */
+	
+	private static void fillGridBox(float[] g, short[][] n_lines, float[] vx,
+			float[] vy, float xd, float xdd, float yd, float ydd, int nr,
+			int nrm, int nc, int ncm, short[][] ctrLow, byte[][][] o_flags,
+			float[] values, byte[][] color_bin, float[][][] grd_normals,
+			TriangleStripBuilder triStripBldr) {
+		float xx, yy;
+		int[] numv = new int[1];
+		numv[0] = 0;
+
+		for (int ic = 0; ic < ncm; ic++) {
+			yy = ydd * ic + 0.0f;
+			for (int ir = 0; ir < nrm; ir++) {
+				triStripBldr.setGridBox(ic, ir);
+				float ga, gb, gc, gd;
+				xx = xdd * ir + 0.0f;
 
-				/*
-				 * if (ga != ga || gb != gb || gc != gc || gd != gd) { if
-				 * (!anymissing) { anymissing = true;
-				 * System.out.println("missing"); } } else { if (!anynotmissing)
-				 * { anynotmissing = true; System.out.println("notmissing"); } }
-				 */
 				// get 4 corner values, skip box if any are missing
-				//
-				// [c, (x,y+ydd)]-------[d, (x+xdd,y+ydd)]
-				// | |
-				// | |
-				// | |
-				// [a, (x,y)]------------[b, (x+xdd,y)]
-				//
-				// ------------------------------
-				ga = g[ic_times_nr + ir];
+				ga = (g[(ic) * nr + (ir)]);
+       			// test for missing
        			if (Float.isNaN(ga))
          			continue;
-				gb = g[ic_times_nr + ir_plus1];
+				gb = (g[(ic) * nr + (ir + 1)]);
+       			// test for missing
        			if (Float.isNaN(gb))
          			continue;
-				gc = g[ic_plus1_times_nr + ir];
+				gc = (g[(ic + 1) * nr + (ir)]);
+       			// test for missing
        			if (Float.isNaN(gc))
          			continue;
-				gd = g[ic_plus1_times_nr + ir_plus1];
-       			if (Float.isNaN(gd))
+				gd = (g[(ic + 1) * nr + (ir + 1)]);
+       			// test for missing
+       			if (Float.isNaN(gd ))
          			continue;
 
-				/*
-				 * DRM move outside the loop byte[] auxa = null; byte[] auxb =
-				 * null; byte[] auxc = null; byte[] auxd = null; if (naux > 0) {
-				 * auxa = new byte[naux]; auxb = new byte[naux]; auxc = new
-				 * byte[naux]; auxd = new byte[naux];
-				 */
-				if (naux > 0) {
-					for (int i = 0; i < naux; i++) {
-						byte[] auxValues_i = auxValues[i];
-						auxa[i] = auxValues_i[ic_times_nr + ir];
-						auxb[i] = auxValues_i[ic_times_nr + ir_plus1];
-						auxc[i] = auxValues_i[ic_plus1_times_nr + ir];
-						auxd[i] = auxValues_i[ic_plus1_times_nr + ir_plus1];
-					}
-				}
-
-				// find average, min, and max of 4 corner values
-				gAvg = (ga + gb + gc + gd) / 4.0f;
-
-				// gMin = MIN4(ga,gb,gc,gd);
-				tmp1 = ((ga) < (gb) ? (ga) : (gb));
-				tmp2 = ((gc) < (gd) ? (gc) : (gd));
-				gMin = ((tmp1) < (tmp2) ? (tmp1) : (tmp2));
-
-				// gMax = MAX4(ga,gb,gc,gd);
-				tmp1 = ((ga) > (gb) ? (ga) : (gb));
-				tmp2 = ((gc) > (gd) ? (gc) : (gd));
-				gMax = ((tmp1) > (tmp2) ? (tmp1) : (tmp2));
+				numv[0] += n_lines[ir][ic] * 2;
 
-				/*
-				 * remove for new signature, replace with code below // compute
-				 * clow and chi, low and high contour values in the box tmp1 =
-				 * (gMin-base) / interval; clow = base + interval (( (tmp1) >= 0
-				 * ? (int) ((tmp1) + 0.5) : (int) ((tmp1)-0.5) )-1); while
-				 * (clow<gMin) { clow += interval; }
-				 * 
-				 * tmp1 = (gMax-base) / interval; chi = base + interval ((
-				 * (tmp1) >= 0 ? (int) ((tmp1) + 0.5) : (int) ((tmp1)-0.5) )+1);
-				 * while (chi>gMax) { chi -= interval; }
-				 * 
-				 * // how many contour lines in the box: tmp1 = (chi-clow) /
-				 * interval; numc = 1+( (tmp1) >= 0 ? (int) ((tmp1) + 0.5) :
-				 * (int) ((tmp1)-0.5) );
-				 * 
-				 * // gg is current contour line value gg = clow;
-				 */
+				fillGridBox(new float[] { ga, gb, gc, gd }, n_lines[ir][ic],
+						vx, vy, xx, yy, xd, yd, ic, ir, ctrLow[ir][ic],
+						numv[0], o_flags[ir][ic], values, color_bin,
+						grd_normals, triStripBldr);
+			}
+		}
+	}
 
-				low = 0;
-				hi = numLevels - 1;
-				if (gMax < minLevelValue || gMin > maxLevelValue) {
-					// no contours
-					numc = 1;
-				} else {
-					// some inside the box
-					// JDM: Instead of iterating through the whole list just do
-					// a
-					// binarySearch
-					/*
-					 * for (int i = 0; i < myvals.length; i++) { if (i == 0 &&
-					 * myvals[i] >= gn) { low = i; } else if (myvals[i] >= gn &&
-					 * myvals[i-1] < gn) { low = i; } if (i == 0 && myvals[i] >=
-					 * gx) { hi = i; } else if (myvals[i] >= gx && myvals[i-1] <
-					 * gx) { hi = i; } }
-					 */
-					hi = java.util.Arrays.binarySearch(myvals, gMax);
-					if (hi < 0)
-						hi = (-hi) - 1;
-					if (hi >= myvals.length)
-						hi = myvals.length - 1;
-					low = java.util.Arrays.binarySearch(myvals, gMin);
-					if (low < 0)
-						low = (-low) - 1;
-
-					numc = hi - low + 1;
-				}
+	/**
+	 * 
+	 * @param corners
+	 * @param numc
+	 * @param vx
+	 * @param vy
+	 * @param xx
+	 * @param yy
+	 * @param xd
+	 * @param yd
+	 * @param nc
+	 * @param nr
+	 * @param ctrLow
+	 * @param numv
+	 * @param o_flags
+	 * @param values
+	 * @param color_bin
+	 * @param grd_normals
+	 * @param triStripBldr
+	 */
+	
+	private static void fillGridBox(float[] corners, int numc, float[] vx,
+			float[] vy, float xx, float yy, float xd, float yd, int nc, int nr,
+			short ctrLow, int numv, byte[] o_flags, float[] values,
+			byte[][] color_bin, float[][][] grd_normals,
+			TriangleStripBuilder triStripBldr) {
 
-				// gg = myvals[low];
-				/*
-				 * if (!any && numc > 0) { System.out.println("gMin = " + gMin +
-				 * " gMax = " + gMax + " gAvg = " + gAvg);
-				 * System.out.println("numc = " + numc + " clow = " +
-				 * myvals[low] + " chi = " + myvals[hi]); any = true; }
-				 */
-				if (fill) {
-					o_flags[ir][ic] = new byte[2 * numc]; // - case flags
-					n_lines[ir][ic] = 0; // - number of contour line segments
-					ctrLow[ir][ic] = (short) hi;
-				}
+		int il = 0;
+		int color_length = color_bin.length;
+		float[] vv1 = new float[2];
+		float[] vv2 = new float[2];
+		float[] vv1_last = new float[2];
+		float[] vv2_last = new float[2];
+		float[][] vv = new float[2][2];
+		float[][] vv_last = new float[2][2];
 
-				for (il = 0; il < numc; il++) {
-					if ((low + il) >= myvals.length) {
-						System.err.println("bad range: myvals.length=" + myvals
-								+ " il=" + il + " low=" + low + " high=" + hi);
-					}
-					gg = myvals[low + il];
+		int dir = 1;
+		int start = numv - 2;
+		int o_start = numc - 1;
+		int o_idx = 0;
+		byte o_flag = o_flags[o_idx];
+		int[] closed = { 0 };
+		boolean up;
+		boolean right;
 
-					// WLH 21 April 2000
-					// if (numv+8 >= maxsize || nump+4 >= 2*maxsize) {
-					if (numv + 8 >= maxsize) {
-						// allocate more space
-						maxsize = 2 * maxsize;
-						/*
-						 * WLH 21 April 2000 int[] tt = ipnt; ipnt = new int[2
-						 * maxsize]; System.arraycopy(tt, 0, ipnt, 0, nump);
-						 */
-						float[] tx = vx;
-						float[] ty = vy;
-						vx = new float[maxsize];
-						vy = new float[maxsize];
-						System.arraycopy(tx, 0, vx, 0, numv);
-						System.arraycopy(ty, 0, vy, 0, numv);
-						tx = null;
-						ty = null;
-						if (naux > 0) {
-							byte[][] ta = auxLevels;
-							auxLevels = new byte[naux][maxsize];
-							for (int i = 0; i < naux; i++) {
-								System.arraycopy(ta[i], 0, auxLevels[i], 0,
-										numv);
-							}
-							ta = null;
-						}
-					}
+		int v_idx = start + dir * il * 2;
 
-					// make sure gg is within contouring limits
-					if (gg < gMin)
-						continue;
-					if (gg > gMax)
-						break;
-					if (gg < lowlimit)
-						continue;
-					if (gg > highlimit)
-						break;
+		int cc_start = (dir > 0) ? (ctrLow - 1) : (ctrLow + (numc - 1));
 
-					// compute orientation of lines inside box
-					int ii = 0;
-					if (gg > ga)
-						ii = 1;
-					if (gg > gb)
-						ii += 2;
-					if (gg > gc)
-						ii += 4;
-					if (gg > gd)
-						ii += 8;
-					if (ii > 7)
-						ii = 15 - ii;
-					if (ii <= 0)
-						continue;
+		// -- color level at corners
+		// ------------------------------
+		byte[][] crnr_color = new byte[4][color_length];
+		int[] crnrLevelIdx = new int[4];
+		boolean[] crnr_out = new boolean[] { true, true, true, true };
+		boolean all_out = true;
+		for (int tt = 0; tt < corners.length; tt++) {
+			int cc = 0;
+			int kk = 0;
+			for (kk = 0; kk < (values.length - 1); kk++) {
+				if ((corners[tt] >= values[kk])
+						&& (corners[tt] < values[kk + 1])) {
+					cc = kk;
+					all_out = false;
+					crnr_out[tt] = false;
+				}
+			}
+			for (int ii = 0; ii < color_length; ii++) {
+				crnr_color[tt][ii] = color_bin[ii][cc];
+			}
+			crnrLevelIdx[tt] = cc;
+		}
 
-					if (fill) {
-						if ((low + il) < ctrLow[ir][ic])
-							ctrLow[ir][ic] = (short) (low + il);
-					}
+		dir = 1;
+		start = numv - numc * 2;
+		o_start = 0;
+		v_idx = start + dir * il * 2;
+		up = false;
+		right = false;
+		float[] x_avg = new float[2];
+		float[] y_avg = new float[2];
 
-					// DO LABEL HERE
-					if ((mark[(ic) * nr + (ir)]) == 0) {
-						int kc, kr, mc, mr, jc, jr;
+		if (numc > 1) { // -- first/next ctr line midpoints
+			int idx = v_idx;
+			x_avg[0] = (vx[idx] + vx[idx + 1]) / 2;
+			y_avg[0] = (vy[idx] + vy[idx + 1]) / 2;
+			idx = v_idx + 2;
+			x_avg[1] = (vx[idx] + vx[idx + 1]) / 2;
+			y_avg[1] = (vy[idx] + vy[idx + 1]) / 2;
+			if ((x_avg[1] - x_avg[0]) > 0)
+				up = true;
+			if ((y_avg[1] - y_avg[0]) > 0)
+				right = true;
+		} else if (numc == 1) { // - default values for logic below
+			x_avg[0] = 0f;
+			y_avg[0] = 0f;
+			x_avg[1] = 1f;
+			y_avg[1] = 1f;
+		} else if (numc == 0) // - empty grid box (no contour lines)
+		{
+			if (all_out)
+				return;
 
-						// Insert a label
+			float[][] tri = new float[2][4];
+			float[][] normals = new float[3][4];
+			byte[] color = new byte[color_length];
+			for (int ii = 0; ii < color_length; ii++) {
+				color[ii] = crnr_color[0][ii];
+			}
 
-						// BOX TO AVOID
-						kc = ic - lc2 - lcc;
-						kr = ir - lr2 - lrr;
-						mc = kc + 2 * lcc + lc - 1;
-						mr = kr + 2 * lrr + lr - 1;
-						// OK here
-						for (jc = kc; jc <= mc; jc++) {
-							if (jc >= 0 && jc < nc) {
-								for (jr = kr; jr <= mr; jr++) {
-									if (jr >= 0 && jr < nr) {
-										if ((mark[(jc) * nr + (jr)]) != 2) {
-											mark[(jc) * nr + (jr)] = 1;
-										}
-									}
-								}
-							}
-						}
+			normals[0][0] = grd_normals[nc][nr][0];
+			normals[1][0] = grd_normals[nc][nr][1];
+			normals[2][0] = grd_normals[nc][nr][2];
+			tri[0][0] = xx;
+			tri[1][0] = yy;
 
-						// BOX TO HOLD LABEL
-						kc = ic - lc2;
-						kr = ir - lr2;
-						mc = kc + lc - 1;
-						mr = kr + lr - 1;
-						for (jc = kc; jc <= mc; jc++) {
-							if (jc >= 0 && jc < nc) {
-								for (jr = kr; jr <= mr; jr++) {
-									if (jr >= 0 && jr < nr) {
-										mark[(jc) * nr + (jr)] = 2;
-									}
-								}
-							}
-						}
-					}
+			normals[0][1] = grd_normals[nc + 1][nr][0];
+			normals[1][1] = grd_normals[nc + 1][nr][1];
+			normals[2][1] = grd_normals[nc + 1][nr][2];
+			tri[0][1] = xx;
+			tri[1][1] = yy + yd;
 
-					float gba, gca, gdb, gdc;
-					switch (ii) {
-					case 1:
-						gba = gb - ga;
-						gca = gc - ga;
-
-						if (naux > 0) {
-							float ratioba = (gg - ga) / gba;
-							float ratioca = (gg - ga) / gca;
-							for (int i = 0; i < naux; i++) {
-								t = (int) ((1.0f - ratioba)
-										* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
-												: ((float) auxa[i])) + ratioba
-										* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
-												: ((float) auxb[i])));
-								auxLevels[i][numv] = (byte) ((t < 0) ? 0
-										: ((t > 255) ? -1 : ((t < 128) ? t
-												: t - 256)));
-								t = (int) ((1.0f - ratioca)
-										* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
-												: ((float) auxa[i])) + ratioca
-										* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
-												: ((float) auxc[i])));
-								auxLevels[i][numv + 1] = (byte) ((t < 0) ? 0
-										: ((t > 255) ? -1 : ((t < 128) ? t
-												: t - 256)));
-								/*
-								 * MEM_WLH auxLevels[i][numv] = auxa[i] +
-								 * (auxb[i]-auxa[i]) ratioba;
-								 * auxLevels[i][numv+1] = auxa[i] +
-								 * (auxc[i]-auxa[i]) ratioca;
-								 */
-							}
-						}
-
-						if (((gba) < 0 ? -(gba) : (gba)) < 0.0000001) {
-							vx[numv] = xx;
-						} else {
-							vx[numv] = xx + xd * (gg - ga) / gba;
-						}
-						vy[numv] = yy;
-						numv++;
-						if (((gca) < 0 ? -(gca) : (gca)) < 0.0000001) {
-							vy[numv] = yy;
-						} else {
-							vy[numv] = yy + yd * (gg - ga) / gca;
-						}
-						vx[numv] = xx;
-						numv++;
-						if (fill) {
-							o_flags[ir][ic][n_lines[ir][ic]] = (byte) ii;
-							n_lines[ir][ic]++;
-						}
-						if (vx[numv - 2] == vx[numv - 1]
-								|| vy[numv - 2] == vy[numv - 1]) {
-							vx[numv - 2] += 0.00001f;
-							vy[numv - 1] += 0.00001f;
-						}
-						break;
-
-					case 2:
-						gba = gb - ga;
-						gdb = gd - gb;
-
-						if (naux > 0) {
-							float ratioba = (gg - ga) / gba;
-							float ratiodb = (gg - gb) / gdb;
-							for (int i = 0; i < naux; i++) {
-								t = (int) ((1.0f - ratioba)
-										* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
-												: ((float) auxa[i])) + ratioba
-										* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
-												: ((float) auxb[i])));
-								auxLevels[i][numv] = (byte) ((t < 0) ? 0
-										: ((t > 255) ? -1 : ((t < 128) ? t
-												: t - 256)));
-								t = (int) ((1.0f - ratiodb)
-										* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
-												: ((float) auxb[i])) + ratiodb
-										* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
-												: ((float) auxd[i])));
-								auxLevels[i][numv + 1] = (byte) ((t < 0) ? 0
-										: ((t > 255) ? -1 : ((t < 128) ? t
-												: t - 256)));
-								/*
-								 * MEM_WLH auxLevels[i][numv] = auxa[i] +
-								 * (auxb[i]-auxa[i]) ratioba;
-								 * auxLevels[i][numv+1] = auxb[i] +
-								 * (auxd[i]-auxb[i]) ratiodb;
-								 */
-							}
-						}
-
-						if (((gba) < 0 ? -(gba) : (gba)) < 0.0000001)
-							vx[numv] = xx;
-						else
-							vx[numv] = xx + xd * (gg - ga) / gba;
-						vy[numv] = yy;
-						numv++;
-						if (((gdb) < 0 ? -(gdb) : (gdb)) < 0.0000001)
-							vy[numv] = yy;
-						else
-							vy[numv] = yy + yd * (gg - gb) / gdb;
-						vx[numv] = xx + xd;
-						numv++;
-						if (fill) {
-							o_flags[ir][ic][n_lines[ir][ic]] = (byte) ii;
-							n_lines[ir][ic]++;
-						}
-						if (vx[numv - 2] == vx[numv - 1]
-								|| vy[numv - 2] == vy[numv - 1]) {
-							vx[numv - 2] -= 0.00001f;
-							vy[numv - 1] += 0.00001f;
-						}
-						break;
-
-					case 3:
-						gca = gc - ga;
-						gdb = gd - gb;
-
-						if (naux > 0) {
-							float ratioca = (gg - ga) / gca;
-							float ratiodb = (gg - gb) / gdb;
-							for (int i = 0; i < naux; i++) {
-								t = (int) ((1.0f - ratioca)
-										* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
-												: ((float) auxa[i])) + ratioca
-										* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
-												: ((float) auxc[i])));
-								auxLevels[i][numv] = (byte) ((t < 0) ? 0
-										: ((t > 255) ? -1 : ((t < 128) ? t
-												: t - 256)));
-								t = (int) ((1.0f - ratiodb)
-										* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
-												: ((float) auxb[i])) + ratiodb
-										* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
-												: ((float) auxd[i])));
-								auxLevels[i][numv + 1] = (byte) ((t < 0) ? 0
-										: ((t > 255) ? -1 : ((t < 128) ? t
-												: t - 256)));
-								/*
-								 * MEM_WLH auxLevels[i][numv] = auxa[i] +
-								 * (auxc[i]-auxa[i]) ratioca;
-								 * auxLevels[i][numv+1] = auxb[i] +
-								 * (auxd[i]-auxb[i]) ratiodb;
-								 */
-							}
-						}
-
-						if (((gca) < 0 ? -(gca) : (gca)) < 0.0000001)
-							vy[numv] = yy;
-						else
-							vy[numv] = yy + yd * (gg - ga) / gca;
-						vx[numv] = xx;
-						numv++;
-						if (((gdb) < 0 ? -(gdb) : (gdb)) < 0.0000001)
-							vy[numv] = yy;
-						else
-							vy[numv] = yy + yd * (gg - gb) / gdb;
-						vx[numv] = xx + xd;
-						numv++;
-						if (fill) {
-							o_flags[ir][ic][n_lines[ir][ic]] = (byte) ii;
-							n_lines[ir][ic]++;
-						}
-						break;
-
-					case 4:
-						gca = gc - ga;
-						gdc = gd - gc;
-
-						if (naux > 0) {
-							float ratioca = (gg - ga) / gca;
-							float ratiodc = (gg - gc) / gdc;
-							for (int i = 0; i < naux; i++) {
-								t = (int) ((1.0f - ratioca)
-										* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
-												: ((float) auxa[i])) + ratioca
-										* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
-												: ((float) auxc[i])));
-								auxLevels[i][numv] = (byte) ((t < 0) ? 0
-										: ((t > 255) ? -1 : ((t < 128) ? t
-												: t - 256)));
-								t = (int) ((1.0f - ratiodc)
-										* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
-												: ((float) auxc[i])) + ratiodc
-										* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
-												: ((float) auxd[i])));
-								auxLevels[i][numv + 1] = (byte) ((t < 0) ? 0
-										: ((t > 255) ? -1 : ((t < 128) ? t
-												: t - 256)));
-								/*
-								 * MEM_WLH auxLevels[i][numv] = auxa[i] +
-								 * (auxc[i]-auxa[i]) ratioca;
-								 * auxLevels[i][numv+1] = auxc[i] +
-								 * (auxd[i]-auxc[i]) ratiodc;
-								 */
-							}
-						}
-
-						if (((gca) < 0 ? -(gca) : (gca)) < 0.0000001)
-							vy[numv] = yy;
-						else
-							vy[numv] = yy + yd * (gg - ga) / gca;
-						vx[numv] = xx;
-						numv++;
-						if (((gdc) < 0 ? -(gdc) : (gdc)) < 0.0000001)
-							vx[numv] = xx;
-						else
-							vx[numv] = xx + xd * (gg - gc) / gdc;
-						vy[numv] = yy + yd;
-						numv++;
-						if (fill) {
-							o_flags[ir][ic][n_lines[ir][ic]] = (byte) ii;
-							n_lines[ir][ic]++;
-						}
-						if (vx[numv - 2] == vx[numv - 1]
-								|| vy[numv - 2] == vy[numv - 1]) {
-							vx[numv - 1] += 0.00001f;
-							vy[numv - 2] -= 0.00001f;
-						}
-						break;
-
-					case 5:
-						gba = gb - ga;
-						gdc = gd - gc;
-
-						if (naux > 0) {
-							float ratioba = (gg - ga) / gba;
-							float ratiodc = (gg - gc) / gdc;
-							for (int i = 0; i < naux; i++) {
-								t = (int) ((1.0f - ratioba)
-										* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
-												: ((float) auxa[i])) + ratioba
-										* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
-												: ((float) auxb[i])));
-								auxLevels[i][numv] = (byte) ((t < 0) ? 0
-										: ((t > 255) ? -1 : ((t < 128) ? t
-												: t - 256)));
-								t = (int) ((1.0f - ratiodc)
-										* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
-												: ((float) auxc[i])) + ratiodc
-										* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
-												: ((float) auxd[i])));
-								auxLevels[i][numv + 1] = (byte) ((t < 0) ? 0
-										: ((t > 255) ? -1 : ((t < 128) ? t
-												: t - 256)));
-								/*
-								 * MEM_WLH auxLevels[i][numv] = auxa[i] +
-								 * (auxb[i]-auxa[i]) ratioba;
-								 * auxLevels[i][numv+1] = auxc[i] +
-								 * (auxd[i]-auxc[i]) ratiodc;
-								 */
-							}
-						}
-
-						if (((gba) < 0 ? -(gba) : (gba)) < 0.0000001)
-							vx[numv] = xx;
-						else
-							vx[numv] = xx + xd * (gg - ga) / gba;
-						vy[numv] = yy;
-						numv++;
-						if (((gdc) < 0 ? -(gdc) : (gdc)) < 0.0000001)
-							vx[numv] = xx;
-						else
-							vx[numv] = xx + xd * (gg - gc) / gdc;
-						vy[numv] = yy + yd;
-						numv++;
-						if (fill) {
-							o_flags[ir][ic][n_lines[ir][ic]] = (byte) ii;
-							n_lines[ir][ic]++;
-						}
-						break;
-
-					case 6:
-						gba = gb - ga;
-						gdc = gd - gc;
-						gca = gc - ga;
-						gdb = gd - gb;
-
-						if (naux > 0) {
-							float ratioba = (gg - ga) / gba;
-							float ratiodc = (gg - gc) / gdc;
-							float ratioca = (gg - ga) / gca;
-							float ratiodb = (gg - gb) / gdb;
-							for (int i = 0; i < naux; i++) {
-								t = (int) ((1.0f - ratioba)
-										* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
-												: ((float) auxa[i])) + ratioba
-										* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
-												: ((float) auxb[i])));
-								auxLevels[i][numv] = (byte) ((t < 0) ? 0
-										: ((t > 255) ? -1 : ((t < 128) ? t
-												: t - 256)));
-								/*
-								 * MEM_WLH auxLevels[i][numv] = auxa[i] +
-								 * (auxb[i]-auxa[i]) ratioba;
-								 */
-								if ((gg > gAvg) ^ (ga < gb)) {
-									t = (int) ((1.0f - ratioca)
-											* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
-													: ((float) auxa[i])) + ratioca
-											* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
-													: ((float) auxc[i])));
-									auxLevels[i][numv + 1] = (byte) ((t < 0) ? 0
-											: ((t > 255) ? -1 : ((t < 128) ? t
-													: t - 256)));
-									t = (int) ((1.0f - ratiodb)
-											* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
-													: ((float) auxb[i])) + ratiodb
-											* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
-													: ((float) auxd[i])));
-									auxLevels[i][numv + 2] = (byte) ((t < 0) ? 0
-											: ((t > 255) ? -1 : ((t < 128) ? t
-													: t - 256)));
-									/*
-									 * MEM_WLH auxLevels[i][numv+1] = auxa[i] +
-									 * (auxc[i]-auxa[i]) ratioca;
-									 * auxLevels[i][numv+2] = auxb[i] +
-									 * (auxd[i]-auxb[i]) ratiodb;
-									 */
-								} else {
-									t = (int) ((1.0f - ratiodb)
-											* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
-													: ((float) auxb[i])) + ratiodb
-											* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
-													: ((float) auxd[i])));
-									auxLevels[i][numv + 1] = (byte) ((t < 0) ? 0
-											: ((t > 255) ? -1 : ((t < 128) ? t
-													: t - 256)));
-									t = (int) ((1.0f - ratioca)
-											* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
-													: ((float) auxa[i])) + ratioca
-											* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
-													: ((float) auxc[i])));
-									auxLevels[i][numv + 2] = (byte) ((t < 0) ? 0
-											: ((t > 255) ? -1 : ((t < 128) ? t
-													: t - 256)));
-									/*
-									 * MEM_WLH auxLevels[i][numv+1] = auxb[i] +
-									 * (auxd[i]-auxb[i]) ratiodb;
-									 * auxLevels[i][numv+2] = auxa[i] +
-									 * (auxc[i]-auxa[i]) ratioca;
-									 */
-								}
-								t = (int) ((1.0f - ratiodc)
-										* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
-												: ((float) auxc[i])) + ratiodc
-										* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
-												: ((float) auxd[i])));
-								auxLevels[i][numv + 3] = (byte) ((t < 0) ? 0
-										: ((t > 255) ? -1 : ((t < 128) ? t
-												: t - 256)));
-								/*
-								 * MEM_WLH auxLevels[i][numv+3] = auxc[i] +
-								 * (auxd[i]-auxc[i]) ratiodc;
-								 */
-							}
-						}
-
-						if (((gba) < 0 ? -(gba) : (gba)) < 0.0000001)
-							vx[numv] = xx;
-						else
-							vx[numv] = xx + xd * (gg - ga) / gba;
-						vy[numv] = yy;
-						numv++;
-						// here's a brain teaser
-						if ((gg > gAvg) ^ (ga < gb)) { // (XOR)
-							if (((gca) < 0 ? -(gca) : (gca)) < 0.0000001)
-								vy[numv] = yy;
-							else
-								vy[numv] = yy + yd * (gg - ga) / gca;
-							vx[numv] = xx;
-							numv++;
-							if (fill) {
-								o_flags[ir][ic][n_lines[ir][ic]] = (byte) 1
-										+ (byte) 32;
-								n_lines[ir][ic]++;
-							}
-							if (((gdb) < 0 ? -(gdb) : (gdb)) < 0.0000001)
-								vy[numv] = yy;
-							else
-								vy[numv] = yy + yd * (gg - gb) / gdb;
-							vx[numv] = xx + xd;
-							if (fill) {
-								o_flags[ir][ic][n_lines[ir][ic]] = (byte) 7
-										+ (byte) 32;
-								n_lines[ir][ic]++;
-							}
-							numv++;
-						} else {
-							if (((gdb) < 0 ? -(gdb) : (gdb)) < 0.0000001)
-								vy[numv] = yy;
-							else
-								vy[numv] = yy + yd * (gg - gb) / gdb;
-							vx[numv] = xx + xd;
-							numv++;
-							if (fill) {
-								o_flags[ir][ic][n_lines[ir][ic]] = (byte) 2
-										+ (byte) 32;
-								n_lines[ir][ic]++;
-							}
-							if (((gca) < 0 ? -(gca) : (gca)) < 0.0000001)
-								vy[numv] = yy;
-							else
-								vy[numv] = yy + yd * (gg - ga) / gca;
-							vx[numv] = xx;
-							numv++;
-							if (fill) {
-								o_flags[ir][ic][n_lines[ir][ic]] = (byte) 4
-										+ (byte) 32;
-								n_lines[ir][ic]++;
-							}
-						}
-						if (((gdc) < 0 ? -(gdc) : (gdc)) < 0.0000001)
-							vx[numv] = xx;
-						else
-							vx[numv] = xx + xd * (gg - gc) / gdc;
-						vy[numv] = yy + yd;
-						numv++;
-						break;
-
-					case 7:
-						gdb = gd - gb;
-						gdc = gd - gc;
-
-						if (naux > 0) {
-							float ratiodb = (gg - gb) / gdb;
-							float ratiodc = (gg - gc) / gdc;
-							for (int i = 0; i < naux; i++) {
-								t = (int) ((1.0f - ratiodb)
-										* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
-												: ((float) auxb[i])) + ratiodb
-										* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
-												: ((float) auxd[i])));
-								auxLevels[i][numv] = (byte) ((t < 0) ? 0
-										: ((t > 255) ? -1 : ((t < 128) ? t
-												: t - 256)));
-								t = (int) ((1.0f - ratiodc)
-										* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
-												: ((float) auxc[i])) + ratiodc
-										* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
-												: ((float) auxd[i])));
-								auxLevels[i][numv + 1] = (byte) ((t < 0) ? 0
-										: ((t > 255) ? -1 : ((t < 128) ? t
-												: t - 256)));
-								/*
-								 * MEM_WLH auxLevels[i][numv] = auxb[i] +
-								 * (auxb[i]-auxb[i]) ratiodb;
-								 * auxLevels[i][numv+1] = auxc[i] +
-								 * (auxd[i]-auxc[i]) ratiodc;
-								 */
-							}
-						}
-
-						if (((gdb) < 0 ? -(gdb) : (gdb)) < 0.0000001)
-							vy[numv] = yy;
-						else
-							vy[numv] = yy + yd * (gg - gb) / gdb;
-						vx[numv] = xx + xd;
-						numv++;
-						if (((gdc) < 0 ? -(gdc) : (gdc)) < 0.0000001)
-							vx[numv] = xx;
-						else
-							vx[numv] = xx + xd * (gg - gc) / gdc;
-						vy[numv] = yy + yd;
-						numv++;
-						if (fill) {
-							o_flags[ir][ic][n_lines[ir][ic]] = (byte) ii;
-							n_lines[ir][ic]++;
-						}
-						if (vx[numv - 2] == vx[numv - 1]
-								|| vy[numv - 2] == vy[numv - 1]) {
-							vx[numv - 1] -= 0.00001f;
-							vy[numv - 2] -= 0.00001f;
-						}
-						break;
-					} // switch
-
-					// If contour level is negative, make dashed line
-					if (gg < base && dash) { /* DRM: 1999-05-19 */
-						dashFlags[low + il] = true;
-					}
-					/*
-					 * if ((20.0 <= vy[numv-2] && vy[numv-2] < 22.0) || (20.0 <=
-					 * vy[numv-1] && vy[numv-1] < 22.0)) {
-					 * System.out.println("vy = " + vy[numv-1] + " " +
-					 * vy[numv-2] + " ic, ir = " + ic + " " + ir); }
-					 */
-
-					if (ii == 6) { // - add last two pairs
-                                                ctrSet.add(vx, vy, numv - 4, numv - 3, low + il);
-                                                ctrSet.add(vx, vy, numv - 2, numv - 1, low + il);
-					} else {
-                                                ctrSet.add(vx, vy, numv - 2, numv - 1, low + il);
-					}
-
-				} // for il -- NOTE: gg incremented in for statement
-			} // for ic
-		} // for ir
-
-		// System.err.println ("ii:" + ii1 + " " +ii2 + " " +ii3 + " " +ii4 +
-		// " "
-		// +ii5 + " " +ii6);
-		visad.util.Trace.call2("Contour2d.loop");
-
-		/** ------------------- Color Fill ------------------------- */
-		TriangleStripBuilder triStripBldr = null;
-
-		if (fill) {
-			triStripBldr = new TriangleStripBuilder(ncm, nrm, color_bin.length);
-			fillGridBox(g, n_lines, vx, vy, xd, xdd, yd, ydd, nr, nrm, nc, ncm,
-					ctrLow, o_flags, myvals, color_bin, grd_normals,
-					triStripBldr);
-			// BMF 2006-10-04 do not return, ie. draw labels on filled contours
-			// for now, just return because we don't need to do labels
-			// return;
-		}
-
-		// ---TDR, build Contour Strips
-
-		Trace.call1("Contour2d.getLineColorArrays");
-		ctrSet.getLineColorArrays(vx, vy, auxLevels, labelColor, labelFont,
-				labelAlign, sphericalDisplayCS, dashFlags);
-		Trace.call2("Contour2d.getLineColorArrays");
-
-		return new ContourOutput(ctrSet, triStripBldr);
-	}
-
-	/**
-	 * 
-	 * @param g
-	 * @param n_lines
-	 * @param vx
-	 * @param vy
-	 * @param xd
-	 * @param xdd
-	 * @param yd
-	 * @param ydd
-	 * @param nr
-	 * @param nrm
-	 * @param nc
-	 * @param ncm
-	 * @param ctrLow
-	 * @param o_flags
-	 * @param values
-	 * @param color_bin
-	 * @param grd_normals
-	 * @param triStripBldr
-	 */
-	
-	private static void fillGridBox(float[] g, short[][] n_lines, float[] vx,
-			float[] vy, float xd, float xdd, float yd, float ydd, int nr,
-			int nrm, int nc, int ncm, short[][] ctrLow, byte[][][] o_flags,
-			float[] values, byte[][] color_bin, float[][][] grd_normals,
-			TriangleStripBuilder triStripBldr) {
-		float xx, yy;
-		int[] numv = new int[1];
-		numv[0] = 0;
-
-		for (int ic = 0; ic < ncm; ic++) {
-			yy = ydd * ic + 0.0f;
-			for (int ir = 0; ir < nrm; ir++) {
-				triStripBldr.setGridBox(ic, ir);
-				float ga, gb, gc, gd;
-				xx = xdd * ir + 0.0f;
-
-				// get 4 corner values, skip box if any are missing
-				ga = (g[(ic) * nr + (ir)]);
-       			// test for missing
-       			if (Float.isNaN(ga))
-         			continue;
-				gb = (g[(ic) * nr + (ir + 1)]);
-       			// test for missing
-       			if (Float.isNaN(gb))
-         			continue;
-				gc = (g[(ic + 1) * nr + (ir)]);
-       			// test for missing
-       			if (Float.isNaN(gc))
-         			continue;
-				gd = (g[(ic + 1) * nr + (ir + 1)]);
-       			// test for missing
-       			if (Float.isNaN(gd ))
-         			continue;
-
-				numv[0] += n_lines[ir][ic] * 2;
-
-				fillGridBox(new float[] { ga, gb, gc, gd }, n_lines[ir][ic],
-						vx, vy, xx, yy, xd, yd, ic, ir, ctrLow[ir][ic],
-						numv[0], o_flags[ir][ic], values, color_bin,
-						grd_normals, triStripBldr);
-			}
-		}
-	}
-
-	/**
-	 * 
-	 * @param corners
-	 * @param numc
-	 * @param vx
-	 * @param vy
-	 * @param xx
-	 * @param yy
-	 * @param xd
-	 * @param yd
-	 * @param nc
-	 * @param nr
-	 * @param ctrLow
-	 * @param numv
-	 * @param o_flags
-	 * @param values
-	 * @param color_bin
-	 * @param grd_normals
-	 * @param triStripBldr
-	 */
-	
-	private static void fillGridBox(float[] corners, int numc, float[] vx,
-			float[] vy, float xx, float yy, float xd, float yd, int nc, int nr,
-			short ctrLow, int numv, byte[] o_flags, float[] values,
-			byte[][] color_bin, float[][][] grd_normals,
-			TriangleStripBuilder triStripBldr) {
-
-		int il = 0;
-		int color_length = color_bin.length;
-		float[] vv1 = new float[2];
-		float[] vv2 = new float[2];
-		float[] vv1_last = new float[2];
-		float[] vv2_last = new float[2];
-		float[][] vv = new float[2][2];
-		float[][] vv_last = new float[2][2];
-
-		int dir = 1;
-		int start = numv - 2;
-		int o_start = numc - 1;
-		int o_idx = 0;
-		byte o_flag = o_flags[o_idx];
-		int[] closed = { 0 };
-		boolean up;
-		boolean right;
-
-		int v_idx = start + dir * il * 2;
-
-		int cc_start = (dir > 0) ? (ctrLow - 1) : (ctrLow + (numc - 1));
-
-		// -- color level at corners
-		// ------------------------------
-		byte[][] crnr_color = new byte[4][color_length];
-		int[] crnrLevelIdx = new int[4];
-		boolean[] crnr_out = new boolean[] { true, true, true, true };
-		boolean all_out = true;
-		for (int tt = 0; tt < corners.length; tt++) {
-			int cc = 0;
-			int kk = 0;
-			for (kk = 0; kk < (values.length - 1); kk++) {
-				if ((corners[tt] >= values[kk])
-						&& (corners[tt] < values[kk + 1])) {
-					cc = kk;
-					all_out = false;
-					crnr_out[tt] = false;
-				}
-			}
-			for (int ii = 0; ii < color_length; ii++) {
-				crnr_color[tt][ii] = color_bin[ii][cc];
-			}
-			crnrLevelIdx[tt] = cc;
-		}
-
-		dir = 1;
-		start = numv - numc * 2;
-		o_start = 0;
-		v_idx = start + dir * il * 2;
-		up = false;
-		right = false;
-		float[] x_avg = new float[2];
-		float[] y_avg = new float[2];
-
-		if (numc > 1) { // -- first/next ctr line midpoints
-			int idx = v_idx;
-			x_avg[0] = (vx[idx] + vx[idx + 1]) / 2;
-			y_avg[0] = (vy[idx] + vy[idx + 1]) / 2;
-			idx = v_idx + 2;
-			x_avg[1] = (vx[idx] + vx[idx + 1]) / 2;
-			y_avg[1] = (vy[idx] + vy[idx + 1]) / 2;
-			if ((x_avg[1] - x_avg[0]) > 0)
-				up = true;
-			if ((y_avg[1] - y_avg[0]) > 0)
-				right = true;
-		} else if (numc == 1) { // - default values for logic below
-			x_avg[0] = 0f;
-			y_avg[0] = 0f;
-			x_avg[1] = 1f;
-			y_avg[1] = 1f;
-		} else if (numc == 0) // - empty grid box (no contour lines)
-		{
-			if (all_out)
-				return;
-
-			float[][] tri = new float[2][4];
-			float[][] normals = new float[3][4];
-			byte[] color = new byte[color_length];
-			for (int ii = 0; ii < color_length; ii++) {
-				color[ii] = crnr_color[0][ii];
-			}
-
-			normals[0][0] = grd_normals[nc][nr][0];
-			normals[1][0] = grd_normals[nc][nr][1];
-			normals[2][0] = grd_normals[nc][nr][2];
-			tri[0][0] = xx;
-			tri[1][0] = yy;
-
-			normals[0][1] = grd_normals[nc + 1][nr][0];
-			normals[1][1] = grd_normals[nc + 1][nr][1];
-			normals[2][1] = grd_normals[nc + 1][nr][2];
-			tri[0][1] = xx;
-			tri[1][1] = yy + yd;
-
-			normals[0][2] = grd_normals[nc][nr + 1][0];
-			normals[1][2] = grd_normals[nc][nr + 1][1];
-			normals[2][2] = grd_normals[nc][nr + 1][2];
-			tri[0][2] = xx + xd;
-			tri[1][2] = yy;
+			normals[0][2] = grd_normals[nc][nr + 1][0];
+			normals[1][2] = grd_normals[nc][nr + 1][1];
+			normals[2][2] = grd_normals[nc][nr + 1][2];
+			tri[0][2] = xx + xd;
+			tri[1][2] = yy;
 
 			normals[0][3] = grd_normals[nc + 1][nr + 1][0];
 			normals[1][3] = grd_normals[nc + 1][nr + 1][1];
@@ -3234,21 +2605,229 @@ public class Contour2D {
 
 		tri[0][crn_1] = cx1;
 		tri[1][crn_1] = cy1;
-		normals[0][crn_1] = grd_normals[nc + grd[0][1]][nr + grd[0][0]][0];
-		normals[1][crn_1] = grd_normals[nc + grd[0][1]][nr + grd[0][0]][1];
-		normals[2][crn_1] = grd_normals[nc + grd[0][1]][nr + grd[0][0]][2];
+		normals[0][crn_1] = grd_normals[nc + grd[0][1]][nr + grd[0][0]][0];
+		normals[1][crn_1] = grd_normals[nc + grd[0][1]][nr + grd[0][0]][1];
+		normals[2][crn_1] = grd_normals[nc + grd[0][1]][nr + grd[0][0]][2];
+
+		tri[0][crn_2] = cx2;
+		tri[1][crn_2] = cy2;
+		normals[0][crn_2] = grd_normals[nc + grd[1][1]][nr + grd[1][0]][0];
+		normals[1][crn_2] = grd_normals[nc + grd[1][1]][nr + grd[1][0]][1];
+		normals[2][crn_2] = grd_normals[nc + grd[1][1]][nr + grd[1][0]][2];
+
+		tri[0][crn_3] = cx3;
+		tri[1][crn_3] = cy3;
+		normals[0][crn_3] = grd_normals[nc + grd[2][1]][nr + grd[2][0]][0];
+		normals[1][crn_3] = grd_normals[nc + grd[2][1]][nr + grd[2][0]][1];
+		normals[2][crn_3] = grd_normals[nc + grd[2][1]][nr + grd[2][0]][2];
+
+		tri[0][vidx_0] = vx[v_idx];
+		tri[1][vidx_0] = vy[v_idx];
+		interpNormals(tri[0][vidx_0], tri[1][vidx_0], xx, yy, nc, nr, xd, yd,
+				grd_normals, tmp);
+		normals[0][vidx_0] = tmp[0][0];
+		normals[1][vidx_0] = tmp[1][0];
+		normals[2][vidx_0] = tmp[2][0];
+
+		tri[0][vidx_1] = vx[v_idx + dir];
+		tri[1][vidx_1] = vy[v_idx + dir];
+		interpNormals(tri[0][vidx_1], tri[1][vidx_1], xx, yy, nc, nr, xd, yd,
+				grd_normals, tmp);
+		normals[0][vidx_1] = tmp[0][0];
+		normals[1][vidx_1] = tmp[1][0];
+		normals[2][vidx_1] = tmp[2][0];
+
+		triStripBldr.addVerticies(levIdx, tri, normals, color, first_strp_side,
+				first_tri_orient, last_strp_side, last_tri_orient);
+	}
+
+	/**
+	 * 
+	 * @param xx
+	 * @param yy
+	 * @param xd
+	 * @param yd
+	 * @param v_idx
+	 * @param o_flag
+	 * @param flag
+	 * @param cnt
+	 * @param dir
+	 * @param vx
+	 * @param vy
+	 * @param nc
+	 * @param nr
+	 * @param crnr_color
+	 * @param crnrLevelIdx
+	 * @param crnr_out
+	 * @param grd_normals
+	 * @param closed
+	 * @param triStripBldr
+	 */
+
+	private static void fillToSide(float xx, float yy, float xd, float yd,
+			int v_idx, byte o_flag, int flag, int dir, float[] vx, float[] vy,
+			int nc, int nr, byte[][] crnr_color, int[] crnrLevelIdx,
+			boolean[] crnr_out, float[][][] grd_normals, int[] closed,
+			TriangleStripBuilder triStripBldr) {
+
+		float[][] tri = new float[2][4];
+		float[][] normals = new float[3][4];
+
+		fillToSide(xx, yy, xd, yd, v_idx, o_flag, flag, dir, vx, vy, nc, nr,
+				crnr_color, crnrLevelIdx, crnr_out, grd_normals, closed, tri,
+				normals, triStripBldr);
+
+	}
+
+	private static void fillToSide(float xx, float yy, float xd, float yd,
+			int v_idx, byte o_flag, int flag, int dir, float[] vx, float[] vy,
+			int nc, int nr, byte[][] crnr_color, int[] crnrLevelIdx,
+			boolean[] crnr_out, float[][][] grd_normals, int[] closed,
+			float[][] strpverts, float[][] strpnrmls,
+			TriangleStripBuilder triStripBldr) {
+
+		float cx1 = 0;
+		float cy1 = 0;
+		float cx2 = 0;
+		float cy2 = 0;
+		int cc = 0;
+		int[][] grd = new int[2][2];
+		int color_length = crnr_color[0].length;
+
+		float[][] tri = new float[2][4];
+		float[][] normals = new float[3][4];
+		float[][] tmp = new float[3][1];
+		byte[] color = new byte[color_length];
+		int vidx_0 = 0;
+		int vidx_1 = 0;
+		int crn_1 = 0;
+		int crn_2 = 0;
+
+		byte first_tri_orient = 0;
+		byte last_tri_orient = 0;
+		byte first_strp_side = SIDE_NONE;
+		byte last_strp_side = SIDE_NONE;
+
+		switch (o_flag) {
+		case 3:
+			switch (flag) {
+			case 1:
+				closed[0] = closed[0] | 12;
+				if (crnr_out[2] || crnr_out[3])
+					return;
+				cx1 = xx;
+				cy1 = yy + yd;
+				cx2 = xx + xd;
+				cy2 = yy + yd;
+				cc = 3;
+				grd[0][0] = 0;
+				grd[0][1] = 1;
+				grd[1][0] = 1;
+				grd[1][1] = 1;
+				crn_1 = 1;
+				crn_2 = 3;
+				vidx_0 = 0;
+				vidx_1 = 2;
+				first_tri_orient = -1;
+				last_tri_orient = 1;
+				first_strp_side = 3;
+				last_strp_side = 1;
+				break;
+			case -1:
+				closed[0] = closed[0] | 3;
+				if (crnr_out[0] || crnr_out[1])
+					return;
+				cx1 = xx;
+				cy1 = yy;
+				cx2 = xx + xd;
+				cy2 = yy;
+				cc = 0;
+				grd[0][0] = 0;
+				grd[0][1] = 0;
+				grd[1][0] = 1;
+				grd[1][1] = 0;
+				crn_1 = 0;
+				crn_2 = 2;
+				vidx_0 = 1;
+				vidx_1 = 3;
+				first_tri_orient = -1;
+				last_tri_orient = 1;
+				first_strp_side = 3;
+				last_strp_side = 1;
+				break;
+			}
+			break;
+
+		case 5:
+			switch (flag) {
+			case 1:
+				closed[0] = closed[0] | 5;
+				if (crnr_out[0] || crnr_out[2])
+					return;
+				cx1 = xx;
+				cy1 = yy;
+				cx2 = xx;
+				cy2 = yy + yd;
+				cc = 0;
+				grd[0][0] = 0;
+				grd[0][1] = 0;
+				grd[1][0] = 0;
+				grd[1][1] = 1;
+				crn_1 = 0;
+				crn_2 = 1;
+				vidx_0 = 2;
+				vidx_1 = 3;
+				first_tri_orient = -1;
+				last_tri_orient = 1;
+				first_strp_side = 3;
+				last_strp_side = -1;
+				break;
+			case -1:
+				closed[0] = closed[0] | 10;
+				if (crnr_out[1] || crnr_out[3])
+					return;
+				cx1 = xx + xd;
+				cy1 = yy;
+				cx2 = xx + xd;
+				cy2 = yy + yd;
+				grd[0][0] = 1;
+				grd[0][1] = 0;
+				grd[1][0] = 1;
+				grd[1][1] = 1;
+				cc = 3;
+				crn_1 = 2;
+				crn_2 = 3;
+				vidx_0 = 0;
+				vidx_1 = 1;
+				first_tri_orient = -1;
+				last_tri_orient = 1;
+				first_strp_side = -1;
+				last_strp_side = 1;
+				break;
+			}
+			break;
+		}
+
+		for (int ii = 0; ii < color_length; ii++) {
+			color[ii] = crnr_color[cc][ii];
+		}
+		int levIdx = crnrLevelIdx[cc];
+
+		tri[0][crn_1] = cx1;
+		tri[1][crn_1] = cy1;
+		int i = grd[0][0];
+		int j = grd[0][1];
+		normals[0][crn_1] = grd_normals[nc + j][nr + i][0];
+		normals[1][crn_1] = grd_normals[nc + j][nr + i][1];
+		normals[2][crn_1] = grd_normals[nc + j][nr + i][2];
 
 		tri[0][crn_2] = cx2;
 		tri[1][crn_2] = cy2;
-		normals[0][crn_2] = grd_normals[nc + grd[1][1]][nr + grd[1][0]][0];
-		normals[1][crn_2] = grd_normals[nc + grd[1][1]][nr + grd[1][0]][1];
-		normals[2][crn_2] = grd_normals[nc + grd[1][1]][nr + grd[1][0]][2];
-
-		tri[0][crn_3] = cx3;
-		tri[1][crn_3] = cy3;
-		normals[0][crn_3] = grd_normals[nc + grd[2][1]][nr + grd[2][0]][0];
-		normals[1][crn_3] = grd_normals[nc + grd[2][1]][nr + grd[2][0]][1];
-		normals[2][crn_3] = grd_normals[nc + grd[2][1]][nr + grd[2][0]][2];
+		i = grd[1][0];
+		j = grd[1][1];
+		normals[0][crn_2] = grd_normals[nc + j][nr + i][0];
+		normals[1][crn_2] = grd_normals[nc + j][nr + i][1];
+		normals[2][crn_2] = grd_normals[nc + j][nr + i][2];
 
 		tri[0][vidx_0] = vx[v_idx];
 		tri[1][vidx_0] = vy[v_idx];
@@ -3266,325 +2845,1078 @@ public class Contour2D {
 		normals[1][vidx_1] = tmp[1][0];
 		normals[2][vidx_1] = tmp[2][0];
 
-		triStripBldr.addVerticies(levIdx, tri, normals, color, first_strp_side,
-				first_tri_orient, last_strp_side, last_tri_orient);
-	}
+		if (triStripBldr != null) {
+			triStripBldr.addVerticies(levIdx, tri, normals, color,
+					first_strp_side, first_tri_orient, last_strp_side,
+					last_tri_orient);
+		}
+	}
+
+	private static void addCorner(float xx, float yy, float xd, float yd,
+			int nc, int nr, byte cornerID, float[][][] grd_normals,
+			int[] closed, int strpIdx, float[][] strpverts, float[][] strpnrmls) {
+
+		float cx = 0;
+		float cy = 0;
+		int i = 0; // int offsets for corners
+		int j = 0;
+
+		if (cornerID == 0) {
+			closed[0] = closed[0] | 1;
+			cx = xx;
+			cy = yy;
+			i = 0;
+			j = 0;
+		} else if (cornerID == 1) {
+			closed[0] = closed[0] | 2;
+			cx = xx + xd;
+			cy = yy;
+			i = 1;
+			j = 0;
+		} else if (cornerID == 2) {
+			closed[0] = closed[0] | 4;
+			cx = xx;
+			cy = yy + yd;
+			i = 0;
+			j = 1;
+		} else if (cornerID == 3) {
+			closed[0] = closed[0] | 8;
+			cx = xx + xd;
+			cy = yy + yd;
+			i = 1;
+			j = 1;
+		}
+
+		strpverts[0][strpIdx] = cx;
+		strpverts[1][strpIdx] = cy;
+		strpnrmls[0][strpIdx] = grd_normals[nc + j][nr + i][0];
+		strpnrmls[1][strpIdx] = grd_normals[nc + j][nr + i][1];
+		strpnrmls[2][strpIdx] = grd_normals[nc + j][nr + i][2];
+	}
+
+	public static int[] getTriOrientation(float[][] verts) {
+		/* note: doesn't deal with cross-product == 0 */
+		int len = verts[0].length;
+		float xa = verts[0][1] - verts[0][0];
+		float ya = verts[1][1] - verts[1][0];
+		float xb = verts[0][2] - verts[0][0];
+		float yb = verts[1][2] - verts[1][0];
+
+		float first = xa * yb - xb * ya;
+
+		xa = verts[0][len - 2] - verts[0][len - 3];
+		ya = verts[1][len - 2] - verts[1][len - 3];
+		xb = verts[0][len - 1] - verts[0][len - 3];
+		yb = verts[1][len - 1] - verts[1][len - 3];
+
+		float last = xa * yb - xb * ya;
+
+		int firstOrient = (first < 0) ? CLOCKWISE : CNTRCLOCKWISE;
+		int lastOrient = (last < 0) ? CLOCKWISE : CNTRCLOCKWISE;
+
+		return new int[] { firstOrient, lastOrient };
+	}
+
+	static final class ContourOutput {
+
+		public final ContourStripSet stripSet;
+		public final TriangleStripBuilder triStripBldr;
+
+		ContourOutput(ContourStripSet set, TriangleStripBuilder tsb) {
+			stripSet = set;
+			triStripBldr = tsb;
+		}
+
+		boolean isLineStyled(int lvl) {
+			return stripSet.isLevelStyled(lvl);
+		}
+
+		List<float[][][]> getLineStripCoordinates(int lvl) {
+			return stripSet.getLineStripCoordinates(lvl);
+		}
+
+		List<byte[][][]> getLineStripColors(int lvl) {
+			return stripSet.getLineStripColors(lvl);
+		}
+
+		int getIntervalCount() {
+			return stripSet.vecArray.length;
+		}
+
+		List<ContourStrip> getStrips(int lvl) {
+			return stripSet.vecArray[lvl];
+		}
+
+		int[] getLabelIndexes(int lvlIdx) {
+			return stripSet.labelIndexes[lvlIdx];
+		}
+
+		float[] getLevels() {
+			return stripSet.levels;
+		}
+	}
+} // end class
+
+/**
+ * Contours one band of adjacent grid columns for Contour2D.contour.
+ * Each band writes its own vertex arrays and records its segments, so
+ * bands can be contoured concurrently; the color fill arrays are shared
+ * but each band only writes the boxes of its own columns.
+ */
+
+class ContourBand {
+
+	/** Columns of grid boxes in this band, icStart inclusive. */
+	final int icStart, icEnd;
+
+	final float[] g;
+	final int nr, nc, nrm;
+	final float xd, yd, xdd, ydd;
+	final float[] myvals;
+	final float lowlimit, highlimit, base;
+	final boolean dash;
+	final byte[][] auxValues;
+	final int naux;
+	final boolean fill;
+	final byte[][][] o_flags;
+	final short[][] n_lines;
+	final short[][] ctrLow;
+
+	/** Label placement marks, or null to skip them. */
+	final char[] mark;
+	final int lr, lc, lr2, lc2, lrr, lcc;
+
+	/** Vertices of this band. */
+	float[] vx, vy;
+	byte[][] auxLevels;
+	int numv = 0;
+	int maxsize;
+
+	/** Flags for each level indicating dashed rendering. */
+	final boolean[] dashFlags;
+
+	/** Index of the first vertex and level of each segment. */
+	int[] segVertex = new int[64];
+	int[] segLevel = new int[64];
+	int numSegments = 0;
+
+	/** Strips of this band by level, when stitched separately. */
+	List<ContourStrip>[] openStrips;
+	List<ContourStrip>[] closedStrips;
+
+	ContourBand(int icStart, int icEnd, int maxsize, float[] g, int nr,
+			int nc, float xd, float yd, float xdd, float ydd, float[] myvals,
+			float lowlimit, float highlimit, float base, boolean dash,
+			byte[][] auxValues, boolean fill, byte[][][] o_flags,
+			short[][] n_lines, short[][] ctrLow, char[] mark, int lr, int lc,
+			int lr2, int lc2, int lrr, int lcc) {
+		this.icStart = icStart;
+		this.icEnd = icEnd;
+		this.maxsize = maxsize;
+		this.g = g;
+		this.nr = nr;
+		this.nc = nc;
+		this.nrm = nr - 1;
+		this.xd = xd;
+		this.yd = yd;
+		this.xdd = xdd;
+		this.ydd = ydd;
+		this.myvals = myvals;
+		this.lowlimit = lowlimit;
+		this.highlimit = highlimit;
+		this.base = base;
+		this.dash = dash;
+		this.auxValues = auxValues;
+		this.naux = (auxValues != null) ? auxValues.length : 0;
+		this.fill = fill;
+		this.o_flags = o_flags;
+		this.n_lines = n_lines;
+		this.ctrLow = ctrLow;
+		this.mark = mark;
+		this.lr = lr;
+		this.lc = lc;
+		this.lr2 = lr2;
+		this.lc2 = lc2;
+		this.lrr = lrr;
+		this.lcc = lcc;
+
+		vx = new float[maxsize];
+		vy = new float[maxsize];
+		if (naux > 0) {
+			auxLevels = new byte[naux][maxsize];
+		}
+		dashFlags = new boolean[myvals.length];
+	}
+
+	/**
+	 * Record the segment from vertex idx0 to idx0 + 1.
+	 */
+	
+	private void addSegment(int idx0, int lev_idx) {
+		if (numSegments == segVertex.length) {
+			int[] tv = new int[2 * numSegments];
+			int[] tl = new int[2 * numSegments];
+			System.arraycopy(segVertex, 0, tv, 0, numSegments);
+			System.arraycopy(segLevel, 0, tl, 0, numSegments);
+			segVertex = tv;
+			segLevel = tl;
+		}
+		segVertex[numSegments] = idx0;
+		segLevel[numSegments] = lev_idx;
+		numSegments++;
+	}
+
+	/**
+	 * Add the segments of this band to the strips of a ContourStripSet,
+	 * in the order they were computed.
+	 * 
+	 * @param ctrSet
+	 * @param vx all vertices
+	 * @param vy all vertices
+	 * @param offset index of the first vertex of this band in vx and vy
+	 */
+	
+	void addSegments(ContourStripSet ctrSet, float[] vx, float[] vy,
+			int offset) {
+		for (int k = 0; k < numSegments; k++) {
+			int idx0 = offset + segVertex[k];
+			ctrSet.add(vx, vy, idx0, idx0 + 1, segLevel[k]);
+		}
+	}
+
+	/**
+	 * Stitch the segments of this band into strips of its own, to be
+	 * joined with the strips of other bands by
+	 * {@link ContourStripSet#joinBands}.
+	 * 
+	 * @param ctrSet
+	 * @param vx all vertices
+	 * @param vy all vertices
+	 * @param offset index of the first vertex of this band in vx and vy
+	 */
+	
+	void stitch(ContourStripSet ctrSet, float[] vx, float[] vy, int offset) {
+		int n_levs = ctrSet.n_levs;
+		// generic arrays can't be created, only cast to
+		@SuppressWarnings("unchecked")
+		List<ContourStrip>[] open = new List[n_levs];
+		@SuppressWarnings("unchecked")
+		List<ContourStrip>[] closed = new List[n_levs];
+		openStrips = open;
+		closedStrips = closed;
+		for (int kk = 0; kk < n_levs; kk++) {
+			openStrips[kk] = new ArrayList<ContourStrip>();
+			closedStrips[kk] = new ArrayList<ContourStrip>();
+		}
+		for (int k = 0; k < numSegments; k++) {
+			int idx0 = offset + segVertex[k];
+			int lev_idx = segLevel[k];
+			ctrSet.add(vx, vy, idx0, idx0 + 1, lev_idx, openStrips[lev_idx],
+					closedStrips[lev_idx]);
+		}
+	}
+
+	/**
+	 * Compute the contour segments of the boxes in this band.
+	 */
+	
+	void run() {
+		int ir, ic;
+		int numc, il;
+		float xx, yy, gg;
+		int low, hi, t;
+		int numLevels = myvals.length;
+		float minLevelValue = myvals[0];
+		float maxLevelValue = myvals[numLevels - 1];
+
+		byte[] auxa = null;
+		byte[] auxb = null;
+		byte[] auxc = null;
+		byte[] auxd = null;
+		if (naux > 0) {
+			auxa = new byte[naux];
+			auxb = new byte[naux];
+			auxc = new byte[naux];
+			auxd = new byte[naux];
+		}
+
+		for (ic = icStart; ic < icEnd; ic++) {
+			int ic_plus1 = ic + 1;
+			yy = ydd * ic + 0.0f; // = ic
+			for (ir = 0; ir < nrm; ir++) {
+				int ir_plus1 = ir + 1;
+				xx = xdd * ir + 0.0f; // = ir
+
+				int ic_times_nr = ic * nr;
+				int ic_plus1_times_nr = ic_plus1 * nr;
+
+				float ga, gb, gc, gd;
+				float gAvg, gMin, gMax;
+				float tmp1, tmp2;
+
+				// WLH 21 April 2000
+				// if (numv+8 >= maxsize || nump+4 >= 2*maxsize) {
+				if (numv + 8 >= maxsize) {
+					// allocate more space
+					maxsize = 2 * maxsize;
+					/*
+					 * WLH 21 April 2000 int[] tt = ipnt; ipnt = new int[2
+					 * maxsize]; System.arraycopy(tt, 0, ipnt, 0, nump);
+					 */
+					float[] tx = vx;
+					float[] ty = vy;
+					vx = new float[maxsize];
+					vy = new float[maxsize];
+					System.arraycopy(tx, 0, vx, 0, numv);
+					System.arraycopy(ty, 0, vy, 0, numv);
+					tx = null;
+					ty = null;
+					if (naux > 0) {
+						byte[][] ta = auxLevels;
+						auxLevels = new byte[naux][maxsize];
+						for (int i = 0; i < naux; i++) {
+							System.arraycopy(ta[i], 0, auxLevels[i], 0, numv);
+						}
+						ta = null;
+					}
+				}
+
+				// save index of first vertex in this grid box
+				// JDM: ipnt[nump++] = numv;
 
-	/**
-	 * 
-	 * @param xx
-	 * @param yy
-	 * @param xd
-	 * @param yd
-	 * @param v_idx
-	 * @param o_flag
-	 * @param flag
-	 * @param cnt
-	 * @param dir
-	 * @param vx
-	 * @param vy
-	 * @param nc
-	 * @param nr
-	 * @param crnr_color
-	 * @param crnrLevelIdx
-	 * @param crnr_out
-	 * @param grd_normals
-	 * @param closed
-	 * @param triStripBldr
-	 */
+				/*
+				 * ga = ( g[ (ic) nr + (ir) ] ); gb = ( g[ (ic) nr + (ir+1) ] );
+				 * gc = ( g[ (ic+1) nr + (ir) ] ); gd = ( g[ (ic+1) nr + (ir+1)
+				 * ] ); boolean miss = false; if (ga != ga || gb != gb || gc !=
+				 * gc || gd != gd) { miss = true; System.out.println("ic, ir = "
+				 * + ic + "  " + ir + " gabcd = " + ga + " " + gb + " " + gc +
+				 * " " + gd); }
+				 */
 
-	private static void fillToSide(float xx, float yy, float xd, float yd,
-			int v_idx, byte o_flag, int flag, int dir, float[] vx, float[] vy,
-			int nc, int nr, byte[][] crnr_color, int[] crnrLevelIdx,
-			boolean[] crnr_out, float[][][] grd_normals, int[] closed,
-			TriangleStripBuilder triStripBldr) {
+				/*
+				 * if (ga != ga || gb != gb || gc != gc || gd != gd) { if
+				 * (!anymissing) { anymissing = true;
+				 * System.out.println("missing"); } } else { if (!anynotmissing)
+				 * { anynotmissing = true; System.out.println("notmissing"); } }
+				 */
+				// get 4 corner values, skip box if any are missing
+				//
+				// [c, (x,y+ydd)]-------[d, (x+xdd,y+ydd)]
+				// | |
+				// | |
+				// | |
+				// [a, (x,y)]------------[b, (x+xdd,y)]
+				//
+				// ------------------------------
+				ga = g[ic_times_nr + ir];
+       			if (Float.isNaN(ga))
+         			continue;
+				gb = g[ic_times_nr + ir_plus1];
+       			if (Float.isNaN(gb))
+         			continue;
+				gc = g[ic_plus1_times_nr + ir];
+       			if (Float.isNaN(gc))
+         			continue;
+				gd = g[ic_plus1_times_nr + ir_plus1];
+       			if (Float.isNaN(gd))
+         			continue;
 
-		float[][] tri = new float[2][4];
-		float[][] normals = new float[3][4];
+				/*
+				 * DRM move outside the loop byte[] auxa = null; byte[] auxb =
+				 * null; byte[] auxc = null; byte[] auxd = null; if (naux > 0) {
+				 * auxa = new byte[naux]; auxb = new byte[naux]; auxc = new
+				 * byte[naux]; auxd = new byte[naux];
+				 */
+				if (naux > 0) {
+					for (int i = 0; i < naux; i++) {
+						byte[] auxValues_i = auxValues[i];
+						auxa[i] = auxValues_i[ic_times_nr + ir];
+						auxb[i] = auxValues_i[ic_times_nr + ir_plus1];
+						auxc[i] = auxValues_i[ic_plus1_times_nr + ir];
+						auxd[i] = auxValues_i[ic_plus1_times_nr + ir_plus1];
+					}
+				}
 
-		fillToSide(xx, yy, xd, yd, v_idx, o_flag, flag, dir, vx, vy, nc, nr,
-				crnr_color, crnrLevelIdx, crnr_out, grd_normals, closed, tri,
-				normals, triStripBldr);
+				// find average, min, and max of 4 corner values
+				gAvg = (ga + gb + gc + gd) / 4.0f;
 
-	}
+				// gMin = MIN4(ga,gb,gc,gd);
+				tmp1 = ((ga) < (gb) ? (ga) : (gb));
+				tmp2 = ((gc) < (gd) ? (gc) : (gd));
+				gMin = ((tmp1) < (tmp2) ? (tmp1) : (tmp2));
 
-	private static void fillToSide(float xx, float yy, float xd, float yd,
-			int v_idx, byte o_flag, int flag, int dir, float[] vx, float[] vy,
-			int nc, int nr, byte[][] crnr_color, int[] crnrLevelIdx,
-			boolean[] crnr_out, float[][][] grd_normals, int[] closed,
-			float[][] strpverts, float[][] strpnrmls,
-			TriangleStripBuilder triStripBldr) {
+				// gMax = MAX4(ga,gb,gc,gd);
+				tmp1 = ((ga) > (gb) ? (ga) : (gb));
+				tmp2 = ((gc) > (gd) ? (gc) : (gd));
+				gMax = ((tmp1) > (tmp2) ? (tmp1) : (tmp2));
 
-		float cx1 = 0;
-		float cy1 = 0;
-		float cx2 = 0;
-		float cy2 = 0;
-		int cc = 0;
-		int[][] grd = new int[2][2];
-		int color_length = crnr_color[0].length;
+				/*
+				 * remove for new signature, replace with code below // compute
+				 * clow and chi, low and high contour values in the box tmp1 =
+				 * (gMin-base) / interval; clow = base + interval (( (tmp1) >= 0
+				 * ? (int) ((tmp1) + 0.5) : (int) ((tmp1)-0.5) )-1); while
+				 * (clow<gMin) { clow += interval; }
+				 * 
+				 * tmp1 = (gMax-base) / interval; chi = base + interval ((
+				 * (tmp1) >= 0 ? (int) ((tmp1) + 0.5) : (int) ((tmp1)-0.5) )+1);
+				 * while (chi>gMax) { chi -= interval; }
+				 * 
+				 * // how many contour lines in the box: tmp1 = (chi-clow) /
+				 * interval; numc = 1+( (tmp1) >= 0 ? (int) ((tmp1) + 0.5) :
+				 * (int) ((tmp1)-0.5) );
+				 * 
+				 * // gg is current contour line value gg = clow;
+				 */
 
-		float[][] tri = new float[2][4];
-		float[][] normals = new float[3][4];
-		float[][] tmp = new float[3][1];
-		byte[] color = new byte[color_length];
-		int vidx_0 = 0;
-		int vidx_1 = 0;
-		int crn_1 = 0;
-		int crn_2 = 0;
+				low = 0;
+				hi = numLevels - 1;
+				if (gMax < minLevelValue || gMin > maxLevelValue) {
+					// no contours
+					numc = 1;
+				} else {
+					// some inside the box
+					// JDM: Instead of iterating through the whole list just do
+					// a
+					// binarySearch
+					/*
+					 * for (int i = 0; i < myvals.length; i++) { if (i == 0 &&
+					 * myvals[i] >= gn) { low = i; } else if (myvals[i] >= gn &&
+					 * myvals[i-1] < gn) { low = i; } if (i == 0 && myvals[i] >=
+					 * gx) { hi = i; } else if (myvals[i] >= gx && myvals[i-1] <
+					 * gx) { hi = i; } }
+					 */
+					hi = java.util.Arrays.binarySearch(myvals, gMax);
+					if (hi < 0)
+						hi = (-hi) - 1;
+					if (hi >= myvals.length)
+						hi = myvals.length - 1;
+					low = java.util.Arrays.binarySearch(myvals, gMin);
+					if (low < 0)
+						low = (-low) - 1;
 
-		byte first_tri_orient = 0;
-		byte last_tri_orient = 0;
-		byte first_strp_side = SIDE_NONE;
-		byte last_strp_side = SIDE_NONE;
+					numc = hi - low + 1;
+				}
 
-		switch (o_flag) {
-		case 3:
-			switch (flag) {
-			case 1:
-				closed[0] = closed[0] | 12;
-				if (crnr_out[2] || crnr_out[3])
-					return;
-				cx1 = xx;
-				cy1 = yy + yd;
-				cx2 = xx + xd;
-				cy2 = yy + yd;
-				cc = 3;
-				grd[0][0] = 0;
-				grd[0][1] = 1;
-				grd[1][0] = 1;
-				grd[1][1] = 1;
-				crn_1 = 1;
-				crn_2 = 3;
-				vidx_0 = 0;
-				vidx_1 = 2;
-				first_tri_orient = -1;
-				last_tri_orient = 1;
-				first_strp_side = 3;
-				last_strp_side = 1;
-				break;
-			case -1:
-				closed[0] = closed[0] | 3;
-				if (crnr_out[0] || crnr_out[1])
-					return;
-				cx1 = xx;
-				cy1 = yy;
-				cx2 = xx + xd;
-				cy2 = yy;
-				cc = 0;
-				grd[0][0] = 0;
-				grd[0][1] = 0;
-				grd[1][0] = 1;
-				grd[1][1] = 0;
-				crn_1 = 0;
-				crn_2 = 2;
-				vidx_0 = 1;
-				vidx_1 = 3;
-				first_tri_orient = -1;
-				last_tri_orient = 1;
-				first_strp_side = 3;
-				last_strp_side = 1;
-				break;
-			}
-			break;
+				// gg = myvals[low];
+				/*
+				 * if (!any && numc > 0) { System.out.println("gMin = " + gMin +
+				 * " gMax = " + gMax + " gAvg = " + gAvg);
+				 * System.out.println("numc = " + numc + " clow = " +
+				 * myvals[low] + " chi = " + myvals[hi]); any = true; }
+				 */
+				if (fill) {
+					o_flags[ir][ic] = new byte[2 * numc]; // - case flags
+					n_lines[ir][ic] = 0; // - number of contour line segments
+					ctrLow[ir][ic] = (short) hi;
+				}
+
+				for (il = 0; il < numc; il++) {
+					if ((low + il) >= myvals.length) {
+						System.err.println("bad range: myvals.length=" + myvals
+								+ " il=" + il + " low=" + low + " high=" + hi);
+					}
+					gg = myvals[low + il];
+
+					// WLH 21 April 2000
+					// if (numv+8 >= maxsize || nump+4 >= 2*maxsize) {
+					if (numv + 8 >= maxsize) {
+						// allocate more space
+						maxsize = 2 * maxsize;
+						/*
+						 * WLH 21 April 2000 int[] tt = ipnt; ipnt = new int[2
+						 * maxsize]; System.arraycopy(tt, 0, ipnt, 0, nump);
+						 */
+						float[] tx = vx;
+						float[] ty = vy;
+						vx = new float[maxsize];
+						vy = new float[maxsize];
+						System.arraycopy(tx, 0, vx, 0, numv);
+						System.arraycopy(ty, 0, vy, 0, numv);
+						tx = null;
+						ty = null;
+						if (naux > 0) {
+							byte[][] ta = auxLevels;
+							auxLevels = new byte[naux][maxsize];
+							for (int i = 0; i < naux; i++) {
+								System.arraycopy(ta[i], 0, auxLevels[i], 0,
+										numv);
+							}
+							ta = null;
+						}
+					}
 
-		case 5:
-			switch (flag) {
-			case 1:
-				closed[0] = closed[0] | 5;
-				if (crnr_out[0] || crnr_out[2])
-					return;
-				cx1 = xx;
-				cy1 = yy;
-				cx2 = xx;
-				cy2 = yy + yd;
-				cc = 0;
-				grd[0][0] = 0;
-				grd[0][1] = 0;
-				grd[1][0] = 0;
-				grd[1][1] = 1;
-				crn_1 = 0;
-				crn_2 = 1;
-				vidx_0 = 2;
-				vidx_1 = 3;
-				first_tri_orient = -1;
-				last_tri_orient = 1;
-				first_strp_side = 3;
-				last_strp_side = -1;
-				break;
-			case -1:
-				closed[0] = closed[0] | 10;
-				if (crnr_out[1] || crnr_out[3])
-					return;
-				cx1 = xx + xd;
-				cy1 = yy;
-				cx2 = xx + xd;
-				cy2 = yy + yd;
-				grd[0][0] = 1;
-				grd[0][1] = 0;
-				grd[1][0] = 1;
-				grd[1][1] = 1;
-				cc = 3;
-				crn_1 = 2;
-				crn_2 = 3;
-				vidx_0 = 0;
-				vidx_1 = 1;
-				first_tri_orient = -1;
-				last_tri_orient = 1;
-				first_strp_side = -1;
-				last_strp_side = 1;
-				break;
-			}
-			break;
-		}
+					// make sure gg is within contouring limits
+					if (gg < gMin)
+						continue;
+					if (gg > gMax)
+						break;
+					if (gg < lowlimit)
+						continue;
+					if (gg > highlimit)
+						break;
 
-		for (int ii = 0; ii < color_length; ii++) {
-			color[ii] = crnr_color[cc][ii];
-		}
-		int levIdx = crnrLevelIdx[cc];
+					// compute orientation of lines inside box
+					int ii = 0;
+					if (gg > ga)
+						ii = 1;
+					if (gg > gb)
+						ii += 2;
+					if (gg > gc)
+						ii += 4;
+					if (gg > gd)
+						ii += 8;
+					if (ii > 7)
+						ii = 15 - ii;
+					if (ii <= 0)
+						continue;
 
-		tri[0][crn_1] = cx1;
-		tri[1][crn_1] = cy1;
-		int i = grd[0][0];
-		int j = grd[0][1];
-		normals[0][crn_1] = grd_normals[nc + j][nr + i][0];
-		normals[1][crn_1] = grd_normals[nc + j][nr + i][1];
-		normals[2][crn_1] = grd_normals[nc + j][nr + i][2];
+					if (fill) {
+						if ((low + il) < ctrLow[ir][ic])
+							ctrLow[ir][ic] = (short) (low + il);
+					}
 
-		tri[0][crn_2] = cx2;
-		tri[1][crn_2] = cy2;
-		i = grd[1][0];
-		j = grd[1][1];
-		normals[0][crn_2] = grd_normals[nc + j][nr + i][0];
-		normals[1][crn_2] = grd_normals[nc + j][nr + i][1];
-		normals[2][crn_2] = grd_normals[nc + j][nr + i][2];
+					// DO LABEL HERE
+					if (mark != null && (mark[(ic) * nr + (ir)]) == 0) {
+						int kc, kr, mc, mr, jc, jr;
 
-		tri[0][vidx_0] = vx[v_idx];
-		tri[1][vidx_0] = vy[v_idx];
-		interpNormals(tri[0][vidx_0], tri[1][vidx_0], xx, yy, nc, nr, xd, yd,
-				grd_normals, tmp);
-		normals[0][vidx_0] = tmp[0][0];
-		normals[1][vidx_0] = tmp[1][0];
-		normals[2][vidx_0] = tmp[2][0];
+						// Insert a label
 
-		tri[0][vidx_1] = vx[v_idx + dir];
-		tri[1][vidx_1] = vy[v_idx + dir];
-		interpNormals(tri[0][vidx_1], tri[1][vidx_1], xx, yy, nc, nr, xd, yd,
-				grd_normals, tmp);
-		normals[0][vidx_1] = tmp[0][0];
-		normals[1][vidx_1] = tmp[1][0];
-		normals[2][vidx_1] = tmp[2][0];
+						// BOX TO AVOID
+						kc = ic - lc2 - lcc;
+						kr = ir - lr2 - lrr;
+						mc = kc + 2 * lcc + lc - 1;
+						mr = kr + 2 * lrr + lr - 1;
+						// OK here
+						for (jc = kc; jc <= mc; jc++) {
+							if (jc >= 0 && jc < nc) {
+								for (jr = kr; jr <= mr; jr++) {
+									if (jr >= 0 && jr < nr) {
+										if ((mark[(jc) * nr + (jr)]) != 2) {
+											mark[(jc) * nr + (jr)] = 1;
+										}
+									}
+								}
+							}
+						}
 
-		if (triStripBldr != null) {
-			triStripBldr.addVerticies(levIdx, tri, normals, color,
-					first_strp_side, first_tri_orient, last_strp_side,
-					last_tri_orient);
-		}
-	}
+						// BOX TO HOLD LABEL
+						kc = ic - lc2;
+						kr = ir - lr2;
+						mc = kc + lc - 1;
+						mr = kr + lr - 1;
+						for (jc = kc; jc <= mc; jc++) {
+							if (jc >= 0 && jc < nc) {
+								for (jr = kr; jr <= mr; jr++) {
+									if (jr >= 0 && jr < nr) {
+										mark[(jc) * nr + (jr)] = 2;
+									}
+								}
+							}
+						}
+					}
 
-	private static void addCorner(float xx, float yy, float xd, float yd,
-			int nc, int nr, byte cornerID, float[][][] grd_normals,
-			int[] closed, int strpIdx, float[][] strpverts, float[][] strpnrmls) {
+					float gba, gca, gdb, gdc;
+					switch (ii) {
+					case 1:
+						gba = gb - ga;
+						gca = gc - ga;
 
-		float cx = 0;
-		float cy = 0;
-		int i = 0; // int offsets for corners
-		int j = 0;
+						if (naux > 0) {
+							float ratioba = (gg - ga) / gba;
+							float ratioca = (gg - ga) / gca;
+							for (int i = 0; i < naux; i++) {
+								t = (int) ((1.0f - ratioba)
+										* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
+												: ((float) auxa[i])) + ratioba
+										* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
+												: ((float) auxb[i])));
+								auxLevels[i][numv] = (byte) ((t < 0) ? 0
+										: ((t > 255) ? -1 : ((t < 128) ? t
+												: t - 256)));
+								t = (int) ((1.0f - ratioca)
+										* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
+												: ((float) auxa[i])) + ratioca
+										* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
+												: ((float) auxc[i])));
+								auxLevels[i][numv + 1] = (byte) ((t < 0) ? 0
+										: ((t > 255) ? -1 : ((t < 128) ? t
+												: t - 256)));
+								/*
+								 * MEM_WLH auxLevels[i][numv] = auxa[i] +
+								 * (auxb[i]-auxa[i]) ratioba;
+								 * auxLevels[i][numv+1] = auxa[i] +
+								 * (auxc[i]-auxa[i]) ratioca;
+								 */
+							}
+						}
+
+						if (((gba) < 0 ? -(gba) : (gba)) < 0.0000001) {
+							vx[numv] = xx;
+						} else {
+							vx[numv] = xx + xd * (gg - ga) / gba;
+						}
+						vy[numv] = yy;
+						numv++;
+						if (((gca) < 0 ? -(gca) : (gca)) < 0.0000001) {
+							vy[numv] = yy;
+						} else {
+							vy[numv] = yy + yd * (gg - ga) / gca;
+						}
+						vx[numv] = xx;
+						numv++;
+						if (fill) {
+							o_flags[ir][ic][n_lines[ir][ic]] = (byte) ii;
+							n_lines[ir][ic]++;
+						}
+						if (vx[numv - 2] == vx[numv - 1]
+								|| vy[numv - 2] == vy[numv - 1]) {
+							vx[numv - 2] += 0.00001f;
+							vy[numv - 1] += 0.00001f;
+						}
+						break;
+
+					case 2:
+						gba = gb - ga;
+						gdb = gd - gb;
+
+						if (naux > 0) {
+							float ratioba = (gg - ga) / gba;
+							float ratiodb = (gg - gb) / gdb;
+							for (int i = 0; i < naux; i++) {
+								t = (int) ((1.0f - ratioba)
+										* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
+												: ((float) auxa[i])) + ratioba
+										* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
+												: ((float) auxb[i])));
+								auxLevels[i][numv] = (byte) ((t < 0) ? 0
+										: ((t > 255) ? -1 : ((t < 128) ? t
+												: t - 256)));
+								t = (int) ((1.0f - ratiodb)
+										* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
+												: ((float) auxb[i])) + ratiodb
+										* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
+												: ((float) auxd[i])));
+								auxLevels[i][numv + 1] = (byte) ((t < 0) ? 0
+										: ((t > 255) ? -1 : ((t < 128) ? t
+												: t - 256)));
+								/*
+								 * MEM_WLH auxLevels[i][numv] = auxa[i] +
+								 * (auxb[i]-auxa[i]) ratioba;
+								 * auxLevels[i][numv+1] = auxb[i] +
+								 * (auxd[i]-auxb[i]) ratiodb;
+								 */
+							}
+						}
+
+						if (((gba) < 0 ? -(gba) : (gba)) < 0.0000001)
+							vx[numv] = xx;
+						else
+							vx[numv] = xx + xd * (gg - ga) / gba;
+						vy[numv] = yy;
+						numv++;
+						if (((gdb) < 0 ? -(gdb) : (gdb)) < 0.0000001)
+							vy[numv] = yy;
+						else
+							vy[numv] = yy + yd * (gg - gb) / gdb;
+						vx[numv] = xx + xd;
+						numv++;
+						if (fill) {
+							o_flags[ir][ic][n_lines[ir][ic]] = (byte) ii;
+							n_lines[ir][ic]++;
+						}
+						if (vx[numv - 2] == vx[numv - 1]
+								|| vy[numv - 2] == vy[numv - 1]) {
+							vx[numv - 2] -= 0.00001f;
+							vy[numv - 1] += 0.00001f;
+						}
+						break;
 
-		if (cornerID == 0) {
-			closed[0] = closed[0] | 1;
-			cx = xx;
-			cy = yy;
-			i = 0;
-			j = 0;
-		} else if (cornerID == 1) {
-			closed[0] = closed[0] | 2;
-			cx = xx + xd;
-			cy = yy;
-			i = 1;
-			j = 0;
-		} else if (cornerID == 2) {
-			closed[0] = closed[0] | 4;
-			cx = xx;
-			cy = yy + yd;
-			i = 0;
-			j = 1;
-		} else if (cornerID == 3) {
-			closed[0] = closed[0] | 8;
-			cx = xx + xd;
-			cy = yy + yd;
-			i = 1;
-			j = 1;
-		}
+					case 3:
+						gca = gc - ga;
+						gdb = gd - gb;
 
-		strpverts[0][strpIdx] = cx;
-		strpverts[1][strpIdx] = cy;
-		strpnrmls[0][strpIdx] = grd_normals[nc + j][nr + i][0];
-		strpnrmls[1][strpIdx] = grd_normals[nc + j][nr + i][1];
-		strpnrmls[2][strpIdx] = grd_normals[nc + j][nr + i][2];
-	}
+						if (naux > 0) {
+							float ratioca = (gg - ga) / gca;
+							float ratiodb = (gg - gb) / gdb;
+							for (int i = 0; i < naux; i++) {
+								t = (int) ((1.0f - ratioca)
+										* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
+												: ((float) auxa[i])) + ratioca
+										* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
+												: ((float) auxc[i])));
+								auxLevels[i][numv] = (byte) ((t < 0) ? 0
+										: ((t > 255) ? -1 : ((t < 128) ? t
+												: t - 256)));
+								t = (int) ((1.0f - ratiodb)
+										* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
+												: ((float) auxb[i])) + ratiodb
+										* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
+												: ((float) auxd[i])));
+								auxLevels[i][numv + 1] = (byte) ((t < 0) ? 0
+										: ((t > 255) ? -1 : ((t < 128) ? t
+												: t - 256)));
+								/*
+								 * MEM_WLH auxLevels[i][numv] = auxa[i] +
+								 * (auxc[i]-auxa[i]) ratioca;
+								 * auxLevels[i][numv+1] = auxb[i] +
+								 * (auxd[i]-auxb[i]) ratiodb;
+								 */
+							}
+						}
 
-	public static int[] getTriOrientation(float[][] verts) {
-		/* note: doesn't deal with cross-product == 0 */
-		int len = verts[0].length;
-		float xa = verts[0][1] - verts[0][0];
-		float ya = verts[1][1] - verts[1][0];
-		float xb = verts[0][2] - verts[0][0];
-		float yb = verts[1][2] - verts[1][0];
+						if (((gca) < 0 ? -(gca) : (gca)) < 0.0000001)
+							vy[numv] = yy;
+						else
+							vy[numv] = yy + yd * (gg - ga) / gca;
+						vx[numv] = xx;
+						numv++;
+						if (((gdb) < 0 ? -(gdb) : (gdb)) < 0.0000001)
+							vy[numv] = yy;
+						else
+							vy[numv] = yy + yd * (gg - gb) / gdb;
+						vx[numv] = xx + xd;
+						numv++;
+						if (fill) {
+							o_flags[ir][ic][n_lines[ir][ic]] = (byte) ii;
+							n_lines[ir][ic]++;
+						}
+						break;
 
-		float first = xa * yb - xb * ya;
+					case 4:
+						gca = gc - ga;
+						gdc = gd - gc;
 
-		xa = verts[0][len - 2] - verts[0][len - 3];
-		ya = verts[1][len - 2] - verts[1][len - 3];
-		xb = verts[0][len - 1] - verts[0][len - 3];
-		yb = verts[1][len - 1] - verts[1][len - 3];
+						if (naux > 0) {
+							float ratioca = (gg - ga) / gca;
+							float ratiodc = (gg - gc) / gdc;
+							for (int i = 0; i < naux; i++) {
+								t = (int) ((1.0f - ratioca)
+										* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
+												: ((float) auxa[i])) + ratioca
+										* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
+												: ((float) auxc[i])));
+								auxLevels[i][numv] = (byte) ((t < 0) ? 0
+										: ((t > 255) ? -1 : ((t < 128) ? t
+												: t - 256)));
+								t = (int) ((1.0f - ratiodc)
+										* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
+												: ((float) auxc[i])) + ratiodc
+										* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
+												: ((float) auxd[i])));
+								auxLevels[i][numv + 1] = (byte) ((t < 0) ? 0
+										: ((t > 255) ? -1 : ((t < 128) ? t
+												: t - 256)));
+								/*
+								 * MEM_WLH auxLevels[i][numv] = auxa[i] +
+								 * (auxc[i]-auxa[i]) ratioca;
+								 * auxLevels[i][numv+1] = auxc[i] +
+								 * (auxd[i]-auxc[i]) ratiodc;
+								 */
+							}
+						}
 
-		float last = xa * yb - xb * ya;
+						if (((gca) < 0 ? -(gca) : (gca)) < 0.0000001)
+							vy[numv] = yy;
+						else
+							vy[numv] = yy + yd * (gg - ga) / gca;
+						vx[numv] = xx;
+						numv++;
+						if (((gdc) < 0 ? -(gdc) : (gdc)) < 0.0000001)
+							vx[numv] = xx;
+						else
+							vx[numv] = xx + xd * (gg - gc) / gdc;
+						vy[numv] = yy + yd;
+						numv++;
+						if (fill) {
+							o_flags[ir][ic][n_lines[ir][ic]] = (byte) ii;
+							n_lines[ir][ic]++;
+						}
+						if (vx[numv - 2] == vx[numv - 1]
+								|| vy[numv - 2] == vy[numv - 1]) {
+							vx[numv - 1] += 0.00001f;
+							vy[numv - 2] -= 0.00001f;
+						}
+						break;
 
-		int firstOrient = (first < 0) ? CLOCKWISE : CNTRCLOCKWISE;
-		int lastOrient = (last < 0) ? CLOCKWISE : CNTRCLOCKWISE;
+					case 5:
+						gba = gb - ga;
+						gdc = gd - gc;
 
-		return new int[] { firstOrient, lastOrient };
-	}
+						if (naux > 0) {
+							float ratioba = (gg - ga) / gba;
+							float ratiodc = (gg - gc) / gdc;
+							for (int i = 0; i < naux; i++) {
+								t = (int) ((1.0f - ratioba)
+										* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
+												: ((float) auxa[i])) + ratioba
+										* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
+												: ((float) auxb[i])));
+								auxLevels[i][numv] = (byte) ((t < 0) ? 0
+										: ((t > 255) ? -1 : ((t < 128) ? t
+												: t - 256)));
+								t = (int) ((1.0f - ratiodc)
+										* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
+												: ((float) auxc[i])) + ratiodc
+										* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
+												: ((float) auxd[i])));
+								auxLevels[i][numv + 1] = (byte) ((t < 0) ? 0
+										: ((t > 255) ? -1 : ((t < 128) ? t
+												: t - 256)));
+								/*
+								 * MEM_WLH auxLevels[i][numv] = auxa[i] +
+								 * (auxb[i]-auxa[i]) ratioba;
+								 * auxLevels[i][numv+1] = auxc[i] +
+								 * (auxd[i]-auxc[i]) ratiodc;
+								 */
+							}
+						}
 
-	static final class ContourOutput {
+						if (((gba) < 0 ? -(gba) : (gba)) < 0.0000001)
+							vx[numv] = xx;
+						else
+							vx[numv] = xx + xd * (gg - ga) / gba;
+						vy[numv] = yy;
+						numv++;
+						if (((gdc) < 0 ? -(gdc) : (gdc)) < 0.0000001)
+							vx[numv] = xx;
+						else
+							vx[numv] = xx + xd * (gg - gc) / gdc;
+						vy[numv] = yy + yd;
+						numv++;
+						if (fill) {
+							o_flags[ir][ic][n_lines[ir][ic]] = (byte) ii;
+							n_lines[ir][ic]++;
+						}
+						break;
 
-		public final ContourStripSet stripSet;
-		public final TriangleStripBuilder triStripBldr;
+					case 6:
+						gba = gb - ga;
+						gdc = gd - gc;
+						gca = gc - ga;
+						gdb = gd - gb;
 
-		ContourOutput(ContourStripSet set, TriangleStripBuilder tsb) {
-			stripSet = set;
-			triStripBldr = tsb;
-		}
+						if (naux > 0) {
+							float ratioba = (gg - ga) / gba;
+							float ratiodc = (gg - gc) / gdc;
+							float ratioca = (gg - ga) / gca;
+							float ratiodb = (gg - gb) / gdb;
+							for (int i = 0; i < naux; i++) {
+								t = (int) ((1.0f - ratioba)
+										* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
+												: ((float) auxa[i])) + ratioba
+										* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
+												: ((float) auxb[i])));
+								auxLevels[i][numv] = (byte) ((t < 0) ? 0
+										: ((t > 255) ? -1 : ((t < 128) ? t
+												: t - 256)));
+								/*
+								 * MEM_WLH auxLevels[i][numv] = auxa[i] +
+								 * (auxb[i]-auxa[i]) ratioba;
+								 */
+								if ((gg > gAvg) ^ (ga < gb)) {
+									t = (int) ((1.0f - ratioca)
+											* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
+													: ((float) auxa[i])) + ratioca
+											* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
+													: ((float) auxc[i])));
+									auxLevels[i][numv + 1] = (byte) ((t < 0) ? 0
+											: ((t > 255) ? -1 : ((t < 128) ? t
+													: t - 256)));
+									t = (int) ((1.0f - ratiodb)
+											* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
+													: ((float) auxb[i])) + ratiodb
+											* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
+													: ((float) auxd[i])));
+									auxLevels[i][numv + 2] = (byte) ((t < 0) ? 0
+											: ((t > 255) ? -1 : ((t < 128) ? t
+													: t - 256)));
+									/*
+									 * MEM_WLH auxLevels[i][numv+1] = auxa[i] +
+									 * (auxc[i]-auxa[i]) ratioca;
+									 * auxLevels[i][numv+2] = auxb[i] +
+									 * (auxd[i]-auxb[i]) ratiodb;
+									 */
+								} else {
+									t = (int) ((1.0f - ratiodb)
+											* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
+													: ((float) auxb[i])) + ratiodb
+											* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
+													: ((float) auxd[i])));
+									auxLevels[i][numv + 1] = (byte) ((t < 0) ? 0
+											: ((t > 255) ? -1 : ((t < 128) ? t
+													: t - 256)));
+									t = (int) ((1.0f - ratioca)
+											* ((auxa[i] < 0) ? ((float) auxa[i]) + 256.0f
+													: ((float) auxa[i])) + ratioca
+											* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
+													: ((float) auxc[i])));
+									auxLevels[i][numv + 2] = (byte) ((t < 0) ? 0
+											: ((t > 255) ? -1 : ((t < 128) ? t
+													: t - 256)));
+									/*
+									 * MEM_WLH auxLevels[i][numv+1] = auxb[i] +
+									 * (auxd[i]-auxb[i]) ratiodb;
+									 * auxLevels[i][numv+2] = auxa[i] +
+									 * (auxc[i]-auxa[i]) ratioca;
+									 */
+								}
+								t = (int) ((1.0f - ratiodc)
+										* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
+												: ((float) auxc[i])) + ratiodc
+										* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
+												: ((float) auxd[i])));
+								auxLevels[i][numv + 3] = (byte) ((t < 0) ? 0
+										: ((t > 255) ? -1 : ((t < 128) ? t
+												: t - 256)));
+								/*
+								 * MEM_WLH auxLevels[i][numv+3] = auxc[i] +
+								 * (auxd[i]-auxc[i]) ratiodc;
+								 */
+							}
+						}
 
-		boolean isLineStyled(int lvl) {
-			return stripSet.isLevelStyled(lvl);
-		}
+						if (((gba) < 0 ? -(gba) : (gba)) < 0.0000001)
+							vx[numv] = xx;
+						else
+							vx[numv] = xx + xd * (gg - ga) / gba;
+						vy[numv] = yy;
+						numv++;
+						// here's a brain teaser
+						if ((gg > gAvg) ^ (ga < gb)) { // (XOR)
+							if (((gca) < 0 ? -(gca) : (gca)) < 0.0000001)
+								vy[numv] = yy;
+							else
+								vy[numv] = yy + yd * (gg - ga) / gca;
+							vx[numv] = xx;
+							numv++;
+							if (fill) {
+								o_flags[ir][ic][n_lines[ir][ic]] = (byte) 1
+										+ (byte) 32;
+								n_lines[ir][ic]++;
+							}
+							if (((gdb) < 0 ? -(gdb) : (gdb)) < 0.0000001)
+								vy[numv] = yy;
+							else
+								vy[numv] = yy + yd * (gg - gb) / gdb;
+							vx[numv] = xx + xd;
+							if (fill) {
+								o_flags[ir][ic][n_lines[ir][ic]] = (byte) 7
+										+ (byte) 32;
+								n_lines[ir][ic]++;
+							}
+							numv++;
+						} else {
+							if (((gdb) < 0 ? -(gdb) : (gdb)) < 0.0000001)
+								vy[numv] = yy;
+							else
+								vy[numv] = yy + yd * (gg - gb) / gdb;
+							vx[numv] = xx + xd;
+							numv++;
+							if (fill) {
+								o_flags[ir][ic][n_lines[ir][ic]] = (byte) 2
+										+ (byte) 32;
+								n_lines[ir][ic]++;
+							}
+							if (((gca) < 0 ? -(gca) : (gca)) < 0.0000001)
+								vy[numv] = yy;
+							else
+								vy[numv] = yy + yd * (gg - ga) / gca;
+							vx[numv] = xx;
+							numv++;
+							if (fill) {
+								o_flags[ir][ic][n_lines[ir][ic]] = (byte) 4
+										+ (byte) 32;
+								n_lines[ir][ic]++;
+							}
+						}
+						if (((gdc) < 0 ? -(gdc) : (gdc)) < 0.0000001)
+							vx[numv] = xx;
+						else
+							vx[numv] = xx + xd * (gg - gc) / gdc;
+						vy[numv] = yy + yd;
+						numv++;
+						break;
 
-		List<float[][][]> getLineStripCoordinates(int lvl) {
-			return stripSet.getLineStripCoordinates(lvl);
-		}
+					case 7:
+						gdb = gd - gb;
+						gdc = gd - gc;
 
-		List<byte[][][]> getLineStripColors(int lvl) {
-			return stripSet.getLineStripColors(lvl);
-		}
+						if (naux > 0) {
+							float ratiodb = (gg - gb) / gdb;
+							float ratiodc = (gg - gc) / gdc;
+							for (int i = 0; i < naux; i++) {
+								t = (int) ((1.0f - ratiodb)
+										* ((auxb[i] < 0) ? ((float) auxb[i]) + 256.0f
+												: ((float) auxb[i])) + ratiodb
+										* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
+												: ((float) auxd[i])));
+								auxLevels[i][numv] = (byte) ((t < 0) ? 0
+										: ((t > 255) ? -1 : ((t < 128) ? t
+												: t - 256)));
+								t = (int) ((1.0f - ratiodc)
+										* ((auxc[i] < 0) ? ((float) auxc[i]) + 256.0f
+												: ((float) auxc[i])) + ratiodc
+										* ((auxd[i] < 0) ? ((float) auxd[i]) + 256.0f
+												: ((float) auxd[i])));
+								auxLevels[i][numv + 1] = (byte) ((t < 0) ? 0
+										: ((t > 255) ? -1 : ((t < 128) ? t
+												: t - 256)));
+								/*
+								 * MEM_WLH auxLevels[i][numv] = auxb[i] +
+								 * (auxb[i]-auxb[i]) ratiodb;
+								 * auxLevels[i][numv+1] = auxc[i] +
+								 * (auxd[i]-auxc[i]) ratiodc;
+								 */
+							}
+						}
 
-		int getIntervalCount() {
-			return stripSet.vecArray.length;
-		}
+						if (((gdb) < 0 ? -(gdb) : (gdb)) < 0.0000001)
+							vy[numv] = yy;
+						else
+							vy[numv] = yy + yd * (gg - gb) / gdb;
+						vx[numv] = xx + xd;
+						numv++;
+						if (((gdc) < 0 ? -(gdc) : (gdc)) < 0.0000001)
+							vx[numv] = xx;
+						else
+							vx[numv] = xx + xd * (gg - gc) / gdc;
+						vy[numv] = yy + yd;
+						numv++;
+						if (fill) {
+							o_flags[ir][ic][n_lines[ir][ic]] = (byte) ii;
+							n_lines[ir][ic]++;
+						}
+						if (vx[numv - 2] == vx[numv - 1]
+								|| vy[numv - 2] == vy[numv - 1]) {
+							vx[numv - 1] -= 0.00001f;
+							vy[numv - 2] -= 0.00001f;
+						}
+						break;
+					} // switch
 
-		List<ContourStrip> getStrips(int lvl) {
-			return stripSet.vecArray[lvl];
-		}
+					// If contour level is negative, make dashed line
+					if (gg < base && dash) { /* DRM: 1999-05-19 */
+						dashFlags[low + il] = true;
+					}
+					/*
+					 * if ((20.0 <= vy[numv-2] && vy[numv-2] < 22.0) || (20.0 <=
+					 * vy[numv-1] && vy[numv-1] < 22.0)) {
+					 * System.out.println("vy = " + vy[numv-1] + " " +
+					 * vy[numv-2] + " ic, ir = " + ic + " " + ir); }
+					 */
 
-		int[] getLabelIndexes(int lvlIdx) {
-			return stripSet.labelIndexes[lvlIdx];
-		}
+					if (ii == 6) { // - add last two pairs
+						addSegment(numv - 4, low + il);
+						addSegment(numv - 2, low + il);
+					} else {
+						addSegment(numv - 2, low + il);
+					}
 
-		float[] getLevels() {
-			return stripSet.levels;
-		}
+				} // for il -- NOTE: gg incremented in for statement
+			} // for ic
+		} // for ir
 	}
-} // end class
+}
 
 /**
  * Class ContourQuadSet
@@ -4405,6 +4737,27 @@ class ContourStripSet {
 	 */
 	
 	void add(float[] vx, float[] vy, int idx0, int idx1, int lev_idx) {
+		vec = vecArray[lev_idx];
+                closedStripList = closedStripArray[lev_idx];
+		add(vx, vy, idx0, idx1, lev_idx, vec, closedStripList);
+	}
+
+	/**
+	 * Add a segment to the open and closed strip lists of its level.
+	 * Contour2D uses separate lists for each band of grid columns when
+	 * contouring bands in parallel.
+	 * 
+	 * @param vx
+	 * @param vy
+	 * @param idx0
+	 * @param idx1
+	 * @param lev_idx
+	 * @param vec open strips of the level
+	 * @param closedStripList closed strips of the level
+	 */
+	
+	void add(float[] vx, float[] vy, int idx0, int idx1, int lev_idx,
+			List<ContourStrip> vec, List<ContourStrip> closedStripList) {
                 float delx = vx[idx1] - vx[idx0];
                 float dely = vy[idx1] - vy[idx0];
                 // skip really small segments
@@ -4412,8 +4765,6 @@ class ContourStripSet {
                     return;
                 }
 
-		vec = vecArray[lev_idx];
-                closedStripList = closedStripArray[lev_idx];
 		int n_strip = vec.size();
 
 		if (n_strip == 0) {
@@ -4455,6 +4806,59 @@ class ContourStripSet {
 		}
 	}
 
+	/**
+	 * Collect the strips of bands of grid columns that were stitched
+	 * separately, joining strips that continue across the boundaries
+	 * between bands.  Only strips that include earlier bands are
+	 * candidates for joining the open strips of a band.
+	 * 
+	 * @param vx
+	 * @param vy
+	 * @param bandOpen open strips by band and level
+	 * @param bandClosed closed strips by band and level
+	 */
+	
+	void joinBands(float[] vx, float[] vy, List<ContourStrip>[][] bandOpen,
+			List<ContourStrip>[][] bandClosed) {
+		for (int lev = 0; lev < n_levs; lev++) {
+			List<ContourStrip> open = vecArray[lev];
+			List<ContourStrip> closed = closedStripArray[lev];
+			for (int b = 0; b < bandOpen.length; b++) {
+				closed.addAll(bandClosed[b][lev]);
+				List<ContourStrip> strips = bandOpen[b][lev];
+				List<ContourStrip> pending = new ArrayList<ContourStrip>();
+				for (int k = 0; k < strips.size(); k++) {
+					ContourStrip current = strips.get(k);
+					int currentIdx = -1;
+					while (!current.closed) {
+						int j = -1;
+						for (int i = 0; i < open.size(); i++) {
+							if (i != currentIdx && open.get(i).join(vx, vy, current)) {
+								j = i;
+								break;
+							}
+						}
+						if (j < 0) break;
+						if (currentIdx >= 0) {
+							// current is now part of open strip j
+							open.remove(currentIdx);
+							if (currentIdx < j) j--;
+						}
+						current = open.get(j);
+						currentIdx = j;
+					}
+					if (currentIdx < 0) {
+						pending.add(current);
+					} else if (current.closed) {
+						open.remove(currentIdx);
+						closed.add(current);
+					}
+				}
+				open.addAll(pending);
+			}
+		}
+	}
+
 	/**
          * Iterates over list of ContourStrips for each contour level index.
          *
@@ -4766,6 +5170,58 @@ class ContourStrip {
 		return false;
 	}
 
+	/**
+	 * Join another open strip of the same level to this one if an end
+	 * of that strip coincides with an end of this strip, within the
+	 * tolerance used by addPair.  The pairs of that strip are copied
+	 * and reversed as needed to continue this strip.
+	 * 
+	 * @param vx
+	 * @param vy
+	 * @param that strip to join
+	 * 
+	 * @return true if the strips were joined
+	 */
+	
+	boolean join(float[] vx, float[] vy, ContourStrip that) {
+		if (closed || that.closed) return false;
+
+		int thisFirst = idxs.first.idx0;
+		int thisLast = idxs.last.idx1;
+		int thatFirst = that.idxs.first.idx0;
+		int thatLast = that.idxs.last.idx1;
+		IndexPairList.Node n;
+
+		if (coincide(vx, vy, thisLast, thatFirst)) {
+			for (n = that.idxs.first; n != null; n = n.next) {
+				idxs.addLast(n.idx0, n.idx1);
+			}
+		} else if (coincide(vx, vy, thisLast, thatLast)) {
+			for (n = that.idxs.last; n != null; n = n.prev) {
+				idxs.addLast(n.idx1, n.idx0);
+			}
+		} else if (coincide(vx, vy, thisFirst, thatLast)) {
+			for (n = that.idxs.last; n != null; n = n.prev) {
+				idxs.addFirst(n.idx0, n.idx1);
+			}
+		} else if (coincide(vx, vy, thisFirst, thatFirst)) {
+			for (n = that.idxs.first; n != null; n = n.next) {
+				idxs.addFirst(n.idx1, n.idx0);
+			}
+		} else {
+			return false;
+		}
+		setIsClosed(vx, vy);
+		return true;
+	}
+
+	private static boolean coincide(float[] vx, float[] vy, int i, int j) {
+		float delta = 0.001f;
+		float delx = vx[i] - vx[j];
+		float dely = vy[i] - vy[j];
+		return (delx > -delta && delx < delta) && (dely > -delta && dely < delta);
+	}
+
         /** Check if endpoints are equal and set the closed flag.
          */
         void setIsClosed(float[] vx, float[] vy) {
@@ -433,6 +433,39 @@ System.out.println("any_changed = " + any_changed +
    */
   public abstract boolean doAction() throws VisADException, RemoteException;
 
+  /**
+   * @return flag indicating whether doAction can be split into
+   *         transformAction, which may run concurrently with the
+   *         transformAction of other DataRenderers of the same
+   *         display, followed by attachAction; false by default
+   */
+  public boolean isConcurrentTransformSupported() {
+    return false;
+  }
+
+  /**
+   * first half of doAction: transform linked Data objects into a
+   * depiction if needed, without attaching it to the display; may be
+   * called on a thread other than the display's action thread, while
+   * other DataRenderers of the display do the same
+   * @throws VisADException a VisAD error occurred
+   * @throws RemoteException an RMI error occurred
+   */
+  public void transformAction() throws VisADException, RemoteException {
+    throw new UnimplementedException("DataRenderer.transformAction");
+  }
+
+  /**
+   * second half of doAction: attach the depiction made by the last
+   * call to transformAction
+   * @return flag indicating if the transform was done successfully
+   * @throws VisADException a VisAD error occurred
+   * @throws RemoteException an RMI error occurred
+   */
+  public boolean attachAction() throws VisADException, RemoteException {
+    throw new UnimplementedException("DataRenderer.attachAction");
+  }
+
   /**
    * @return flag indicating whether initialization (i.e.,
    *         auto-scale) is needed on next re-transform
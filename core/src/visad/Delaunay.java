@@ -137,7 +137,7 @@ public abstract class Delaunay implements java.io.Serializable {
    * to the Delaunay abstract class to use in order to construct the
    * fastest triangulation, and calls that extension, returning the
    * finished triangulation. The method chooses from among the Fast,
-   * Clarkson, and Watson methods.
+   * Clarkson, Watson and Incremental methods.
    * @param samples locations of points for topology - dimensioned
    *                float[dimension][number_of_points]
    * @param exact flag indicating need for exact Delaunay triangulation
@@ -149,54 +149,43 @@ public abstract class Delaunay implements java.io.Serializable {
 
     /* Note: Clarkson doesn't work well for very closely clumped site values,
              since the algorithm rounds each value to the nearest integer
-             before computing the triangulation.  This fact should probably
-             be taken into account in this factory algorithm, but as of yet
-             is not.  In other words, if you need an exact triangulation
-             and have more than 3000 data sites, and they have closely
-             clumped values, be sure to scale them up before calling the
-             factory method. */
+             before computing the triangulation.  Large sets in 2-D and
+             3-D are triangulated by the Incremental method, which uses
+             exact arithmetic; Clarkson (or Fast) is only used for them
+             if the Incremental method fails, as it does for duplicate
+             sites.  If such a set has closely clumped values, be sure
+             to scale them up before calling the factory method. */
 
     /* Note: The factory method will not take new Delaunay extensions into
              account unless it is extended as well. */
 
     int choice;
-    int FAST = 0;
     int CLARKSON = 1;
     int WATSON = 2;
+    int INCREMENTAL = 3;
 
     int dim = samples.length;
     if (dim < 2) throw new VisADException("Delaunay.factory: "
                                          +"dimension must be 2 or higher");
 
+    int nrs = samples[0].length;
+    for (int i=1; i<dim; i++) {
+      nrs = Math.min(nrs, samples[i].length);
+    }
+
     // only Clarkson can handle triangulations in high dimensions
     if (dim > 3) {
       choice = CLARKSON;
     }
+    else if (nrs > 3000) {
+      // use incremental insertion for large sets
+      choice = INCREMENTAL;
+    }
     else {
-      int nrs = samples[0].length;
-      for (int i=1; i<dim; i++) {
-        nrs = Math.min(nrs, samples[i].length);
-      }
-      if (dim == 2 && !exact && nrs > 10000) {
-        // use fast in 2-D with a very large set and exact not required
-        choice = FAST;
-      }
-      else if (nrs > 3000) {
-        // use Clarkson for large sets
-        choice = CLARKSON;
-      }
-      else {
-        choice = WATSON;
-      }
+      choice = WATSON;
     }
 
     try {
-      if (choice == FAST) {
-        // triangulate with the Fast method and one improvement pass
-        DelaunayFast delan = new DelaunayFast(samples);
-        delan.improve(samples, 1);
-        return (Delaunay) delan;
-      }
       if (choice == CLARKSON) {
         // triangulate with the Clarkson method
         DelaunayClarkson delan = new DelaunayClarkson(samples);
@@ -207,8 +196,25 @@ public abstract class Delaunay implements java.io.Serializable {
         DelaunayWatson delan = new DelaunayWatson(samples);
         return (Delaunay) delan;
       }
+      if (choice == INCREMENTAL) {
+        // triangulate with the Incremental method
+        DelaunayIncremental delan = new DelaunayIncremental(samples);
+        return (Delaunay) delan;
+      }
     }
     catch (Exception e) {
+      if (choice == INCREMENTAL && dim == 2 && !exact && nrs > 10000) {
+        try {
+          // samples are degenerate (e.g. duplicates), so use fast in
+          // 2-D with a very large set and exact not required, with
+          // one improvement pass
+          DelaunayFast delan = new DelaunayFast(samples);
+          delan.improve(samples, 1);
+          return (Delaunay) delan;
+        }
+        catch (Exception ee) {
+        }
+      }
       if (choice != CLARKSON) {
         try {
           // triangulate with the Clarkson method
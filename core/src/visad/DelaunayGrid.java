@@ -0,0 +1,199 @@
+//
+// DelaunayGrid.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+/**
+   DelaunayGrid is a uniform grid of cells over the samples of a 2-D
+   or 3-D Delaunay triangulation, holding for each cell a triangle
+   (or tetrahedron) close to it.  Walks that locate points in the
+   triangulation start from the triangle of the point's cell, so they
+   take a few steps however the points are ordered.<P>
+*/
+final class DelaunayGrid {
+
+  /** triangulations with fewer triangles are walked without a grid */
+  static final int MIN_TRIANGLES = 256;
+
+  /** average number of triangles per cell */
+  private static final int TRIANGLES_PER_CELL = 2;
+
+  private final Delaunay delan;
+  private final int ntris;
+  private final int dim;
+  private final int[] size;             // number of cells along each axis
+  private final float[] low;            // low corner of the grid
+  private final float[] scale;          // cells per unit along each axis
+  private final int[] seeds;            // triangle of each cell
+
+  /**
+   * construct a grid for a triangulation
+   * @param delan triangulation
+   * @param samples locations of its points - dimensioned
+   *                float[dimension][number_of_points]
+   */
+  DelaunayGrid(Delaunay delan, float[][] samples) {
+    this.delan = delan;
+    dim = samples.length;
+    ntris = delan.Tri.length;
+    int nrs = samples[0].length;
+
+    low = new float[dim];
+    scale = new float[dim];
+    size = new int[dim];
+    double[] extent = new double[dim];
+    double largest = 0.0;
+    for (int k=0; k<dim; k++) {
+      float lo = Float.POSITIVE_INFINITY;
+      float hi = Float.NEGATIVE_INFINITY;
+      for (int i=0; i<nrs; i++) {
+        float v = samples[k][i];
+        if (v < lo) lo = v;
+        if (v > hi) hi = v;
+      }
+      if (!(lo <= hi)) lo = hi = 0.0f;
+      low[k] = lo;
+      extent[k] = (double) hi - lo;
+      largest = Math.max(largest, extent[k]);
+    }
+
+    // choose cells of about equal sides, leaving out axes along
+    // which the samples are thinner than one cell
+    int target = Math.max(1, ntris / TRIANGLES_PER_CELL);
+    boolean[] thin = new boolean[dim];
+    for (int k=0; k<dim; k++) {
+      thin[k] = !(extent[k] > largest * 1.0e-6);
+    }
+    double side = 0.0;
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      double volume = 1.0;
+      int axes = 0;
+      for (int k=0; k<dim; k++) {
+        if (!thin[k]) {
+          volume *= extent[k];
+          axes++;
+        }
+      }
+      if (axes == 0) break;
+      side = Math.pow(volume / target, 1.0 / axes);
+      for (int k=0; k<dim; k++) {
+        if (!thin[k] && extent[k] < side) {
+          thin[k] = true;
+          changed = true;
+        }
+      }
+    }
+    int cells = 1;
+    for (int k=0; k<dim; k++) {
+      size[k] = (thin[k] || side <= 0.0) ? 1 :
+                Math.max(1, Math.min(target, (int) (extent[k] / side)));
+      scale[k] = (extent[k] > 0.0) ? (float) (size[k] / extent[k]) : 0.0f;
+      cells *= size[k];
+    }
+
+    // the last triangle whose centroid is in a cell becomes its seed
+    seeds = new int[cells];
+    for (int c=0; c<cells; c++) seeds[c] = -1;
+    float[] centroid = new float[dim];
+    for (int t=0; t<ntris; t++) {
+      int[] trit = delan.Tri[t];
+      for (int k=0; k<dim; k++) {
+        float sum = 0.0f;
+        for (int j=0; j<=dim; j++) sum += samples[k][trit[j]];
+        centroid[k] = sum / (dim + 1);
+      }
+      seeds[cell(centroid)] = t;
+    }
+
+    // empty cells take the seed of a neighbor, sweeping along each axis
+    int stride = 1;
+    for (int k=0; k<dim; k++) {
+      int n = size[k];
+      int span = stride * n;
+      for (int base=0; base<cells; base++) {
+        if ((base / stride) % n != 0) continue;
+        int previous = -1;
+        for (int j=0; j<n; j++) {
+          int c = base + j * stride;
+          if (seeds[c] < 0) seeds[c] = previous;
+          else previous = seeds[c];
+        }
+        previous = -1;
+        for (int j=n-1; j>=0; j--) {
+          int c = base + j * stride;
+          if (seeds[c] < 0) seeds[c] = previous;
+          else previous = seeds[c];
+        }
+      }
+      stride = span;
+    }
+    for (int c=0; c<cells; c++) {
+      if (seeds[c] < 0) seeds[c] = 0;
+    }
+  }
+
+  /**
+   * @param delan a triangulation
+   * @return true if this grid was built for delan as it is now
+   */
+  boolean isFor(Delaunay delan) {
+    return this.delan == delan && delan.Tri.length == ntris;
+  }
+
+  /**
+   * @param value points - dimensioned float[dimension][number_of_points]
+   * @param i index of a point
+   * @return a triangle close to point i, from which to start a walk
+   */
+  int seed(float[][] value, int i) {
+    int c = 0;
+    int stride = 1;
+    for (int k=0; k<dim; k++) {
+      c += stride * index(k, value[k][i]);
+      stride *= size[k];
+    }
+    return seeds[c];
+  }
+
+  private int cell(float[] point) {
+    int c = 0;
+    int stride = 1;
+    for (int k=0; k<dim; k++) {
+      c += stride * index(k, point[k]);
+      stride *= size[k];
+    }
+    return c;
+  }
+
+  private int index(int k, float v) {
+    int j = (int) ((v - low[k]) * scale[k]);
+    if (j < 0) return 0;
+    return (j < size[k]) ? j : size[k] - 1;
+  }
+
+}
@@ -0,0 +1,828 @@
+//
+// DelaunayIncremental.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Random;
+
+/* The insertion algorithm in this class is the Bowyer-Watson algorithm:
+ *
+ *    Bowyer, A., 1981, Computing Dirichlet tessellations:
+ *                                      The Computer J., 24(2), p. 162-166.
+ *    Watson, D.F., 1981, Computing the n-dimensional Delaunay tessellation
+ *          with application to Voronoi polytopes:
+ *                                      The Computer J., 24(2), p. 167-172.
+ *
+ * with points inserted in a biased randomized insertion order -
+ *    Amenta, N., Choi, S. and Rote, G., 2003, Incremental constructions
+ *          con BRIO: Proc. 19th Symposium on Computational Geometry,
+ *          p. 211-219.
+ *
+ * The floating-point filters of the geometric predicates and their error
+ * bounds are from Jonathan Shewchuk's predicates.c -
+ *    Shewchuk, J.R., 1997, Adaptive precision floating-point arithmetic
+ *          and fast robust geometric predicates: Discrete and
+ *          Computational Geometry, 18(3), p. 305-363.
+ *                                                                        */
+
+/**
+   DelaunayIncremental represents an O(N*logN) expected time method
+   to find the exact Delaunay triangulation or tetrahedralization of
+   a set of samples of R^2 or R^3.<P>
+
+   Points are inserted one at a time, each replacing the triangles
+   whose circumcircles contain it.  The insertion order is random in
+   rounds of doubling size, and sorted along a space-filling curve
+   within each round, so that each point is found by a short walk from
+   the previous one.  The geometric tests are evaluated in floating
+   point when the result is certain despite rounding, and otherwise
+   exactly, so samples are neither rounded nor perturbed.  The samples
+   must not all lie on one line (in R^2) or plane (in R^3), and must
+   not contain duplicate points.<P>
+*/
+public class DelaunayIncremental extends Delaunay {
+
+  // vertex index of the point at infinity, which closes the convex hull
+  private static final int GHOST = -1;
+
+  // first vertex of a simplex slot that is not in use
+  private static final int DEAD = -2;
+
+  // seed of the random insertion order, so results are repeatable
+  private static final long SEED = 367;
+
+  // rounds of the insertion order at least this long are split in two
+  private static final int MIN_ROUND = 64;
+
+  // error bounds of the floating-point filters, from predicates.c
+  private static final double EPSILON = 1.1102230246251565E-16; // 2^-53
+  private static final double CCW_BOUND = (3.0 + 16.0 * EPSILON) * EPSILON;
+  private static final double O3D_BOUND = (7.0 + 56.0 * EPSILON) * EPSILON;
+  private static final double ICC_BOUND = (10.0 + 96.0 * EPSILON) * EPSILON;
+  private static final double ISP_BOUND = (16.0 + 224.0 * EPSILON) * EPSILON;
+
+  private int dim;                      // 2 or 3
+  private int dim1;                     // vertices per simplex
+  private double[] px, py, pz;          // sample coordinates
+
+  /* simplices, each with dim1 vertices in positive orientation;
+     neighbor[dim1*s+i] is the simplex across the facet opposite
+     vertex[dim1*s+i].  Simplices with a GHOST vertex lie outside
+     the convex hull. */
+  private int[] vertex;
+  private int[] neighbor;
+  private int nsimplex = 0;             // number of slots used
+  private int[] free = new int[16];     // unused slots below nsimplex
+  private int nfree = 0;
+
+  // stamp of the insertion that found a simplex in (+) or out (-) of
+  // conflict, and of the insertion that put it on the cavity stack
+  private int[] conflict;
+  private int[] visited;
+  private int stamp = 0;
+
+  private int last;                     // a recent solid simplex
+  private int random = 1;               // xorshift state for walks
+
+  // work lists for one insertion
+  private int[] stack = new int[64];
+  private int[] cavity = new int[64];
+  private int[] hull = new int[128];    // (simplex, facet) pairs
+  private long[] ridgeKey = new long[64];
+  private int[] ridgeFacet = new int[64];
+
+  /**
+   * construct a Delaunay triangulation of the points in the
+   * samples array by incremental insertion
+   * @param samples locations of points for topology - dimensioned
+   *                float[dimension][number_of_points]
+   * @throws VisADException a VisAD error occurred
+   */
+  public DelaunayIncremental(float[][] samples) throws VisADException {
+    dim = samples.length;
+    if (dim != 2 && dim != 3) {
+      throw new SetException("DelaunayIncremental: dimension must be " +
+                             "2 or 3");
+    }
+    dim1 = dim + 1;
+    int nrs = samples[0].length;
+    for (int i=1; i<dim; i++) {
+      nrs = Math.min(nrs, samples[i].length);
+    }
+    if (nrs < dim1) {
+      throw new SetException("DelaunayIncremental: need at least " + dim1 +
+                             " samples");
+    }
+
+    px = new double[nrs];
+    py = new double[nrs];
+    pz = (dim == 3) ? new double[nrs] : null;
+    for (int i=0; i<nrs; i++) {
+      px[i] = samples[0][i];
+      py[i] = samples[1][i];
+      if (dim == 3) pz[i] = samples[2][i];
+      if (Double.isNaN(px[i] + py[i] + (dim == 3 ? pz[i] : 0.0)) ||
+          Double.isInfinite(px[i] + py[i] + (dim == 3 ? pz[i] : 0.0))) {
+        throw new SetException("DelaunayIncremental: sample " + i +
+                               " is not finite");
+      }
+    }
+
+    int capacity = ((dim == 2) ? 2 : 7) * nrs + 16;
+    vertex = new int[dim1 * capacity];
+    neighbor = new int[dim1 * capacity];
+    conflict = new int[capacity];
+    visited = new int[capacity];
+
+    int[] order = insertionOrder(nrs);
+    initialSimplex(order);
+    for (int i=dim1; i<nrs; i++) {
+      insert(order[i]);
+    }
+
+    // build Tri & Walk components
+    int[] index = new int[nsimplex];
+    int ntris = 0;
+    for (int s=0; s<nsimplex; s++) {
+      index[s] = (isSolid(s)) ? ntris++ : -1;
+    }
+    Tri = new int[ntris][dim1];
+    Walk = new int[ntris][dim1];
+    for (int s=0; s<nsimplex; s++) {
+      int t = index[s];
+      if (t < 0) continue;
+      for (int j=0; j<dim1; j++) {
+        Tri[t][j] = vertex[dim1*s + j];
+        // Walk[t][j] is across the facet starting at Tri[t][j], which
+        // is opposite the vertex dim places further on
+        Walk[t][j] = index[neighbor[dim1*s + (j+dim)%dim1]];
+      }
+    }
+
+    // Deallocate remaining helper information
+    px = py = pz = null;
+    vertex = neighbor = conflict = visited = null;
+    free = stack = cavity = hull = ridgeFacet = null;
+    ridgeKey = null;
+
+    // build Vertices component
+    int[] nverts = new int[nrs];
+    for (int t=0; t<ntris; t++) {
+      for (int j=0; j<dim1; j++) nverts[Tri[t][j]]++;
+    }
+    Vertices = new int[nrs][];
+    for (int i=0; i<nrs; i++) {
+      Vertices[i] = new int[nverts[i]];
+      nverts[i] = 0;
+    }
+    for (int t=0; t<ntris; t++) {
+      for (int j=0; j<dim1; j++) {
+        int v = Tri[t][j];
+        Vertices[v][nverts[v]++] = t;
+      }
+    }
+
+    // build Edges component, numbering each edge from the triangles of
+    // its lower vertex, rather than by intersecting lists of triangles
+    int[] ptlook1 = (dim == 2) ? new int[] {0, 1, 2}
+                               : new int[] {0, 0, 0, 1, 1, 2};
+    int[] ptlook2 = (dim == 2) ? new int[] {1, 2, 0}
+                               : new int[] {1, 2, 3, 2, 3, 3};
+    int edim = ptlook1.length;
+    Edges = new int[ntris][edim];
+    int[] owner = nverts;
+    int[] number = new int[nrs];
+    Arrays.fill(owner, -1);
+    NumEdges = 0;
+    for (int v=0; v<nrs; v++) {
+      int[] tris = Vertices[v];
+      for (int k=0; k<tris.length; k++) {
+        int[] trit = Tri[tris[k]];
+        for (int e=0; e<edim; e++) {
+          int a = trit[ptlook1[e]];
+          int b = trit[ptlook2[e]];
+          if (Math.min(a, b) != v) continue;
+          int w = Math.max(a, b);
+          if (owner[w] != v) {
+            owner[w] = v;
+            number[w] = NumEdges++;
+          }
+          Edges[tris[k]][e] = number[w];
+        }
+      }
+    }
+
+    // call more generic method, which finds nothing left to construct
+    finish_triang(samples);
+  }
+
+  /**
+   * @return indices of the samples in biased randomized insertion
+   *         order: random rounds of doubling length, each sorted
+   *         along a Morton curve
+   */
+  private int[] insertionOrder(int nrs) {
+    int[] order = new int[nrs];
+    for (int i=0; i<nrs; i++) order[i] = i;
+    Random rand = new Random(SEED);
+    for (int i=nrs-1; i>0; i--) {
+      int j = rand.nextInt(i + 1);
+      int t = order[i];
+      order[i] = order[j];
+      order[j] = t;
+    }
+
+    double[][] coords = (dim == 2) ? new double[][] {px, py}
+                                   : new double[][] {px, py, pz};
+    int bits = (dim == 2) ? 16 : 10;
+    double[] low = new double[dim];
+    double[] scale = new double[dim];
+    for (int d=0; d<dim; d++) {
+      double lo = coords[d][0];
+      double hi = lo;
+      for (int i=1; i<nrs; i++) {
+        lo = Math.min(lo, coords[d][i]);
+        hi = Math.max(hi, coords[d][i]);
+      }
+      low[d] = lo;
+      scale[d] = (hi > lo) ? ((1 << bits) - 1) / (hi - lo) : 0.0;
+    }
+
+    // sort each round by curve position, kept above the sample index
+    long[] keys = new long[nrs];
+    int end = nrs;
+    while (end > 0) {
+      int start = (end < MIN_ROUND) ? 0 : end / 2;
+      for (int i=start; i<end; i++) {
+        int p = order[i];
+        long key = 0;
+        for (int d=0; d<dim; d++) {
+          long q = (long) ((coords[d][p] - low[d]) * scale[d]);
+          for (int b=0; b<bits; b++) {
+            key |= ((q >> b) & 1L) << (dim * b + d);
+          }
+        }
+        keys[i - start] = (key << 31) | p;
+      }
+      Arrays.sort(keys, 0, end - start);
+      for (int i=start; i<end; i++) {
+        order[i] = (int) (keys[i - start] & 0x7fffffffL);
+      }
+      end = start;
+    }
+    return order;
+  }
+
+  /**
+   * move dim1 samples in general position to the front of order, and
+   * build the first simplex from them, with a ghost simplex on each of
+   * its facets
+   */
+  private void initialSimplex(int[] order) throws VisADException {
+    int nrs = order.length;
+    int found = 1;
+    for (int i=1; i<nrs && found<dim1; i++) {
+      int p = order[i];
+      boolean general;
+      if (found == 1) {
+        int a = order[0];
+        general = px[p] != px[a] || py[p] != py[a] ||
+                  (dim == 3 && pz[p] != pz[a]);
+      }
+      else if (found == 2) {
+        int a = order[0];
+        int b = order[1];
+        general = orient2(px[a], py[a], px[b], py[b], px[p], py[p]) != 0;
+        if (dim == 3 && !general) {
+          general = orient2(py[a], pz[a], py[b], pz[b], py[p], pz[p]) != 0 ||
+                    orient2(pz[a], px[a], pz[b], px[b], pz[p], px[p]) != 0;
+        }
+      }
+      else {
+        general = orient3(order[0], order[1], order[2], p) != 0;
+      }
+      if (general) {
+        order[i] = order[found];
+        order[found++] = p;
+      }
+    }
+    if (found < dim1) {
+      throw new SetException("DelaunayIncremental: samples are all " +
+                             ((dim == 2) ? "colinear" : "coplanar"));
+    }
+
+    int s = allocate();
+    for (int j=0; j<dim1; j++) vertex[dim1*s + j] = order[j];
+    if (orient(s, 0, order[0]) < 0) {
+      vertex[dim1*s] = order[1];
+      vertex[dim1*s + 1] = order[0];
+    }
+
+    // ghost simplex i replaces vertex i, with two other vertices
+    // swapped so that it is positive when the ghost is outside
+    int[] ghost = new int[dim1];
+    for (int i=0; i<dim1; i++) {
+      int g = allocate();
+      ghost[i] = g;
+      for (int j=0; j<dim1; j++) vertex[dim1*g + j] = vertex[dim1*s + j];
+      vertex[dim1*g + i] = GHOST;
+      int a = (i + 1) % dim1;
+      int b = (i + 2) % dim1;
+      int t = vertex[dim1*g + a];
+      vertex[dim1*g + a] = vertex[dim1*g + b];
+      vertex[dim1*g + b] = t;
+      neighbor[dim1*s + i] = g;
+      neighbor[dim1*g + i] = s;
+    }
+    for (int i=0; i<dim1; i++) {
+      int g = ghost[i];
+      for (int j=0; j<dim1; j++) {
+        int v = vertex[dim1*g + j];
+        if (v == GHOST) continue;
+        // the facet opposite v is shared with the ghost simplex
+        // that replaced v
+        for (int k=0; k<dim1; k++) {
+          if (vertex[dim1*s + k] == v) neighbor[dim1*g + j] = ghost[k];
+        }
+      }
+    }
+    last = s;
+  }
+
+  /**
+   * insert sample p, replacing the simplices in conflict with it
+   */
+  private void insert(int p) throws VisADException {
+    stamp++;
+    int start = locate(p);
+
+    // find the cavity of simplices in conflict, and its boundary
+    int ncavity = 0;
+    int nhull = 0;
+    int nstack = 0;
+    stack[nstack++] = start;
+    visited[start] = stamp;
+    while (nstack > 0) {
+      int c = stack[--nstack];
+      if (ncavity == cavity.length) cavity = grow(cavity);
+      cavity[ncavity++] = c;
+      for (int i=0; i<dim1; i++) {
+        int o = neighbor[dim1*c + i];
+        if (isConflict(o, p)) {
+          if (visited[o] != stamp) {
+            visited[o] = stamp;
+            if (nstack == stack.length) stack = grow(stack);
+            stack[nstack++] = o;
+          }
+        }
+        else {
+          if (nhull + 2 > hull.length) hull = grow(hull);
+          hull[nhull++] = c;
+          hull[nhull++] = i;
+        }
+      }
+    }
+
+    // join each boundary facet to p
+    int nridge = 0;
+    for (int h=0; h<nhull; h+=2) {
+      int c = hull[h];
+      int i = hull[h + 1];
+      int s = allocate();
+      for (int j=0; j<dim1; j++) vertex[dim1*s + j] = vertex[dim1*c + j];
+      vertex[dim1*s + i] = p;
+      int o = neighbor[dim1*c + i];
+      neighbor[dim1*s + i] = o;
+      for (int j=0; j<dim1; j++) {
+        if (neighbor[dim1*o + j] == c) neighbor[dim1*o + j] = s;
+      }
+      if (isSolid(s)) last = s;
+
+      // the other facets contain p, and are shared with the new
+      // simplex on the other side of the ridge they leave out
+      for (int j=0; j<dim1; j++) {
+        if (j == i) continue;
+        long key = 0;
+        for (int k=0; k<dim1; k++) {
+          if (k != i && k != j) key = (key << 32) | (vertex[dim1*s + k] + 1);
+        }
+        if (dim == 3) {
+          long a = key >>> 32;
+          long b = key & 0xffffffffL;
+          if (a > b) key = (b << 32) | a;
+        }
+        int r = 0;
+        while (r < nridge && ridgeKey[r] != key) r++;
+        if (r < nridge) {
+          int f = ridgeFacet[r];
+          neighbor[dim1*s + j] = f / dim1;
+          neighbor[f] = s;
+          nridge--;
+          ridgeKey[r] = ridgeKey[nridge];
+          ridgeFacet[r] = ridgeFacet[nridge];
+        }
+        else {
+          if (nridge == ridgeKey.length) {
+            long[] keys = new long[2 * nridge];
+            System.arraycopy(ridgeKey, 0, keys, 0, nridge);
+            ridgeKey = keys;
+            ridgeFacet = grow(ridgeFacet);
+          }
+          ridgeKey[nridge] = key;
+          ridgeFacet[nridge++] = dim1*s + j;
+        }
+      }
+    }
+    if (nridge != 0) {
+      throw new SetException("DelaunayIncremental: error in triangulation!");
+    }
+
+    for (int k=0; k<ncavity; k++) release(cavity[k]);
+  }
+
+  /**
+   * walk from the last new simplex towards sample p
+   * @return a simplex in conflict with p
+   */
+  private int locate(int p) throws VisADException {
+    int s = last;
+    int steps = 0;
+  Walk:
+    while (true) {
+      if (!isSolid(s)) {
+        // stepped out of the hull across a facet that p is beyond
+        conflict[s] = stamp;
+        return s;
+      }
+      if (steps++ > nsimplex) {
+        throw new SetException("DelaunayIncremental: error in " +
+                               "triangulation!");
+      }
+      random ^= random << 13;
+      random ^= random >>> 17;
+      random ^= random << 5;
+      int first = (random & 0x7fffffff) % dim1;
+      for (int k=0; k<dim1; k++) {
+        int i = (first + k) % dim1;
+        if (orient(s, i, p) < 0) {
+          s = neighbor[dim1*s + i];
+          continue Walk;
+        }
+      }
+      break;
+    }
+
+    // p is in the closed simplex, so inside its circumsphere
+    // unless it is one of the vertices
+    for (int k=0; k<dim1; k++) {
+      int v = vertex[dim1*s + k];
+      if (px[v] == px[p] && py[v] == py[p] && (dim == 2 || pz[v] == pz[p])) {
+        throw new SetException("DelaunayIncremental: samples " + v +
+                               " and " + p + " are duplicates");
+      }
+    }
+    conflict[s] = stamp;
+    return s;
+  }
+
+  /**
+   * @return true if the circumsphere of simplex s contains sample p;
+   *         a ghost simplex is in conflict if p is beyond its hull
+   *         facet, or on the facet's line or plane and in conflict
+   *         with the simplex inside the hull
+   */
+  private boolean isConflict(int s, int p) {
+    int c = conflict[s];
+    if (c == stamp) return true;
+    if (c == -stamp) return false;
+    boolean in;
+    int g = ghostIndex(s);
+    if (g < 0) {
+      in = inSphere(s, p) > 0;
+    }
+    else {
+      int o = orient(s, g, p);
+      in = o > 0 || (o == 0 && isConflict(neighbor[dim1*s + g], p));
+    }
+    conflict[s] = in ? stamp : -stamp;
+    return in;
+  }
+
+  private boolean isSolid(int s) {
+    return vertex[dim1*s] != DEAD && ghostIndex(s) < 0;
+  }
+
+  private int ghostIndex(int s) {
+    for (int k=0; k<dim1; k++) {
+      if (vertex[dim1*s + k] == GHOST) return k;
+    }
+    return -1;
+  }
+
+  private int allocate() {
+    if (nfree > 0) return free[--nfree];
+    if (nsimplex == conflict.length) {
+      int n = nsimplex + nsimplex / 2;
+      int[] v = new int[dim1 * n];
+      System.arraycopy(vertex, 0, v, 0, dim1 * nsimplex);
+      vertex = v;
+      v = new int[dim1 * n];
+      System.arraycopy(neighbor, 0, v, 0, dim1 * nsimplex);
+      neighbor = v;
+      v = new int[n];
+      System.arraycopy(conflict, 0, v, 0, nsimplex);
+      conflict = v;
+      v = new int[n];
+      System.arraycopy(visited, 0, v, 0, nsimplex);
+      visited = v;
+    }
+    return nsimplex++;
+  }
+
+  private void release(int s) {
+    vertex[dim1*s] = DEAD;
+    if (nfree == free.length) free = grow(free);
+    free[nfree++] = s;
+  }
+
+  private static int[] grow(int[] a) {
+    int[] b = new int[2 * a.length];
+    System.arraycopy(a, 0, b, 0, a.length);
+    return b;
+  }
+
+  /**
+   * @return the sign of the orientation of simplex s with vertex i
+   *         replaced by sample p: positive if p is on the same side
+   *         of the facet opposite vertex i as that vertex
+   */
+  private int orient(int s, int i, int p) {
+    int b = dim1 * s;
+    int v0 = (i == 0) ? p : vertex[b];
+    int v1 = (i == 1) ? p : vertex[b + 1];
+    int v2 = (i == 2) ? p : vertex[b + 2];
+    if (dim == 2) {
+      return orient2(px[v0], py[v0], px[v1], py[v1], px[v2], py[v2]);
+    }
+    int v3 = (i == 3) ? p : vertex[b + 3];
+    return orient3(v0, v1, v2, v3);
+  }
+
+  /**
+   * @return the sign of the circumsphere test of positive solid
+   *         simplex s and sample p: positive if p is inside
+   */
+  private int inSphere(int s, int p) {
+    int b = dim1 * s;
+    if (dim == 2) {
+      return inCircle(vertex[b], vertex[b + 1], vertex[b + 2], p);
+    }
+    return inSphere(vertex[b], vertex[b + 1], vertex[b + 2],
+                    vertex[b + 3], p);
+  }
+
+  /* The predicates below follow orient2d, incircle, orient3d and
+     insphere of predicates.c.  When the floating-point result is
+     within its error bound of zero, it is evaluated again exactly.
+     Since the coordinates are floats, none of the products can
+     overflow or underflow a double, so a zero bound means every term
+     is exactly zero. */
+
+  private static int orient2(double ax, double ay, double bx, double by,
+                             double cx, double cy) {
+    double left = (ax - cx) * (by - cy);
+    double right = (ay - cy) * (bx - cx);
+    double det = left - right;
+    double bound = CCW_BOUND * (Math.abs(left) + Math.abs(right));
+    if (det > bound) return 1;
+    if (-det > bound) return -1;
+    if (bound == 0.0) return 0;
+    BigDecimal acx = exact(ax).subtract(exact(cx));
+    BigDecimal acy = exact(ay).subtract(exact(cy));
+    BigDecimal bcx = exact(bx).subtract(exact(cx));
+    BigDecimal bcy = exact(by).subtract(exact(cy));
+    return acx.multiply(bcy).subtract(acy.multiply(bcx)).signum();
+  }
+
+  private int inCircle(int a, int b, int c, int d) {
+    double adx = px[a] - px[d];
+    double bdx = px[b] - px[d];
+    double cdx = px[c] - px[d];
+    double ady = py[a] - py[d];
+    double bdy = py[b] - py[d];
+    double cdy = py[c] - py[d];
+
+    double bdxcdy = bdx * cdy;
+    double cdxbdy = cdx * bdy;
+    double alift = adx * adx + ady * ady;
+    double cdxady = cdx * ady;
+    double adxcdy = adx * cdy;
+    double blift = bdx * bdx + bdy * bdy;
+    double adxbdy = adx * bdy;
+    double bdxady = bdx * ady;
+    double clift = cdx * cdx + cdy * cdy;
+
+    double det = alift * (bdxcdy - cdxbdy) + blift * (cdxady - adxcdy) +
+                 clift * (adxbdy - bdxady);
+    double permanent =
+      (Math.abs(bdxcdy) + Math.abs(cdxbdy)) * alift +
+      (Math.abs(cdxady) + Math.abs(adxcdy)) * blift +
+      (Math.abs(adxbdy) + Math.abs(bdxady)) * clift;
+    double bound = ICC_BOUND * permanent;
+    if (det > bound) return 1;
+    if (-det > bound) return -1;
+    if (bound == 0.0) return 0;
+
+    BigDecimal eadx = exact(px[a]).subtract(exact(px[d]));
+    BigDecimal ebdx = exact(px[b]).subtract(exact(px[d]));
+    BigDecimal ecdx = exact(px[c]).subtract(exact(px[d]));
+    BigDecimal eady = exact(py[a]).subtract(exact(py[d]));
+    BigDecimal ebdy = exact(py[b]).subtract(exact(py[d]));
+    BigDecimal ecdy = exact(py[c]).subtract(exact(py[d]));
+    BigDecimal ealift = eadx.multiply(eadx).add(eady.multiply(eady));
+    BigDecimal eblift = ebdx.multiply(ebdx).add(ebdy.multiply(ebdy));
+    BigDecimal eclift = ecdx.multiply(ecdx).add(ecdy.multiply(ecdy));
+    return ealift.multiply(cross(ebdx, ebdy, ecdx, ecdy))
+           .add(eblift.multiply(cross(ecdx, ecdy, eadx, eady)))
+           .add(eclift.multiply(cross(eadx, eady, ebdx, ebdy))).signum();
+  }
+
+  private int orient3(int a, int b, int c, int d) {
+    double adx = px[a] - px[d];
+    double bdx = px[b] - px[d];
+    double cdx = px[c] - px[d];
+    double ady = py[a] - py[d];
+    double bdy = py[b] - py[d];
+    double cdy = py[c] - py[d];
+    double adz = pz[a] - pz[d];
+    double bdz = pz[b] - pz[d];
+    double cdz = pz[c] - pz[d];
+
+    double bdxcdy = bdx * cdy;
+    double cdxbdy = cdx * bdy;
+    double cdxady = cdx * ady;
+    double adxcdy = adx * cdy;
+    double adxbdy = adx * bdy;
+    double bdxady = bdx * ady;
+
+    double det = adz * (bdxcdy - cdxbdy) + bdz * (cdxady - adxcdy) +
+                 cdz * (adxbdy - bdxady);
+    double permanent =
+      (Math.abs(bdxcdy) + Math.abs(cdxbdy)) * Math.abs(adz) +
+      (Math.abs(cdxady) + Math.abs(adxcdy)) * Math.abs(bdz) +
+      (Math.abs(adxbdy) + Math.abs(bdxady)) * Math.abs(cdz);
+    double bound = O3D_BOUND * permanent;
+    if (det > bound) return 1;
+    if (-det > bound) return -1;
+    if (bound == 0.0) return 0;
+
+    BigDecimal eadx = exact(px[a]).subtract(exact(px[d]));
+    BigDecimal ebdx = exact(px[b]).subtract(exact(px[d]));
+    BigDecimal ecdx = exact(px[c]).subtract(exact(px[d]));
+    BigDecimal eady = exact(py[a]).subtract(exact(py[d]));
+    BigDecimal ebdy = exact(py[b]).subtract(exact(py[d]));
+    BigDecimal ecdy = exact(py[c]).subtract(exact(py[d]));
+    BigDecimal eadz = exact(pz[a]).subtract(exact(pz[d]));
+    BigDecimal ebdz = exact(pz[b]).subtract(exact(pz[d]));
+    BigDecimal ecdz = exact(pz[c]).subtract(exact(pz[d]));
+    return eadz.multiply(cross(ebdx, ebdy, ecdx, ecdy))
+            .add(ebdz.multiply(cross(ecdx, ecdy, eadx, eady)))
+            .add(ecdz.multiply(cross(eadx, eady, ebdx, ebdy))).signum();
+  }
+
+  private int inSphere(int a, int b, int c, int d, int e) {
+    double aex = px[a] - px[e];
+    double bex = px[b] - px[e];
+    double cex = px[c] - px[e];
+    double dex = px[d] - px[e];
+    double aey = py[a] - py[e];
+    double bey = py[b] - py[e];
+    double cey = py[c] - py[e];
+    double dey = py[d] - py[e];
+    double aez = pz[a] - pz[e];
+    double bez = pz[b] - pz[e];
+    double cez = pz[c] - pz[e];
+    double dez = pz[d] - pz[e];
+
+    double aexbey = aex * bey;
+    double bexaey = bex * aey;
+    double ab = aexbey - bexaey;
+    double bexcey = bex * cey;
+    double cexbey = cex * bey;
+    double bc = bexcey - cexbey;
+    double cexdey = cex * dey;
+    double dexcey = dex * cey;
+    double cd = cexdey - dexcey;
+    double dexaey = dex * aey;
+    double aexdey = aex * dey;
+    double da = dexaey - aexdey;
+    double aexcey = aex * cey;
+    double cexaey = cex * aey;
+    double ac = aexcey - cexaey;
+    double bexdey = bex * dey;
+    double dexbey = dex * bey;
+    double bd = bexdey - dexbey;
+
+    double abc = aez * bc - bez * ac + cez * ab;
+    double bcd = bez * cd - cez * bd + dez * bc;
+    double cda = cez * da + dez * ac + aez * cd;
+    double dab = dez * ab + aez * bd + bez * da;
+
+    double alift = aex * aex + aey * aey + aez * aez;
+    double blift = bex * bex + bey * bey + bez * bez;
+    double clift = cex * cex + cey * cey + cez * cez;
+    double dlift = dex * dex + dey * dey + dez * dez;
+
+    double det = (dlift * abc - clift * dab) + (blift * cda - alift * bcd);
+
+    double aezplus = Math.abs(aez);
+    double bezplus = Math.abs(bez);
+    double cezplus = Math.abs(cez);
+    double dezplus = Math.abs(dez);
+    double abplus = Math.abs(aexbey) + Math.abs(bexaey);
+    double bcplus = Math.abs(bexcey) + Math.abs(cexbey);
+    double cdplus = Math.abs(cexdey) + Math.abs(dexcey);
+    double daplus = Math.abs(dexaey) + Math.abs(aexdey);
+    double acplus = Math.abs(aexcey) + Math.abs(cexaey);
+    double bdplus = Math.abs(bexdey) + Math.abs(dexbey);
+    double permanent =
+      (cdplus * bezplus + bdplus * cezplus + bcplus * dezplus) * alift +
+      (daplus * cezplus + acplus * dezplus + cdplus * aezplus) * blift +
+      (abplus * dezplus + bdplus * aezplus + daplus * bezplus) * clift +
+      (bcplus * aezplus + acplus * bezplus + abplus * cezplus) * dlift;
+    double bound = ISP_BOUND * permanent;
+    if (det > bound) return 1;
+    if (-det > bound) return -1;
+    if (bound == 0.0) return 0;
+
+    BigDecimal[] ex = {exact(px[a]).subtract(exact(px[e])),
+                       exact(px[b]).subtract(exact(px[e])),
+                       exact(px[c]).subtract(exact(px[e])),
+                       exact(px[d]).subtract(exact(px[e]))};
+    BigDecimal[] ey = {exact(py[a]).subtract(exact(py[e])),
+                       exact(py[b]).subtract(exact(py[e])),
+                       exact(py[c]).subtract(exact(py[e])),
+                       exact(py[d]).subtract(exact(py[e]))};
+    BigDecimal[] ez = {exact(pz[a]).subtract(exact(pz[e])),
+                       exact(pz[b]).subtract(exact(pz[e])),
+                       exact(pz[c]).subtract(exact(pz[e])),
+                       exact(pz[d]).subtract(exact(pz[e]))};
+    BigDecimal[] lift = new BigDecimal[4];
+    for (int i=0; i<4; i++) {
+      lift[i] = ex[i].multiply(ex[i]).add(ey[i].multiply(ey[i]))
+                     .add(ez[i].multiply(ez[i]));
+    }
+    BigDecimal eab = cross(ex[0], ey[0], ex[1], ey[1]);
+    BigDecimal ebc = cross(ex[1], ey[1], ex[2], ey[2]);
+    BigDecimal ecd = cross(ex[2], ey[2], ex[3], ey[3]);
+    BigDecimal eda = cross(ex[3], ey[3], ex[0], ey[0]);
+    BigDecimal eac = cross(ex[0], ey[0], ex[2], ey[2]);
+    BigDecimal ebd = cross(ex[1], ey[1], ex[3], ey[3]);
+    BigDecimal eabc =
+      ez[0].multiply(ebc).subtract(ez[1].multiply(eac)).add(ez[2].multiply(eab));
+    BigDecimal ebcd =
+      ez[1].multiply(ecd).subtract(ez[2].multiply(ebd)).add(ez[3].multiply(ebc));
+    BigDecimal ecda =
+      ez[2].multiply(eda).add(ez[3].multiply(eac)).add(ez[0].multiply(ecd));
+    BigDecimal edab =
+      ez[3].multiply(eab).add(ez[0].multiply(ebd)).add(ez[1].multiply(eda));
+    return lift[3].multiply(eabc).subtract(lift[2].multiply(edab))
+            .add(lift[1].multiply(ecda)).subtract(lift[0].multiply(ebcd))
+            .signum();
+  }
+
+  private static BigDecimal exact(double v) {
+    return new BigDecimal(v);
+  }
+
+  private static BigDecimal cross(BigDecimal ax, BigDecimal ay,
+                                  BigDecimal bx, BigDecimal by) {
+    return ax.multiply(by).subtract(bx.multiply(ay));
+  }
+
+}
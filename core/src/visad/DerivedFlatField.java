@@ -0,0 +1,1047 @@
+//
+// DerivedFlatField.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import visad.util.ParallelChunks;
+
+/**
+   DerivedFlatField is a FlatField whose range values are the result of
+   unary and binary operations on other FlatFields, computed when they
+   are first needed.  It is returned by {@link FlatField#binary} and
+   {@link FlatField#unary} when {@link FlatField#setLazyDerivation} is
+   enabled and the operation qualifies.<P>
+
+   Operations on a DerivedFlatField that has not been evaluated compose
+   with its expression rather than evaluating it, so an expression such
+   as (a - b) * c / d is computed in a single pass over the samples, in
+   chunks that run concurrently on {@link ParallelChunks}, without range
+   arrays for the intermediate results.  The values are the same as
+   those computed by the eager operations, including Unit conversions
+   and float or double precision.<P>
+
+   Only operations between FlatFields with the same domain Set, or
+   between a FlatField and a Real, with no range CoordinateSystems and no
+   ErrorEstimate propagation qualify; other operations are done eagerly.  The operand FlatFields are referenced rather than copied,
+   so they must not be modified until the DerivedFlatField has been
+   evaluated.<P>
+*/
+public class DerivedFlatField extends FlatField {
+
+  private static final long serialVersionUID = 1L;
+
+  /** number of samples in each chunk of an evaluation */
+  private static final int CHUNK_SIZE = 16384;
+
+  /** expression for each range component; null once evaluated */
+  private transient volatile Node[] roots;
+
+  /** true while this thread is storing the evaluated values */
+  private transient boolean evaluating = false;
+
+  private DerivedFlatField(FunctionType type, Set domain_set,
+                           Set[] range_sets, Unit[] units, Node[] roots)
+          throws VisADException {
+    super(type, domain_set, (CoordinateSystem) null,
+          (CoordinateSystem[]) null, range_sets, units);
+    this.roots = roots;
+  }
+
+  /**
+   * Return a DerivedFlatField for 'field op data', or null if the
+   * operation does not qualify for deferred evaluation.
+   */
+  static FlatField binary(FlatField field, FlatField data, int op,
+                          MathType new_type, int error_mode)
+          throws VisADException {
+    if (!qualifies(field, new_type) || !qualifies(data, null) ||
+        !field.getDomainSet().equals(data.getDomainSet())) {
+      return null;
+    }
+    int n = field.TupleDimension;
+    if (data.TupleDimension != n) return null;
+    if (error_mode != Data.NO_ERRORS) {
+      ErrorEstimate[] thisErrs = field.getRangeErrors();
+      ErrorEstimate[] thatErrs = data.getRangeErrors();
+      for (int j=0; j<n; j++) {
+        if (thisErrs[j] != null && thatErrs[j] != null) return null;
+      }
+    }
+
+    boolean isDouble = field.shouldBeDouble() && data.shouldBeDouble();
+    Node[] thisNodes = getNodes(field);
+    Node[] thatNodes = getNodes(data);
+    Node[] nodes = new Node[n];
+    Unit[] outUnits = new Unit[n];
+    for (int j=0; j<n; j++) {
+      Node a = thisNodes[j];
+      Node b = thatNodes[j];
+      Unit thisUnit = field.RangeUnits[j];
+      Unit thatUnit = data.RangeUnits[j];
+      Unit out = null;
+      try {
+        switch (op) {
+          case Data.ADD:
+          case Data.SUBTRACT:
+          case Data.INV_SUBTRACT:
+          case Data.MAX:
+          case Data.MIN:
+            if (thisUnit == null || thatUnit == null) {
+              out = null;
+            }
+            else if (thisUnit == CommonUnit.promiscuous) {
+              out = thatUnit.getAbsoluteUnit();
+            }
+            else if (thatUnit == CommonUnit.promiscuous) {
+              out = thisUnit.getAbsoluteUnit();
+            }
+            else {
+              out = thisUnit.getAbsoluteUnit();
+              a = convert(a, out, thisUnit, isDouble);
+              if (Unit.canConvert(out, thatUnit)) {
+                b = convert(b, out, thatUnit, isDouble);
+              }
+              else {
+                out = null;
+              }
+            }
+            break;
+
+          case Data.MULTIPLY:
+          case Data.DIVIDE:
+          case Data.INV_DIVIDE:
+            if (thisUnit != null) {
+              Unit absUnit = thisUnit.getAbsoluteUnit();
+              a = convert(a, absUnit, thisUnit, isDouble);
+              thisUnit = absUnit;
+            }
+            if (thatUnit != null) {
+              Unit absUnit = thatUnit.getAbsoluteUnit();
+              b = convert(b, absUnit, thatUnit, isDouble);
+              thatUnit = absUnit;
+            }
+            if (thisUnit != null && thatUnit != null) {
+              if (op == Data.MULTIPLY) {
+                out = thisUnit.equals(CommonUnit.promiscuous) ? thatUnit
+                    : thatUnit.equals(CommonUnit.promiscuous) ? thisUnit
+                    : thisUnit.multiply(thatUnit);
+              }
+              else if (op == Data.DIVIDE) {
+                out = thatUnit.equals(CommonUnit.promiscuous) ? thisUnit
+                    : thisUnit.divide(thatUnit);
+              }
+              else {
+                out = thisUnit.equals(CommonUnit.promiscuous) ? thatUnit
+                    : thatUnit.divide(thisUnit);
+              }
+            }
+            break;
+
+          case Data.POW:
+          case Data.INV_POW:
+            Unit baseUnit = (op == Data.POW) ? thisUnit : thatUnit;
+            Unit expUnit = (op == Data.POW) ? thatUnit : thisUnit;
+            if (baseUnit != null) {
+              Unit absUnit = baseUnit.getAbsoluteUnit();
+              if (op == Data.POW) {
+                a = convert(a, absUnit, baseUnit, isDouble);
+              }
+              else {
+                b = convert(b, absUnit, baseUnit, isDouble);
+              }
+              baseUnit = absUnit;
+            }
+            if (expUnit != null && !CommonUnit.promiscuous.equals(expUnit)) {
+              Unit absUnit = expUnit.getAbsoluteUnit();
+              if (op == Data.POW) {
+                b = convert(b, absUnit, expUnit, isDouble);
+              }
+              else {
+                a = convert(a, absUnit, expUnit, isDouble);
+              }
+            }
+            if (baseUnit != null &&
+                (baseUnit.equals(CommonUnit.promiscuous) ||
+                 baseUnit.equals(CommonUnit.dimensionless))) {
+              out = baseUnit;
+            }
+            break;
+
+          case Data.ATAN2:
+          case Data.ATAN2_DEGREES:
+          case Data.INV_ATAN2:
+          case Data.INV_ATAN2_DEGREES:
+          case Data.REMAINDER:
+          case Data.INV_REMAINDER:
+            if (thisUnit != null && thatUnit != null) {
+              Unit absUnit = thisUnit.getAbsoluteUnit();
+              if (!Unit.canConvert(absUnit, thatUnit)) return null;
+              a = convert(a, absUnit, thisUnit, isDouble);
+              b = convert(b, absUnit, thatUnit, isDouble);
+              thisUnit = absUnit;
+              thatUnit = absUnit;
+            }
+            if (op == Data.ATAN2 || op == Data.INV_ATAN2) {
+              out = CommonUnit.radian;
+            }
+            else if (op == Data.ATAN2_DEGREES || op == Data.INV_ATAN2_DEGREES) {
+              out = CommonUnit.degree;
+            }
+            else if (op == Data.REMAINDER) {
+              out = thisUnit;
+            }
+            else {
+              out = thatUnit;
+            }
+            break;
+
+          default:
+            return null;
+        }
+      }
+      catch (UnitException e) {
+        // let the eager operation report it
+        return null;
+      }
+      nodes[j] = new Binary(op, a, b, isDouble);
+      outUnits[j] = out;
+    }
+    return create(field, new_type, outUnits, nodes, isDouble);
+  }
+
+  /**
+   * Return a DerivedFlatField for 'field op real', or null if the
+   * operation does not qualify for deferred evaluation.  Units are
+   * handled as in the Real case of FlatField.binary, which converts the
+   * Real value once rather than per sample.
+   */
+  static FlatField binary(FlatField field, Real real, int op,
+                          MathType new_type, int error_mode)
+          throws VisADException {
+    if (!qualifies(field, new_type) || real.isMissing()) return null;
+    int n = field.TupleDimension;
+    if (error_mode != Data.NO_ERRORS && real.getError() != null) {
+      ErrorEstimate[] errors = field.getRangeErrors();
+      for (int j=0; j<n; j++) {
+        if (errors[j] != null) return null;
+      }
+    }
+
+    boolean isDouble = field.shouldBeDouble();
+    Node[] thisNodes = getNodes(field);
+    Node[] nodes = new Node[n];
+    Unit[] outUnits = new Unit[n];
+    for (int j=0; j<n; j++) {
+      Node a = thisNodes[j];
+      double value = real.getValue();
+      Unit thisUnit = field.RangeUnits[j];
+      Unit thatUnit = real.getUnit();
+      Unit out = null;
+      try {
+        switch (op) {
+          case Data.ADD:
+          case Data.SUBTRACT:
+          case Data.INV_SUBTRACT:
+          case Data.MAX:
+          case Data.MIN:
+            if (thisUnit == null || thatUnit == null) {
+              out = null;
+            }
+            else if (thisUnit == CommonUnit.promiscuous) {
+              out = thatUnit.getAbsoluteUnit();
+            }
+            else if (thatUnit == CommonUnit.promiscuous) {
+              out = thisUnit.getAbsoluteUnit();
+            }
+            else {
+              out = thisUnit.getAbsoluteUnit();
+              a = convert(a, out, thisUnit, isDouble);
+              if (Unit.canConvert(out, thatUnit)) {
+                if (!out.equals(thatUnit)) value = out.toThis(value, thatUnit);
+              }
+              else {
+                out = null;
+              }
+            }
+            break;
+
+          case Data.MULTIPLY:
+          case Data.DIVIDE:
+          case Data.INV_DIVIDE:
+            if (thisUnit != null) {
+              Unit absUnit = thisUnit.getAbsoluteUnit();
+              a = convert(a, absUnit, thisUnit, isDouble);
+              thisUnit = absUnit;
+            }
+            if (thatUnit != null) {
+              Unit absUnit = thatUnit.getAbsoluteUnit();
+              if (!absUnit.equals(thatUnit)) {
+                value = absUnit.toThis(value, thatUnit);
+              }
+              thatUnit = absUnit;
+            }
+            if (thisUnit != null && thatUnit != null) {
+              if (op == Data.MULTIPLY) {
+                out = thisUnit.equals(CommonUnit.promiscuous) ? thatUnit
+                    : thatUnit.equals(CommonUnit.promiscuous) ? thisUnit
+                    : thisUnit.multiply(thatUnit);
+              }
+              else if (op == Data.DIVIDE) {
+                out = thatUnit.equals(CommonUnit.promiscuous) ? thisUnit
+                    : thisUnit.divide(thatUnit);
+              }
+              else {
+                out = thisUnit.equals(CommonUnit.promiscuous) ? thatUnit
+                    : thatUnit.divide(thisUnit);
+              }
+            }
+            break;
+
+          case Data.POW:
+          case Data.INV_POW:
+            Unit baseUnit = (op == Data.POW) ? thisUnit : thatUnit;
+            Unit expUnit = (op == Data.POW) ? thatUnit : thisUnit;
+            if (baseUnit != null) {
+              Unit absUnit = baseUnit.getAbsoluteUnit();
+              if (op == Data.POW) {
+                a = convert(a, absUnit, baseUnit, isDouble);
+              }
+              else if (!absUnit.equals(baseUnit)) {
+                value = absUnit.toThis(value, baseUnit);
+              }
+              baseUnit = absUnit;
+            }
+            if (expUnit != null && !CommonUnit.promiscuous.equals(expUnit)) {
+              Unit absUnit = expUnit.getAbsoluteUnit();
+              if (op == Data.INV_POW) {
+                a = convert(a, absUnit, expUnit, isDouble);
+              }
+              else if (!absUnit.equals(expUnit)) {
+                value = absUnit.toThis(value, expUnit);
+              }
+            }
+            if (baseUnit != null &&
+                (baseUnit.equals(CommonUnit.promiscuous) ||
+                 baseUnit.equals(CommonUnit.dimensionless))) {
+              out = baseUnit;
+            }
+            break;
+
+          case Data.ATAN2:
+          case Data.ATAN2_DEGREES:
+          case Data.INV_ATAN2:
+          case Data.INV_ATAN2_DEGREES:
+          case Data.REMAINDER:
+          case Data.INV_REMAINDER:
+            if (thisUnit != null && thatUnit != null) {
+              Unit absUnit = thisUnit.getAbsoluteUnit();
+              if (!Unit.canConvert(absUnit, thatUnit)) return null;
+              a = convert(a, absUnit, thisUnit, isDouble);
+              if (!absUnit.equals(thatUnit)) {
+                value = absUnit.toThis(value, thatUnit);
+              }
+              thisUnit = absUnit;
+              thatUnit = absUnit;
+            }
+            if (op == Data.ATAN2 || op == Data.INV_ATAN2) {
+              out = CommonUnit.radian;
+            }
+            else if (op == Data.ATAN2_DEGREES || op == Data.INV_ATAN2_DEGREES) {
+              out = CommonUnit.degree;
+            }
+            else if (op == Data.REMAINDER) {
+              out = thisUnit;
+            }
+            else {
+              out = thatUnit;
+            }
+            break;
+
+          default:
+            return null;
+        }
+      }
+      catch (UnitException e) {
+        // let the eager operation report it
+        return null;
+      }
+      nodes[j] = new Binary(op, a, new Constant(value, isDouble), isDouble);
+      outUnits[j] = out;
+    }
+    return create(field, new_type, outUnits, nodes, isDouble);
+  }
+
+  /**
+   * Return a DerivedFlatField for 'op field', or null if the operation
+   * does not qualify for deferred evaluation.
+   */
+  static FlatField unary(FlatField field, int op, MathType new_type,
+                         int error_mode)
+          throws VisADException {
+    switch (op) {
+      case Data.ABS:
+      case Data.CEIL:
+      case Data.EXP:
+      case Data.FLOOR:
+      case Data.LOG:
+      case Data.NEGATE:
+      case Data.NOP:
+      case Data.RINT:
+      case Data.SQRT:
+        break;
+      default:
+        return null;
+    }
+    if (!qualifies(field, new_type)) return null;
+    int n = field.TupleDimension;
+    if (error_mode != Data.NO_ERRORS) {
+      ErrorEstimate[] errors = field.getRangeErrors();
+      for (int j=0; j<n; j++) {
+        if (errors[j] != null) return null;
+      }
+    }
+
+    boolean isDouble = field.shouldBeDouble();
+    Node[] childNodes = getNodes(field);
+    Node[] nodes = new Node[n];
+    Unit[] outUnits = new Unit[n];
+    for (int j=0; j<n; j++) {
+      Node child = childNodes[j];
+      // same as FlatField.makeRational
+      Unit unit = field.RangeUnits[j];
+      if (unit != null && !(unit instanceof PromiscuousUnit)) {
+        Unit rational = unit.getAbsoluteUnit();
+        if (Unit.canConvert(rational, CommonUnit.dimensionless)) {
+          rational = CommonUnit.dimensionless;
+        }
+        child = convert(child, rational, unit, isDouble);
+        unit = rational;
+      }
+
+      Unit out;
+      switch (op) {
+        case Data.EXP:
+        case Data.LOG:
+          out = CommonUnit.dimensionless.equals(unit) ? unit : null;
+          break;
+        case Data.SQRT:
+          out = null;
+          if (unit != null) {
+            try {
+              out = unit.sqrt();
+            }
+            catch (IllegalArgumentException e) {
+            }
+            catch (UnitException e) {
+            }
+          }
+          break;
+        default:
+          out = unit;
+          break;
+      }
+      nodes[j] = (op == Data.NOP) ? child : new Unary(op, child, isDouble);
+      outUnits[j] = out;
+    }
+    return create(field, new_type, outUnits, nodes, isDouble);
+  }
+
+  /**
+   * @return true if the values of field can be part of an expression
+   */
+  private static boolean qualifies(FlatField field, MathType new_type)
+          throws VisADException {
+    if (new_type != null && !(new_type instanceof FunctionType)) return false;
+    FunctionType type = (FunctionType) field.getType();
+    if (!type.getReal() || type.getFlatRange().getCoordinateSystem() != null ||
+        field.RangeCoordinateSystem != null) {
+      return false;
+    }
+    if (field.RangeCoordinateSystems != null) {
+      for (int i=0; i<field.RangeCoordinateSystems.length; i++) {
+        if (field.RangeCoordinateSystems[i] != null) return false;
+      }
+    }
+    if (field instanceof DerivedFlatField &&
+        ((DerivedFlatField) field).roots != null) {
+      return true;
+    }
+    return !field.isMissing();
+  }
+
+  /**
+   * @return the expressions for the range components of field
+   */
+  private static Node[] getNodes(FlatField field) {
+    if (field instanceof DerivedFlatField) {
+      Node[] roots = ((DerivedFlatField) field).roots;
+      if (roots != null) return roots;
+    }
+    boolean isDouble = field.shouldBeDouble();
+    Source source = new Source(field, isDouble);
+    Node[] nodes = new Node[field.TupleDimension];
+    for (int j=0; j<nodes.length; j++) {
+      nodes[j] = new Leaf(source, j, isDouble);
+    }
+    return nodes;
+  }
+
+  private static Node convert(Node node, Unit out, Unit in, boolean isDouble) {
+    if (out == null || in == null || out.equals(in)) return node;
+    return new Convert(node, out, in, isDouble);
+  }
+
+  /**
+   * Create the result field, in the same way as FlatField.cloneFloat and
+   * FlatField.cloneDouble.
+   */
+  private static DerivedFlatField create(FlatField field, MathType new_type,
+                                         Unit[] units, Node[] nodes,
+                                         boolean isDouble)
+          throws VisADException {
+    FunctionType type =
+      (FunctionType) ((new_type == null) ? field.getType() : new_type);
+    Set[] sets = new Set[nodes.length];
+    for (int i=0; i<nodes.length; i++) {
+      SetType set_type = new SetType(type.getFlatRange().getComponent(i));
+      sets[i] = isDouble ? (Set) new DoubleSet(set_type)
+                         : (Set) new FloatSet(set_type);
+    }
+    Set domain_set = field.getDomainSet();
+    RealTupleType d_type = type.getDomain();
+    if (!d_type.equals(((FunctionType) field.getType()).getDomain())) {
+      domain_set = (Set) domain_set.cloneButType(d_type);
+    }
+    return new DerivedFlatField(type, domain_set, sets, units, nodes);
+  }
+
+  /**
+   * @return true if the range values have been computed
+   */
+  public boolean isEvaluated() {
+    return roots == null;
+  }
+
+  /**
+   * Compute the range values, if that has not been done yet.
+   * @throws VisADException     if an operation failed
+   */
+  public void evaluate() throws VisADException {
+    if (roots == null) return;
+    synchronized (getRangeLock()) {
+      Node[] nodes = roots;
+      if (nodes == null || evaluating) return;
+      evaluating = true;
+      try {
+        compute(nodes);
+        roots = null;
+      }
+      finally {
+        evaluating = false;
+      }
+    }
+  }
+
+  private void compute(final Node[] nodes) throws VisADException {
+    final int length = getLength();
+    final int n = nodes.length;
+    boolean isDouble = shouldBeDouble();
+    final double[][] valuesD = isDouble ? new double[n][length] : null;
+    final float[][] valuesF = isDouble ? null : new float[n][length];
+
+    Map<FlatField, Object> arrays = new IdentityHashMap<FlatField, Object>();
+    for (int j=0; j<n; j++) {
+      nodes[j].prepare(arrays);
+    }
+
+    try {
+      ParallelChunks.run(length, CHUNK_SIZE, new ParallelChunks.Chunk() {
+        public void run(int start, int end) throws VisADException {
+          int count = end - start;
+          double[] buffer = new double[count];
+          for (int j=0; j<n; j++) {
+            nodes[j].evaluate(start, count, buffer);
+            if (valuesD != null) {
+              System.arraycopy(buffer, 0, valuesD[j], start, count);
+            }
+            else {
+              float[] values = valuesF[j];
+              for (int i=0; i<count; i++) {
+                values[start + i] = (float) buffer[i];
+              }
+            }
+          }
+        }
+      });
+    }
+    catch (RemoteException e) {
+      throw new VisADException(e.toString());
+    }
+
+    if (valuesD != null) {
+      initSamples(valuesD);
+    }
+    else {
+      initSamples(valuesF);
+    }
+  }
+
+  /**
+   * Test whether range values are missing, computing them first if
+   * necessary.
+   * @return  true if the range values have not been set
+   */
+  public boolean isMissing() {
+    if (roots != null) {
+      try {
+        evaluate();
+      }
+      catch (VisADException e) {
+        throw new VisADError("DerivedFlatField: " + e);
+      }
+    }
+    return super.isMissing();
+  }
+
+  public void setSamples(double[][] range, ErrorEstimate[] errors,
+                         boolean copy)
+         throws VisADException, RemoteException {
+    discard();
+    super.setSamples(range, errors, copy);
+  }
+
+  public void setSamples(float[][] range, ErrorEstimate[] errors,
+                         boolean copy)
+         throws VisADException, RemoteException {
+    discard();
+    super.setSamples(range, errors, copy);
+  }
+
+  public void setSamples(int start, double[][] range)
+         throws VisADException, RemoteException {
+    evaluate();
+    super.setSamples(start, range);
+  }
+
+  public void setSamples(int[] indices, double[][] range)
+         throws VisADException, RemoteException {
+    evaluate();
+    super.setSamples(indices, range);
+  }
+
+  public void setSample(int index, Data range)
+         throws VisADException, RemoteException {
+    evaluate();
+    super.setSample(index, range);
+  }
+
+  /** drop the expression when all range values are replaced */
+  private void discard() {
+    synchronized (getRangeLock()) {
+      if (!evaluating) roots = null;
+    }
+  }
+
+  public Object clone() {
+    try {
+      evaluate();
+    }
+    catch (VisADException e) {
+      throw new VisADError("DerivedFlatField: " + e);
+    }
+    return super.clone();
+  }
+
+  public boolean equals(Object obj) {
+    isMissing();
+    return super.equals(obj);
+  }
+
+  public int hashCode() {
+    return super.hashCode();
+  }
+
+  /**
+   * Compute the range values before this is serialized, since the
+   * expression is not; FlatField writes its range arrays before any
+   * writeObject of this class would run.
+   */
+  private Object writeReplace() throws ObjectStreamException {
+    try {
+      evaluate();
+    }
+    catch (VisADException e) {
+      throw new NotSerializableException("DerivedFlatField: " + e);
+    }
+    return this;
+  }
+
+  /** run 'java visad.DerivedFlatField' to test serializing a
+      DerivedFlatField that has not been evaluated */
+  public static void main(String[] args)
+         throws VisADException, RemoteException {
+    RealType x = RealType.getRealType("X");
+    RealType a = RealType.getRealType("A");
+    FunctionType type = new FunctionType(x, a);
+    Integer1DSet set = new Integer1DSet(x, 100);
+    FlatField f = new FlatField(type, set);
+    FlatField g = new FlatField(type, set);
+    float[][] fv = new float[1][100];
+    float[][] gv = new float[1][100];
+    for (int i=0; i<100; i++) {
+      fv[0][i] = i;
+      gv[0][i] = 0.5f * i + 1.0f;
+    }
+    f.setSamples(fv);
+    g.setSamples(gv);
+
+    boolean lazy = getLazyDerivation();
+    setLazyDerivation(true);
+    FlatField d;
+    try {
+      d = (FlatField) f.multiply(g).subtract(f);
+    }
+    finally {
+      setLazyDerivation(lazy);
+    }
+    boolean derived = d instanceof DerivedFlatField;
+    System.out.println("derived: " + derived + " evaluated: " +
+                       (!derived || ((DerivedFlatField) d).isEvaluated()));
+
+    FlatField e;
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(d);
+      out.close();
+      ObjectInputStream in = new ObjectInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()));
+      e = (FlatField) in.readObject();
+      in.close();
+    }
+    catch (IOException ex) {
+      throw new VisADException("DerivedFlatField: " + ex);
+    }
+    catch (ClassNotFoundException ex) {
+      throw new VisADException("DerivedFlatField: " + ex);
+    }
+
+    float[][] dv = d.getFloats(false);
+    float[][] ev = e.getFloats(false);
+    boolean same = !e.isMissing() && Arrays.equals(dv[0], ev[0]);
+    System.out.println("deserialized missing: " + e.isMissing() +
+                       " values equal: " + same);
+    if (!same) {
+      throw new VisADException("DerivedFlatField: serialization failed");
+    }
+  }
+
+  /**
+   * A FlatField whose range values are read by Leaf nodes.
+   */
+  private static final class Source {
+    final FlatField field;
+    final boolean isDouble;
+    double[][] valuesD;
+    float[][] valuesF;
+
+    Source(FlatField field, boolean isDouble) {
+      this.field = field;
+      this.isDouble = isDouble;
+    }
+
+    void prepare(Map<FlatField, Object> arrays) throws VisADException {
+      if (valuesD != null || valuesF != null) return;
+      Object values = arrays.get(field);
+      if (values == null) {
+        values = isDouble ? (Object) field.unpackValues(false)
+                          : (Object) field.unpackFloats(false);
+        arrays.put(field, values);
+      }
+      if (isDouble) {
+        valuesD = (double[][]) values;
+      }
+      else {
+        valuesF = (float[][]) values;
+      }
+    }
+  }
+
+  /**
+   * Computes one range component of an expression.  Values are computed
+   * in double; nodes that are not double round each result to float, as
+   * the eager float operations do.
+   */
+  abstract static class Node {
+    final boolean isDouble;
+
+    Node(boolean isDouble) {
+      this.isDouble = isDouble;
+    }
+
+    /** get the range arrays of the FlatFields this node reads */
+    abstract void prepare(Map<FlatField, Object> arrays)
+             throws VisADException;
+
+    /** compute samples start to start + count - 1 into out */
+    abstract void evaluate(int start, int count, double[] out)
+             throws VisADException;
+
+    /** evaluate, rounding to float if this node is float but node is not */
+    void evaluate(Node node, int start, int count, double[] out)
+            throws VisADException {
+      node.evaluate(start, count, out);
+      if (!isDouble && node.isDouble) {
+        for (int i=0; i<count; i++) out[i] = (float) out[i];
+      }
+    }
+  }
+
+  private static final class Leaf extends Node {
+    final Source source;
+    final int component;
+
+    Leaf(Source source, int component, boolean isDouble) {
+      super(isDouble);
+      this.source = source;
+      this.component = component;
+    }
+
+    void prepare(Map<FlatField, Object> arrays) throws VisADException {
+      source.prepare(arrays);
+    }
+
+    void evaluate(int start, int count, double[] out) {
+      if (source.valuesD != null) {
+        double[] values = source.valuesD[component];
+        System.arraycopy(values, start, out, 0, count);
+      }
+      else {
+        float[] values = source.valuesF[component];
+        for (int i=0; i<count; i++) out[i] = values[start + i];
+      }
+    }
+  }
+
+  /**
+   * The value of a Real operand, already in the Unit of the operation.
+   * It is not rounded to float, as the eager operations use it as a
+   * double.
+   */
+  private static final class Constant extends Node {
+    final double value;
+
+    Constant(double value, boolean isDouble) {
+      super(isDouble);
+      this.value = value;
+    }
+
+    void prepare(Map<FlatField, Object> arrays) {
+    }
+
+    void evaluate(int start, int count, double[] out) {
+      Arrays.fill(out, 0, count, value);
+    }
+  }
+
+  private static final class Convert extends Node {
+    final Node node;
+    final Unit out;
+    final Unit in;
+
+    Convert(Node node, Unit out, Unit in, boolean isDouble) {
+      super(isDouble);
+      this.node = node;
+      this.out = out;
+      this.in = in;
+    }
+
+    void prepare(Map<FlatField, Object> arrays) throws VisADException {
+      node.prepare(arrays);
+    }
+
+    void evaluate(int start, int count, double[] values)
+            throws VisADException {
+      evaluate(node, start, count, values);
+      if (isDouble) {
+        double[] converted = out.toThis(values, in);
+        if (converted != values) {
+          System.arraycopy(converted, 0, values, 0, count);
+        }
+      }
+      else {
+        float[] floats = new float[count];
+        for (int i=0; i<count; i++) floats[i] = (float) values[i];
+        floats = out.toThis(floats, in);
+        for (int i=0; i<count; i++) values[i] = floats[i];
+      }
+    }
+  }
+
+  private static final class Unary extends Node {
+    final int op;
+    final Node node;
+
+    Unary(int op, Node node, boolean isDouble) {
+      super(isDouble);
+      this.op = op;
+      this.node = node;
+    }
+
+    void prepare(Map<FlatField, Object> arrays) throws VisADException {
+      node.prepare(arrays);
+    }
+
+    void evaluate(int start, int count, double[] values)
+            throws VisADException {
+      evaluate(node, start, count, values);
+      int i;
+      switch (op) {
+        case Data.ABS:
+          for (i=0; i<count; i++) values[i] = Math.abs(values[i]);
+          break;
+        case Data.CEIL:
+          for (i=0; i<count; i++) values[i] = Math.ceil(values[i]);
+          break;
+        case Data.EXP:
+          for (i=0; i<count; i++) values[i] = Math.exp(values[i]);
+          break;
+        case Data.FLOOR:
+          for (i=0; i<count; i++) values[i] = Math.floor(values[i]);
+          break;
+        case Data.LOG:
+          for (i=0; i<count; i++) values[i] = Math.log(values[i]);
+          break;
+        case Data.NEGATE:
+          for (i=0; i<count; i++) values[i] = -values[i];
+          break;
+        case Data.RINT:
+          for (i=0; i<count; i++) values[i] = Math.rint(values[i]);
+          break;
+        case Data.SQRT:
+          for (i=0; i<count; i++) values[i] = Math.sqrt(values[i]);
+          break;
+      }
+      if (!isDouble) {
+        for (i=0; i<count; i++) values[i] = (float) values[i];
+      }
+    }
+  }
+
+  private static final class Binary extends Node {
+    final int op;
+    final Node left;
+    final Node right;
+
+    Binary(int op, Node left, Node right, boolean isDouble) {
+      super(isDouble);
+      this.op = op;
+      this.left = left;
+      this.right = right;
+    }
+
+    void prepare(Map<FlatField, Object> arrays) throws VisADException {
+      left.prepare(arrays);
+      right.prepare(arrays);
+    }
+
+    void evaluate(int start, int count, double[] a) throws VisADException {
+      evaluate(left, start, count, a);
+      double[] b = new double[count];
+      evaluate(right, start, count, b);
+      int i;
+      switch (op) {
+        case Data.ADD:
+          for (i=0; i<count; i++) a[i] += b[i];
+          break;
+        case Data.SUBTRACT:
+          for (i=0; i<count; i++) a[i] -= b[i];
+          break;
+        case Data.INV_SUBTRACT:
+          for (i=0; i<count; i++) a[i] = b[i] - a[i];
+          break;
+        case Data.MAX:
+          for (i=0; i<count; i++) a[i] = Math.max(a[i], b[i]);
+          break;
+        case Data.MIN:
+          for (i=0; i<count; i++) a[i] = Math.min(a[i], b[i]);
+          break;
+        case Data.MULTIPLY:
+          for (i=0; i<count; i++) a[i] *= b[i];
+          break;
+        case Data.DIVIDE:
+          for (i=0; i<count; i++) a[i] /= b[i];
+          break;
+        case Data.INV_DIVIDE:
+          for (i=0; i<count; i++) a[i] = b[i] / a[i];
+          break;
+        case Data.POW:
+          for (i=0; i<count; i++) a[i] = Math.pow(a[i], b[i]);
+          break;
+        case Data.INV_POW:
+          for (i=0; i<count; i++) a[i] = Math.pow(b[i], a[i]);
+          break;
+        case Data.ATAN2:
+          for (i=0; i<count; i++) a[i] = Math.atan2(a[i], b[i]);
+          break;
+        case Data.ATAN2_DEGREES:
+          for (i=0; i<count; i++) {
+            a[i] = Data.RADIANS_TO_DEGREES * Math.atan2(a[i], b[i]);
+          }
+          break;
+        case Data.INV_ATAN2:
+          for (i=0; i<count; i++) a[i] = Math.atan2(b[i], a[i]);
+          break;
+        case Data.INV_ATAN2_DEGREES:
+          for (i=0; i<count; i++) {
+            a[i] = Data.RADIANS_TO_DEGREES * Math.atan2(b[i], a[i]);
+          }
+          break;
+        case Data.REMAINDER:
+          for (i=0; i<count; i++) a[i] %= b[i];
+          break;
+        case Data.INV_REMAINDER:
+          for (i=0; i<count; i++) a[i] = b[i] % a[i];
+          break;
+      }
+      if (!isDouble) {
+        for (i=0; i<count; i++) a[i] = (float) a[i];
+      }
+    }
+  }
+}
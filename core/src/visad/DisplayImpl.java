@@ -62,6 +62,7 @@ import visad.util.AnimationWidget;
 import visad.util.ContourWidget;
 import visad.util.GMCWidget;
 import visad.util.LabeledColorWidget;
+import visad.util.ParallelChunks;
 import visad.util.RangeWidget;
 import visad.util.SelectRangeWidget;
 import visad.util.VisADSlider;
@@ -150,6 +151,16 @@ public abstract class DisplayImpl extends ActionImpl implements LocalDisplay {
   /** set to re-display all linked Data */
   private boolean redisplay_all = false;
 
+  /** default for concurrentTransforms of new displays */
+  private static boolean defaultConcurrentTransforms =
+    Boolean.getBoolean("visad.display.concurrenttransforms");
+
+  /**
+   * set to transform the Data of different DataRenderers
+   *   concurrently in doAction 
+   */
+  private boolean concurrentTransforms = defaultConcurrentTransforms;
+
 
   /**
    * length of ValueArray of distinct DisplayRealType values;
@@ -734,6 +745,50 @@ public abstract class DisplayImpl extends ActionImpl implements LocalDisplay {
     always_initialize = a;
   }
 
+  /**
+   * Set whether doAction transforms the Data linked to different
+   * DataRenderers concurrently, on the pool of
+   * {@link visad.util.ParallelChunks}.  The resulting depictions are
+   * still attached to the scene graph one DataRenderer at a time, in
+   * the order the DataRenderers were added, so the time to re-transform
+   * a display is bounded by its slowest DataRenderer rather than the
+   * sum of all of them.  Only DataRenderers whose
+   * {@link DataRenderer#isConcurrentTransformSupported} returns true,
+   * and which do not support direct manipulation, take part; the
+   * others are transformed in order on the action thread as before.
+   * The transforms of these DataRenderers must not depend on each other.
+   * @param concurrent flag indicating whether to transform concurrently
+   */
+  public void setConcurrentTransforms(boolean concurrent) {
+    concurrentTransforms = concurrent;
+  }
+
+  /**
+   * @return flag indicating whether doAction transforms the Data of
+   *         different DataRenderers concurrently
+   */
+  public boolean getConcurrentTransforms() {
+    return concurrentTransforms;
+  }
+
+  /**
+   * Set the default for {@link #setConcurrentTransforms} of displays
+   * constructed after this call; initially set by the
+   * <code>visad.display.concurrenttransforms</code> system property.
+   * @param concurrent flag indicating whether to transform concurrently
+   */
+  public static void setDefaultConcurrentTransforms(boolean concurrent) {
+    defaultConcurrentTransforms = concurrent;
+  }
+
+  /**
+   * @return default for whether new displays transform the Data of
+   *         different DataRenderers concurrently
+   */
+  public static boolean getDefaultConcurrentTransforms() {
+    return defaultConcurrentTransforms;
+  }
+
   /**
    * request all linked Data to be re-transformed into scene graph
    * elements
@@ -1866,13 +1921,17 @@ System.out.println("initialize = " + initialize + " go = " + go +
 // System.out.println("DisplayImpl.doAction transform");
 // int i = 0;
           boolean any_exceptions = false;
+          boolean[] transformed = transformConcurrently(temp);
           renderers = temp.elements();
+          int index = 0;
           while(renderers.hasMoreElements()) {
 // System.out.println("DisplayImpl invoke renderer.doAction " + i);
 // i++;
             DataRenderer renderer = (DataRenderer)renderers.nextElement();
 
-            boolean this_transform = renderer.doAction();
+            boolean this_transform = (transformed != null && transformed[index])
+              ? renderer.attachAction() : renderer.doAction();
+            index++;
             transform_done |= this_transform;
             any_exceptions |= !renderer.getExceptionVector().isEmpty();
 /*
@@ -1922,6 +1981,45 @@ System.out.println("initialize = " + initialize + " go = " + go +
 
   }
 
+  /**
+   * If concurrentTransforms is set, run transformAction concurrently
+   * for the DataRenderers that support it; their depictions are
+   * attached by attachAction in the doAction loop.
+   * @param renderers  DataRenderers of this display, in order
+   * @return flags indicating which DataRenderers were transformed,
+   *         or null if none were
+   * @throws VisADException a VisAD error occurred
+   * @throws RemoteException an RMI error occurred
+   */
+  private boolean[] transformConcurrently(Vector renderers)
+          throws VisADException, RemoteException {
+    if (!concurrentTransforms || renderers.size() < 2 ||
+        ParallelChunks.getParallelism() < 2) {
+      return null;
+    }
+    boolean[] transformed = new boolean[renderers.size()];
+    final DataRenderer[] list = new DataRenderer[renderers.size()];
+    int count = 0;
+    for (int i = 0; i < transformed.length; i++) {
+      DataRenderer renderer = (DataRenderer)renderers.elementAt(i);
+      if (renderer.isConcurrentTransformSupported() &&
+          !renderer.getIsDirectManipulation()) {
+        transformed[i] = true;
+        list[count++] = renderer;
+      }
+    }
+    if (count < 2) return null;
+
+    ParallelChunks.run(count, 1, new ParallelChunks.Chunk() {
+      public void run(int start, int end) throws Exception {
+        for (int i = start; i < end; i++) {
+          list[i].transformAction();
+        }
+      }
+    });
+    return transformed;
+  }
+
   /**
    * @return the default DisplayRenderer for this DisplayImpl
    */
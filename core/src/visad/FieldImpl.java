@@ -32,6 +32,8 @@ import java.util.Enumeration;
 import java.util.NoSuchElementException;
 import java.util.Vector;
 
+import visad.util.ParallelChunks;
+
 /**
    FieldImpl is the VisAD class for finite samplings of functions
    from R^n to a range type, where  n>0.  The DomainSet, DomainUnits
@@ -70,6 +72,53 @@ public class FieldImpl extends FunctionImpl implements Field {
 
   private boolean MissingFlag;
 
+  // whether binary, unary and resample process range samples concurrently
+  private static boolean parallelSamples =
+    Boolean.getBoolean("visad.fieldimpl.parallel");
+
+  /**
+   * Set whether {@link #binary(Data, int, MathType, int, int)},
+   * {@link #unary(int, MathType, int, int)} and interpolating
+   * {@link #resample(Set, int, int)} process range samples concurrently.
+   * The samples are split into chunks that run on the pool of
+   * {@link visad.util.ParallelChunks}, so the FlatFields of a time
+   * sequence are computed on several threads at once; the results are stored in
+   * sample order, as in the serial mode, and if several samples fail
+   * the exception for the lowest sample index is thrown with the others
+   * attached as suppressed exceptions.  This requires that the range
+   * samples and the other operand can be used from several threads at
+   * once.  The default is set by the <code>visad.fieldimpl.parallel</code>
+   * system property.
+   * @param parallel            true to process range samples concurrently
+   */
+  public static void setParallelSamples(boolean parallel) {
+    parallelSamples = parallel;
+  }
+
+  /**
+   * @return                    true if range samples are processed
+   *                            concurrently
+   */
+  public static boolean getParallelSamples() {
+    return parallelSamples;
+  }
+
+  /**
+   * Run sample over sample indices [0, length), split into a few chunks
+   * per thread if samples are processed concurrently, otherwise all on
+   * the calling thread.
+   */
+  private static void runSamples(int length, ParallelChunks.Chunk sample)
+          throws VisADException, RemoteException {
+    int chunkSize = length;
+    int threads = ParallelChunks.getParallelism();
+    if (parallelSamples && threads > 1) {
+      // a few chunks per thread, for load balance
+      chunkSize = Math.max(1, length / (4 * threads));
+    }
+    ParallelChunks.run(length, chunkSize, sample);
+  }
+
   /** construct a FieldImpl from type;
       use default Set of FunctionType domain;
       initial values are missing */
@@ -775,8 +824,8 @@ public class FieldImpl extends FunctionImpl implements Field {
   public Data binary(Data data, int op, int sampling_mode, int error_mode)
               throws VisADException, RemoteException {
    */
-  public Data binary(Data data, int op, MathType new_type,
-                     int sampling_mode, int error_mode)
+  public Data binary(Data data, final int op, MathType new_type,
+                     final int sampling_mode, final int error_mode)
               throws VisADException, RemoteException {
     boolean field_flag; // true if this and data have same type
     if ( new_type == null ) {
@@ -828,38 +877,52 @@ public class FieldImpl extends FunctionImpl implements Field {
     // create (initially missing) Field for return
     Field new_field = new FieldImpl((FunctionType) new_type, getDomainSet());
     if (isMissing() || data.isMissing()) return new_field;
-    Data[] range = new Data[getLength()];
+    final Data[] range = new Data[getLength()];
     /*- TDR  May 1998  */
-    MathType m_type = ((FunctionType)new_type).getRange();
-
+    final MathType m_type = ((FunctionType)new_type).getRange();
+    final Data[] Range = getRange();
 
     if (field_flag) {
       // resample data if needed
-      data = ((Field) data).resample(getDomainSet(), sampling_mode, error_mode);
+      final Field resampled =
+        ((Field) data).resample(getDomainSet(), sampling_mode, error_mode);
       // apply operation to each range object
-      for (int i=0; i<getLength(); i++) {
-        synchronized (RangeLock) {
-          range[i] = ((MyRange==null||MyRange[i] == null)) ? null :
-                    /*-  TDR May 1998
-                     Range[i].binary(((Field) data).getSample(i), op,
-                                     sampling_mode, error_mode);
-                     */
-                     MyRange[i].binary(((Field) data).getSample(i), op, m_type,
+      runSamples(range.length, new ParallelChunks.Chunk() {
+        public void run(int start, int end) throws Exception {
+          for (int i=start; i<end; i++) {
+            Data sample;
+            synchronized (RangeLock) {
+              sample = Range[i];
+            }
+            /*-  TDR May 1998
+            Range[i].binary(((Field) data).getSample(i), op,
+                            sampling_mode, error_mode);
+             */
+            range[i] = (sample == null) ? null :
+                       sample.binary(resampled.getSample(i), op, m_type,
                                      sampling_mode, error_mode);
-
+          }
         }
-      }
+      });
     }
     else { // !field_flag
-      for (int i=0; i<getLength(); i++) {
-        synchronized (RangeLock) {
-          range[i] = ((MyRange==null||MyRange[i] == null)) ? null :
-                     /*- TDR  May 1998
-                     MyRange[i].binary(data, op, sampling_mode, error_mode);
-                      */
-                     MyRange[i].binary(data, op, m_type, sampling_mode, error_mode);
+      final Data operand = data;
+      runSamples(range.length, new ParallelChunks.Chunk() {
+        public void run(int start, int end) throws Exception {
+          for (int i=start; i<end; i++) {
+            Data sample;
+            synchronized (RangeLock) {
+              sample = Range[i];
+            }
+            /*- TDR  May 1998
+            MyRange[i].binary(data, op, sampling_mode, error_mode);
+             */
+            range[i] = (sample == null) ? null :
+                       sample.binary(operand, op, m_type, sampling_mode,
+                                     error_mode);
+          }
         }
-      }
+      });
     }
     new_field.setSamples(range, false);
     return new_field;
@@ -871,8 +934,8 @@ public class FieldImpl extends FunctionImpl implements Field {
   public Data unary(int op, int sampling_mode, int error_mode)
               throws VisADException, RemoteException {
   */
-  public Data unary(int op, MathType new_type, int sampling_mode,
-                    int error_mode )
+  public Data unary(final int op, MathType new_type,
+                    final int sampling_mode, final int error_mode)
               throws VisADException, RemoteException {
     if ( new_type == null ) {
       throw new TypeException("unary: new_type may not be null");
@@ -880,7 +943,7 @@ public class FieldImpl extends FunctionImpl implements Field {
     if ( !Type.equalsExceptName(new_type)) {
       throw new TypeException("unary: new_type doesn't match return type");
     }
-    MathType m_type = ((FunctionType)new_type).getRange();
+    final MathType m_type = ((FunctionType)new_type).getRange();
     // create (initially missing) Field for return
 /* WLH 17 Jan 2000
     Field new_field = new FieldImpl((FunctionType) Type, getDomainSet());
@@ -899,16 +962,22 @@ public class FieldImpl extends FunctionImpl implements Field {
     Field new_field = new FieldImpl((FunctionType) new_type, new_set);
 
     if (isMissing()) return new_field;
-    Data[] range = new Data[getLength()];
-
+    final Data[] range = new Data[getLength()];
+    final Data[] Range = getRange();
 
     // apply operation to each range object
-    for (int i=0; i<getLength(); i++) {
-      synchronized (RangeLock) {
-        range[i] = ((MyRange==null||MyRange[i] == null)) ? null :
-                   MyRange[i].unary(op, m_type, sampling_mode, error_mode);
+    runSamples(range.length, new ParallelChunks.Chunk() {
+      public void run(int start, int end) throws Exception {
+        for (int i=start; i<end; i++) {
+          Data sample;
+          synchronized (RangeLock) {
+            sample = Range[i];
+          }
+          range[i] = (sample == null) ? null :
+                     sample.unary(op, m_type, sampling_mode, error_mode);
+        }
       }
-    }
+    });
     new_field.setSamples(range, false);
     return new_field;
   }
@@ -2853,14 +2922,14 @@ public class FieldImpl extends FunctionImpl implements Field {
    * @throws  VisADException   unable to resample function
    * @throws  RemoteException  Java RMI exception
    */
-  public Field resample(Set set, int sampling_mode, int error_mode)
+  public Field resample(Set set, int sampling_mode, final int error_mode)
          throws VisADException, RemoteException {
 
     /* NB: resampling is done in this method for a float domain.  If
      * you make changes to this method, make the corresponding changes
      * in resampleDouble if necessary.
      */
-    Set domainSet = getDomainSet();
+    final Set domainSet = getDomainSet();
 
     if (domainSet.equals(set)) {
       // nothing to do
@@ -2874,7 +2943,7 @@ public class FieldImpl extends FunctionImpl implements Field {
     // Field field = new FieldImpl((FunctionType) Type, set);
     if (isMissing()) return field;
 
-    int dim = domainSet.getDimension();
+    final int dim = domainSet.getDimension();
     if (dim != set.getDimension()) {
       throw new SetException("FieldImpl.resample: bad Set Dimension");
     }
@@ -2892,24 +2961,24 @@ public class FieldImpl extends FunctionImpl implements Field {
 
     // create an array containing all indices of 'this'
     int length = set.getLength();
-    int[] wedge = set.getWedge();
+    final int[] wedge = set.getWedge();
 
     // array of Data objects to receive resampled Range objects
-    Data[] range = new Data[length];
+    final Data[] range = new Data[length];
 
     // get values from wedge and possibly transform coordinates
-    float[][] vals = set.indexToValue(wedge);
+    float[][] oldvals = set.indexToValue(wedge);
     // holder for sampling errors of transformed set - these are
     // only useful to help estmate range errors due to resampling
-    ErrorEstimate[] errors_out = new ErrorEstimate[dim];
-    float[][] oldvals = vals;
+    final ErrorEstimate[] errors_out = new ErrorEstimate[dim];
+    final float[][] vals;
     try {  // this is only to throw a more meaningful message
       vals = CoordinateSystem.transformCoordinates(
                       ((FunctionType) Type).getDomain(), 
                       getDomainCoordinateSystem(),
                       getDomainUnits(), errors_out,
                       ((SetType) set.getType()).getDomain(), coord_sys,
-                      units, errors, vals);
+                      units, errors, oldvals);
     } catch (UnitException ue) {
         throw new VisADException("Sampling set is not compatible with domain");
     }
@@ -2917,133 +2986,139 @@ public class FieldImpl extends FunctionImpl implements Field {
     boolean coord_transform = !(vals == oldvals);
 
     // check whether we need to do sampling error calculations
-    boolean sampling_errors = (error_mode != NO_ERRORS);
-    if (sampling_errors) {
-      for (int i=0; i<dim; i++) {
-        if (errors_out[i] == null) sampling_errors = false;
-      }
+    boolean errors_known = true;
+    for (int i=0; i<dim; i++) {
+      if (errors_out[i] == null) errors_known = false;
     }
-    Data[] sampling_partials = new Data[dim];
-    float[][] error_values;
-    double[] means = new double[dim];
+    final boolean sampling_errors = (error_mode != NO_ERRORS) && errors_known;
 
-    Data[]Range = getRange ();
+    final Data[]Range = getRange ();
     if (sampling_mode == WEIGHTED_AVERAGE && domainSet instanceof SimpleSet) {
       // resample by interpolation
-      int[][] indices = new int[length][];
-      float[][] coefs = new float[length][];
+      final int[][] indices = new int[length][];
+      final float[][] coefs = new float[length][];
       ((SimpleSet) domainSet).valueToInterp(vals, indices, coefs);
-      for (int i=0; i<length; i++) {
-        int len;
-        len = (indices[i] == null) ? 0 : indices[i].length;
-        if (len > 0) {
-          Data r = null;
-          // WLH
-          for (int k=0; k<len; k++) {
-            Data RangeIK;
-            synchronized (RangeLock) {
-              RangeIK = Range[indices[i][k]];
-            }
-            if (RangeIK != null) {
-              r = (r == null) ? RangeIK.multiply(new Real(coefs[i][k])) :
-                                r.add(RangeIK.multiply(new Real(coefs[i][k])));
-            }
-            else {
-              r = null;
-              break;
-            }
-          }
-
-          // SRE 2002-02-13
-          if (r != null) {
-            r = r.changeMathType(((FunctionType)Type).getRange());
-          }
-
-          range[wedge[i]] = r;
-        }
-        else {
-          // set range[wedge[i]] to a missing Data object
-          range[wedge[i]] = ((FunctionType) Type).getRange().missingData();
-        }
-
-        if (sampling_errors && !range[wedge[i]].isMissing()) {
-          for (int j=0; j<dim; j++) means[j] = vals[j][i];
-          error_values = Set.doubleToFloat(
-                           ErrorEstimate.init_error_values(errors_out, means) );
-          int[][] error_indices = new int[2 * dim][];
-          float[][] error_coefs = new float[2 * dim][];
-          coefs = new float[2 * dim][];
-          ((SimpleSet) domainSet).valueToInterp(error_values, error_indices,
-                                                error_coefs);
-
-          for (int j=0; j<dim; j++) {
-            Data a = null;
-            Data b = null;
-            len = error_indices[2*j].length;
+      // interpolate each sample of the sampling set
+      runSamples(length, new ParallelChunks.Chunk() {
+        public void run(int start, int end) throws Exception {
+          Data[] sampling_partials = new Data[dim];
+          float[][] error_values;
+          double[] means = new double[dim];
+          for (int i=start; i<end; i++) {
+            int len;
+            len = (indices[i] == null) ? 0 : indices[i].length;
             if (len > 0) {
+              Data r = null;
+              // WLH
               for (int k=0; k<len; k++) {
                 Data RangeIK;
                 synchronized (RangeLock) {
-                  RangeIK = Range[error_indices[2*j][k]];
+                  RangeIK = Range[indices[i][k]];
                 }
                 if (RangeIK != null) {
-                  a = (a == null) ?
-                      RangeIK.multiply(new Real(error_coefs[2*j][k])) :
-                      a.add(RangeIK.multiply(new Real(error_coefs[2*j][k])));
+                  r = (r == null) ? RangeIK.multiply(new Real(coefs[i][k])) :
+                                    r.add(RangeIK.multiply(new Real(coefs[i][k])));
                 }
                 else {
-                  a = null;
+                  r = null;
                   break;
                 }
               }
+
+              // SRE 2002-02-13
+              if (r != null) {
+                r = r.changeMathType(((FunctionType)Type).getRange());
+              }
+
+              range[wedge[i]] = r;
             }
-            len = error_indices[2*j+1].length;
-            if (len > 0) {
-              for (int k=0; k<len; k++) {
-                Data RangeIK;
-                synchronized (RangeLock) {
-                  RangeIK = Range[error_indices[2*j+1][k]];
+            else {
+              // set range[wedge[i]] to a missing Data object
+              range[wedge[i]] = ((FunctionType) Type).getRange().missingData();
+            }
+
+            if (sampling_errors && !range[wedge[i]].isMissing()) {
+              for (int j=0; j<dim; j++) means[j] = vals[j][i];
+              error_values = Set.doubleToFloat(
+                               ErrorEstimate.init_error_values(errors_out, means) );
+              int[][] error_indices = new int[2 * dim][];
+              float[][] error_coefs = new float[2 * dim][];
+              ((SimpleSet) domainSet).valueToInterp(error_values, error_indices,
+                                                    error_coefs);
+
+              for (int j=0; j<dim; j++) {
+                Data a = null;
+                Data b = null;
+                len = error_indices[2*j].length;
+                if (len > 0) {
+                  for (int k=0; k<len; k++) {
+                    Data RangeIK;
+                    synchronized (RangeLock) {
+                      RangeIK = Range[error_indices[2*j][k]];
+                    }
+                    if (RangeIK != null) {
+                      a = (a == null) ?
+                          RangeIK.multiply(new Real(error_coefs[2*j][k])) :
+                          a.add(RangeIK.multiply(new Real(error_coefs[2*j][k])));
+                    }
+                    else {
+                      a = null;
+                      break;
+                    }
+                  }
                 }
-                if (RangeIK != null) {
-                  b = (b == null) ?
-                      RangeIK.multiply(new Real(error_coefs[2*j+1][k])) :
-                      b.add(RangeIK.multiply(new Real(error_coefs[2*j+1][k])));
+                len = error_indices[2*j+1].length;
+                if (len > 0) {
+                  for (int k=0; k<len; k++) {
+                    Data RangeIK;
+                    synchronized (RangeLock) {
+                      RangeIK = Range[error_indices[2*j+1][k]];
+                    }
+                    if (RangeIK != null) {
+                      b = (b == null) ?
+                          RangeIK.multiply(new Real(error_coefs[2*j+1][k])) :
+                          b.add(RangeIK.multiply(new Real(error_coefs[2*j+1][k])));
+                    }
+                    else {
+                      b = null;
+                      break;
+                    }
+                  }
+                }
+                if (a == null || b == null) {
+                  sampling_partials[j] = null;
                 }
                 else {
-                  b = null;
-                  break;
+                  sampling_partials[j] = b.subtract(a).abs();
                 }
               }
-            }
-            if (a == null || b == null) {
-              sampling_partials[j] = null;
-            }
-            else {
-              sampling_partials[j] = b.subtract(a).abs();
-            }
-          }
 
-          Data error = null;
-          if (error_mode == Data.INDEPENDENT) {
-            for (int j=0; j<dim; j++) {
-              Data e = sampling_partials[j].multiply(sampling_partials[j]);
-              error = (error == null) ? e : error.add(e);
-            }
-            error = error.sqrt();
-          }
-          else { // error_mode == Data.DEPENDENT
-            for (int j=0; j<dim; j++) {
-              Data e = sampling_partials[j];
-              error = (error == null) ? e : error.add(e);
-            }
-          }
-          range[wedge[i]] =
-            range[wedge[i]].adjustSamplingError(error, error_mode);
-        } // end if (sampling_errors && !range[wedge[i]].isMissing())
-      } // end for (int i=0; i<length; i++)
+              Data error = null;
+              if (error_mode == Data.INDEPENDENT) {
+                for (int j=0; j<dim; j++) {
+                  Data e = sampling_partials[j].multiply(sampling_partials[j]);
+                  error = (error == null) ? e : error.add(e);
+                }
+                error = error.sqrt();
+              }
+              else { // error_mode == Data.DEPENDENT
+                for (int j=0; j<dim; j++) {
+                  Data e = sampling_partials[j];
+                  error = (error == null) ? e : error.add(e);
+                }
+              }
+              range[wedge[i]] =
+                range[wedge[i]].adjustSamplingError(error, error_mode);
+            } // end if (sampling_errors && !range[wedge[i]].isMissing())
+          } // end for (int i=start; i<end; i++)
+        }
+      });
     }
     else { // Mode is NEAREST_NEIGHBOR or set is not GriddedSet
       // simple resampling
+      Data[] sampling_partials = new Data[dim];
+      float[][] error_values;
+      double[] means = new double[dim];
       int[] indices = domainSet.valueToIndex(vals);
       for (int i=0; i<length; i++) {
         synchronized (RangeLock) {
@@ -3168,14 +3243,14 @@ public class FieldImpl extends FunctionImpl implements Field {
    * @throws  VisADException   unable to resample function
    * @throws  RemoteException  Java RMI exception
    */
-  public Field resampleDouble(Set set, int sampling_mode, int error_mode)
+  public Field resampleDouble(Set set, int sampling_mode, final int error_mode)
          throws VisADException, RemoteException {
 
     /* NB: resampling is done in this method for a double domain.  If
      * you make changes to this method, make the corresponding changes
      * in resample if necessary.
      */
-    Set domainSet = getDomainSet();
+    final Set domainSet = getDomainSet();
 
     if (domainSet.equals(set)) {
       // nothing to do
@@ -3189,7 +3264,7 @@ public class FieldImpl extends FunctionImpl implements Field {
     // Field field = new FieldImpl((FunctionType) Type, set);
     if (isMissing()) return field;
 
-    int dim = domainSet.getDimension();
+    final int dim = domainSet.getDimension();
     if (dim != set.getDimension()) {
       throw new SetException("FieldImpl.resample: bad Set Dimension");
     }
@@ -3205,24 +3280,24 @@ public class FieldImpl extends FunctionImpl implements Field {
 
     // create an array containing all indices of 'this'
     int length = set.getLength();
-    int[] wedge = set.getWedge();
+    final int[] wedge = set.getWedge();
 
     // array of Data objects to receive resampled Range objects
-    Data[] range = new Data[length];
+    final Data[] range = new Data[length];
 
     // get values from wedge and possibly transform coordinates
-    double[][] vals = set.indexToDouble(wedge);
+    double[][] oldvals = set.indexToDouble(wedge);
     // holder for sampling errors of transformed set - these are
     // only useful to help estmate range errors due to resampling
-    ErrorEstimate[] errors_out = new ErrorEstimate[dim];
-    double[][] oldvals = vals;
+    final ErrorEstimate[] errors_out = new ErrorEstimate[dim];
+    final double[][] vals;
     try {  // this is only to throw a more meaningful message
       vals = CoordinateSystem.transformCoordinates(
                       ((FunctionType) Type).getDomain(), 
                       getDomainCoordinateSystem(),
                       getDomainUnits(), errors_out,
                       ((SetType) set.getType()).getDomain(), coord_sys,
-                      units, errors, vals);
+                      units, errors, oldvals);
     } catch (UnitException ue) {
         throw new VisADException("Sampling set is not compatible with domain");
     }
@@ -3230,132 +3305,138 @@ public class FieldImpl extends FunctionImpl implements Field {
     boolean coord_transform = !(vals == oldvals);
 
     // check whether we need to do sampling error calculations
-    boolean sampling_errors = (error_mode != NO_ERRORS);
-    if (sampling_errors) {
-      for (int i=0; i<dim; i++) {
-        if (errors_out[i] == null) sampling_errors = false;
-      }
+    boolean errors_known = true;
+    for (int i=0; i<dim; i++) {
+      if (errors_out[i] == null) errors_known = false;
     }
-    Data[] sampling_partials = new Data[dim];
-    double[][] error_values;
-    double[] means = new double[dim];
+    final boolean sampling_errors = (error_mode != NO_ERRORS) && errors_known;
 
-    Data[]Range = getRange ();
+    final Data[]Range = getRange ();
     if (sampling_mode == WEIGHTED_AVERAGE) {
       // resample by interpolation
-      int[][] indices = new int[length][];
-      double[][] coefs = new double[length][];
+      final int[][] indices = new int[length][];
+      final double[][] coefs = new double[length][];
       ((GriddedDoubleSet) domainSet).doubleToInterp(vals, indices, coefs);
-      for (int i=0; i<length; i++) {
-        int len;
-        len = (indices[i] == null) ? 0 : indices[i].length;
-        if (len > 0) {
-          Data r = null;
-          // WLH
-          for (int k=0; k<len; k++) {
-            Data RangeIK;
-            synchronized (RangeLock) {
-              RangeIK = Range[indices[i][k]];
-            }
-            if (RangeIK != null) {
-              r = (r == null) ? RangeIK.multiply(new Real(coefs[i][k])) :
-                                r.add(RangeIK.multiply(new Real(coefs[i][k])));
-            }
-            else {
-              r = null;
-              break;
-            }
-          }
-
-          // SRE 2002-02-13
-          if (r != null) {
-            r = r.changeMathType(((FunctionType)Type).getRange());
-          }
-
-          range[wedge[i]] = r;
-        }
-        else {
-          // set range[wedge[i]] to a missing Data object
-          range[wedge[i]] = ((FunctionType) Type).getRange().missingData();
-        }
-
-        if (sampling_errors && !range[wedge[i]].isMissing()) {
-          for (int j=0; j<dim; j++) means[j] = vals[j][i];
-          error_values = ErrorEstimate.init_error_values(errors_out, means);
-          int[][] error_indices = new int[2 * dim][];
-          double[][] error_coefs = new double[2 * dim][];
-          coefs = new double[2 * dim][];
-          ((GriddedDoubleSet) domainSet).doubleToInterp(error_values, error_indices,
-                                                error_coefs);
-
-          for (int j=0; j<dim; j++) {
-            Data a = null;
-            Data b = null;
-            len = error_indices[2*j].length;
+      // interpolate each sample of the sampling set
+      runSamples(length, new ParallelChunks.Chunk() {
+        public void run(int start, int end) throws Exception {
+          Data[] sampling_partials = new Data[dim];
+          double[][] error_values;
+          double[] means = new double[dim];
+          for (int i=start; i<end; i++) {
+            int len;
+            len = (indices[i] == null) ? 0 : indices[i].length;
             if (len > 0) {
+              Data r = null;
+              // WLH
               for (int k=0; k<len; k++) {
                 Data RangeIK;
                 synchronized (RangeLock) {
-                  RangeIK = Range[error_indices[2*j][k]];
+                  RangeIK = Range[indices[i][k]];
                 }
                 if (RangeIK != null) {
-                  a = (a == null) ?
-                      RangeIK.multiply(new Real(error_coefs[2*j][k])) :
-                      a.add(RangeIK.multiply(new Real(error_coefs[2*j][k])));
+                  r = (r == null) ? RangeIK.multiply(new Real(coefs[i][k])) :
+                                    r.add(RangeIK.multiply(new Real(coefs[i][k])));
                 }
                 else {
-                  a = null;
+                  r = null;
                   break;
                 }
               }
+
+              // SRE 2002-02-13
+              if (r != null) {
+                r = r.changeMathType(((FunctionType)Type).getRange());
+              }
+
+              range[wedge[i]] = r;
             }
-            len = error_indices[2*j+1].length;
-            if (len > 0) {
-              for (int k=0; k<len; k++) {
-                Data RangeIK;
-                synchronized (RangeLock) {
-                  RangeIK = Range[error_indices[2*j+1][k]];
+            else {
+              // set range[wedge[i]] to a missing Data object
+              range[wedge[i]] = ((FunctionType) Type).getRange().missingData();
+            }
+
+            if (sampling_errors && !range[wedge[i]].isMissing()) {
+              for (int j=0; j<dim; j++) means[j] = vals[j][i];
+              error_values = ErrorEstimate.init_error_values(errors_out, means);
+              int[][] error_indices = new int[2 * dim][];
+              double[][] error_coefs = new double[2 * dim][];
+              ((GriddedDoubleSet) domainSet).doubleToInterp(error_values, error_indices,
+                                                    error_coefs);
+
+              for (int j=0; j<dim; j++) {
+                Data a = null;
+                Data b = null;
+                len = error_indices[2*j].length;
+                if (len > 0) {
+                  for (int k=0; k<len; k++) {
+                    Data RangeIK;
+                    synchronized (RangeLock) {
+                      RangeIK = Range[error_indices[2*j][k]];
+                    }
+                    if (RangeIK != null) {
+                      a = (a == null) ?
+                          RangeIK.multiply(new Real(error_coefs[2*j][k])) :
+                          a.add(RangeIK.multiply(new Real(error_coefs[2*j][k])));
+                    }
+                    else {
+                      a = null;
+                      break;
+                    }
+                  }
                 }
-                if (RangeIK != null) {
-                  b = (b == null) ?
-                      RangeIK.multiply(new Real(error_coefs[2*j+1][k])) :
-                      b.add(RangeIK.multiply(new Real(error_coefs[2*j+1][k])));
+                len = error_indices[2*j+1].length;
+                if (len > 0) {
+                  for (int k=0; k<len; k++) {
+                    Data RangeIK;
+                    synchronized (RangeLock) {
+                      RangeIK = Range[error_indices[2*j+1][k]];
+                    }
+                    if (RangeIK != null) {
+                      b = (b == null) ?
+                          RangeIK.multiply(new Real(error_coefs[2*j+1][k])) :
+                          b.add(RangeIK.multiply(new Real(error_coefs[2*j+1][k])));
+                    }
+                    else {
+                      b = null;
+                      break;
+                    }
+                  }
+                }
+                if (a == null || b == null) {
+                  sampling_partials[j] = null;
                 }
                 else {
-                  b = null;
-                  break;
+                  sampling_partials[j] = b.subtract(a).abs();
                 }
               }
-            }
-            if (a == null || b == null) {
-              sampling_partials[j] = null;
-            }
-            else {
-              sampling_partials[j] = b.subtract(a).abs();
-            }
-          }
 
-          Data error = null;
-          if (error_mode == Data.INDEPENDENT) {
-            for (int j=0; j<dim; j++) {
-              Data e = sampling_partials[j].multiply(sampling_partials[j]);
-              error = (error == null) ? e : error.add(e);
-            }
-            error = error.sqrt();
-          }
-          else { // error_mode == Data.DEPENDENT
-            for (int j=0; j<dim; j++) {
-              Data e = sampling_partials[j];
-              error = (error == null) ? e : error.add(e);
-            }
-          }
-          range[wedge[i]] =
-            range[wedge[i]].adjustSamplingError(error, error_mode);
-        } // end if (sampling_errors && !range[wedge[i]].isMissing())
-      } // end for (int i=0; i<length; i++)
+              Data error = null;
+              if (error_mode == Data.INDEPENDENT) {
+                for (int j=0; j<dim; j++) {
+                  Data e = sampling_partials[j].multiply(sampling_partials[j]);
+                  error = (error == null) ? e : error.add(e);
+                }
+                error = error.sqrt();
+              }
+              else { // error_mode == Data.DEPENDENT
+                for (int j=0; j<dim; j++) {
+                  Data e = sampling_partials[j];
+                  error = (error == null) ? e : error.add(e);
+                }
+              }
+              range[wedge[i]] =
+                range[wedge[i]].adjustSamplingError(error, error_mode);
+            } // end if (sampling_errors && !range[wedge[i]].isMissing())
+          } // end for (int i=start; i<end; i++)
+        }
+      });
     }
     else { // Mode is NEAREST_NEIGHBOR or set is not GriddedSet
       // simple resampling
+      Data[] sampling_partials = new Data[dim];
+      double[][] error_values;
+      double[] means = new double[dim];
       int[] indices = domainSet.doubleToIndex(vals);
       for (int i=0; i<length; i++) {
         synchronized (RangeLock) {
@@ -109,6 +109,11 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
   private short[][] ShortRange;
   private byte[][] ByteRange;
 
+  // cached statistics of the values of each range component, used by
+  // computeRanges; an element is null until computed, and is reset
+  // when the values of its component are replaced
+  private transient RangeStatistics[] rangeStats;
+
   private static final int MISSING1 = Byte.MIN_VALUE;      // least byte
   private static final int MISSING2 = Short.MIN_VALUE;     // least short
   private static final int MISSING4 = Integer.MIN_VALUE;   // least int
@@ -122,6 +127,116 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
   private static final int SHORT = 5;
   private static final int BYTE = 6;
 
+  // default for whether resample and resampleDouble split the sampling
+  // set into chunks that are transformed and interpolated concurrently
+  private static boolean parallelResample = false;
+
+  // number of sampling set points per chunk for parallel resampling
+  private static int resampleChunkSize = 65536;
+
+  // whether binary and unary return a DerivedFlatField when they can
+  private static boolean lazyDerivation =
+    Boolean.getBoolean("visad.flatfield.lazy");
+
+  // per-thread override of lazyDerivation, or null for the default
+  private static final ThreadLocal<Boolean> threadLazyDerivation =
+    new ThreadLocal<Boolean>();
+
+  /**
+   * Set the default for whether {@link #resample(Set, int, int)} and
+   * {@link #resampleDouble(Set, int, int)} run in parallel.  The parallel
+   * mode splits the sampling set into chunks that are transformed to
+   * this field's domain and interpolated concurrently on the pool of
+   * {@link visad.util.ParallelChunks}; it gives the same results as the
+   * serial mode, but requires that the domain and sampling set
+   * CoordinateSystems can be used from several threads at once.
+   * @param parallel            true to resample in parallel by default
+   */
+  public static void setParallelResample(boolean parallel) {
+    parallelResample = parallel;
+  }
+
+  /**
+   * @return                    true if resampling runs in parallel by
+   *                            default
+   */
+  public static boolean getParallelResample() {
+    return parallelResample;
+  }
+
+  /**
+   * Set the number of sampling set points in each chunk of a parallel
+   * resample.  Sampling sets no larger than one chunk are always
+   * resampled serially.
+   * @param size                number of points per chunk
+   */
+  public static void setResampleChunkSize(int size) {
+    if (size > 0) resampleChunkSize = size;
+  }
+
+  /**
+   * @return                    number of sampling set points in each
+   *                            chunk of a parallel resample
+   */
+  public static int getResampleChunkSize() {
+    return resampleChunkSize;
+  }
+
+  /**
+   * Set whether {@link #binary(Data, int, MathType, int, int)} and
+   * {@link #unary(int, MathType, int, int)} defer their computation.
+   * When enabled, operations between FlatFields with equal domain Sets
+   * and no range CoordinateSystems or ErrorEstimates return a
+   * {@link DerivedFlatField}, which composes further operations and
+   * computes the whole expression in one pass when its values are
+   * first used.  Other operations are computed as before.
+   * The default is set by the <code>visad.flatfield.lazy</code>
+   * system property.
+   * @param lazy                true to defer binary and unary operations
+   */
+  public static void setLazyDerivation(boolean lazy) {
+    lazyDerivation = lazy;
+  }
+
+  /**
+   * @return                    true if binary and unary operations
+   *                            are deferred when possible
+   */
+  public static boolean getLazyDerivation() {
+    return lazyDerivation;
+  }
+
+  /**
+   * Set whether binary and unary operations called by the current thread
+   * are deferred, overriding {@link #setLazyDerivation} for that thread.
+   * This lets code that builds a whole expression, such as the formulas
+   * of {@link visad.formula.FormulaManager}, have it computed in one pass
+   * without changing the default for other threads.
+   * @param lazy                true or false to override the default
+   *                            for the current thread, or null to use it
+   * @return                    the previous override, or null if there
+   *                            was none
+   */
+  public static Boolean setThreadLazyDerivation(Boolean lazy) {
+    Boolean previous = threadLazyDerivation.get();
+    if (lazy == null) {
+      threadLazyDerivation.remove();
+    }
+    else {
+      threadLazyDerivation.set(lazy);
+    }
+    return previous;
+  }
+
+  /**
+   * @return                    true if binary and unary operations called
+   *                            by the current thread are deferred
+   */
+  private static boolean isLazyDerivation() {
+    Boolean lazy = threadLazyDerivation.get();
+    return (lazy == null) ? lazyDerivation : lazy.booleanValue();
+  }
+
   /**
    * Constructs a FlatField from a function type.  The domain Set is the
    * default Set of the function domain.
@@ -720,7 +835,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
        so in operations (e.g., unary, binary) that deal with the data we try
        to keep it to be floats if we can (for size efficiency).
      **/
-    private boolean  shouldBeDouble () {
+    boolean  shouldBeDouble () {
       for (int i=0; i<TupleDimension; i++) {
           if (RangeMode[i] == DOUBLE) {
               return true;
@@ -755,17 +870,28 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
 
     // NOTE INVERTED ORDER OF range ARRAY INDICES !!!
     int[] index;
+    RangeStatistics stats;
     synchronized (DoubleRange) {
       for (int i=0; i<TupleDimension; i++) {
         double[] rangeI = range[i];
         double[][] range1 = new double[1][];
         range1[0] = rangeI;
+        if (RangeMode[i] != DOUBLE && RangeMode[i] != FLOAT) {
+          // packed values are rescanned rather than updated
+          invalidateRangeStatistics(i);
+        }
         switch (RangeMode[i]) {
           case DOUBLE:
             if (DoubleRange[i] == null) {
               DoubleRange[i] = new double[getLength()];
             }
             double[] DoubleRangeI = DoubleRange[i];
+            stats = cachedStatistics(i);
+            for (int j=0; j<length && stats != null; j++) {
+              if (!stats.replace(DoubleRangeI[start + j], rangeI[j])) {
+                stats = invalidateRangeStatistics(i);
+              }
+            }
             System.arraycopy(rangeI, 0, DoubleRangeI, start, length);
             break;
           case FLOAT:
@@ -774,6 +900,12 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
               for (int j=0; j<getLength(); j++) FloatRange[i][j] = Float.NaN;
             }
             float[] FloatRangeI = FloatRange[i];
+            stats = cachedStatistics(i);
+            for (int j=0; j<length && stats != null; j++) {
+              if (!stats.replace(FloatRangeI[start + j], (float) rangeI[j])) {
+                stats = invalidateRangeStatistics(i);
+              }
+            }
             for (int j=0; j<length; j++) FloatRangeI[start + j] = (float) rangeI[j];
             break;
           case BYTE:
@@ -847,6 +979,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
 
     // NOTE INVERTED ORDER OF range ARRAY INDICES !!!
     int[] index;
+    RangeStatistics stats;
     synchronized (DoubleRange) {
       for (int i=0; i<TupleDimension; i++) {
         double[] rangeI = range[i];
@@ -854,13 +987,22 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
         range1[0] = rangeI;
 
 
+        if (RangeMode[i] != DOUBLE && RangeMode[i] != FLOAT) {
+          // packed values are rescanned rather than updated
+          invalidateRangeStatistics(i);
+        }
         switch (RangeMode[i]) {
           case DOUBLE:
             if (DoubleRange[i] == null) {
               DoubleRange[i] = new double[getLength()];
             }
             double[] DoubleRangeI = DoubleRange[i];
+            stats = cachedStatistics(i);
             for (int j = 0; j < length; j++) {
+              if (stats != null &&
+                  !stats.replace(DoubleRangeI[indices[j]], rangeI[j])) {
+                stats = invalidateRangeStatistics(i);
+              }
               DoubleRangeI[indices[j]] = rangeI[j];
             }
             break;
@@ -870,7 +1012,14 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
               for (int j=0; j<getLength(); j++) FloatRange[i][j] = Float.NaN;
             }
             float[] FloatRangeI = FloatRange[i];
-            for (int j=0; j<length; j++) FloatRangeI[indices[j]] = (float) rangeI[j];
+            stats = cachedStatistics(i);
+            for (int j=0; j<length; j++) {
+              if (stats != null &&
+                  !stats.replace(FloatRangeI[indices[j]], (float) rangeI[j])) {
+                stats = invalidateRangeStatistics(i);
+              }
+              FloatRangeI[indices[j]] = (float) rangeI[j];
+            }
             break;
           case BYTE:
             index = RangeSet[i].valueToIndex(Set.doubleToFloat(range1));
@@ -1249,6 +1398,156 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
     return range;
   }
 
+  /**
+   * Test whether {@link #unpackValues(int, int)} and
+   * {@link #unpackFloats(int, int)} return the range values of this
+   * field.  They do for a FlatField, which reads them from its own
+   * storage.  A subclass that keeps its range values elsewhere should
+   * override both, or override this to return false so that callers
+   * unpack the whole range instead.
+   *
+   * @return  true if the range can be read a block at a time
+   */
+  public boolean hasBlockAccessors() {
+    return true;
+  }
+
+  /**
+   * Unpack a block of consecutive samples as doubles, in the units of
+   * the range values as stored.  Unlike {@link #unpackValues()} only
+   * <code>count</code> samples are copied, so large fields can be
+   * streamed out a block at a time.  Subclasses that keep their range
+   * values elsewhere should override this along with
+   * {@link #unpackValues(boolean)}; see {@link #hasBlockAccessors}.
+   *
+   * @param start  index of the first sample
+   * @param count  number of samples
+   *
+   * @return  array dimensioned [range dimension][count]
+   * @throws VisADException  bad range mode, or bad start or count
+   */
+  public double[][] unpackValues(int start, int count)
+         throws VisADException {
+    checkBlock(start, count);
+    double[][] range = new double[TupleDimension][];
+    synchronized (DoubleRange) {
+      if (isMissing()) {
+        for (int i=0; i<TupleDimension; i++) {
+          range[i] = new double[count];
+          Arrays.fill(range[i], Double.NaN);
+        }
+        return range;
+      }
+      for (int i=0; i<TupleDimension; i++) {
+        switch (RangeMode[i]) {
+          case DOUBLE:
+            range[i] = new double[count];
+            System.arraycopy(DoubleRange[i], start, range[i], 0, count);
+            break;
+          case FLOAT:
+            range[i] = new double[count];
+            float[] FloatRangeI = FloatRange[i];
+            for (int j=0; j<count; j++) {
+              range[i][j] = (double) FloatRangeI[start + j];
+            }
+            break;
+          case BYTE:
+          case SHORT:
+          case INT:
+            range[i] = Set.floatToDouble(
+              RangeSet[i].indexToValue(packedIndices(i, start, count)))[0];
+            break;
+          default:
+            throw new SetException("FlatField.unpackValues: bad RangeMode");
+        }
+      }
+    }
+    return range;
+  }
+
+  /**
+   * Unpack a block of consecutive samples as floats, in the units of
+   * the range values as stored.
+   *
+   * @param start  index of the first sample
+   * @param count  number of samples
+   *
+   * @return  array dimensioned [range dimension][count]
+   * @throws VisADException  bad range mode, or bad start or count
+   * @see #unpackValues(int, int)
+   */
+  public float[][] unpackFloats(int start, int count)
+         throws VisADException {
+    checkBlock(start, count);
+    float[][] range = new float[TupleDimension][];
+    synchronized (DoubleRange) {
+      if (isMissing()) {
+        for (int i=0; i<TupleDimension; i++) {
+          range[i] = new float[count];
+          Arrays.fill(range[i], Float.NaN);
+        }
+        return range;
+      }
+      for (int i=0; i<TupleDimension; i++) {
+        switch (RangeMode[i]) {
+          case DOUBLE:
+            range[i] = new float[count];
+            double[] DoubleRangeI = DoubleRange[i];
+            for (int j=0; j<count; j++) {
+              range[i][j] = (float) DoubleRangeI[start + j];
+            }
+            break;
+          case FLOAT:
+            range[i] = new float[count];
+            System.arraycopy(FloatRange[i], start, range[i], 0, count);
+            break;
+          case BYTE:
+          case SHORT:
+          case INT:
+            range[i] =
+              RangeSet[i].indexToValue(packedIndices(i, start, count))[0];
+            break;
+          default:
+            throw new SetException("FlatField.unpackFloats: bad RangeMode");
+        }
+      }
+    }
+    return range;
+  }
+
+  private void checkBlock(int start, int count) throws FieldException {
+    if (start < 0 || count < 0 || start + count > getLength()) {
+      throw new FieldException("FlatField: bad block " + start + " + " +
+                               count + " of " + getLength());
+    }
+  }
+
+  /** RangeSet indices of a block of packed samples of component i */
+  private int[] packedIndices(int i, int start, int count) {
+    int[] index = new int[count];
+    switch (RangeMode[i]) {
+      case BYTE:
+        byte[] ByteRangeI = ByteRange[i];
+        for (int j=0; j<count; j++) {
+          index[j] = ((int) ByteRangeI[start + j]) - MISSING1 - 1;
+        }
+        break;
+      case SHORT:
+        short[] ShortRangeI = ShortRange[i];
+        for (int j=0; j<count; j++) {
+          index[j] = ((int) ShortRangeI[start + j]) - MISSING2 - 1;
+        }
+        break;
+      default:
+        int[] IntRangeI = IntRange[i];
+        for (int j=0; j<count; j++) {
+          index[j] = IntRangeI[start + j] - MISSING4 - 1;
+        }
+        break;
+    }
+    return index;
+  }
+
   /**
    * Unpack one range component, makes a copy.
    *
@@ -1896,6 +2195,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             // test for missing
             incs[i] -= (DoubleRange[i][index] != DoubleRange[i][index]) ? 0 : 1;
+            replaceStatistic(i, DoubleRange[i][index], vals[i]);
             DoubleRange[i][index] = vals[i];
             break;
           case FLOAT:
@@ -1905,9 +2205,11 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             // test for missing
             incs[i] -= (FloatRange[i][index] != FloatRange[i][index]) ? 0 : 1;
+            replaceStatistic(i, FloatRange[i][index], (float) vals[i]);
             FloatRange[i][index] = (float) vals[i];
             break;
           case BYTE:
+            invalidateRangeStatistics(i);
             values = new double[1][1];
             values[0][0] = vals[i];
             indices = RangeSet[i].valueToIndex(Set.doubleToFloat(values));
@@ -1919,6 +2221,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             ByteRange[i][index] = (byte) (indices[0] + MISSING1 + 1);
             break;
           case SHORT:
+            invalidateRangeStatistics(i);
             values = new double[1][1];
             values[0][0] = vals[i];
             indices = RangeSet[i].valueToIndex(Set.doubleToFloat(values));
@@ -1930,6 +2233,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             ShortRange[i][index] = (short) (indices[0] + MISSING2 + 1);
             break;
           case INT:
+            invalidateRangeStatistics(i);
             values = new double[1][1];
             values[0][0] = vals[i];
             indices = RangeSet[i].valueToIndex(Set.doubleToFloat(values));
@@ -1963,6 +2267,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
    */
   protected void nullRanges() throws VisADException {
     synchronized (DoubleRange) {
+      rangeStats = null;
       // DoubleRange = new double[TupleDimension][];
       for (int i=0; i<TupleDimension; i++) DoubleRange[i] = null; // WLH 12 Jan 2001
 
@@ -2006,6 +2311,39 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
     }
   }
 
+  /**
+   * @return  the object that range value access synchronizes on
+   */
+  final Object getRangeLock() {
+    return DoubleRange;
+  }
+
+  /**
+   * Set the range values computed by a subclass, without copying them
+   * or notifying references.
+   * @param range  range values, indexed by component then sample
+   * @throws VisADException   if the values could not be packed
+   */
+  void initSamples(double[][] range) throws VisADException {
+    synchronized (DoubleRange) {
+      packValues(range, false);
+      MissingFlag = false;
+    }
+  }
+
+  /**
+   * Set the range values computed by a subclass, without copying them
+   * or notifying references.
+   * @param range  range values, indexed by component then sample
+   * @throws VisADException   if the values could not be packed
+   */
+  void initSamples(float[][] range) throws VisADException {
+    synchronized (DoubleRange) {
+      packValues(range, false);
+      MissingFlag = false;
+    }
+  }
+
   /** 
    * Mark this FlatField as non-missing 
    */
@@ -2015,6 +2353,153 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
     }
   }
 
+  /**
+   * Discard the cached statistics of the range values used by
+   * {@link #computeRanges(ShadowType, DataShadow)}.  The setSamples
+   * and setSample methods maintain them, so this is only needed after
+   * modifying an array returned by one of the get or unpack methods
+   * with copy == false.
+   */
+  public void invalidateRangeStatistics() {
+    synchronized (DoubleRange) {
+      rangeStats = null;
+    }
+  }
+
+  /**
+   * Return true if computeRanges may cache statistics of the range
+   * values.  Subclasses whose unpack methods do not read the range
+   * arrays of this FlatField, and so may return different values
+   * without a call to setSamples, should return false.
+   * @return  true
+   */
+  protected boolean cacheRangeStatistics() {
+    return true;
+  }
+
+  /** return the cached statistics of range component i, or null;
+      call with DoubleRange locked */
+  private RangeStatistics cachedStatistics(int i) {
+    return (rangeStats == null) ? null : rangeStats[i];
+  }
+
+  /** discard the cached statistics of range component i and return
+      null; call with DoubleRange locked */
+  private RangeStatistics invalidateRangeStatistics(int i) {
+    if (rangeStats != null) rangeStats[i] = null;
+    return null;
+  }
+
+  /** update the cached statistics of range component i for a sample
+      changing from old to value; call with DoubleRange locked */
+  private void replaceStatistic(int i, double old, double value) {
+    RangeStatistics stats = cachedStatistics(i);
+    if (stats != null && !stats.replace(old, value)) {
+      invalidateRangeStatistics(i);
+    }
+  }
+
+  /**
+   * Get the statistics of the range components whose needed flag is
+   * set, using the cached ones where possible.
+   * @param needed  flags of the range components to return
+   * @return  statistics, null where not needed
+   * @throws VisADException   if the range values could not be unpacked
+   */
+  private RangeStatistics[] getRangeStatistics(boolean[] needed)
+          throws VisADException {
+    if (cacheRangeStatistics()) {
+      synchronized (DoubleRange) {
+        return scanRangeStatistics(needed, true);
+      }
+    }
+    return scanRangeStatistics(needed, false);
+  }
+
+  private RangeStatistics[] scanRangeStatistics(boolean[] needed,
+                                                boolean cache)
+          throws VisADException {
+    RangeStatistics[] stats = new RangeStatistics[TupleDimension];
+    boolean scan = false;
+    for (int i=0; i<TupleDimension; i++) {
+      if (needed[i]) {
+        if (cache) stats[i] = cachedStatistics(i);
+        if (stats[i] == null) scan = true;
+      }
+    }
+    if (!scan) return stats;
+
+    double[][] valuesD = null;
+    float[][] valuesF = null;
+    if (shouldBeDouble ()) {
+      valuesD = unpackValues (false);
+    } else {
+      valuesF = unpackFloats (false);
+    }
+    for (int i=0; i<TupleDimension; i++) {
+      if (!needed[i] || stats[i] != null) continue;
+      RangeStatistics s = new RangeStatistics();
+      if (valuesD != null) {
+        double[] valuesDI = valuesD[i];
+        for (int j=0; j<valuesDI.length; j++) s.add(valuesDI[j]);
+      }
+      else {
+        float[] valuesFI = valuesF[i];
+        for (int j=0; j<valuesFI.length; j++) s.add(valuesFI[j]);
+      }
+      stats[i] = s;
+      if (cache) {
+        if (rangeStats == null) {
+          rangeStats = new RangeStatistics[TupleDimension];
+        }
+        rangeStats[i] = s;
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Minimum, maximum, count and sum of the non-missing values of a
+   * range component, in the component's RangeUnit.
+   */
+  private static final class RangeStatistics {
+    double min = Double.MAX_VALUE;
+    double max = -Double.MAX_VALUE;
+    long count = 0;
+    double sum = 0.0;
+
+    void add(double value) {
+      if (value == value) {
+        if (value < min) min = value;
+        if (value > max) max = value;
+        count++;
+        sum += value;
+      }
+    }
+
+    /** update for a sample changing from old to value;
+        return false if the minimum or maximum may have been removed,
+        so that these statistics must be recomputed */
+    boolean replace(double old, double value) {
+      if (old == old) {
+        if (old <= min || old >= max) return false;
+        count--;
+        sum -= old;
+      }
+      add(value);
+      return true;
+    }
+
+    RangeStatistics copy() {
+      RangeStatistics s = new RangeStatistics();
+      s.min = min;
+      s.max = max;
+      s.count = count;
+      s.sum = sum;
+      return s;
+    }
+  }
+
   /** 
    * Return new Field with value 'this op data'.
    * test for various relations between types of this and data;
@@ -2079,6 +2564,12 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
         return convertToField().binary(data, op, new_type, sampling_mode, error_mode);
       }
 
+      if (isLazyDerivation()) {
+        FlatField derived = DerivedFlatField.binary(this, (FlatField) data,
+                                                    op, new_type, error_mode);
+        if (derived != null) return derived;
+      }
+
       // use DoubleSet rather than RangeSet for intermediate computation results
       if (isMissing() || data.isMissing()) return new_type.missingData();
 
@@ -2659,6 +3150,12 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
       }
       /*- end */
 
+      if (data instanceof Real && isLazyDerivation()) {
+        FlatField derived = DerivedFlatField.binary(this, (Real) data,
+                                                    op, new_type, error_mode);
+        if (derived != null) return derived;
+      }
+
       // use DoubleSet rather than RangeSet for intermediate computation results
       if (isMissing() || data.isMissing()) return new_type.missingData();
 
@@ -3160,6 +3657,12 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
      */
     public Data unary (int op, MathType new_type, int sampling_mode, int error_mode)
         throws VisADException {
+        if (new_type != null && isLazyDerivation()) {
+            FlatField derived =
+                DerivedFlatField.unary(this, op, new_type, error_mode);
+            if (derived != null) return derived;
+        }
+
         // use DoubleSet rather than RangeSet for intermediate computation results
         //      if (isMissing()) return cloneDouble();
         if (isMissing()) {
@@ -4510,6 +5013,29 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
    */
   public Field resample (Set set, int sampling_mode, int error_mode)
          throws VisADException, RemoteException {
+    return resample(set, sampling_mode, error_mode, parallelResample);
+  }
+
+  /**
+   * Resamples the range to domain samples of a given set, optionally
+   * splitting the work into chunks that run concurrently.  The parallel
+   * mode is only used with Data.NO_ERRORS and for sets larger than
+   * {@link #getResampleChunkSize()}; otherwise this is the same as
+   * {@link #resample(Set, int, int)}.
+   * @param set                 The set of points at which to resample this
+   *                            field.
+   * @param sampling_mode       Resampling mode: Data.NEAREST_NEIGHBOR or
+   *                            Data.WEIGHTED_AVERAGE
+   * @param error_mode          Error estimation mode: Data.DEPENDENT,
+   *                            Data.INDEPENDENT, or Data.NO_ERRORS.
+   * @param parallel            true to transform and interpolate chunks
+   *                            of the set concurrently
+   * @return                    Field of resampled data.  NOTE: May
+   *                            return this (i.e., not a copy).
+   */
+  public Field resample (Set set, int sampling_mode, int error_mode,
+                         boolean parallel)
+         throws VisADException, RemoteException {
 
     /* NB: resampling is done in this method for a float domain.  If
      * you make changes to this method, make the corresponding changes
@@ -4530,7 +5056,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
     }
 
     if (domainSet instanceof GriddedDoubleSet) {
-      return resampleDouble(set, sampling_mode, error_mode);
+      return resampleDouble(set, sampling_mode, error_mode, parallel);
     }
 
     CoordinateSystem coord_sys = set.getCoordinateSystem();
@@ -4573,25 +5099,50 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
     int length = set.getLength();
     int[] wedge = set.getWedge();
 
+    // chunked (parallel) resampling is only done without errors, for
+    // ranges without vectors to transform, and when the range values
+    // would be unpacked anyway; so errors_out, which it does not fill,
+    // is not used after it
+    boolean chunked = parallel && error_mode == NO_ERRORS &&
+      !hasVectorRange() && length > resampleChunkSize &&
+      ((10 * length > getLength()) || !shouldBeDouble() ||
+       sampling_mode == WEIGHTED_AVERAGE);
+
+    float[][] new_values = new float[TupleDimension][length];
+
     // get values from wedge and possibly transform coordinates
-    float[][] vals = set.indexToValue(wedge);
+    float[][] vals;
     // holder for sampling errors of transformed set; these are
     // only useful to help estmate range errors due to resampling
     ErrorEstimate[] errors_out = new ErrorEstimate[dim];
-    float[][] oldvals = vals;
-    visad.util.Trace.call1("FlatField.resample:transformCoords");
-    try {  // this is only to throw a more meaningful message
-      vals = CoordinateSystem.transformCoordinates(
-                      ((FunctionType) Type).getDomain(), 
-                      getDomainCoordinateSystem(),
-                      getDomainUnits(), errors_out,
-                      ((SetType) set.getType()).getDomain(), coord_sys,
-                      units, errors, vals, false);
-    } catch (UnitException ue) {
-        throw new VisADException("Sampling set is not compatible with domain");
-    }
-    visad.util.Trace.call2("FlatField.resample:transformCoords");
-    boolean coord_transform = !(vals == oldvals);
+    float[][] oldvals;
+    boolean coord_transform;
+    if (chunked) {
+      oldvals = new float[dim][length];
+      vals = new float[dim][length];
+      visad.util.Trace.call1("FlatField.resample:chunks");
+      coord_transform = resampleChunks(set, wedge, sampling_mode,
+                                       unpackFloats(false), new_values,
+                                       oldvals, vals);
+      visad.util.Trace.call2("FlatField.resample:chunks");
+    }
+    else {
+      vals = set.indexToValue(wedge);
+      oldvals = vals;
+      visad.util.Trace.call1("FlatField.resample:transformCoords");
+      try {  // this is only to throw a more meaningful message
+        vals = CoordinateSystem.transformCoordinates(
+                        ((FunctionType) Type).getDomain(),
+                        getDomainCoordinateSystem(),
+                        getDomainUnits(), errors_out,
+                        ((SetType) set.getType()).getDomain(), coord_sys,
+                        units, errors, vals, false);
+      } catch (UnitException ue) {
+          throw new VisADException("Sampling set is not compatible with domain");
+      }
+      visad.util.Trace.call2("FlatField.resample:transformCoords");
+      coord_transform = !(vals == oldvals);
+    }
 
     // check whether we need to do sampling error calculations
     boolean sampling_errors = (error_mode != NO_ERRORS);
@@ -4614,17 +5165,19 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
 
     // WLH 20 July 2000
     float[][] values = null;
-    if (sampling_errors || (10 * length > getLength()) || 
-        !shouldBeDouble() || sampling_mode == WEIGHTED_AVERAGE) {
+    if (!chunked && (sampling_errors || (10 * length > getLength()) ||
+        !shouldBeDouble() || sampling_mode == WEIGHTED_AVERAGE)) {
       values = unpackFloats(false);
       // values = Set.doubleToFloat(unpackValues());
     }
 
-    float[][] new_values = new float[TupleDimension][length];
     float[] new_valuesJ;
     float[] valuesJ;
 
-    if (sampling_mode == WEIGHTED_AVERAGE && domainSet instanceof SimpleSet) {
+    if (chunked) {
+      // new_values were filled by resampleChunks
+    }
+    else if (sampling_mode == WEIGHTED_AVERAGE && domainSet instanceof SimpleSet) {
       // resample by interpolation
       int[][] indices = new int[length][];
       float[][] coefs = new float[length][];
@@ -4909,6 +5462,29 @@ if (pr) System.out.println("value = " + new_values[0][0]);
    */
   public Field resampleDouble(Set set, int sampling_mode, int error_mode)
          throws VisADException, RemoteException {
+    return resampleDouble(set, sampling_mode, error_mode, parallelResample);
+  }
+
+  /**
+   * Resamples the range to domain samples of a given double set,
+   * optionally splitting the work into chunks that run concurrently.
+   * The parallel mode is only used with Data.NO_ERRORS and for sets
+   * larger than {@link #getResampleChunkSize()}; otherwise this is the
+   * same as {@link #resampleDouble(Set, int, int)}.
+   * @param set                 The set of points at which to resample this
+   *                            field.
+   * @param sampling_mode       Resampling mode: Data.NEAREST_NEIGHBOR or
+   *                            Data.WEIGHTED_AVERAGE
+   * @param error_mode          Error estimation mode: Data.DEPENDENT,
+   *                            Data.INDEPENDENT, or Data.NO_ERRORS.
+   * @param parallel            true to transform and interpolate chunks
+   *                            of the set concurrently
+   * @return                    Field of resampled data.  NOTE: May
+   *                            return this (i.e., not a copy).
+   */
+  public Field resampleDouble(Set set, int sampling_mode, int error_mode,
+                              boolean parallel)
+         throws VisADException, RemoteException {
 
     /* NB: resampling is done in this method for a double domain.  If
      * you make changes to this method, make the corresponding changes
@@ -4928,7 +5504,7 @@ if (pr) System.out.println("value = " + new_values[0][0]);
     }
 
     if (!(domainSet instanceof GriddedDoubleSet)) {
-      return resample(set, sampling_mode, error_mode);
+      return resample(set, sampling_mode, error_mode, parallel);
     }
 
     CoordinateSystem coord_sys = set.getCoordinateSystem();
@@ -4971,25 +5547,50 @@ if (pr) System.out.println("value = " + new_values[0][0]);
     int length = set.getLength();
     int[] wedge = set.getWedge();
 
+    // chunked (parallel) resampling is only done without errors, for
+    // ranges without vectors to transform, and when the range values
+    // would be unpacked anyway; so errors_out, which it does not fill,
+    // is not used after it
+    boolean chunked = parallel && error_mode == NO_ERRORS &&
+      !hasVectorRange() && length > resampleChunkSize &&
+      ((10 * length > getLength()) || !shouldBeDouble() ||
+       sampling_mode == WEIGHTED_AVERAGE);
+
+    double[][] new_values = new double[TupleDimension][length];
+
     // get values from wedge and possibly transform coordinates
-    double[][] vals = set.indexToDouble(wedge);
+    double[][] vals;
     // holder for sampling errors of transformed set; these are
     // only useful to help estmate range errors due to resampling
     ErrorEstimate[] errors_out = new ErrorEstimate[dim];
-    double[][] oldvals = vals;
-    visad.util.Trace.call1("FlatField.resample:transformCoords");
-    try {  // this is only to throw a more meaningful message
-      vals = CoordinateSystem.transformCoordinates(
-                      ((FunctionType) Type).getDomain(), 
-                      getDomainCoordinateSystem(),
-                      getDomainUnits(), errors_out,
-                      ((SetType) set.getType()).getDomain(), coord_sys,
-                      units, errors, vals, false);
-    } catch (UnitException ue) {
-        throw new VisADException("Sampling set is not compatible with domain");
-    }
-    visad.util.Trace.call2("FlatField.resample:transformCoords");
-    boolean coord_transform = !(vals == oldvals);
+    double[][] oldvals;
+    boolean coord_transform;
+    if (chunked) {
+      oldvals = new double[dim][length];
+      vals = new double[dim][length];
+      visad.util.Trace.call1("FlatField.resample:chunks");
+      coord_transform = resampleDoubleChunks(set, wedge, sampling_mode,
+                                             unpackFloats(false), new_values,
+                                             oldvals, vals);
+      visad.util.Trace.call2("FlatField.resample:chunks");
+    }
+    else {
+      vals = set.indexToDouble(wedge);
+      oldvals = vals;
+      visad.util.Trace.call1("FlatField.resample:transformCoords");
+      try {  // this is only to throw a more meaningful message
+        vals = CoordinateSystem.transformCoordinates(
+                        ((FunctionType) Type).getDomain(),
+                        getDomainCoordinateSystem(),
+                        getDomainUnits(), errors_out,
+                        ((SetType) set.getType()).getDomain(), coord_sys,
+                        units, errors, vals, false);
+      } catch (UnitException ue) {
+          throw new VisADException("Sampling set is not compatible with domain");
+      }
+      visad.util.Trace.call2("FlatField.resample:transformCoords");
+      coord_transform = !(vals == oldvals);
+    }
 
     // check whether we need to do sampling error calculations
     boolean sampling_errors = (error_mode != NO_ERRORS);
@@ -5011,17 +5612,19 @@ if (pr) System.out.println("value = " + new_values[0][0]);
 
     // WLH 20 July 2000
     float[][] values = null;
-    if (sampling_errors || (10 * length > getLength()) || 
-        !shouldBeDouble() || sampling_mode == WEIGHTED_AVERAGE) {
+    if (!chunked && (sampling_errors || (10 * length > getLength()) ||
+        !shouldBeDouble() || sampling_mode == WEIGHTED_AVERAGE)) {
       values = unpackFloats(false);
       // values = Set.doubleToFloat(unpackValues());
     }
 
-    double[][] new_values = new double[TupleDimension][length];
     double[] new_valuesJ;
     float[] valuesJ;
 
-    if (sampling_mode == WEIGHTED_AVERAGE) {
+    if (chunked) {
+      // new_values were filled by resampleDoubleChunks
+    }
+    else if (sampling_mode == WEIGHTED_AVERAGE) {
       // resample by interpolation
       int[][] indices = new int[length][];
       double[][] coefs = new double[length][];
@@ -5290,6 +5893,206 @@ if (pr) System.out.println("value = " + new_values[0][0]);
     return new_field;
   }
 
+  /**
+   * @return true if the range is or contains a RealVectorType, whose
+   *         values resample transforms along with the domain
+   */
+  private boolean hasVectorRange() throws VisADException {
+    MathType range = ((FunctionType) Type).getRange();
+    if (range instanceof RealVectorType) return true;
+    if (range instanceof TupleType && !(range instanceof RealTupleType)) {
+      TupleType tuple = (TupleType) range;
+      for (int j=0; j<tuple.getDimension(); j++) {
+        if (tuple.getComponent(j) instanceof RealVectorType) return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Transform and interpolate chunks of a sampling set concurrently,
+   * for resample with Data.NO_ERRORS.  Each chunk writes only its own
+   * part of new_values, oldvals and vals.
+   * @param set                 sampling set
+   * @param wedge               wedge of the sampling set
+   * @param sampling_mode       Data.NEAREST_NEIGHBOR or
+   *                            Data.WEIGHTED_AVERAGE
+   * @param values              unpacked range values of this field
+   * @param new_values          resampled range values (filled in)
+   * @param oldvals             sampling set values (filled in)
+   * @param vals                sampling set values transformed to this
+   *                            field's domain (filled in)
+   * @return                    true if the coordinates were transformed,
+   *                            as the serial path reports by
+   *                            transformCoordinates returning a new array
+   */
+  private boolean resampleChunks(final Set set, final int[] wedge,
+                                 final int sampling_mode,
+                                 final float[][] values,
+                                 final float[][] new_values,
+                                 final float[][] oldvals,
+                                 final float[][] vals)
+          throws VisADException, RemoteException {
+    final Set domainSet = getDomainSet();
+    final int dim = domainSet.getDimension();
+    final RealTupleType domain = ((FunctionType) Type).getDomain();
+    final RealTupleType set_domain = ((SetType) set.getType()).getDomain();
+    final CoordinateSystem coord_sys = set.getCoordinateSystem();
+    final Unit[] units = set.getSetUnits();
+
+    final boolean[] transformed = new boolean[1];
+    visad.util.ParallelChunks.run(wedge.length, resampleChunkSize,
+                                  new visad.util.ParallelChunks.Chunk() {
+      public void run(int start, int end) throws Exception {
+        int n = end - start;
+        int[] chunk_wedge = new int[n];
+        System.arraycopy(wedge, start, chunk_wedge, 0, n);
+        float[][] chunk_old = set.indexToValue(chunk_wedge);
+        float[][] chunk_vals;
+        try {
+          chunk_vals = CoordinateSystem.transformCoordinates(domain,
+                          getDomainCoordinateSystem(), getDomainUnits(),
+                          new ErrorEstimate[dim], set_domain, coord_sys,
+                          Unit.copyUnitsArray(units), new ErrorEstimate[dim],
+                          chunk_old, false);
+        } catch (UnitException ue) {
+          throw new VisADException("Sampling set is not compatible with domain");
+        }
+        if (chunk_vals != chunk_old) transformed[0] = true;
+        for (int k=0; k<dim; k++) {
+          System.arraycopy(chunk_old[k], 0, oldvals[k], start, n);
+          System.arraycopy(chunk_vals[k], 0, vals[k], start, n);
+        }
+
+        if (sampling_mode == WEIGHTED_AVERAGE && domainSet instanceof SimpleSet) {
+          int[][] indices = new int[n][];
+          float[][] coefs = new float[n][];
+          ((SimpleSet) domainSet).valueToInterp(chunk_vals, indices, coefs);
+          for (int j=0; j<TupleDimension; j++) {
+            float[] valuesJ = values[j];
+            float[] new_valuesJ = new_values[j];
+            for (int i=0; i<n; i++) {
+              int len = indices[i] == null ? 0 : indices[i].length;
+              if (len > 0) {
+                float v = valuesJ[indices[i][0]] * coefs[i][0];
+                for (int k=1; k<len; k++) {
+                  v += valuesJ[indices[i][k]] * coefs[i][k];
+                }
+                new_valuesJ[wedge[start + i]] = v;
+              }
+              else { // values outside grid
+                new_valuesJ[wedge[start + i]] = Float.NaN;
+              }
+            }
+          }
+        }
+        else {
+          int[] indices = domainSet.valueToIndex(chunk_vals);
+          for (int j=0; j<TupleDimension; j++) {
+            float[] valuesJ = values[j];
+            float[] new_valuesJ = new_values[j];
+            for (int i=0; i<n; i++) {
+              new_valuesJ[wedge[start + i]] =
+                ((indices[i] >= 0) ? valuesJ[indices[i]]: Float.NaN);
+            }
+          }
+        }
+      }
+    });
+    return transformed[0];
+  }
+
+  /**
+   * Double domain counterpart of resampleChunks, for resampleDouble
+   * with Data.NO_ERRORS.
+   * @param set                 sampling set
+   * @param wedge               wedge of the sampling set
+   * @param sampling_mode       Data.NEAREST_NEIGHBOR or
+   *                            Data.WEIGHTED_AVERAGE
+   * @param values              unpacked range values of this field
+   * @param new_values          resampled range values (filled in)
+   * @param oldvals             sampling set values (filled in)
+   * @param vals                sampling set values transformed to this
+   *                            field's domain (filled in)
+   * @return                    true if the coordinates were transformed,
+   *                            as the serial path reports by
+   *                            transformCoordinates returning a new array
+   */
+  private boolean resampleDoubleChunks(final Set set, final int[] wedge,
+                              final int sampling_mode, final float[][] values,
+                              final double[][] new_values,
+                              final double[][] oldvals, final double[][] vals)
+          throws VisADException, RemoteException {
+    final Set domainSet = getDomainSet();
+    final int dim = domainSet.getDimension();
+    final RealTupleType domain = ((FunctionType) Type).getDomain();
+    final RealTupleType set_domain = ((SetType) set.getType()).getDomain();
+    final CoordinateSystem coord_sys = set.getCoordinateSystem();
+    final Unit[] units = set.getSetUnits();
+
+    final boolean[] transformed = new boolean[1];
+    visad.util.ParallelChunks.run(wedge.length, resampleChunkSize,
+                                  new visad.util.ParallelChunks.Chunk() {
+      public void run(int start, int end) throws Exception {
+        int n = end - start;
+        int[] chunk_wedge = new int[n];
+        System.arraycopy(wedge, start, chunk_wedge, 0, n);
+        double[][] chunk_old = set.indexToDouble(chunk_wedge);
+        double[][] chunk_vals;
+        try {
+          chunk_vals = CoordinateSystem.transformCoordinates(domain,
+                          getDomainCoordinateSystem(), getDomainUnits(),
+                          new ErrorEstimate[dim], set_domain, coord_sys,
+                          Unit.copyUnitsArray(units), new ErrorEstimate[dim],
+                          chunk_old, false);
+        } catch (UnitException ue) {
+          throw new VisADException("Sampling set is not compatible with domain");
+        }
+        if (chunk_vals != chunk_old) transformed[0] = true;
+        for (int k=0; k<dim; k++) {
+          System.arraycopy(chunk_old[k], 0, oldvals[k], start, n);
+          System.arraycopy(chunk_vals[k], 0, vals[k], start, n);
+        }
+
+        if (sampling_mode == WEIGHTED_AVERAGE) {
+          int[][] indices = new int[n][];
+          double[][] coefs = new double[n][];
+          ((GriddedDoubleSet) domainSet).doubleToInterp(chunk_vals, indices,
+                                                        coefs);
+          for (int j=0; j<TupleDimension; j++) {
+            float[] valuesJ = values[j];
+            double[] new_valuesJ = new_values[j];
+            for (int i=0; i<n; i++) {
+              int len = indices[i] == null ? 0 : indices[i].length;
+              if (len > 0) {
+                double v = valuesJ[indices[i][0]] * coefs[i][0];
+                for (int k=1; k<len; k++) {
+                  v += valuesJ[indices[i][k]] * coefs[i][k];
+                }
+                new_valuesJ[wedge[start + i]] = v;
+              }
+              else { // values outside grid
+                new_valuesJ[wedge[start + i]] = Float.NaN;
+              }
+            }
+          }
+        }
+        else {
+          int[] indices = domainSet.doubleToIndex(chunk_vals);
+          for (int j=0; j<TupleDimension; j++) {
+            float[] valuesJ = values[j];
+            double[] new_valuesJ = new_values[j];
+            for (int i=0; i<n; i++) {
+              new_valuesJ[wedge[start + i]] =
+                ((indices[i] >= 0) ? valuesJ[indices[i]]: Float.NaN);
+            }
+          }
+        }
+      }
+    });
+    return transformed[0];
+  }
+
   /** convert this FlatField to a (non-Flat) FieldImpl */
   public Field convertToField() throws VisADException, RemoteException {
     Field new_field = new FieldImpl((FunctionType) Type, getDomainSet());
@@ -5327,48 +6130,18 @@ if (pr) System.out.println("value = " + new_values[0][0]);
     }
     ranges = anyRangeRef ? new double[2][TupleDimension] : null;
 
-    // get range values
-
-
-
-    double[][] valuesD = null;
-    float[][] valuesF = null;
-    if (shouldBeDouble ()) {
-        valuesD = unpackValues (false);
-    } else {
-        valuesF = unpackFloats (false);
+    // get statistics of range values, cached unless they have changed
+    boolean[] needed = new boolean[TupleDimension];
+    for (int i=0; i<TupleDimension; i++) {
+      needed[i] = (indices[i] >= 0 || anyRangeRef);
     }
-
+    RangeStatistics[] stats = getRangeStatistics(needed);
 
     for (int i=0; i<TupleDimension; i++) {
-        double[] valuesDI = null;
-        float [] valuesFI = null;
-        if (valuesD !=null)
-            valuesDI = valuesD[i];
-        if (valuesF !=null)
-            valuesFI = valuesF[i];
       int k = indices[i];
       if (k >= 0 || anyRangeRef) {
-        double min = Double.MAX_VALUE;
-        double max = -Double.MAX_VALUE;
-
-        if (valuesDI!=null) {
-            for (int j=0; j<getLength(); j++) {
-                if (valuesDI[j] == valuesDI[j]) {
-                    min = Math.min(min, valuesDI[j]);
-                    max = Math.max(max, valuesDI[j]);
-                }
-            }
-        }
-
-        if (valuesFI!=null) {
-            for (int j=0; j<getLength(); j++) {
-                if (valuesFI[j] == valuesFI[j]) {
-                    min = Math.min(min, valuesFI[j]);
-                    max = Math.max(max, valuesFI[j]);
-                }
-            }
-        }
+        double min = stats[i].min;
+        double max = stats[i].max;
 
 
         Unit dunit = ((RealType)
@@ -5650,6 +6423,7 @@ if (pr) System.out.println("value = " + new_values[0][0]);
     }
 
     synchronized(DoubleRange) {
+      clone.rangeStats = null;
       if (!MissingFlag) {
         try {
           // DRM 3 Oct 2006 - we need to recreate this otherwise 
@@ -5657,6 +6431,14 @@ if (pr) System.out.println("value = " + new_values[0][0]);
           clone.DoubleRange = new double[TupleDimension][];
           double[][] values  = unpackValues(true);
           clone.packValues(values, false);
+          if (rangeStats != null && cacheRangeStatistics()) {
+            clone.rangeStats = new RangeStatistics[TupleDimension];
+            for (int i=0; i<TupleDimension; i++) {
+              if (rangeStats[i] != null) {
+                clone.rangeStats[i] = rangeStats[i].copy();
+              }
+            }
+          }
         }
         catch (VisADException ex) {
           throw new RuntimeException(ex.toString());
@@ -5798,6 +6580,9 @@ if (pr) System.out.println("value = " + new_values[0][0]);
 
     FlatField fld = (FlatField )obj;
 
+    // let a deferred field compute its values
+    fld.isMissing();
+
     if (RangeMode == null || fld.RangeMode == null) {
       if (RangeMode != null || fld.RangeMode != null) {
         return false;
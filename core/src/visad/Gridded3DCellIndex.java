@@ -0,0 +1,280 @@
+//
+// Gridded3DCellIndex.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+/**
+ * Gridded3DCellIndex is a uniform bin structure over the cells of a
+ * curvilinear 3-D grid, used by {@link Gridded3DSet#valueToGrid} to find
+ * a starting cell for each point instead of walking to it from the
+ * previous point.  Each bin lists the cells whose bounding boxes overlap
+ * it, in compressed row form.<P>
+ *
+ * The index only holds cell numbers; it reads the samples of the set
+ * when it is queried, and can be shared by several threads.
+ */
+final class Gridded3DCellIndex {
+
+  /** target number of cells per bin */
+  private static final int CELLS_PER_BIN = 4;
+
+  /** an index with more bin entries than this times the number of cells
+      is not built (the grid is too distorted for bins to help) */
+  private static final int MAX_ENTRIES_PER_CELL = 16;
+
+  private final int lengthX, lengthY, lengthZ;
+
+  private final float lowX, lowY, lowZ;
+  private final float scaleX, scaleY, scaleZ;
+  private final int binsX, binsY, binsZ;
+
+  /** cells of bin b are cells[binStart[b]] to cells[binStart[b+1]-1] */
+  private final int[] binStart;
+
+  /** index of the (0, 0, 0) corner sample of each cell */
+  private final int[] cells;
+
+  private Gridded3DCellIndex(int lengthX, int lengthY, int lengthZ,
+                             float[] low, float[] scale, int[] bins,
+                             int[] binStart, int[] cells) {
+    this.lengthX = lengthX;
+    this.lengthY = lengthY;
+    this.lengthZ = lengthZ;
+    lowX = low[0];
+    lowY = low[1];
+    lowZ = low[2];
+    scaleX = scale[0];
+    scaleY = scale[1];
+    scaleZ = scale[2];
+    binsX = bins[0];
+    binsY = bins[1];
+    binsZ = bins[2];
+    this.binStart = binStart;
+    this.cells = cells;
+  }
+
+  /**
+   * Build an index over the cells of a lengthX x lengthY x lengthZ grid.
+   *
+   * @return the index, or null if the grid has no valid cells or its
+   *         cells overlap too many bins
+   */
+  static Gridded3DCellIndex create(float[][] samples, int lengthX,
+                                   int lengthY, int lengthZ) {
+    int ncx = lengthX - 1;
+    int ncy = lengthY - 1;
+    int ncz = lengthZ - 1;
+    if (ncx < 1 || ncy < 1 || ncz < 1) return null;
+    int ncells = ncx * ncy * ncz;
+
+    float[] low = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+    float[] hi = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+    int length = lengthX * lengthY * lengthZ;
+    for (int j=0; j<3; j++) {
+      float[] s = samples[j];
+      for (int i=0; i<length; i++) {
+        if (s[i] < low[j]) low[j] = s[i];
+        if (s[i] > hi[j]) hi[j] = s[i];
+      }
+      if (!(low[j] <= hi[j])) return null;
+    }
+
+    // bins roughly cubic, about CELLS_PER_BIN cells each
+    double volume = 1.0;
+    int ndims = 0;
+    for (int j=0; j<3; j++) {
+      if (hi[j] > low[j]) {
+        volume *= (hi[j] - low[j]);
+        ndims++;
+      }
+    }
+    double nbins = Math.max(1.0, (double) ncells / CELLS_PER_BIN);
+    double side = (ndims == 0) ? 1.0 : Math.pow(volume / nbins, 1.0 / ndims);
+    int[] bins = new int[3];
+    float[] scale = new float[3];
+    for (int j=0; j<3; j++) {
+      double extent = hi[j] - low[j];
+      int n = (extent > 0.0) ? (int) Math.ceil(extent / side) : 1;
+      bins[j] = Math.max(1, Math.min(n, 1024));
+      scale[j] = (extent > 0.0) ? (float) (bins[j] / extent) : 0.0f;
+    }
+    long totalBins = (long) bins[0] * bins[1] * bins[2];
+    if (totalBins >= Integer.MAX_VALUE) return null;
+
+    Gridded3DCellIndex index =
+      new Gridded3DCellIndex(lengthX, lengthY, lengthZ, low, scale, bins,
+                             new int[(int) totalBins + 1], null);
+
+    // count entries per bin, then fill
+    int[] counts = new int[(int) totalBins + 1];
+    int[] range = new int[6];
+    long entries = 0;
+    for (int c=0; c<ncells; c++) {
+      if (index.binRange(samples, cellBase(c, ncx, ncy, lengthX, lengthY),
+                         range)) {
+        for (int bz=range[4]; bz<=range[5]; bz++) {
+          for (int by=range[2]; by<=range[3]; by++) {
+            for (int bx=range[0]; bx<=range[1]; bx++) {
+              counts[(bz * bins[1] + by) * bins[0] + bx + 1]++;
+            }
+          }
+        }
+        entries += (long) (range[1] - range[0] + 1) *
+          (range[3] - range[2] + 1) * (range[5] - range[4] + 1);
+        if (entries > (long) MAX_ENTRIES_PER_CELL * ncells) return null;
+      }
+    }
+    int[] binStart = index.binStart;
+    for (int b=0; b<totalBins; b++) {
+      counts[b + 1] += counts[b];
+      binStart[b + 1] = counts[b + 1];
+    }
+    int[] cells = new int[(int) entries];
+    for (int c=0; c<ncells; c++) {
+      int base = cellBase(c, ncx, ncy, lengthX, lengthY);
+      if (index.binRange(samples, base, range)) {
+        for (int bz=range[4]; bz<=range[5]; bz++) {
+          for (int by=range[2]; by<=range[3]; by++) {
+            for (int bx=range[0]; bx<=range[1]; bx++) {
+              cells[counts[(bz * bins[1] + by) * bins[0] + bx]++] = base;
+            }
+          }
+        }
+      }
+    }
+    return new Gridded3DCellIndex(lengthX, lengthY, lengthZ, low, scale, bins,
+                                  binStart, cells);
+  }
+
+  private static int cellBase(int c, int ncx, int ncy, int lengthX,
+                              int lengthY) {
+    int cx = c % ncx;
+    int cy = (c / ncx) % ncy;
+    int cz = c / (ncx * ncy);
+    return (cz * lengthY + cy) * lengthX + cx;
+  }
+
+  /**
+   * Get the range of bins overlapped by the bounding box of a cell.
+   *
+   * @param range  set to min and max bin in x, y and z
+   * @return false if the cell has a missing corner
+   */
+  private boolean binRange(float[][] samples, int base, int[] range) {
+    int zadd = lengthX * lengthY;
+    float[] low = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+    float[] hi = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+    for (int k=0; k<8; k++) {
+      int i = base + ((k & 1) != 0 ? 1 : 0) + ((k & 2) != 0 ? lengthX : 0) +
+        ((k & 4) != 0 ? zadd : 0);
+      for (int j=0; j<3; j++) {
+        float v = samples[j][i];
+        if (v != v) return false;
+        if (v < low[j]) low[j] = v;
+        if (v > hi[j]) hi[j] = v;
+      }
+    }
+    range[0] = bin(low[0], lowX, scaleX, binsX);
+    range[1] = bin(hi[0], lowX, scaleX, binsX);
+    range[2] = bin(low[1], lowY, scaleY, binsY);
+    range[3] = bin(hi[1], lowY, scaleY, binsY);
+    range[4] = bin(low[2], lowZ, scaleZ, binsZ);
+    range[5] = bin(hi[2], lowZ, scaleZ, binsZ);
+    return true;
+  }
+
+  private static int bin(float v, float low, float scale, int bins) {
+    int b = (int) ((v - low) * scale);
+    return (b < 0) ? 0 : ((b >= bins) ? bins - 1 : b);
+  }
+
+  /**
+   * Find a cell whose bounding box contains (x, y, z).
+   *
+   * @param cell  set to the grid coordinates of the cell's (0, 0, 0)
+   *              corner if one is found
+   * @return true if a cell was found
+   */
+  boolean findCell(float[][] samples, float x, float y, float z,
+                   int[] cell) {
+    if (x != x || y != y || z != z) return false;
+    float bx = (x - lowX) * scaleX;
+    float by = (y - lowY) * scaleY;
+    float bz = (z - lowZ) * scaleZ;
+    if (bx < 0.0f || by < 0.0f || bz < 0.0f ||
+        bx > binsX || by > binsY || bz > binsZ) {
+      return false;
+    }
+    int b = (bin(z, lowZ, scaleZ, binsZ) * binsY +
+             bin(y, lowY, scaleY, binsY)) * binsX +
+            bin(x, lowX, scaleX, binsX);
+
+    float[] sx = samples[0];
+    float[] sy = samples[1];
+    float[] sz = samples[2];
+    int zadd = lengthX * lengthY;
+    int nearest = -1;
+    float nearestDist = Float.MAX_VALUE;
+    for (int e=binStart[b]; e<binStart[b + 1]; e++) {
+      int base = cells[e];
+      float lx = Float.MAX_VALUE, ly = Float.MAX_VALUE, lz = Float.MAX_VALUE;
+      float hx = -Float.MAX_VALUE, hy = -Float.MAX_VALUE, hz = -Float.MAX_VALUE;
+      float cx = 0.0f, cy = 0.0f, cz = 0.0f;
+      for (int k=0; k<8; k++) {
+        int i = base + ((k & 1) != 0 ? 1 : 0) + ((k & 2) != 0 ? lengthX : 0) +
+          ((k & 4) != 0 ? zadd : 0);
+        float vx = sx[i];
+        float vy = sy[i];
+        float vz = sz[i];
+        if (vx < lx) lx = vx;
+        if (vx > hx) hx = vx;
+        if (vy < ly) ly = vy;
+        if (vy > hy) hy = vy;
+        if (vz < lz) lz = vz;
+        if (vz > hz) hz = vz;
+        cx += vx;
+        cy += vy;
+        cz += vz;
+      }
+      if (lx <= x && x <= hx && ly <= y && y <= hy && lz <= z && z <= hz) {
+        // prefer the cell whose center is nearest
+        cx = cx / 8.0f - x;
+        cy = cy / 8.0f - y;
+        cz = cz / 8.0f - z;
+        float dist = cx * cx + cy * cy + cz * cz;
+        if (dist < nearestDist) {
+          nearestDist = dist;
+          nearest = base;
+        }
+      }
+    }
+    if (nearest < 0) return false;
+    cell[0] = nearest % lengthX;
+    cell[1] = (nearest / lengthX) % lengthY;
+    cell[2] = nearest / zadd;
+    return true;
+  }
+}
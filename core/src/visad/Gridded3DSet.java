@@ -29,6 +29,8 @@ package visad;
 import java.io.InputStreamReader;
 import java.util.Enumeration;
 
+import visad.util.ParallelChunks;
+
 /**
  * Gridded3DSet represents a finite set of samples of R^3.
  * <P>
@@ -42,6 +44,21 @@ public class Gridded3DSet extends GriddedSet {
 
   float LowX, HiX, LowY, HiY, LowZ, HiZ;
 
+  private static boolean defaultUseCellIndex =
+    Boolean.getBoolean("visad.gridded3dset.cellindex");
+
+  private static boolean parallelValueToGrid =
+    Boolean.getBoolean("visad.gridded3dset.parallel");
+
+  private static int valueToGridChunkSize = 16384;
+
+  /** whether valueToGrid uses a cell index; null means the default */
+  private Boolean useCellIndex = null;
+
+  /** cell index, built on first use */
+  private transient Gridded3DCellIndex cellIndex = null;
+  private transient boolean cellIndexBuilt = false;
+
   /**
    * a 3-D set whose topology is a lengthX x lengthY x lengthZ grid, with null
    * errors, CoordinateSystem and Units are defaults from type
@@ -1050,6 +1067,99 @@ public class Gridded3DSet extends GriddedSet {
     return new float[][]{value};
   }
   
+  /**
+   * Set the default for whether valueToGrid uses a cell index on sets
+   * that have not been configured with {@link #setUseCellIndex}.  The
+   * index bins the grid cells by their bounding boxes, so that the
+   * search for each point starts in a cell near it rather than at the
+   * previous point; this helps most for curvilinear grids and scattered
+   * points.  Also set by the <code>visad.gridded3dset.cellindex</code>
+   * system property.
+   * @param use                 true to use a cell index by default
+   */
+  public static void setDefaultUseCellIndex(boolean use) {
+    defaultUseCellIndex = use;
+  }
+
+  /**
+   * @return                    true if valueToGrid uses a cell index by
+   *                            default
+   */
+  public static boolean getDefaultUseCellIndex() {
+    return defaultUseCellIndex;
+  }
+
+  /**
+   * Set whether valueToGrid uses a cell index for this set.  The index
+   * is built the first time it is needed, and holds about one int for
+   * each grid cell.
+   * @param use                 true to use a cell index
+   */
+  public void setUseCellIndex(boolean use) {
+    useCellIndex = Boolean.valueOf(use);
+  }
+
+  /**
+   * @return                    true if valueToGrid uses a cell index for
+   *                            this set
+   */
+  public boolean getUseCellIndex() {
+    return (useCellIndex != null) ? useCellIndex.booleanValue()
+                                  : defaultUseCellIndex;
+  }
+
+  /**
+   * @return the cell index if it is in use and can be built, else null
+   */
+  private synchronized Gridded3DCellIndex getCellIndex() {
+    if (!getUseCellIndex() || ManifoldDimension < 3 || Length == 1) {
+      return null;
+    }
+    if (!cellIndexBuilt) {
+      cellIndex = Gridded3DCellIndex.create(getMySamples(), LengthX,
+                                            LengthY, LengthZ);
+      cellIndexBuilt = true;
+    }
+    return cellIndex;
+  }
+
+  /**
+   * Set whether valueToGrid splits large arrays of values into chunks
+   * that are located concurrently on the pool of
+   * {@link visad.util.ParallelChunks}.  Each chunk starts its search
+   * afresh, so points off the grid or on cell boundaries may be located
+   * slightly differently than in a single pass.  Also set by the
+   * <code>visad.gridded3dset.parallel</code> system property.
+   * @param parallel            true to locate chunks in parallel
+   */
+  public static void setParallelValueToGrid(boolean parallel) {
+    parallelValueToGrid = parallel;
+  }
+
+  /**
+   * @return                    true if valueToGrid locates chunks in
+   *                            parallel
+   */
+  public static boolean getParallelValueToGrid() {
+    return parallelValueToGrid;
+  }
+
+  /**
+   * Set the number of values in each chunk of a parallel valueToGrid.
+   * @param size                number of values per chunk
+   */
+  public static void setValueToGridChunkSize(int size) {
+    valueToGridChunkSize = Math.max(1, size);
+  }
+
+  /**
+   * @return                    number of values in each chunk of a
+   *                            parallel valueToGrid
+   */
+  public static int getValueToGridChunkSize() {
+    return valueToGridChunkSize;
+  }
+
   @Override
   public float[][] valueToGrid(float[][] value) throws VisADException {
       return valueToGrid(value, null);
@@ -1081,7 +1191,54 @@ public class Gridded3DSet extends GriddedSet {
     // Avoid any ArrayOutOfBounds exceptions by taking the shortest length
     int length = Math.min(value[0].length, value[1].length);
     length = Math.min(length, value[2].length);
-    float[][] grid = new float[ManifoldDimension][length];
+    final float[][] grid = new float[ManifoldDimension][length];
+    final Gridded3DCellIndex index = getCellIndex();
+
+    int chunkSize = valueToGridChunkSize;
+    if (!parallelValueToGrid || length <= chunkSize || Length == 1) {
+      valueToGrid(mySamples, value, grid, 0, length, guess, index);
+      return grid;
+    }
+
+    // each chunk starts from its own guess; the first uses the caller's
+    // and the last one's final box is returned to the caller
+    int nchunks = (length + chunkSize - 1) / chunkSize;
+    final int[][] guesses = new int[nchunks][];
+    for (int c=0; c<nchunks; c++) {
+      guesses[c] = new int[] {-1, -1, -1};
+    }
+    if (guess != null) {
+      System.arraycopy(guess, 0, guesses[0], 0, 3);
+    }
+    final float[][] samples = mySamples;
+    final float[][] values = value;
+    final int size = chunkSize;
+    try {
+      ParallelChunks.run(length, chunkSize, new ParallelChunks.Chunk() {
+        public void run(int start, int end) throws VisADException {
+          valueToGrid(samples, values, grid, start, end, guesses[start / size],
+                      index);
+        }
+      });
+    }
+    catch (java.rmi.RemoteException e) {
+      throw new VisADException(e.toString());
+    }
+    if (guess != null) {
+      System.arraycopy(guesses[nchunks - 1], 0, guess, 0, 3);
+    }
+    return grid;
+  }
+
+  /**
+   * transform values start to end - 1 to non-integer grid coordinates,
+   * starting the search for each point from the previous point's grid
+   * box, or from a box found with index if it is not null
+   */
+  private void valueToGrid(float[][] mySamples, float[][] value,
+                           float[][] grid, int start, int end, int[] guess,
+                           Gridded3DCellIndex index) throws VisADException {
+    int[] cell = (index != null) ? new int[3] : null;
 
     // (gx, gy, gz) is the current grid box guess
     int gx = (LengthX-1)/2; 
@@ -1111,7 +1268,7 @@ public class Gridded3DSet extends GriddedSet {
     float[] X = new float[3];
     float[] Y = new float[3];
 
-    for (int i = 0; i < length; i++) {
+    for (int i = start; i < end; i++) {
       // a flag indicating whether point is off the grid
       boolean offgrid = false;
       // the first guess should be the last box unless there was no solution
@@ -1130,7 +1287,7 @@ public class Gridded3DSet extends GriddedSet {
         continue;
       }
       // test for missing
-      if ((i != 0) && grid[0][i - 1] != grid[0][i - 1]) {
+      if ((i != start) && grid[0][i - 1] != grid[0][i - 1]) {
         // gx = (LengthX-1)/2;
         // gy = (LengthY-1)/2;
         // gz = (LengthZ-1)/2;
@@ -1151,9 +1308,16 @@ public class Gridded3DSet extends GriddedSet {
       float sz = mySamples[2][gii];
       //GHANSHAM: Added this if condition. It tries to get start point
       //when i = 0 (first time) or when the last guess is not a valid value
-      if (i == 0 || ((i != 0) && grid[0][i - 1] != grid[0][i - 1])) {
+      if (index != null && !(i == start && guess != null && guess[0] >= 0 &&
+                             guess[1] >= 0 && guess[2] >= 0) &&
+          index.findCell(mySamples, v_x, v_y, v_z, cell)) {
+        // start in a cell whose bounding box contains the point
+        gx = cell[0];
+        gy = cell[1];
+        gz = cell[2];
+      } else if (i == start || ((i != start) && grid[0][i - 1] != grid[0][i - 1])) {
         // TDR: special check if i==0 when a first value guess is supplied.
-        if (i == 0 && guess != null && guess[0] >= 0 && guess[1] >= 0 && guess[2] >= 0) {
+        if (i == start && guess != null && guess[0] >= 0 && guess[1] >= 0 && guess[2] >= 0) {
           gx = guess[0];
           gy = guess[1];
           gz = guess[2];
@@ -2304,8 +2468,6 @@ public class Gridded3DSet extends GriddedSet {
       guess[1] = gy;
       guess[2] = gz;
     }
-    
-    return grid;
   }
 
   public float[] getStartPoint(float x, float y, float z) {
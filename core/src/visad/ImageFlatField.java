@@ -385,6 +385,45 @@ public class ImageFlatField extends FlatField {
     return samps;
   }
 
+  /**
+   * Unpacks a block of consecutive samples as doubles.
+   *
+   * @param start           Index of the first sample.
+   * @param count           Number of samples.
+   */
+  public double[][] unpackValues(int start, int count)
+    throws VisADException
+  {
+    return Set.floatToDouble(unpackFloats(start, count));
+  }
+
+  /**
+   * Unpacks a block of consecutive samples as floats, reading only the
+   * rows of the image that hold them.
+   *
+   * @param start           Index of the first sample.
+   * @param count           Number of samples.
+   */
+  public float[][] unpackFloats(int start, int count) throws VisADException {
+    pr ("unpackFloats(" + start + ", " + count + ")");
+    if (start < 0 || count < 0 || start + count > width * height) {
+      throw new FieldException("ImageFlatField.unpackFloats: bad block " +
+        start + " + " + count);
+    }
+    float[][] samps = new float[num][count];
+    if (count == 0) return samps;
+    int row0 = start / width;
+    int rows = (start + count - 1) / width - row0 + 1;
+    int offset = start - row0 * width;
+    Raster r = image.getRaster();
+    float[] band = new float[rows * width];
+    for (int c=0; c<num; c++) {
+      r.getSamples(0, row0, width, rows, c, band);
+      System.arraycopy(band, offset, samps[c], 0, count);
+    }
+    return samps;
+  }
+
   protected double[] unpackValues(int s_index) throws VisADException {
     pr ("unpackValues(" + s_index + ")");
     Raster r = image.getRaster();
@@ -26,6 +26,8 @@ MA 02111-1307, USA
 
 package visad;
 
+import visad.util.ParallelChunks;
+
 /**
  * <P>{@link IrregularSet} for a finite number of samples of R.</P>
  *
@@ -36,13 +38,15 @@ package visad;
  * <p>When you call an {@link Irregular2DSet} constructor without a {@link
  * Delaunay} argument, the constructor uses the {@link Delaunay#factory(float[][], boolean)}
  * method to implictly compute a Delaunay triangulation. 3000 points is the
- * current break-point from Watson's algorithm to Clarkson's algorithm. So,
- * currently, at 3001 points you start using Clarkson's algorithm, which rounds
- * coordinates to integers.  If your values are small enough that integer
- * rounding will merge some of them to the same value (and hence create
- * colinear or colocated points), there will be trouble. One approach is
- * to scale your coordinates up so integer rounding does not merge values.
- * Another is to ensure that you use Watson's algorithm by using <code>new
+ * current break-point from Watson's algorithm to the incremental algorithm
+ * of {@link DelaunayIncremental}, which uses exact arithmetic. Sets with
+ * duplicate points cannot be triangulated that way, and fall back to the
+ * approximate {@link DelaunayFast} (above 10000 points) or to Clarkson's
+ * algorithm, which rounds coordinates to integers.  If your
+ * values are small enough that integer rounding will merge some of them to
+ * the same value (and hence create colinear or colocated points), there
+ * will be trouble. One approach is to remove the duplicate points. Another
+ * is to ensure that you use Watson's algorithm by using <code>new
  * DelaunayWatson(samples)</code> as the {@link Delaunay} argument of the {@link
  * Irregular2DSet} constructor.</p>
  */
@@ -239,90 +243,107 @@ public class Irregular2DSet extends IrregularSet {
       throw new SetException("Irregular2DSet.valueToTri: triangulation " +
                              "undefined");
     }
-    int[] tri = new int[length];
-    int curtri = 0;
-    float[][]mySamples = getMySamples();
-    for (int i=0; i<length; i++) {
-      // Return -1 if iteration loop fails
-      tri[i] = -1;
-      boolean foundit = false;
-      if (curtri < 0) curtri = 0;
-      for (int itnum=0; (itnum<Delan.Tri.length) && !foundit; itnum++) {
-        // define data
-        int t0 = Delan.Tri[curtri][0];
-        int t1 = Delan.Tri[curtri][1];
-        int t2 = Delan.Tri[curtri][2];
-        float Ax = mySamples[0][t0];
-        float Ay = mySamples[1][t0];
-        float Bx = mySamples[0][t1];
-        float By = mySamples[1][t1];
-        float Cx = mySamples[0][t2];
-        float Cy = mySamples[1][t2];
-        float Px = value[0][i];
-        float Py = value[1][i];
-
-        // tests whether point is contained in current triangle
-        float tval0 = (Bx-Ax)*(Py-Ay) - (By-Ay)*(Px-Ax);
-        float tval1 = (Cx-Bx)*(Py-By) - (Cy-By)*(Px-Bx);
-        float tval2 = (Ax-Cx)*(Py-Cy) - (Ay-Cy)*(Px-Cx);
-        boolean test0 = (tval0 == 0) || ( (tval0 > 0) == (
-                        (Bx-Ax)*(Cy-Ay) - (By-Ay)*(Cx-Ax) > 0) );
-        boolean test1 = (tval1 == 0) || ( (tval1 > 0) == (
-                        (Cx-Bx)*(Ay-By) - (Cy-By)*(Ax-Bx) > 0) );
-        boolean test2 = (tval2 == 0) || ( (tval2 > 0) == (
-                        (Ax-Cx)*(By-Cy) - (Ay-Cy)*(Bx-Cx) > 0) );
-
-        // flip to prevent tight loop of two triangles in
-        // degenerate triangulation
-        int it2 = itnum / 2;
-        boolean flip = ((it2 % 2) == 0);
-        // figure out which triangle to go to next
-        if (!test0 && !test1 && !test2) curtri = -1;
-        else if (!test0 && !test1) {
-          if (flip) {
-            int nextri = Delan.Walk[curtri][1];
-            if (nextri >= 0) curtri = nextri;
-            else curtri = Delan.Walk[curtri][0];
-          }
-          else {
-            int nextri = Delan.Walk[curtri][0];
-            if (nextri >= 0) curtri = nextri;
-            else curtri = Delan.Walk[curtri][1];
-          }
+    final int[] tri = new int[length];
+    final float[][] mySamples = getMySamples();
+    final Delaunay delan = Delan;
+    final DelaunayGrid grid = getGrid();
+    final float[][] points = value;
+    locate(length, new ParallelChunks.Chunk() {
+      public void run(int start, int end) {
+        int curtri = 0;
+        for (int i=start; i<end; i++) {
+          if (grid != null) curtri = grid.seed(points, i);
+          tri[i] = walkToTri(delan, mySamples, points, i, curtri);
+          if (tri[i] >= 0) curtri = tri[i];
+        }
+      }
+    });
+    return tri;
+  }
+
+  /** walk through the triangulation from triangle curtri to the
+      triangle containing point i of value; return -1 if the point
+      is outside the convex hull or the walk fails */
+  private static int walkToTri(Delaunay delan, float[][] mySamples,
+                               float[][] value, int i, int curtri) {
+    // Return -1 if iteration loop fails
+    int tri = -1;
+    boolean foundit = false;
+    for (int itnum=0; (itnum<delan.Tri.length) && !foundit; itnum++) {
+      // define data
+      int t0 = delan.Tri[curtri][0];
+      int t1 = delan.Tri[curtri][1];
+      int t2 = delan.Tri[curtri][2];
+      float Ax = mySamples[0][t0];
+      float Ay = mySamples[1][t0];
+      float Bx = mySamples[0][t1];
+      float By = mySamples[1][t1];
+      float Cx = mySamples[0][t2];
+      float Cy = mySamples[1][t2];
+      float Px = value[0][i];
+      float Py = value[1][i];
+
+      // tests whether point is contained in current triangle
+      float tval0 = (Bx-Ax)*(Py-Ay) - (By-Ay)*(Px-Ax);
+      float tval1 = (Cx-Bx)*(Py-By) - (Cy-By)*(Px-Bx);
+      float tval2 = (Ax-Cx)*(Py-Cy) - (Ay-Cy)*(Px-Cx);
+      boolean test0 = (tval0 == 0) || ( (tval0 > 0) == (
+                      (Bx-Ax)*(Cy-Ay) - (By-Ay)*(Cx-Ax) > 0) );
+      boolean test1 = (tval1 == 0) || ( (tval1 > 0) == (
+                      (Cx-Bx)*(Ay-By) - (Cy-By)*(Ax-Bx) > 0) );
+      boolean test2 = (tval2 == 0) || ( (tval2 > 0) == (
+                      (Ax-Cx)*(By-Cy) - (Ay-Cy)*(Bx-Cx) > 0) );
+
+      // flip to prevent tight loop of two triangles in
+      // degenerate triangulation
+      int it2 = itnum / 2;
+      boolean flip = ((it2 % 2) == 0);
+      // figure out which triangle to go to next
+      if (!test0 && !test1 && !test2) curtri = -1;
+      else if (!test0 && !test1) {
+        if (flip) {
+          int nextri = delan.Walk[curtri][1];
+          if (nextri >= 0) curtri = nextri;
+          else curtri = delan.Walk[curtri][0];
+        }
+        else {
+          int nextri = delan.Walk[curtri][0];
+          if (nextri >= 0) curtri = nextri;
+          else curtri = delan.Walk[curtri][1];
+        }
+      }
+      else if (!test1 && !test2) {
+        if (flip) {
+          int nextri = delan.Walk[curtri][2];
+          if (nextri >= 0) curtri = nextri;
+          else curtri = delan.Walk[curtri][1];
+        }
+        else {
+          int nextri = delan.Walk[curtri][1];
+          if (nextri >= 0) curtri = nextri;
+          else curtri = delan.Walk[curtri][2];
         }
-        else if (!test1 && !test2) {
-          if (flip) {
-            int nextri = Delan.Walk[curtri][2];
-            if (nextri >= 0) curtri = nextri;
-            else curtri = Delan.Walk[curtri][1];
-          }
-          else {
-            int nextri = Delan.Walk[curtri][1];
-            if (nextri >= 0) curtri = nextri;
-            else curtri = Delan.Walk[curtri][2];
-          }
+      }
+      else if (!test2 && !test0) {
+        if (flip) {
+          int nextri = delan.Walk[curtri][0];
+          if (nextri >= 0) curtri = nextri;
+          else curtri = delan.Walk[curtri][2];
         }
-        else if (!test2 && !test0) {
-          if (flip) {
-            int nextri = Delan.Walk[curtri][0];
-            if (nextri >= 0) curtri = nextri;
-            else curtri = Delan.Walk[curtri][2];
-          }
-          else {
-            int nextri = Delan.Walk[curtri][2];
-            if (nextri >= 0) curtri = nextri;
-            else curtri = Delan.Walk[curtri][0];
-          }
+        else {
+          int nextri = delan.Walk[curtri][2];
+          if (nextri >= 0) curtri = nextri;
+          else curtri = delan.Walk[curtri][0];
         }
-        else if (!test0) curtri = Delan.Walk[curtri][0];
-        else if (!test1) curtri = Delan.Walk[curtri][1];
-        else if (!test2) curtri = Delan.Walk[curtri][2];
-        else foundit = true;
-
-        // Return -1 if outside of the convex hull
-        if (curtri < 0) foundit = true;
-        if (foundit) tri[i] = curtri;
       }
+      else if (!test0) curtri = delan.Walk[curtri][0];
+      else if (!test1) curtri = delan.Walk[curtri][1];
+      else if (!test2) curtri = delan.Walk[curtri][2];
+      else foundit = true;
+
+      // Return -1 if outside of the convex hull
+      if (curtri < 0) foundit = true;
+      if (foundit) tri = curtri;
     }
     return tri;
   }
@@ -26,6 +26,8 @@ MA 02111-1307, USA
 
 package visad;
 
+import visad.util.ParallelChunks;
+
 /**
    Irregular3DSet represents a finite set of samples of R^3.<P>
 
@@ -166,8 +168,29 @@ public class Irregular3DSet extends IrregularSet {
                              "don't match");
     }
 
-    boolean nonConvex = Delan.getNonConvex();
+    final boolean nonConvex = Delan.getNonConvex();
+    final int[] tri = new int[length];
+    final float[][] mySamples = getMySamples();
+    final Delaunay delan = Delan;
+    final DelaunayGrid grid = getGrid();
+    final float[][] points = value;
+    locate(length, new ParallelChunks.Chunk() {
+      public void run(int start, int end) {
+        locateTris(delan, grid, nonConvex, mySamples, points, tri,
+                   start, end);
+      }
+    });
+
+    return tri;
+  }
 
+  /** find the tetrahedra containing points start through end - 1
+      of value, walking from the tetrahedron given by grid (if not
+      null) or else from that of the previous point */
+  private static void locateTris(Delaunay delan, DelaunayGrid grid,
+                                 boolean nonConvex, float[][] mySamples,
+                                 float[][] value, int[] tri,
+                                 int start, int end) {
     float[] PA = new float[3];
     float[] PB = new float[3];
     float[] PC = new float[3];
@@ -181,35 +204,27 @@ public class Irregular3DSet extends IrregularSet {
     float sum_DCxAD;
     float sum_ADxBA;
 
-    boolean[] fail_tri = new boolean[Delan.Tri.length];
-    for ( int kk = 0; kk < fail_tri.length; kk++ ) { 
-      fail_tri[kk] = false;
-    }
+    boolean[] fail_tri = new boolean[delan.Tri.length];
     int [] fail_list = null;
     int fail_length = 0;
 
-    int[] tri = new int[length];
     int curtri = 0;
-
-// System.out.println("length = " + length + " Delan.Tri.length = " +
-//                    Delan.Tri.length);
-
-    float[][]mySamples = getMySamples();
-    for (int i=0; i<length; i++) {
+    for (int i=start; i<end; i++) {
 
       // System.out.println("\nvalue["+i+"] = ("+value[0][i]+", "+value[1][i]+", "+value[2][i]+")");
 
       // Return -1 if iteration loop fails
       tri[i] = -1;
       boolean foundit = false;
-      if (curtri < 0) curtri = 0;
+      if (grid != null) curtri = grid.seed(value, i);
+      else if (curtri < 0) curtri = 0;
       int itnum;
-      for (itnum=0; (itnum<Delan.Tri.length) && !foundit; itnum++) {
+      for (itnum=0; (itnum<delan.Tri.length) && !foundit; itnum++) {
         // define data
-        int t0 = Delan.Tri[curtri][0];
-        int t1 = Delan.Tri[curtri][1];
-        int t2 = Delan.Tri[curtri][2];
-        int t3 = Delan.Tri[curtri][3];
+        int t0 = delan.Tri[curtri][0];
+        int t1 = delan.Tri[curtri][1];
+        int t2 = delan.Tri[curtri][2];
+        int t3 = delan.Tri[curtri][3];
         float Ax = mySamples[0][t0];
         float Ay = mySamples[1][t0];
         float Az = mySamples[2][t0];
@@ -325,19 +340,19 @@ public class Irregular3DSet extends IrregularSet {
           int t = -1;
           boolean fail = true;
           if (!test1 && fail) {
-            t = Delan.Walk[curtri][0];
+            t = delan.Walk[curtri][0];
             if (t != -1) fail = fail_tri[t];
           }
           if (!test2 && fail) {
-            t = Delan.Walk[curtri][1];
+            t = delan.Walk[curtri][1];
             if (t != -1) fail = fail_tri[t];
           }
           if (!test3 && fail) {
-            t = Delan.Walk[curtri][2];
+            t = delan.Walk[curtri][2];
             if (t != -1) fail = fail_tri[t];
           }
           if (!test4 && fail) {
-            t = Delan.Walk[curtri][3];
+            t = delan.Walk[curtri][3];
             if (t != -1) fail = fail_tri[t];
           }
 
@@ -371,7 +386,7 @@ public class Irregular3DSet extends IrregularSet {
         if (foundit) {
           tri[i] = curtri;
         }
-      } // end for (itnum=0; (itnum<Delan.Tri.length) && !foundit; itnum++)
+      } // end for (itnum=0; (itnum<delan.Tri.length) && !foundit; itnum++)
 
       // reset all fail_tri to false
       if (fail_list != null) {
@@ -381,9 +396,7 @@ public class Irregular3DSet extends IrregularSet {
         fail_list = null;
       }
 
-    } // end for (int i=0; i<length; i++)
-
-    return tri;
+    } // end for (int i=start; i<end; i++)
   }
 
   /** convert an array of values in R^DomainDimension to an array of
@@ -26,6 +26,10 @@ MA 02111-1307, USA
 
 package visad;
 
+import java.rmi.RemoteException;
+
+import visad.util.ParallelChunks;
+
 /**
    IrregularSet is implemented by those Set sub-classes whose samples
    do not form any ordered pattern.  It is a M-dimensional array of
@@ -39,6 +43,13 @@ public class IrregularSet extends SampledSet {
 
   public Delaunay Delan = null;
 
+  /** grid of starting triangles for point location in Delan,
+      built when first needed */
+  private transient volatile DelaunayGrid grid = null;
+
+  /** number of points located as one unit of parallel work */
+  static final int LOCATE_CHUNK = 4096;
+
   /** oldToNew and newToOld used when ManifoldDimension = 1
       but DomainDimension > 1 */
   /** maps old samples indices to sorted samples indices */
@@ -250,10 +261,48 @@ public class IrregularSet extends SampledSet {
 
     if (Delan != null)
       clone.Delan = (Delaunay)Delan.clone();
+    clone.grid = null;
 
     return clone;
   }
 
+  /**
+   * Get the grid of starting triangles used to locate points in
+   * Delan, building it on first use.
+   *
+   * @return the grid, or null if Delan is too small to need one
+   */
+  DelaunayGrid getGrid() throws VisADException {
+    Delaunay delan = Delan;
+    if (delan == null || delan.Tri == null ||
+        delan.Tri.length < DelaunayGrid.MIN_TRIANGLES) {
+      return null;
+    }
+    DelaunayGrid g = grid;
+    if (g == null || !g.isFor(delan)) {
+      g = new DelaunayGrid(delan, getMySamples());
+      grid = g;
+    }
+    return g;
+  }
+
+  /**
+   * Locate points in chunks of LOCATE_CHUNK, which run concurrently
+   * when {@link visad.util.ParallelChunks} has more than one thread.
+   *
+   * @param length number of points
+   * @param chunk locates the points in one chunk
+   */
+  static void locate(int length, ParallelChunks.Chunk chunk)
+         throws VisADException {
+    try {
+      ParallelChunks.run(length, LOCATE_CHUNK, chunk);
+    }
+    catch (RemoteException e) {
+      throw new VisADException(e.toString());
+    }
+  }
+
   public Object cloneButType(MathType type) throws VisADException {
      return new IrregularSet(type, getMySamples(), DomainCoordinateSystem,
                           SetUnits, SetErrors, Delan);
@@ -0,0 +1,353 @@
+//
+// RangeBlock.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+
+import java.nio.ByteBuffer;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+   RangeBlock holds the range values of a block of consecutive samples
+   of a FlatField, encoded for transfer by
+   {@link RemoteFlatField#getRangeBlock}.<P>
+
+   Values are sent as floats, as doubles, or quantized to 16 bits per
+   value.  Quantized values of each range component are spread evenly
+   between its smallest and largest value in the block, so they are
+   within (largest - smallest) / 131068 of the original; missing
+   values stay missing, and a block with infinite values is sent as
+   floats instead.  Any of these may also be deflate-compressed, with
+   the bytes of the values regrouped by significance first so that
+   smooth fields compress well.<P>
+*/
+public class RangeBlock implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** encoding of values as floats */
+  public static final int FLOAT = 0;
+
+  /** encoding of values as doubles */
+  public static final int DOUBLE = 1;
+
+  /** encoding of values as 16 bit integers scaled per range component */
+  public static final int QUANTIZED = 2;
+
+  /** flag added to an encoding to deflate-compress the values */
+  public static final int DEFLATE = 4;
+
+  /** quantized value of missing values */
+  private static final int MISSING = 0xffff;
+
+  /** largest quantized value of non-missing values */
+  private static final int LEVELS = MISSING - 1;
+
+  private final int start;
+  private final int count;
+  private final int dimension;
+  private final int encoding;
+
+  /** for QUANTIZED, value = offset[i] + scale[i] * quantized value */
+  private final double[] offset;
+  private final double[] scale;
+
+  /** number of bytes of values, before compression */
+  private final int length;
+
+  /** encoded values, component by component */
+  private final byte[] bytes;
+
+  private RangeBlock(int start, int count, int dimension, int encoding,
+                     double[] offset, double[] scale, ByteBuffer buffer) {
+    this.start = start;
+    this.count = count;
+    this.dimension = dimension;
+    this.encoding = encoding;
+    this.offset = offset;
+    this.scale = scale;
+    length = buffer.capacity();
+    if ((encoding & DEFLATE) != 0) {
+      bytes = deflate(shuffle(buffer.array(), size(encoding)));
+    }
+    else {
+      bytes = buffer.array();
+    }
+  }
+
+  /**
+   * Encode float range values.
+   * @param values range values, dimensioned float[dimension][count]
+   * @param start index of the first sample
+   * @param encoding FLOAT or QUANTIZED, with or without DEFLATE;
+   *                 DOUBLE is sent as FLOAT
+   * @return the encoded block
+   */
+  public static RangeBlock encode(float[][] values, int start,
+                                  int encoding) {
+    int dimension = values.length;
+    int count = (dimension == 0) ? 0 : values[0].length;
+    int flags = encoding & DEFLATE;
+    if ((encoding & ~DEFLATE) == QUANTIZED) {
+      double[] offset = new double[dimension];
+      double[] scale = new double[dimension];
+      if (quantizable(values, offset, scale)) {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * dimension * count);
+        for (int i=0; i<dimension; i++) {
+          float[] v = values[i];
+          for (int j=0; j<count; j++) {
+            buffer.putShort((short) quantize(v[j], offset[i], scale[i]));
+          }
+        }
+        return new RangeBlock(start, count, dimension, QUANTIZED | flags,
+                              offset, scale, buffer);
+      }
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(4 * dimension * count);
+    for (int i=0; i<dimension; i++) {
+      buffer.asFloatBuffer().put(values[i]);
+      buffer.position(buffer.position() + 4 * count);
+    }
+    return new RangeBlock(start, count, dimension, FLOAT | flags,
+                          null, null, buffer);
+  }
+
+  /**
+   * Encode double range values.
+   * @param values range values, dimensioned double[dimension][count]
+   * @param start index of the first sample
+   * @param encoding FLOAT, DOUBLE or QUANTIZED, with or without DEFLATE
+   * @return the encoded block
+   */
+  public static RangeBlock encode(double[][] values, int start,
+                                  int encoding) {
+    if ((encoding & ~DEFLATE) != DOUBLE) {
+      return encode(Set.doubleToFloat(values), start, encoding);
+    }
+    int dimension = values.length;
+    int count = (dimension == 0) ? 0 : values[0].length;
+    ByteBuffer buffer = ByteBuffer.allocate(8 * dimension * count);
+    for (int i=0; i<dimension; i++) {
+      buffer.asDoubleBuffer().put(values[i]);
+      buffer.position(buffer.position() + 8 * count);
+    }
+    return new RangeBlock(start, count, dimension, encoding,
+                          null, null, buffer);
+  }
+
+  /** @return index of the first sample of this block */
+  public int getStart() {
+    return start;
+  }
+
+  /** @return number of samples in this block */
+  public int getCount() {
+    return count;
+  }
+
+  /** @return number of range components */
+  public int getDimension() {
+    return dimension;
+  }
+
+  /** @return encoding of the values, which may differ from the one
+              requested */
+  public int getEncoding() {
+    return encoding;
+  }
+
+  /** @return number of bytes of encoded values */
+  public int getEncodedLength() {
+    return bytes.length;
+  }
+
+  /**
+   * @return the range values, dimensioned float[dimension][count]
+   * @throws VisADException if the values cannot be decompressed
+   */
+  public float[][] getFloats() throws VisADException {
+    if ((encoding & ~DEFLATE) == DOUBLE) {
+      return Set.doubleToFloat(getValues());
+    }
+    ByteBuffer buffer = decode();
+    float[][] values = new float[dimension][count];
+    for (int i=0; i<dimension; i++) {
+      float[] v = values[i];
+      if ((encoding & ~DEFLATE) == QUANTIZED) {
+        for (int j=0; j<count; j++) {
+          int q = buffer.getShort() & 0xffff;
+          v[j] = (q == MISSING) ? Float.NaN :
+                 (float) (offset[i] + scale[i] * q);
+        }
+      }
+      else {
+        buffer.asFloatBuffer().get(v);
+        buffer.position(buffer.position() + 4 * count);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * @return the range values, dimensioned double[dimension][count]
+   * @throws VisADException if the values cannot be decompressed
+   */
+  public double[][] getValues() throws VisADException {
+    if ((encoding & ~DEFLATE) != DOUBLE) {
+      return Set.floatToDouble(getFloats());
+    }
+    ByteBuffer buffer = decode();
+    double[][] values = new double[dimension][count];
+    for (int i=0; i<dimension; i++) {
+      buffer.asDoubleBuffer().get(values[i]);
+      buffer.position(buffer.position() + 8 * count);
+    }
+    return values;
+  }
+
+  /** the encoded values, decompressed */
+  private ByteBuffer decode() throws VisADException {
+    if ((encoding & DEFLATE) == 0) {
+      return ByteBuffer.wrap(bytes);
+    }
+    byte[] b = new byte[length];
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(bytes);
+      int n = 0;
+      while (n < length && !inflater.finished()) {
+        int m = inflater.inflate(b, n, length - n);
+        if (m == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        n += m;
+      }
+      if (n != length) {
+        throw new VisADException("RangeBlock: truncated values");
+      }
+    }
+    catch (DataFormatException e) {
+      throw new VisADException("RangeBlock: " + e.getMessage());
+    }
+    finally {
+      inflater.end();
+    }
+    return ByteBuffer.wrap(unshuffle(b, size(encoding)));
+  }
+
+  /** bytes per value of an encoding */
+  private static int size(int encoding) {
+    switch (encoding & ~DEFLATE) {
+      case DOUBLE:
+        return 8;
+      case QUANTIZED:
+        return 2;
+      default:
+        return 4;
+    }
+  }
+
+  /**
+   * find offset and scale of each component of values; return false
+   * if some component has infinite values
+   */
+  private static boolean quantizable(float[][] values, double[] offset,
+                                     double[] scale) {
+    for (int i=0; i<values.length; i++) {
+      float lo = Float.POSITIVE_INFINITY;
+      float hi = Float.NEGATIVE_INFINITY;
+      float[] v = values[i];
+      for (int j=0; j<v.length; j++) {
+        if (v[j] == v[j]) {
+          if (v[j] < lo) lo = v[j];
+          if (v[j] > hi) hi = v[j];
+        }
+      }
+      if (lo > hi) {
+        lo = hi = 0.0f; // all missing
+      }
+      if (Float.isInfinite(lo) || Float.isInfinite(hi)) return false;
+      offset[i] = lo;
+      scale[i] = ((double) hi - lo) / LEVELS;
+    }
+    return true;
+  }
+
+  private static int quantize(float v, double offset, double scale) {
+    if (v != v) return MISSING;
+    if (scale == 0.0) return 0;
+    int q = (int) Math.floor((v - offset) / scale + 0.5);
+    return (q < 0) ? 0 : ((q > LEVELS) ? LEVELS : q);
+  }
+
+  private static byte[] deflate(byte[] b) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(b);
+      deflater.finish();
+      ByteArrayOutputStream out =
+        new ByteArrayOutputStream(Math.max(64, b.length / 2));
+      byte[] buf = new byte[8192];
+      while (!deflater.finished()) {
+        int n = deflater.deflate(buf);
+        out.write(buf, 0, n);
+      }
+      return out.toByteArray();
+    }
+    finally {
+      deflater.end();
+    }
+  }
+
+  /** group byte k of all values of size bytes together, for each k */
+  private static byte[] shuffle(byte[] b, int size) {
+    if (size == 1) return b;
+    int n = b.length / size;
+    byte[] s = new byte[b.length];
+    for (int k=0; k<size; k++) {
+      int o = k * n;
+      for (int j=0; j<n; j++) s[o + j] = b[j * size + k];
+    }
+    return s;
+  }
+
+  private static byte[] unshuffle(byte[] s, int size) {
+    if (size == 1) return s;
+    int n = s.length / size;
+    byte[] b = new byte[s.length];
+    for (int k=0; k<size; k++) {
+      int o = k * n;
+      for (int j=0; j<n; j++) b[j * size + k] = s[o + j];
+    }
+    return b;
+  }
+
+}
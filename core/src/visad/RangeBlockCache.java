@@ -0,0 +1,409 @@
+//
+// RangeBlockCache.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.rmi.RemoteException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+   RangeBlockCache is a client-side proxy for the range values of a
+   {@link RemoteFlatField}.  Values are fetched with
+   {@link RemoteFlatField#getRangeBlock} in blocks of a fixed number
+   of samples, and the most recently used blocks are kept.  When
+   blocks are read in order, the following blocks are fetched ahead
+   on a background thread while the current one is used.<P>
+
+   Values are in the default units of the range, as returned by
+   getFloats() and getValues() of the field.  The cache does not see
+   changes made to the field after a block was fetched; call
+   {@link #flush} to drop the cached blocks.<P>
+*/
+public class RangeBlockCache {
+
+  /** default number of samples per block */
+  public static final int DEFAULT_BLOCK_SIZE = 65536;
+
+  /** default number of blocks kept */
+  public static final int DEFAULT_MAX_BLOCKS = 16;
+
+  /** default number of blocks fetched ahead */
+  public static final int DEFAULT_FETCH_AHEAD = 2;
+
+  /** threads that fetch blocks ahead, created when first needed */
+  private static ExecutorService fetcher = null;
+
+  private final RemoteFlatField field;
+  private final int length;
+  private final int dimension;
+  private final int blockSize;
+  private final int encoding;
+  private final int maxBlocks;
+  private final int fetchAhead;
+  private final int nblocks;
+
+  /** Blocks by index, least recently used first */
+  private final LinkedHashMap<Integer, Block> blocks;
+
+  /** index of the last block asked for */
+  private int lastBlock = -2;
+
+  /** number of blocks fetched from the field */
+  private int fetches = 0;
+
+  /**
+   * Construct a cache with the default block size, number of blocks
+   * and fetch-ahead, fetching values as floats.
+   * @param field the remote field
+   * @throws VisADException a VisAD error occurred
+   * @throws RemoteException an RMI error occurred
+   */
+  public RangeBlockCache(RemoteFlatField field)
+         throws VisADException, RemoteException {
+    this(field, DEFAULT_BLOCK_SIZE, RangeBlock.FLOAT, DEFAULT_MAX_BLOCKS,
+         DEFAULT_FETCH_AHEAD);
+  }
+
+  /**
+   * @param field the remote field
+   * @param blockSize number of samples per block
+   * @param encoding encoding of fetched blocks; see
+   *                 {@link RemoteFlatField#getRangeBlock}
+   * @param maxBlocks number of blocks kept
+   * @param fetchAhead number of blocks fetched ahead of one read in
+   *                   order, or 0 for none
+   * @throws VisADException a VisAD error occurred
+   * @throws RemoteException an RMI error occurred
+   */
+  public RangeBlockCache(RemoteFlatField field, int blockSize, int encoding,
+                         int maxBlocks, int fetchAhead)
+         throws VisADException, RemoteException {
+    if (blockSize < 1 || maxBlocks < 1 || fetchAhead < 0) {
+      throw new VisADException("RangeBlockCache: bad block size " +
+                               blockSize + ", max blocks " + maxBlocks +
+                               " or fetch ahead " + fetchAhead);
+    }
+    this.field = field;
+    this.blockSize = blockSize;
+    this.encoding = encoding;
+    this.maxBlocks = maxBlocks;
+    this.fetchAhead = Math.min(fetchAhead, maxBlocks - 1);
+    length = field.getLength();
+    dimension = field.getRangeDimension();
+    nblocks = (int) (((long) length + blockSize - 1) / blockSize);
+    blocks = new LinkedHashMap<Integer, Block>(16, 0.75f, true);
+  }
+
+  /** @return number of samples of the field */
+  public int getLength() {
+    return length;
+  }
+
+  /** @return number of range components of the field */
+  public int getRangeDimension() {
+    return dimension;
+  }
+
+  /** @return number of blocks fetched from the field so far */
+  public synchronized int getFetchCount() {
+    return fetches;
+  }
+
+  /** drop all cached blocks */
+  public synchronized void flush() {
+    blocks.clear();
+    lastBlock = -2;
+  }
+
+  /**
+   * @param index index of a sample
+   * @return range values of the sample
+   * @throws VisADException a VisAD error occurred
+   * @throws RemoteException an RMI error occurred
+   */
+  public double[] getValues(int index)
+         throws VisADException, RemoteException {
+    checkBlock(index, 1);
+    Block b = getBlock(index / blockSize);
+    int j = index - b.start;
+    double[] values = new double[dimension];
+    for (int i=0; i<dimension; i++) {
+      values[i] = (b.doubles != null) ? b.doubles[i][j] : b.floats[i][j];
+    }
+    return values;
+  }
+
+  /**
+   * @return range values of all samples, dimensioned
+   *         float[range dimension][number of samples]
+   * @throws VisADException a VisAD error occurred
+   * @throws RemoteException an RMI error occurred
+   */
+  public float[][] getFloats() throws VisADException, RemoteException {
+    return getFloats(0, length);
+  }
+
+  /**
+   * @param start index of the first sample
+   * @param count number of samples
+   * @return range values of the samples, dimensioned
+   *         float[range dimension][count]
+   * @throws VisADException a VisAD error occurred
+   * @throws RemoteException an RMI error occurred
+   */
+  public float[][] getFloats(int start, int count)
+         throws VisADException, RemoteException {
+    checkBlock(start, count);
+    float[][] values = new float[dimension][count];
+    int index = start;
+    while (index < start + count) {
+      Block b = getBlock(index / blockSize);
+      int n = Math.min(b.start + b.count, start + count) - index;
+      for (int i=0; i<dimension; i++) {
+        if (b.floats != null) {
+          System.arraycopy(b.floats[i], index - b.start, values[i],
+                           index - start, n);
+        }
+        else {
+          double[] d = b.doubles[i];
+          float[] v = values[i];
+          for (int j=0; j<n; j++) {
+            v[index - start + j] = (float) d[index - b.start + j];
+          }
+        }
+      }
+      index += n;
+    }
+    return values;
+  }
+
+  /**
+   * @return range values of all samples, dimensioned
+   *         double[range dimension][number of samples]
+   * @throws VisADException a VisAD error occurred
+   * @throws RemoteException an RMI error occurred
+   */
+  public double[][] getValues() throws VisADException, RemoteException {
+    return getValues(0, length);
+  }
+
+  /**
+   * @param start index of the first sample
+   * @param count number of samples
+   * @return range values of the samples, dimensioned
+   *         double[range dimension][count]
+   * @throws VisADException a VisAD error occurred
+   * @throws RemoteException an RMI error occurred
+   */
+  public double[][] getValues(int start, int count)
+         throws VisADException, RemoteException {
+    checkBlock(start, count);
+    double[][] values = new double[dimension][count];
+    int index = start;
+    while (index < start + count) {
+      Block b = getBlock(index / blockSize);
+      int n = Math.min(b.start + b.count, start + count) - index;
+      for (int i=0; i<dimension; i++) {
+        if (b.doubles != null) {
+          System.arraycopy(b.doubles[i], index - b.start, values[i],
+                           index - start, n);
+        }
+        else {
+          float[] f = b.floats[i];
+          double[] v = values[i];
+          for (int j=0; j<n; j++) {
+            v[index - start + j] = f[index - b.start + j];
+          }
+        }
+      }
+      index += n;
+    }
+    return values;
+  }
+
+  private void checkBlock(int start, int count) throws FieldException {
+    if (start < 0 || count < 0 || start + count > length) {
+      throw new FieldException("RangeBlockCache: bad samples " + start +
+                               " + " + count + " of " + length);
+    }
+  }
+
+  /**
+   * get block k, from the cache if it is there or being fetched, and
+   * start fetching the following blocks if blocks are read in order
+   */
+  private Block getBlock(int k) throws VisADException, RemoteException {
+    Block b;
+    boolean fetch = false;
+    synchronized (this) {
+      b = blocks.get(new Integer(k));
+      if (b == null) {
+        b = new Block(k);
+        put(b);
+        fetch = true;
+      }
+      if (k == lastBlock + 1 || k == lastBlock) {
+        // touch the blocks ahead in order, so that blocks already read
+        // are dropped before any block that is still to be read
+        for (int a=k+1; a<=k+fetchAhead && a<nblocks; a++) {
+          if (blocks.get(new Integer(a)) == null) {
+            Block ahead = new Block(a);
+            put(ahead);
+            fetchAhead(ahead);
+          }
+        }
+      }
+      lastBlock = k;
+    }
+    if (fetch) b.fetch();
+    b.waitFor();
+    return b;
+  }
+
+  /** add b to the cache, dropping the least recently used blocks */
+  private void put(Block b) {
+    blocks.put(new Integer(b.index), b);
+    Iterator<Integer> it = blocks.keySet().iterator();
+    while (blocks.size() > maxBlocks && it.hasNext()) {
+      it.next();
+      it.remove();
+    }
+  }
+
+  private void fetchAhead(final Block b) {
+    ExecutorService service;
+    synchronized (RangeBlockCache.class) {
+      if (fetcher == null) {
+        final AtomicInteger count = new AtomicInteger(0);
+        fetcher = Executors.newCachedThreadPool(new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "RangeBlockCache-" +
+                                  count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+          }
+        });
+      }
+      service = fetcher;
+    }
+    service.execute(new Runnable() {
+      public void run() {
+        try {
+          b.fetch();
+        }
+        catch (VisADException e) {
+          // recorded in b for the thread that reads it
+        }
+        catch (RemoteException e) {
+          // recorded in b for the thread that reads it
+        }
+      }
+    });
+  }
+
+  /** one block of samples, fetched once */
+  private final class Block {
+    final int index;
+    final int start;
+    final int count;
+    float[][] floats;
+    double[][] doubles;
+    private boolean done = false;
+    private Throwable exception = null;
+
+    Block(int index) {
+      this.index = index;
+      start = index * blockSize;
+      count = Math.min(blockSize, length - start);
+    }
+
+    void fetch() throws VisADException, RemoteException {
+      float[][] f = null;
+      double[][] d = null;
+      Throwable failure = null;
+      try {
+        RangeBlock block = field.getRangeBlock(start, count, encoding);
+        if ((block.getEncoding() & ~RangeBlock.DEFLATE) == RangeBlock.DOUBLE) {
+          d = block.getValues();
+        }
+        else {
+          f = block.getFloats();
+        }
+      }
+      catch (Throwable t) {
+        failure = t;
+      }
+      finally {
+        synchronized (RangeBlockCache.this) {
+          fetches++;
+          // a failed block is not kept, so it is fetched again if needed
+          if (failure != null && blocks.get(new Integer(index)) == this) {
+            blocks.remove(new Integer(index));
+          }
+        }
+        synchronized (this) {
+          floats = f;
+          doubles = d;
+          exception = failure;
+          done = true;
+          notifyAll();
+        }
+      }
+      waitFor();
+    }
+
+    synchronized void waitFor() throws VisADException, RemoteException {
+      boolean interrupted = false;
+      while (!done) {
+        try {
+          wait();
+        }
+        catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) Thread.currentThread().interrupt();
+      if (exception instanceof VisADException) {
+        throw (VisADException) exception;
+      }
+      if (exception instanceof RemoteException) {
+        throw (RemoteException) exception;
+      }
+      if (exception != null) {
+        throw new VisADException("RangeBlockCache: block " + index + ": " +
+                                 exception, exception);
+      }
+    }
+  }
+
+}
@@ -33,5 +33,23 @@ import java.rmi.*;
 */
 public interface RemoteFlatField extends Remote, FlatFieldIface {
 
+  /**
+   * Get the range values of a block of consecutive samples in their
+   * default units, encoded for transfer.  Large fields can then be
+   * fetched a block at a time, rather than all at once through
+   * getFloats() or a sample at a time through getSample();
+   * {@link RangeBlockCache} does this for clients.
+   * @param start index of the first sample
+   * @param count number of samples
+   * @param encoding {@link RangeBlock#FLOAT}, {@link RangeBlock#DOUBLE}
+   *                 or {@link RangeBlock#QUANTIZED}, optionally with
+   *                 {@link RangeBlock#DEFLATE} added
+   * @return the encoded range values
+   * @throws VisADException bad start or count
+   * @throws RemoteException an RMI error occurred
+   */
+  RangeBlock getRangeBlock(int start, int count, int encoding)
+    throws VisADException, RemoteException;
+
 }
 
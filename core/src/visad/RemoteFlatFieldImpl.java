@@ -203,6 +203,66 @@ public class RemoteFlatFieldImpl
     return ((FlatField )AdaptedData).convertToField();
   }
 
+  /**
+   * Get the range values of a block of consecutive samples in their
+   * default units, encoded for transfer.
+   * @param start index of the first sample
+   * @param count number of samples
+   * @param encoding {@link RangeBlock#FLOAT}, {@link RangeBlock#DOUBLE}
+   *                 or {@link RangeBlock#QUANTIZED}, optionally with
+   *                 {@link RangeBlock#DEFLATE} added
+   * @return the encoded range values
+   */
+  public RangeBlock getRangeBlock(int start, int count, int encoding)
+    throws RemoteException, VisADException
+  {
+    if (AdaptedData == null) {
+      throw new RemoteVisADException("RemoteFlatFieldImpl.getRangeBlock: " +
+                                     "AdaptedData is null");
+    }
+    FlatField field = (FlatField )AdaptedData;
+    int length = field.getLength();
+    if (start < 0 || count < 0 || start + count > length) {
+      throw new FieldException("RemoteFlatFieldImpl.getRangeBlock: bad " +
+                               "block " + start + " + " + count + " of " +
+                               length);
+    }
+    boolean isDouble =
+      (encoding & ~RangeBlock.DEFLATE) == RangeBlock.DOUBLE;
+    Unit[][] units = field.getRangeUnits();
+    Unit[] units_in = new Unit[units.length];
+    for (int i=0; i<units.length; i++) {
+      units_in[i] = units[i][0];
+    }
+    Unit[] units_out = field.getDefaultRangeUnits();
+    if (field.hasBlockAccessors()) {
+      if (isDouble) {
+        double[][] values = field.unpackValues(start, count);
+        values = Unit.convertTuple(values, units_in, units_out, false);
+        return RangeBlock.encode(values, start, encoding);
+      }
+      float[][] values = field.unpackFloats(start, count);
+      values = Unit.convertTuple(values, units_in, units_out, false);
+      return RangeBlock.encode(values, start, encoding);
+    }
+
+    // other fields can only be read whole
+    if (isDouble) {
+      double[][] whole = field.getValues(false);
+      double[][] values = new double[whole.length][count];
+      for (int i=0; i<whole.length; i++) {
+        System.arraycopy(whole[i], start, values[i], 0, count);
+      }
+      return RangeBlock.encode(values, start, encoding);
+    }
+    float[][] whole = field.getFloats(false);
+    float[][] values = new float[whole.length][count];
+    for (int i=0; i<whole.length; i++) {
+      System.arraycopy(whole[i], start, values[i], 0, count);
+    }
+    return RangeBlock.encode(values, start, encoding);
+  }
+
   /**
    * Gets the number of components in the "flat" range.
    *
@@ -3298,6 +3298,11 @@ System.out.println("adjusted flow values = " + flow_values[0][0] + " " +
       int[] valueToScalar, DisplayImpl display, float[] default_values,
       boolean[][] range_select, boolean[] single_missing, ShadowType shadow_api)
       throws VisADException, RemoteException {
+    byte[][] table_colors = assembleTableColor(display_values,
+        valueArrayLength, valueToScalar, display, default_values,
+        range_select, single_missing);
+    if (table_colors != null) return table_colors;
+
     float[][] rgba_values = new float[4][];
     float[] rgba_value_counts = { 0.0f, 0.0f, 0.0f, 0.0f };
     float[] rgba_singles = new float[4];
@@ -3539,6 +3544,76 @@ System.out.println("adjusted flow values = " + flow_values[0][0] + " " +
     return b;
   }
 
+  /**
+   * assembleColor for the common case where the only color comes from a
+   * single RGB or RGBA ScalarMap with a color table: look up the colors
+   * directly as bytes, in one pass and without float color arrays.
+   * Return null if display_values is not that case, or if the color
+   * table cannot be looked up as bytes.
+   */
+  private static byte[][] assembleTableColor(float[][] display_values,
+      int valueArrayLength, int[] valueToScalar, DisplayImpl display,
+      float[] default_values, boolean[][] range_select,
+      boolean[] single_missing) throws VisADException, RemoteException {
+    int color_index = -1;
+    for (int i = 0; i < valueArrayLength; i++) {
+      if (display_values[i] == null) continue;
+      DisplayRealType real = display.getDisplayScalar(valueToScalar[i]);
+      DisplayTupleType tuple = real.getTuple();
+      boolean is_color = real.equals(Display.RGB) || real.equals(Display.RGBA)
+          || real.equals(Display.HSV) || real.equals(Display.CMY)
+          || real.equals(Display.Alpha)
+          || (tuple != null && (tuple.equals(Display.DisplayRGBTuple)
+              || (tuple.getCoordinateSystem() != null && tuple
+                  .getCoordinateSystem().getReference()
+                  .equals(Display.DisplayRGBTuple))));
+      if (!is_color) continue;
+      if (color_index >= 0) return null;
+      if (!real.equals(Display.RGB) && !real.equals(Display.RGBA)) return null;
+      color_index = i;
+    }
+    if (color_index < 0) return null;
+    float[] values = display_values[color_index];
+    if (values.length == 1) return null;
+
+    ScalarMap map = (ScalarMap) display.getMapVector().elementAt(
+        display.getValueToMap()[color_index]);
+    byte[][] colors = ((BaseColorControl) map.getControl()).lookupBytes(values);
+    if (colors == null) return null;
+
+    int len = values.length;
+    byte[][] b = colors;
+    if (colors.length == 3) {
+      // alpha is not mapped, so use its default
+      b = new byte[4][];
+      System.arraycopy(colors, 0, b, 0, 3);
+      float alpha = default_values[getDefaultColorIndex(display, 3)];
+      b[3] = new byte[1];
+      if (alpha != alpha) {
+        if (range_select[0] == null) range_select[0] = new boolean[len];
+        for (int k = 0; k < len; k++)
+          range_select[0][k] = false;
+        single_missing[3] = true;
+      } else {
+        b[3][0] = floatToByte(alpha);
+      }
+    }
+    // NaN values get color 0 and are not selected, as in assembleColor
+    for (int j = 0; j < len; j++) {
+      if (values[j] != values[j]) {
+        if (range_select[0] == null) {
+          range_select[0] = new boolean[len];
+          for (int k = 0; k < len; k++)
+            range_select[0][k] = true;
+        }
+        range_select[0][j] = false;
+      }
+    }
+    // FREE
+    display_values[color_index] = null;
+    return b;
+  }
+
   public static final float byteToFloat(byte b) {
     return (b < 0) ? (((float) b) + 256.0f) / 255.0f : ((float) b) / 255.0f;
     //
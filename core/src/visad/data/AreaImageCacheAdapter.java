@@ -298,6 +298,30 @@ public class AreaImageCacheAdapter extends SatelliteImage implements FlatFieldCa
     return fld.unpackFloats();
   }
 
+  public boolean hasBlockAccessors() {
+    log.finest("hasBlockAccessors");
+    FlatField fld = getAdaptedFlatField();
+    return fld.hasBlockAccessors();
+  }
+
+  /**
+   * unpack a block of consecutive samples as doubles; returns a copy
+   */
+  public double[][] unpackValues(int start, int count) throws VisADException {
+    log.finest("unpackValues");
+    FlatField fld = getAdaptedFlatField();
+    return fld.unpackValues(start, count);
+  }
+
+  /**
+   * unpack a block of consecutive samples as floats; returns a copy
+   */
+  public float[][] unpackFloats(int start, int count) throws VisADException {
+    log.finest("unpackFloats");
+    FlatField fld = getAdaptedFlatField();
+    return fld.unpackFloats(start, count);
+  }
+
   public Field extract(int component) throws VisADException, RemoteException {
     log.finest("extract");
     FlatField fld = getAdaptedFlatField();
@@ -28,6 +28,13 @@ package visad.data;
 
 import visad.*;
 
+/**
+ * Cache replacement policy for the {@link FileFlatFieldCache} shared by
+ * all {@link FileFlatField}s.  When the cache exceeds its byte limit,
+ * {@link #selectVictim} picks the entry to evict.  This default
+ * strategy evicts the least recently used entry; subclasses such as
+ * {@link SizeAwareCacheStrategy} may take entry sizes into account.
+ */
 public class CacheStrategy
 {
 
@@ -36,12 +43,18 @@ public class CacheStrategy
 
    }
 
+   /**
+    * Choose a slot of a fixed-size cache.  This is the allocation
+    * scheme used before FileFlatField had a byte-bounded cache;
+    * it is no longer called by FileFlatField.
+    *
+    * @deprecated Override {@link #selectVictim} instead.
+    */
    public int allocate( FlatField[] adaptedFlatFields,
                         boolean[] adaptedFlatFieldDirty,
                         long[] adaptedFlatFieldSizes,
                         long[] adaptedFlatFieldTimes )
    {
-
       int adaptedFlatFieldIndex = 0;
       long oldest = adaptedFlatFieldTimes[0];
 
@@ -63,4 +76,30 @@ public class CacheStrategy
       return adaptedFlatFieldIndex;
    }
 
+   /**
+    * Choose the cache entry to evict.
+    *
+    * @param entries  the loaded entries that may be evicted; never empty
+    * @param clock  current value of the cache's access clock; see
+    *               {@link FileFlatFieldCache.Entry#getLastAccess}
+    * @return index into <code>entries</code> of the entry to evict
+    */
+   public int selectVictim( FileFlatFieldCache.Entry[] entries, long clock )
+   {
+      int victim = 0;
+      long oldest = entries[0].getLastAccess();
+
+      for ( int ii = 1; ii < entries.length; ii++ )
+      {
+         long time = entries[ii].getLastAccess();
+         if ( time < oldest )
+         {
+           oldest = time;
+           victim = ii;
+         }
+      }
+
+      return victim;
+   }
+
 }
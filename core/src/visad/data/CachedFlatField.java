@@ -560,6 +560,17 @@ public class CachedFlatField extends FlatField {
     }
 
 
+    /**
+     * The values are held by this class rather than in the range
+     * arrays of FlatField, so FlatField must not cache their statistics.
+     *
+     * @return false
+     */
+    protected boolean cacheRangeStatistics() {
+        return false;
+    }
+
+
     /**
      * get the float values as doubles
      *
@@ -618,6 +629,50 @@ public class CachedFlatField extends FlatField {
     }
 
 
+    /**
+     * Unpack a block of consecutive samples as doubles
+     *
+     * @param start index of the first sample
+     * @param count number of samples
+     *
+     * @return The values
+     *
+     * @throws VisADException On badness
+     */
+    public double[][] unpackValues(int start, int count)
+            throws VisADException {
+        return Set.floatToDouble(unpackFloats(start, count));
+    }
+
+
+    /**
+     * Unpack a block of consecutive samples as floats
+     *
+     * @param start index of the first sample
+     * @param count number of samples
+     *
+     * @return The values
+     *
+     * @throws VisADException On badness
+     */
+    public float[][] unpackFloats(int start, int count)
+            throws VisADException {
+        float[][] values = getMyValues();
+        if (values == null) {
+            return super.unpackFloats(start, count);
+        }
+        if (start < 0 || count < 0 || start + count > getLength()) {
+            throw new FieldException("CachedFlatField.unpackFloats: bad " +
+                                     "block " + start + " + " + count);
+        }
+        float[][] result = new float[values.length][count];
+        for (int i = 0; i < result.length; i++) {
+            System.arraycopy(values[i], start, result[i], 0, count);
+        }
+        return result;
+    }
+
+
     /**
      * Unpack floats
      *
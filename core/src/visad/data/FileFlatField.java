@@ -29,6 +29,8 @@ import java.io.IOException;
 
 import java.rmi.RemoteException;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import visad.FlatField;
 import visad.*;
 
@@ -37,42 +39,19 @@ public class FileFlatField extends FlatField {
   // any of its methods - it must re-implement all of them
   // through the adapted FlatField
 
-  // number of FlatFields in cache
-
-       private static final int MAX_FILE_FLAT_FIELDS = 10;
-
-  // array of cached FlatFields
-
-       private static transient FlatField[] adaptedFlatFields =
-       new FlatField[MAX_FILE_FLAT_FIELDS];
-
-  // true if cache entry differs from file contents
-
-       private static transient boolean adaptedFlatFieldDirty[] =
-       new boolean[MAX_FILE_FLAT_FIELDS];
+  // cache of adapted FlatFields, shared by all FileFlatFields;
+  // bounded by the approximate bytes of the cached FlatFields
 
-  // the FileFlatField that owns this cache entry
+       private static final FileFlatFieldCache cache =
+       new FileFlatFieldCache();
 
-       private static transient FileFlatField[] adaptedFlatFieldOwner =
-       new FileFlatField[MAX_FILE_FLAT_FIELDS];
+  // source of cacheId values
 
-  // adaptedFlatFieldSizes and adaptedFlatFieldTimes
-  // may be useful for cache allocation algorithms
-  // approximate sizes of FlatFields in cache
+       private static final AtomicLong nextCacheId = new AtomicLong(0);
 
-       private static transient long[] adaptedFlatFieldSizes =
-       new long[MAX_FILE_FLAT_FIELDS];
+  // identifies the cache entry owned by this FileFlatField
 
-  // times of most recent accesses to FlatFields in cache
-
-       private static transient long[] adaptedFlatFieldTimes =
-       new long[MAX_FILE_FLAT_FIELDS];
-
-  // index of cache entry owned by this FileFlatField;
-  // but only if
-  // this == adaptedFlatFieldOwner[adaptedFlatFieldIndex]
-
-       private transient int adaptedFlatFieldIndex;
+       private final Long cacheId = Long.valueOf(nextCacheId.getAndIncrement());
 
 
   // this is the FileAccessor for reading and writing values from
@@ -86,26 +65,8 @@ public class FileFlatField extends FlatField {
 
        private transient CacheStrategy cacheStrategy;
 
-  static
-  {
-    // initialize cache of FlatFields
-    if (adaptedFlatFieldOwner != null && adaptedFlatFields != null &&
-        adaptedFlatFieldSizes != null && adaptedFlatFieldTimes != null &&
-        adaptedFlatFieldDirty != null) {
-      for (int i=0; i<MAX_FILE_FLAT_FIELDS; i++) {
-        // mark Owners for all cache entries to indicate not
-        // belonging to any FileFlatField
-        adaptedFlatFieldOwner[i] = null;
-        adaptedFlatFields[i] = null;
-        adaptedFlatFieldSizes[i] = 0;
-        adaptedFlatFieldTimes[i] = System.currentTimeMillis();
-        adaptedFlatFieldDirty[i] = false;
-      }
-    }
-  }
-
-  // all methods lock on adaptedFlatFields cache
-  // to ensure thread safe access
+  // methods do not lock; FileFlatFieldCache locks each entry
+  // while it is read from the file
 
   public FileFlatField( FileAccessor accessor, CacheStrategy strategy )
     throws VisADException
@@ -115,10 +76,6 @@ public class FileFlatField extends FlatField {
 
     fileAccessor = accessor;
     cacheStrategy = strategy;
-
-    // '0' is in legal range of adaptedFlatFieldIndex,
-    // but not owned by this
-    adaptedFlatFieldIndex = 0;
   }
 
   private static Set getNullDomainSet(RealTupleType type)
@@ -136,96 +93,72 @@ public class FileFlatField extends FlatField {
     }
   }
 
+  /**
+   * Get the cache of FlatFields shared by all FileFlatFields, e.g. to
+   * change its size limit or look at its hit and miss counts.
+   * @return the shared cache
+   */
+  public static FileFlatFieldCache getCache()
+  {
+    return cache;
+  }
+
+  Long getCacheId()
+  {
+    return cacheId;
+  }
+
   private FlatField getAdaptedFlatField()
   {
-    // if owner array is null,
+    // if fileAccessor is null,
     //  assume this object got serialized & unserialized
-    if (adaptedFlatFieldOwner == null) {
+    if (fileAccessor == null) {
       return null;
     }
 
-    synchronized (adaptedFlatFields) {
-      for ( int ii = 0; ii < MAX_FILE_FLAT_FIELDS; ii++ )
-      {
-        if (this == adaptedFlatFieldOwner[ii]) {
-
-          // mark time of most recent access
-
-          adaptedFlatFieldTimes[ii] = System.currentTimeMillis();
-
-          return adaptedFlatFields[ii];
-        }
-      }
-
-      // this FileFlatField does not own a cache entry, so invoke
-      // CahceStrategy.allocate to allocate one, possibly by taking
-      // one, possibly by taking one from another FileFlatField;
-      // this will be an area for lots of thought and experimentation;
-
-      adaptedFlatFieldIndex =
-        cacheStrategy.allocate(adaptedFlatFields, adaptedFlatFieldDirty,
-                               adaptedFlatFieldSizes, adaptedFlatFieldTimes);
-
-      // flush cache entry, if dirty
-
-      if (adaptedFlatFieldDirty[adaptedFlatFieldIndex])
-      {
-        try
-        {
-          adaptedFlatFieldOwner[adaptedFlatFieldIndex].flushCache();
-        }
-        catch ( VisADException e )
-        {
-          System.out.println( e.getMessage() );
-        }
-      }
-
-      // create a new entry in adaptedFlatFields at adaptedFlatFieldIndex
-      // and read data values from fileAccessor at fileLocation
-      try
-      {
-        adaptedFlatFields[adaptedFlatFieldIndex] = fileAccessor.getFlatField();
-      }
-      catch ( VisADException e1 )
-      {
-        System.out.println( e1.getMessage() );
-      }
-      catch ( RemoteException e2 )
-      {
-        System.out.println( e2.getMessage() );
-      }
-
-      // mark cache entry as belonging to this FileFlatField
-
-      adaptedFlatFieldOwner[adaptedFlatFieldIndex] = this;
-
-      // get size of adapted FlatField
-      // (by calling a method that currently does not exist)
+    CacheStrategy strategy = cacheStrategy;
+    if (strategy == null) {
+      strategy = new CacheStrategy();
+    }
 
-      /*adaptedFlatFields[adaptedFlatFieldIndex].getSize(); */
+    return cache.get(this, strategy);
+  }
 
-      adaptedFlatFieldTimes[adaptedFlatFieldIndex] =
-        System.currentTimeMillis();
+  // called by FileFlatFieldCache, with the cache entry locked,
+  // when this FileFlatField does not have a FlatField in the cache
 
-      return adaptedFlatFields[adaptedFlatFieldIndex];
+  FlatField readAdaptedFlatField()
+  {
+    // read data values from fileAccessor at fileLocation
+    try
+    {
+      return fileAccessor.getFlatField();
+    }
+    catch ( VisADException e1 )
+    {
+      System.out.println( e1.getMessage() );
+    }
+    catch ( RemoteException e2 )
+    {
+      System.out.println( e2.getMessage() );
     }
+    return null;
   }
 
-  private void flushCache()
+  // called by FileFlatFieldCache, with the cache entry locked,
+  // before a dirty cache entry is evicted
+
+  void flushCache(FlatField fld)
       throws VisADException
   {
-    if (adaptedFlatFields == null) {
+    if (fileAccessor == null) {
       throw new VisADException("Cannot access serialized FileFlatField");
     }
 
-    // make sure this owns cache entry
-    if (this == adaptedFlatFieldOwner[adaptedFlatFieldIndex]) {
-      // unpackValues is currently private, would need default protection
-      // for access from FileFlatField
-   /* fileAccessor.writeFlatField(
-        adaptedFlatFields[adaptedFlatFieldIndex].unpackValues(),
-        templateFlatField, fileLocation); */
-    }
+    // unpackValues is currently private, would need default protection
+    // for access from FileFlatField
+ /* fileAccessor.writeFlatField(fld.unpackValues(),
+      templateFlatField, fileLocation); */
   }
 
   // must implement all the methods of Data, Function and Field
@@ -374,57 +307,37 @@ public class FileFlatField extends FlatField {
   // contents of this Field
   public void setSample(int index, Data range)
          throws VisADException, RemoteException {
-    if (adaptedFlatFields == null) {
-      throw new VisADException("Cannot access serialized FileFlatField");
+    FlatField fld = getAdaptedFlatField();
+    if (fld == null) {
+      throw new VisADException("Cannot get cached FlatField");
     }
 
-    synchronized (adaptedFlatFields) {
-      FlatField fld = getAdaptedFlatField();
-      if (fld == null) {
-        throw new VisADException("Cannot get cached FlatField");
-      }
-
-      adaptedFlatFieldDirty[adaptedFlatFieldIndex] = true;
-      fld.setSample(index, range);
-    }
+    fld.setSample(index, range);
+    cache.setDirty(this);
   }
 
   public void setSample( RealTuple domain, Data range )
          throws VisADException, RemoteException
   {
-    if (adaptedFlatFields == null) {
-      throw new VisADException("Cannot access serialized FileFlatField");
+    FlatField fld = getAdaptedFlatField();
+    if (fld == null) {
+      throw new VisADException("Cannot get cached FlatField");
     }
 
-    synchronized (adaptedFlatFields)
-    {
-      FlatField fld = getAdaptedFlatField();
-      if (fld == null) {
-        throw new VisADException("Cannot get cached FlatField");
-      }
-
-      adaptedFlatFieldDirty[adaptedFlatFieldIndex] = true;
-      fld.setSample( domain, range );
-    }
+    fld.setSample( domain, range );
+    cache.setDirty(this);
   }
 
   public void setSample( int index, Data range, boolean copy )
          throws VisADException, RemoteException
   {
-    if (adaptedFlatFields == null) {
-      throw new VisADException("Cannot access serialized FileFlatField");
+    FlatField fld = getAdaptedFlatField();
+    if (fld == null) {
+      throw new VisADException("Cannot get cached FlatField");
     }
 
-    synchronized (adaptedFlatFields)
-    {
-      FlatField fld = getAdaptedFlatField();
-      if (fld == null) {
-        throw new VisADException("Cannot get cached FlatField");
-      }
-
-      adaptedFlatFieldDirty[adaptedFlatFieldIndex] = true;
-      fld.setSample( index, range, copy );
-    }
+    fld.setSample( index, range, copy );
+    cache.setDirty(this);
   }
 
   public boolean isMissing()
@@ -502,6 +415,38 @@ public class FileFlatField extends FlatField {
     return fld.unpackFloats();
   }
 
+  public boolean hasBlockAccessors()
+  {
+    FlatField fld = getAdaptedFlatField();
+    return fld != null && fld.hasBlockAccessors();
+  }
+
+  /** unpack a block of consecutive samples as doubles, read from the
+      cached FlatField; returns a copy */
+  public double[][] unpackValues(int start, int count)
+         throws VisADException
+  {
+    FlatField fld = getAdaptedFlatField();
+    if (fld == null) {
+      throw new VisADException("Cannot get cached FlatField");
+    }
+
+    return fld.unpackValues(start, count);
+  }
+
+  /** unpack a block of consecutive samples as floats, read from the
+      cached FlatField; returns a copy */
+  public float[][] unpackFloats(int start, int count)
+         throws VisADException
+  {
+    FlatField fld = getAdaptedFlatField();
+    if (fld == null) {
+      throw new VisADException("Cannot get cached FlatField");
+    }
+
+    return fld.unpackFloats(start, count);
+  }
+
   public Field extract( int component )
          throws VisADException, RemoteException
   {
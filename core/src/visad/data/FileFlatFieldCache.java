@@ -0,0 +1,388 @@
+//
+// FileFlatFieldCache.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.data;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import visad.DoubleSet;
+import visad.FlatField;
+import visad.FloatSet;
+import visad.Set;
+import visad.VisADException;
+
+/**
+ * Memory cache of the FlatFields adapted by {@link FileFlatField}s.
+ * The cache is bounded by the approximate number of bytes held in the
+ * range values of the cached FlatFields rather than by their number.
+ * <p>
+ * Lookups of fields that are already in the cache do not lock.  Each
+ * entry has its own lock, so a thread reading one field from its file
+ * does not block threads reading other fields; concurrent requests for
+ * the same field wait for a single read.  When the limit is exceeded,
+ * the {@link CacheStrategy} of the field being loaded picks the entries
+ * to evict.
+ * <p>
+ * The limit defaults to a quarter of the maximum heap size, and can be
+ * set with the <code>visad.data.filecache.maxbytes</code> system
+ * property or {@link #setMaxBytes}.  The most recently loaded field is
+ * never evicted, so a single field larger than the limit is still cached.
+ */
+public class FileFlatFieldCache {
+
+  /** bytes per value of unpacked range components */
+  private static final int DOUBLE_BYTES = 8;
+  private static final int FLOAT_BYTES = 4;
+
+  /** entries, by owner id */
+  private final ConcurrentHashMap<Long, Entry> entries =
+    new ConcurrentHashMap<Long, Entry>();
+
+  /** held while choosing and removing eviction victims */
+  private final Object evictionLock = new Object();
+
+  /** approximate bytes held by loaded entries */
+  private final AtomicLong byteCount = new AtomicLong(0);
+
+  /** incremented on every access; orders entries for eviction */
+  private final AtomicLong clock = new AtomicLong(0);
+
+  private final AtomicLong hitCount = new AtomicLong(0);
+  private final AtomicLong missCount = new AtomicLong(0);
+  private final AtomicLong evictionCount = new AtomicLong(0);
+
+  private volatile long maxBytes;
+
+  /**
+   * A cached FlatField and its bookkeeping.  Loading and evicting the
+   * FlatField synchronize on the Entry.
+   */
+  public static class Entry {
+
+    private final Long id;
+    private final FileFlatField owner;
+    private volatile FlatField field;
+    private volatile long lastAccess;
+    private long bytes;
+    private boolean dirty;
+    private boolean evicted;
+
+    Entry(Long id, FileFlatField owner) {
+      this.id = id;
+      this.owner = owner;
+    }
+
+    /**
+     * @return value of the cache's access clock when this entry was
+     *         last used; larger values are more recent
+     */
+    public long getLastAccess() {
+      return lastAccess;
+    }
+
+    /**
+     * @return approximate number of bytes held by this entry
+     */
+    public synchronized long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * @return true if the cached FlatField was modified and differs
+     *         from the file contents
+     */
+    public synchronized boolean isDirty() {
+      return dirty;
+    }
+
+    /**
+     * @return the FileFlatField whose data this entry holds
+     */
+    public FileFlatField getOwner() {
+      return owner;
+    }
+
+    public String toString() {
+      return "<Entry id=" + id + " lastAccess=" + lastAccess +
+        " bytes=" + bytes + " dirty=" + dirty + ">";
+    }
+  }
+
+  /**
+   * Create a cache limited to the default number of bytes.
+   */
+  public FileFlatFieldCache() {
+    this(defaultMaxBytes());
+  }
+
+  /**
+   * Create a cache limited to <code>maxBytes</code>.
+   * @param maxBytes  approximate limit on the bytes held by the cache
+   */
+  public FileFlatFieldCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  private static long defaultMaxBytes() {
+    long max = Runtime.getRuntime().maxMemory() / 4;
+    String prop = null;
+    try {
+      prop = System.getProperty("visad.data.filecache.maxbytes");
+    }
+    catch (SecurityException e) {
+    }
+    if (prop != null) {
+      try {
+        max = Long.parseLong(prop.trim());
+      }
+      catch (NumberFormatException e) {
+        System.err.println("FileFlatFieldCache: bad maxbytes \"" +
+                           prop + "\"");
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Get the FlatField adapted by <code>owner</code>, reading it from
+   * the owner's file if it is not in the cache.
+   *
+   * @param owner  FileFlatField whose data is wanted
+   * @param strategy  chooses entries to evict if the read exceeds
+   *                  the byte limit
+   * @return the adapted FlatField, or null if it could not be read
+   */
+  FlatField get(FileFlatField owner, CacheStrategy strategy) {
+    Long id = owner.getCacheId();
+    while (true) {
+      Entry entry = entries.get(id);
+      if (entry == null) {
+        Entry newEntry = new Entry(id, owner);
+        entry = entries.putIfAbsent(id, newEntry);
+        if (entry == null) entry = newEntry;
+      }
+
+      FlatField field = entry.field;
+      if (field != null) {
+        entry.lastAccess = clock.incrementAndGet();
+        hitCount.incrementAndGet();
+        return field;
+      }
+
+      boolean loaded = false;
+      synchronized (entry) {
+        if (entry.evicted) {
+          // lost a race with eviction; start over with a new entry
+          continue;
+        }
+        field = entry.field;
+        if (field == null) {
+          missCount.incrementAndGet();
+          field = owner.readAdaptedFlatField();
+          if (field == null) {
+            entries.remove(id, entry);
+            entry.evicted = true;
+            return null;
+          }
+          entry.bytes = estimateBytes(field);
+          entry.dirty = false;
+          entry.field = field;
+          byteCount.addAndGet(entry.bytes);
+          loaded = true;
+        }
+        entry.lastAccess = clock.incrementAndGet();
+      }
+
+      if (loaded) evict(entry, strategy);
+      return field;
+    }
+  }
+
+  /**
+   * Mark the cached FlatField of <code>owner</code> as differing from
+   * the file contents.
+   */
+  void setDirty(FileFlatField owner) {
+    Entry entry = entries.get(owner.getCacheId());
+    if (entry != null) {
+      synchronized (entry) {
+        if (entry.field != null) entry.dirty = true;
+      }
+    }
+  }
+
+  /**
+   * Evict entries until the byte limit is met.
+   * @param keep  entry that must not be evicted
+   */
+  private void evict(Entry keep, CacheStrategy strategy) {
+    if (byteCount.get() <= maxBytes) return;
+    synchronized (evictionLock) {
+      while (byteCount.get() > maxBytes) {
+        ArrayList<Entry> candidates = new ArrayList<Entry>();
+        Iterator<Entry> iter = entries.values().iterator();
+        while (iter.hasNext()) {
+          Entry entry = iter.next();
+          if (entry != keep && entry.field != null) candidates.add(entry);
+        }
+        if (candidates.isEmpty()) break;
+
+        Entry[] array = candidates.toArray(new Entry[candidates.size()]);
+        int index = strategy.selectVictim(array, clock.get());
+        if (index < 0 || index >= array.length) break;
+        remove(array[index]);
+        evictionCount.incrementAndGet();
+      }
+    }
+  }
+
+  private void remove(Entry entry) {
+    synchronized (entry) {
+      if (entry.field != null) {
+        if (entry.dirty) {
+          try {
+            entry.owner.flushCache(entry.field);
+          }
+          catch (VisADException e) {
+            System.out.println(e.getMessage());
+          }
+        }
+        byteCount.addAndGet(-entry.bytes);
+      }
+      entry.field = null;
+      entry.evicted = true;
+      entries.remove(entry.id, entry);
+    }
+  }
+
+  /**
+   * Remove the FlatField of <code>owner</code> from the cache.
+   */
+  public void remove(FileFlatField owner) {
+    Entry entry = entries.get(owner.getCacheId());
+    if (entry != null) remove(entry);
+  }
+
+  /**
+   * Remove all FlatFields from the cache.
+   */
+  public void clear() {
+    Iterator<Entry> iter = entries.values().iterator();
+    while (iter.hasNext()) {
+      remove(iter.next());
+    }
+  }
+
+  /**
+   * Estimate the bytes held by the range values of a FlatField,
+   * following the packing FlatField uses for each range component.
+   */
+  static long estimateBytes(FlatField field) {
+    long length = field.getLength();
+    Set[] sets = field.getRangeSets();
+    if (sets == null) {
+      return length * field.getRangeDimension() * DOUBLE_BYTES;
+    }
+    long bytes = 0;
+    for (int i=0; i<sets.length; i++) {
+      int size;
+      if (sets[i] instanceof DoubleSet) {
+        size = DOUBLE_BYTES;
+      }
+      else if (sets[i] instanceof FloatSet) {
+        size = FLOAT_BYTES;
+      }
+      else {
+        try {
+          int setLength = sets[i].getLength();
+          size = (setLength < 256) ? 1 : (setLength < 65536) ? 2 : 4;
+        }
+        catch (VisADException e) {
+          size = DOUBLE_BYTES;
+        }
+      }
+      bytes += length * size;
+    }
+    return bytes;
+  }
+
+  /**
+   * @return approximate limit on the bytes held by the cache
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Set the approximate limit on the bytes held by the cache,
+   * evicting least recently used entries if necessary.
+   */
+  public void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    evict(null, new CacheStrategy());
+  }
+
+  /**
+   * @return approximate bytes held by the cache
+   */
+  public long getByteCount() {
+    return byteCount.get();
+  }
+
+  /**
+   * @return number of FlatFields in the cache
+   */
+  public int getEntryCount() {
+    int count = 0;
+    Iterator<Entry> iter = entries.values().iterator();
+    while (iter.hasNext()) {
+      if (iter.next().field != null) count++;
+    }
+    return count;
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  public String toString() {
+    return "FileFlatFieldCache: entries=" + getEntryCount() +
+      " bytes=" + getByteCount() + " maxBytes=" + maxBytes +
+      " hits=" + getHitCount() + " misses=" + getMissCount() +
+      " evictions=" + getEvictionCount();
+  }
+}
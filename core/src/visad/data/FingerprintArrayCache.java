@@ -0,0 +1,493 @@
+//
+// FingerprintArrayCache.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.data;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import visad.util.Util;
+
+/**
+ * A multi-entry cache mapping input arrays to output arrays, used by
+ * the CachingCoordinateSystem.  Unlike {@link ArrayCache}, which keeps
+ * only the last input per key, this keeps any number of entries,
+ * evicting the least recently used ones when the total size of the
+ * cached arrays exceeds a byte limit.<P>
+ *
+ * Entries are looked up by a fingerprint computed from the array
+ * dimensions and a fixed number of evenly spaced samples, so a miss
+ * costs a small constant amount of work regardless of the array
+ * length.  When a fingerprint matches, the input is compared in full
+ * with the cached input unless verification has been turned off with
+ * the <code>visad.data.fingerprintcache.verify</code> property.<P>
+ *
+ * The <code>enabled</code>, <code>lowerthreshold</code> and
+ * <code>upperthreshold</code> properties (inputs of at most
+ * lowerthreshold or more than upperthreshold samples are not cached)
+ * may be given under <code>visad.data.fingerprintcache</code> or, as
+ * for ArrayCache, under <code>visad.data.arraycache</code>.
+ * ArrayCache's <code>usedatacachemanager</code> has no counterpart:
+ * entries are held in memory, within the byte limit.<P>
+ *
+ * The outputs stored and returned are copies, so callers may modify
+ * them freely.
+ */
+public class FingerprintArrayCache {
+
+  /** number of samples per array row that go into a fingerprint */
+  private static final int FINGERPRINT_SAMPLES = 256;
+
+  /** Do we cache */
+  private boolean enabled =
+    Boolean.parseBoolean(property("enabled", "true"));
+
+  /** Do we compare the full input when the fingerprints match */
+  private boolean verify =
+    Boolean.parseBoolean(property("verify", "true"));
+
+  /** inputs no longer than this are not cached */
+  private int lowerThreshold =
+    Integer.parseInt(property("lowerthreshold", "1000"));
+
+  /** inputs longer than this are not cached */
+  private int upperThreshold =
+    Integer.parseInt(property("upperthreshold", "1000000"));
+
+  /** maximum total bytes of cached arrays */
+  private long maxBytes;
+
+  /** total bytes of cached arrays */
+  private long bytes = 0;
+
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  /** entries in least recently used order */
+  private LinkedHashMap<Key, Entry> map =
+    new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+  /** the cache shared by all CachingCoordinateSystems */
+  private static FingerprintArrayCache shared = null;
+
+  /**
+   * Create a cache bounded by the
+   * <code>visad.data.fingerprintcache.maxbytes</code> property, which
+   * defaults to 1/8 of the maximum heap size.
+   */
+  public FingerprintArrayCache() {
+    this(Long.parseLong(property("maxbytes",
+           String.valueOf(Runtime.getRuntime().maxMemory() / 8))));
+  }
+
+  /**
+   * Create a cache holding at most maxBytes of cached arrays.
+   *
+   * @param maxBytes maximum total size of inputs and outputs kept
+   */
+  public FingerprintArrayCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Get the cache shared by all CachingCoordinateSystems, so that the
+   * <code>visad.data.fingerprintcache.maxbytes</code> limit bounds
+   * the arrays they keep in total.  Each should use key names that
+   * start with a prefix of its own.
+   *
+   * @return the shared cache
+   */
+  public static synchronized FingerprintArrayCache getShared() {
+    if (shared == null) shared = new FingerprintArrayCache();
+    return shared;
+  }
+
+  /**
+   * Get a copy of the output cached for the given key and input.
+   *
+   * @param key   The key (e.g., "toReference", "fromReference")
+   * @param input The input
+   *
+   * @return the cached output, or null if there is none
+   */
+  public float[][] get(String key, float[][] input) {
+    if (!shouldHandle(input)) return null;
+    Key k = new Key(key, input.length, input[0].length, fingerprint(input));
+    float[][] output;
+    synchronized (this) {
+      Entry entry = map.get(k);
+      if (entry == null || !(entry.output instanceof float[][]) ||
+          (verify && !equals((float[][]) entry.input, input))) {
+        misses++;
+        return null;
+      }
+      hits++;
+      output = (float[][]) entry.output;
+    }
+    return Util.clone(output);
+  }
+
+  /**
+   * Get a copy of the output cached for the given key and input.
+   *
+   * @param key   The key (e.g., "toReference", "fromReference")
+   * @param input The input
+   *
+   * @return the cached output, or null if there is none
+   */
+  public double[][] get(String key, double[][] input) {
+    if (!shouldHandle(input)) return null;
+    Key k = new Key(key, input.length, input[0].length, fingerprint(input));
+    double[][] output;
+    synchronized (this) {
+      Entry entry = map.get(k);
+      if (entry == null || !(entry.output instanceof double[][]) ||
+          (verify && !equals((double[][]) entry.input, input))) {
+        misses++;
+        return null;
+      }
+      hits++;
+      output = (double[][]) entry.output;
+    }
+    return Util.clone(output);
+  }
+
+  /**
+   * Copy an input before it is passed to a method that may modify it,
+   * so that it can later be given to put.
+   *
+   * @param input  The input array
+   *
+   * @return a copy of input, or null if input would not be cached
+   */
+  public float[][] copyForCache(float[][] input) {
+    if (!shouldHandle(input)) return null;
+    return Util.clone(input);
+  }
+
+  /**
+   * Cache an input and a copy of the output computed from it.  The
+   * input array is kept as is, so it should be a copy made with
+   * copyForCache before the output was computed.
+   *
+   * @param key    The key
+   * @param input  The input array; may be null, in which case nothing
+   *               is cached
+   * @param output The output array
+   */
+  public void put(String key, float[][] input, float[][] output) {
+    if (!shouldHandle(input) || output == null) return;
+    long size = 4L * ((verify ? count(input) : 0) + count(output));
+    if (size > maxBytes) return;
+    Key k = new Key(key, input.length, input[0].length, fingerprint(input));
+    store(k, new Entry(verify ? input : null, Util.clone(output), size));
+  }
+
+  /**
+   * Copy an input before it is passed to a method that may modify it,
+   * so that it can later be given to put.
+   *
+   * @param input  The input array
+   *
+   * @return a copy of input, or null if input would not be cached
+   */
+  public double[][] copyForCache(double[][] input) {
+    if (!shouldHandle(input)) return null;
+    return Util.clone(input);
+  }
+
+  /**
+   * Cache an input and a copy of the output computed from it.  The
+   * input array is kept as is, so it should be a copy made with
+   * copyForCache before the output was computed.
+   *
+   * @param key    The key
+   * @param input  The input array; may be null, in which case nothing
+   *               is cached
+   * @param output The output array
+   */
+  public void put(String key, double[][] input, double[][] output) {
+    if (!shouldHandle(input) || output == null) return;
+    long size = 8L * ((verify ? count(input) : 0) + count(output));
+    if (size > maxBytes) return;
+    Key k = new Key(key, input.length, input[0].length, fingerprint(input));
+    store(k, new Entry(verify ? input : null, Util.clone(output), size));
+  }
+
+  /**
+   * Remove all entries.  The hit and miss counts are kept.
+   */
+  public synchronized void clear() {
+    map.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Remove the entries whose key names start with a prefix.
+   *
+   * @param prefix  The prefix
+   */
+  public synchronized void clear(String prefix) {
+    Iterator<Map.Entry<Key, Entry>> it = map.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Key, Entry> e = it.next();
+      if (e.getKey().name.startsWith(prefix)) {
+        bytes -= e.getValue().bytes;
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * @return the number of lookups that found an entry
+   */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /**
+   * @return the number of lookups that did not find an entry
+   */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /**
+   * @return the number of entries evicted to stay within the byte limit
+   */
+  public synchronized long getEvictionCount() {
+    return evictions;
+  }
+
+  /**
+   * @return the number of entries
+   */
+  public synchronized int getEntryCount() {
+    return map.size();
+  }
+
+  /**
+   * @return the total size of cached arrays, in bytes
+   */
+  public synchronized long getByteCount() {
+    return bytes;
+  }
+
+  /**
+   * @return the maximum total size of cached arrays, in bytes
+   */
+  public synchronized long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Set the maximum total size of cached arrays, evicting entries if
+   * necessary.
+   *
+   * @param maxBytes maximum size in bytes
+   */
+  public synchronized void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    evict();
+  }
+
+  public String toString() {
+    return "FingerprintArrayCache: " + getEntryCount() + " entries, " +
+      getByteCount() + " bytes, " + getHitCount() + " hits, " +
+      getMissCount() + " misses";
+  }
+
+  private synchronized void store(Key key, Entry entry) {
+    Entry old = map.put(key, entry);
+    if (old != null) bytes -= old.bytes;
+    bytes += entry.bytes;
+    evict();
+  }
+
+  /** remove least recently used entries until within maxBytes */
+  private void evict() {
+    Iterator<Map.Entry<Key, Entry>> it = map.entrySet().iterator();
+    while (bytes > maxBytes && it.hasNext()) {
+      bytes -= it.next().getValue().bytes;
+      it.remove();
+      evictions++;
+    }
+  }
+
+  private boolean shouldHandle(float[][] input) {
+    if (!enabled) return false;
+    if (input == null || input.length == 0 || input[0] == null) return false;
+    for (int i = 1; i < input.length; i++) {
+      if (input[i] == null || input[i].length != input[0].length) return false;
+    }
+    return input[0].length > lowerThreshold &&
+      input[0].length <= upperThreshold;
+  }
+
+  private boolean shouldHandle(double[][] input) {
+    if (!enabled) return false;
+    if (input == null || input.length == 0 || input[0] == null) return false;
+    for (int i = 1; i < input.length; i++) {
+      if (input[i] == null || input[i].length != input[0].length) return false;
+    }
+    return input[0].length > lowerThreshold &&
+      input[0].length <= upperThreshold;
+  }
+
+  /**
+   * Get a visad.data.fingerprintcache property, or else the
+   * visad.data.arraycache property of the same name that configured
+   * the ArrayCache this replaces.
+   */
+  private static String property(String name, String def) {
+    String value = System.getProperty("visad.data.fingerprintcache." + name);
+    if (value == null) {
+      value = System.getProperty("visad.data.arraycache." + name);
+    }
+    return (value == null) ? def : value;
+  }
+
+  private static long count(float[][] a) {
+    long n = 0;
+    for (int i = 0; i < a.length; i++) {
+      if (a[i] != null) n += a[i].length;
+    }
+    return n;
+  }
+
+  private static long count(double[][] a) {
+    long n = 0;
+    for (int i = 0; i < a.length; i++) {
+      if (a[i] != null) n += a[i].length;
+    }
+    return n;
+  }
+
+  private static boolean equals(float[][] a, float[][] b) {
+    if (a.length != b.length) return false;
+    for (int i = 0; i < a.length; i++) {
+      if (!Arrays.equals(a[i], b[i])) return false;
+    }
+    return true;
+  }
+
+  private static boolean equals(double[][] a, double[][] b) {
+    if (a.length != b.length) return false;
+    for (int i = 0; i < a.length; i++) {
+      if (!Arrays.equals(a[i], b[i])) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Hash of up to FINGERPRINT_SAMPLES evenly spaced values (always
+   * including the first and last) of each row.
+   */
+  static long fingerprint(float[][] a) {
+    long h = a.length;
+    for (int i = 0; i < a.length; i++) {
+      float[] row = a[i];
+      int n = row.length;
+      h = mix(h, n);
+      if (n == 0) continue;
+      int step = Math.max(1, n / FINGERPRINT_SAMPLES);
+      for (int j = 0; j < n; j += step) {
+        h = mix(h, Float.floatToIntBits(row[j]));
+      }
+      h = mix(h, Float.floatToIntBits(row[n - 1]));
+    }
+    return h;
+  }
+
+  /**
+   * Hash of up to FINGERPRINT_SAMPLES evenly spaced values (always
+   * including the first and last) of each row.
+   */
+  static long fingerprint(double[][] a) {
+    long h = a.length;
+    for (int i = 0; i < a.length; i++) {
+      double[] row = a[i];
+      int n = row.length;
+      h = mix(h, n);
+      if (n == 0) continue;
+      int step = Math.max(1, n / FINGERPRINT_SAMPLES);
+      for (int j = 0; j < n; j += step) {
+        h = mix(h, Double.doubleToLongBits(row[j]));
+      }
+      h = mix(h, Double.doubleToLongBits(row[n - 1]));
+    }
+    return h;
+  }
+
+  private static long mix(long h, long v) {
+    h ^= v;
+    h *= 0x9E3779B97F4A7C15L;
+    return h ^ (h >>> 29);
+  }
+
+  /** lookup key: method key, shape and fingerprint of the input */
+  private static class Key {
+    final String name;
+    final int dimension;
+    final int length;
+    final long fingerprint;
+
+    Key(String name, int dimension, int length, long fingerprint) {
+      this.name = name;
+      this.dimension = dimension;
+      this.length = length;
+      this.fingerprint = fingerprint;
+    }
+
+    public int hashCode() {
+      return name.hashCode() ^ (int) fingerprint ^
+        (int) (fingerprint >>> 32) ^ (31 * length + dimension);
+    }
+
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) return false;
+      Key that = (Key) obj;
+      return fingerprint == that.fingerprint && length == that.length &&
+        dimension == that.dimension && name.equals(that.name);
+    }
+  }
+
+  /** cached input (null when not verifying) and output */
+  private static class Entry {
+    final Object input;
+    final Object output;
+    final long bytes;
+
+    Entry(Object input, Object output, long bytes) {
+      this.input = input;
+      this.output = output;
+      this.bytes = bytes;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+//
+// SizeAwareCacheStrategy.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.data;
+
+/**
+ * Cache replacement policy that weighs how long ago an entry was used
+ * by how many bytes it holds, so one large, cold field is evicted
+ * before several small fields that were used at about the same time.
+ */
+public class SizeAwareCacheStrategy
+  extends CacheStrategy
+{
+
+   public SizeAwareCacheStrategy()
+   {
+
+   }
+
+   public int selectVictim( FileFlatFieldCache.Entry[] entries, long clock )
+   {
+      int victim = 0;
+      double best = -1.0;
+
+      for ( int ii = 0; ii < entries.length; ii++ )
+      {
+         double age = (double) (clock - entries[ii].getLastAccess() + 1);
+         double score = age * (double) entries[ii].getBytes();
+         if ( score > best )
+         {
+           best = score;
+           victim = ii;
+         }
+      }
+
+      return victim;
+   }
+
+}
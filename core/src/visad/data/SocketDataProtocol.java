@@ -0,0 +1,334 @@
+//
+// SocketDataProtocol.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.data;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.rmi.RemoteException;
+import visad.*;
+import visad.data.visad.BinaryReader;
+import visad.data.visad.BinaryWriter;
+
+/**
+ * Frames of the binary protocol used between a {@link SocketDataServer}
+ * and a {@link SocketDataSource}.<P>
+ *
+ * A client opens the connection by sending {@link #MAGIC} and
+ * {@link #VERSION}.  The server then sends frames, each an int length
+ * followed by that many bytes: a frame kind byte and its payload.  A
+ * FULL frame holds a Data object in the VisAD binary file format.  A
+ * DELTA frame holds the range values of the samples of a FlatField
+ * that changed since the previous frame, as runs of sample indices.<P>
+ *
+ * An instance holds the server side state: the range values last sent,
+ * against which the next data is compared.
+ */
+final class SocketDataProtocol {
+
+  /** first int sent by a client */
+  static final int MAGIC = 0x56414444;
+
+  /** protocol version sent by a client */
+  static final int VERSION = 1;
+
+  /** frame holding a complete Data object */
+  static final byte FULL = 1;
+
+  /** frame holding changed FlatField range values */
+  static final byte DELTA = 2;
+
+  /** changed samples closer than this are sent in one run */
+  private static final int MERGE_GAP = 4;
+
+  /** type of the FlatField last sent, or null if it was not a FlatField */
+  private FunctionType type = null;
+
+  /** domain Set of the FlatField last sent */
+  private Set domain = null;
+
+  /** range values last sent, as floats or doubles */
+  private float[][] floats = null;
+  private double[][] doubles = null;
+
+  /**
+   * Get the frame that brings clients up to date with the given data,
+   * and remember its values for the next call.
+   *
+   * @param data  the current data
+   *
+   * @return a FULL or DELTA frame ready to write, or null if there is
+   *         no data or no range value changed
+   */
+  ByteBuffer update(Data data)
+         throws VisADException, RemoteException, IOException {
+    DataImpl local = (data == null) ? null : data.local();
+    if (local instanceof FlatField && matches((FlatField) local)) {
+      return delta((FlatField) local);
+    }
+    ByteBuffer frame = full(local);
+    remember(local);
+    return frame;
+  }
+
+  /**
+   * Encode a FULL frame.
+   *
+   * @param data  the Data to send
+   *
+   * @return the frame ready to write, or null if data is null
+   */
+  ByteBuffer full(Data data)
+         throws VisADException, RemoteException, IOException {
+    if (data == null) return null;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BinaryWriter writer = new BinaryWriter(bytes);
+    writer.save(data.local());
+    writer.flush();
+    return frame(FULL, bytes.toByteArray());
+  }
+
+  /**
+   * Is the frame a FULL frame.
+   */
+  static boolean isFull(ByteBuffer frame) {
+    return frame.get(4) == FULL;
+  }
+
+  /**
+   * Number of bytes of the range values last sent, which is about the
+   * size of a FULL frame of a FlatField; 0 if no FlatField was sent.
+   */
+  long rangeBytes() {
+    if (floats != null) {
+      return 4L * floats.length * (floats.length == 0 ? 0 : floats[0].length);
+    }
+    if (doubles != null) {
+      return 8L * doubles.length *
+        (doubles.length == 0 ? 0 : doubles[0].length);
+    }
+    return 0;
+  }
+
+  private static ByteBuffer frame(byte kind, byte[] payload) {
+    ByteBuffer frame = ByteBuffer.allocate(5 + payload.length);
+    frame.putInt(1 + payload.length);
+    frame.put(kind);
+    frame.put(payload);
+    frame.flip();
+    return frame;
+  }
+
+  /** can the field be sent as a DELTA from the values last sent */
+  private boolean matches(FlatField field)
+          throws VisADException, RemoteException {
+    if (type == null || field.isMissing() ||
+        !type.equals(field.getType())) {
+      return false;
+    }
+    Set set = field.getDomainSet();
+    if (set != domain && !domain.equals(set)) return false;
+    return (floats != null) == isFloat(field);
+  }
+
+  /** are the range values of the field exactly represented as floats */
+  private static boolean isFloat(FlatField field) {
+    Set[] sets = field.getRangeSets();
+    for (int i=0; i<sets.length; i++) {
+      if (!(sets[i] instanceof FloatSet)) return false;
+    }
+    return true;
+  }
+
+  private void remember(DataImpl data)
+          throws VisADException, RemoteException {
+    type = null;
+    domain = null;
+    floats = null;
+    doubles = null;
+    if (!(data instanceof FlatField) || data.isMissing()) return;
+    FlatField field = (FlatField) data;
+    if (isFloat(field)) {
+      floats = field.getFloats(true);
+    }
+    else {
+      doubles = field.getValues(true);
+    }
+    type = (FunctionType) field.getType();
+    domain = field.getDomainSet();
+  }
+
+  /**
+   * Encode the range values of the field that differ from the values
+   * last sent, and remember them.
+   */
+  private ByteBuffer delta(FlatField field)
+          throws VisADException, IOException {
+    float[][] newFloats = null;
+    double[][] newDoubles = null;
+    int dimension;
+    int length;
+    if (floats != null) {
+      newFloats = field.getFloats(false);
+      dimension = floats.length;
+      length = floats[0].length;
+    }
+    else {
+      newDoubles = field.getValues(false);
+      dimension = doubles.length;
+      length = doubles[0].length;
+    }
+
+    // find runs of changed samples
+    int[] runs = new int[16];
+    int count = 0;
+    int last = -MERGE_GAP - 1;
+    for (int i=0; i<length; i++) {
+      boolean changed = false;
+      for (int k=0; k<dimension && !changed; k++) {
+        if (floats != null) {
+          changed = Float.floatToIntBits(floats[k][i]) !=
+                    Float.floatToIntBits(newFloats[k][i]);
+        }
+        else {
+          changed = Double.doubleToLongBits(doubles[k][i]) !=
+                    Double.doubleToLongBits(newDoubles[k][i]);
+        }
+      }
+      if (!changed) continue;
+      if (i - last > MERGE_GAP) {
+        if (count + 2 > runs.length) {
+          int[] more = new int[2 * runs.length];
+          System.arraycopy(runs, 0, more, 0, count);
+          runs = more;
+        }
+        runs[count++] = i;
+        runs[count++] = i + 1;
+      }
+      else {
+        runs[count - 1] = i + 1;
+      }
+      last = i;
+    }
+    if (count == 0) return null;
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeBoolean(floats != null);
+    out.writeInt(dimension);
+    out.writeInt(length);
+    out.writeInt(count / 2);
+    for (int r=0; r<count; r+=2) {
+      int start = runs[r];
+      int end = runs[r + 1];
+      out.writeInt(start);
+      out.writeInt(end - start);
+      for (int k=0; k<dimension; k++) {
+        if (floats != null) {
+          for (int i=start; i<end; i++) out.writeFloat(newFloats[k][i]);
+          System.arraycopy(newFloats[k], start, floats[k], start, end - start);
+        }
+        else {
+          for (int i=start; i<end; i++) out.writeDouble(newDoubles[k][i]);
+          System.arraycopy(newDoubles[k], start, doubles[k], start,
+                           end - start);
+        }
+      }
+    }
+    out.flush();
+    return frame(DELTA, bytes.toByteArray());
+  }
+
+  /**
+   * Read the next frame and apply it.
+   *
+   * @param in       the stream from the server
+   * @param current  the data built from the previous frames
+   *
+   * @return the data of a FULL frame, or <tt>current</tt> with the
+   *         changes of a DELTA frame applied to it in place
+   *
+   * @throws EOFException if the stream has ended
+   */
+  static DataImpl read(DataInputStream in, DataImpl current)
+         throws VisADException, RemoteException, IOException {
+    int size = in.readInt();
+    byte kind = in.readByte();
+    byte[] payload = new byte[size - 1];
+    in.readFully(payload);
+    if (kind == FULL) {
+      BinaryReader reader =
+        new BinaryReader(new ByteArrayInputStream(payload));
+      return reader.getData();
+    }
+    if (kind != DELTA) {
+      throw new VisADException("SocketDataProtocol: bad frame kind " + kind);
+    }
+
+    DataInputStream delta =
+      new DataInputStream(new ByteArrayInputStream(payload));
+    boolean isFloat = delta.readBoolean();
+    int dimension = delta.readInt();
+    int length = delta.readInt();
+    if (!(current instanceof FlatField) ||
+        ((FlatField) current).getLength() != length ||
+        ((FlatField) current).getRangeDimension() != dimension) {
+      throw new VisADException("SocketDataProtocol: delta does not match");
+    }
+
+    int runCount = delta.readInt();
+    int[] starts = new int[runCount];
+    int[] counts = new int[runCount];
+    double[][][] runValues = new double[runCount][dimension][];
+    int total = 0;
+    for (int r=0; r<runCount; r++) {
+      starts[r] = delta.readInt();
+      counts[r] = delta.readInt();
+      for (int k=0; k<dimension; k++) {
+        double[] values = new double[counts[r]];
+        for (int i=0; i<counts[r]; i++) {
+          values[i] = isFloat ? delta.readFloat() : delta.readDouble();
+        }
+        runValues[r][k] = values;
+      }
+      total += counts[r];
+    }
+
+    // apply all runs together so references are notified once
+    int[] indices = new int[total];
+    double[][] values = new double[dimension][total];
+    int n = 0;
+    for (int r=0; r<runCount; r++) {
+      for (int k=0; k<dimension; k++) {
+        System.arraycopy(runValues[r][k], 0, values[k], n, counts[r]);
+      }
+      for (int i=0; i<counts[r]; i++) indices[n + i] = starts[r] + i;
+      n += counts[r];
+    }
+    ((FlatField) current).setSamples(indices, values);
+    return current;
+  }
+}
@@ -28,14 +28,25 @@ package visad.data;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
 import java.rmi.RemoteException;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.Vector;
 import visad.*;
 
 /**
  * A class for exporting data to a socket stream. Whenever the given
  * DataReference's data changes, it is sent across the socket to any clients
- * that are listening.
+ * that are listening.<P>
+ *
+ * By default each change is sent with Java serialization. A server
+ * constructed in binary mode instead uses the VisAD binary format, and
+ * after the first full transfer sends only the range samples of a
+ * FlatField that changed. It feeds all its clients from one thread
+ * with non-blocking channels. Its clients must be SocketDataSources
+ * in binary mode.
  */
 public class SocketDataServer {
 
@@ -69,6 +80,145 @@ public class SocketDataServer {
    */
   protected boolean alive = true;
 
+  /**
+   * Whether clients are sent binary frames rather than serialized objects.
+   */
+  private boolean binary = false;
+
+  /**
+   * Server channel and selector for binary mode.
+   */
+  private ServerSocketChannel serverChannel;
+  private Selector selector;
+
+  /**
+   * Binary mode clients that have completed the handshake.
+   */
+  private Vector clients = new Vector();
+
+  /**
+   * Binary mode record of the data last sent.
+   */
+  private SocketDataProtocol protocol;
+
+  /**
+   * A binary mode client and the frames waiting to be written to it.
+   */
+  private class BinaryClient {
+    SocketChannel channel;
+    ByteBuffer handshake = ByteBuffer.allocate(8);
+    LinkedList frames = new LinkedList();
+
+    /** bytes held for DELTA frames waiting that have not been started */
+    long waiting = 0;
+
+    BinaryClient(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    /** queue a frame; a FULL frame replaces frames not yet started */
+    void send(ByteBuffer frame) {
+      if (SocketDataProtocol.isFull(frame)) {
+        while (frames.size() > 0 &&
+               ((ByteBuffer) frames.getLast()).position() == 0) {
+          waiting -= cost((ByteBuffer) frames.removeLast());
+        }
+      }
+      frames.add(frame.duplicate());
+      waiting += cost(frame);
+    }
+
+    /** write waiting frames until the channel is full */
+    void write() throws IOException {
+      while (!frames.isEmpty()) {
+        ByteBuffer frame = (ByteBuffer) frames.getFirst();
+        boolean started = frame.position() > 0;
+        channel.write(frame);
+        if (!started && frame.position() > 0) waiting -= cost(frame);
+        if (frame.hasRemaining()) break;
+        frames.removeFirst();
+      }
+    }
+  }
+
+  /**
+   * Bytes held for a queued DELTA frame, counting the buffer and list
+   * entry as well as the frame itself; FULL frames are not counted.
+   */
+  private static long cost(ByteBuffer frame) {
+    return SocketDataProtocol.isFull(frame) ? 0 : frame.limit() + 64;
+  }
+
+  /**
+   * Code for feeding binary mode clients.
+   */
+  private Runnable select = new Runnable() {
+    public void run() {
+      while (alive) {
+        try {
+          selector.select();
+        }
+        catch (IOException exc) {
+          break;
+        }
+        if (!alive) break;
+        Iterator keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = (SelectionKey) keys.next();
+          keys.remove();
+          try {
+            if (!key.isValid()) continue;
+            if (key.isAcceptable()) {
+              SocketChannel channel = serverChannel.accept();
+              if (channel != null) {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ,
+                                 new BinaryClient(channel));
+              }
+              continue;
+            }
+            BinaryClient client = (BinaryClient) key.attachment();
+            if (key.isReadable()) readClient(client);
+            if (key.isValid() && key.isWritable()) writeClient(client);
+          }
+          catch (IOException exc) {
+            dropClient(key);
+          }
+          catch (VisADException exc) {
+            dropClient(key);
+          }
+          catch (CancelledKeyException exc) {
+            dropClient(key);
+          }
+        }
+
+        // ask to write to clients with frames waiting
+        synchronized (sockets) {
+          for (int i=0; i<clients.size(); i++) {
+            BinaryClient client = (BinaryClient) clients.elementAt(i);
+            SelectionKey key = client.channel.keyFor(selector);
+            if (key == null || !key.isValid()) continue;
+            key.interestOps(client.frames.isEmpty() ? SelectionKey.OP_READ :
+              SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+          }
+        }
+      }
+
+      // server has been killed; close remaining channels
+      Iterator keys = selector.keys().iterator();
+      while (keys.hasNext()) {
+        try {
+          ((SelectionKey) keys.next()).channel().close();
+        }
+        catch (IOException exc) { }
+      }
+      try {
+        selector.close();
+      }
+      catch (IOException exc) { }
+    }
+  };
+
   /**
    * Code for monitoring incoming clients.
    */
@@ -107,6 +257,14 @@ public class SocketDataServer {
     public synchronized void doAction()
       throws VisADException, RemoteException
     {
+      if (binary) {
+        synchronized (sockets) {
+          sendUpdate();
+        }
+        selector.wakeup();
+        return;
+      }
+
       // send new data to each client using its socket
       synchronized (sockets) {
         Data data = SocketDataServer.this.ref.getData();
@@ -132,21 +290,157 @@ public class SocketDataServer {
    */
   public SocketDataServer(int port, DataReferenceImpl ref)
     throws VisADException, IOException
+  {
+    this(port, ref, false);
+  }
+
+  /**
+   * Construct a SocketDataServer with the given port and data reference,
+   * sending changes in binary frames if <tt>binary</tt> is true.
+   */
+  public SocketDataServer(int port, DataReferenceImpl ref, boolean binary)
+    throws VisADException, IOException
   {
     this.port = port;
     this.ref = ref;
+    this.binary = binary;
+
+    if (binary) {
+      protocol = new SocketDataProtocol();
+
+      // create a non-blocking server channel at the given port
+      selector = Selector.open();
+      serverChannel = ServerSocketChannel.open();
+      serverChannel.configureBlocking(false);
+      socket = serverChannel.socket();
+      socket.bind(new InetSocketAddress(port));
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
 
-    // create a server socket at the given port
-    socket = new ServerSocket(port);
+      // feed clients from a single thread
+      Thread selectThread = new Thread(select);
+      selectThread.start();
+    }
+    else {
+      // create a server socket at the given port
+      socket = new ServerSocket(port);
 
-    // monitor incoming client socket connections
-    Thread connectThread = new Thread(connect);
-    connectThread.start();
+      // monitor incoming client socket connections
+      Thread connectThread = new Thread(connect);
+      connectThread.start();
+    }
 
     // monitor data changes
     commCell.addReference(ref);
   }
 
+  /**
+   * Whether this server sends binary frames.
+   */
+  public boolean isBinary() {
+    return binary;
+  }
+
+  /**
+   * Queue the frame bringing clients up to date with the current data.
+   * Called with the sockets lock held.
+   */
+  private void sendUpdate() throws VisADException, RemoteException {
+    ByteBuffer frame;
+    try {
+      frame = protocol.update(ref.getData());
+    }
+    catch (IOException exc) {
+      throw new VisADException(exc.toString());
+    }
+    if (frame == null) return;
+    // a client that reads slower than the data changes gets the current
+    // data in place of its waiting changes once they are as large, so
+    // at most about three FULL frames' worth is held for it: one being
+    // written, one waiting, and changes queued after it
+    long limit = protocol.rangeBytes();
+    ByteBuffer full = null;
+    for (int i=0; i<clients.size(); i++) {
+      BinaryClient client = (BinaryClient) clients.elementAt(i);
+      if (!SocketDataProtocol.isFull(frame) &&
+          client.waiting + cost(frame) > limit) {
+        if (full == null) {
+          try {
+            full = protocol.full(ref.getData());
+          }
+          catch (IOException exc) {
+            throw new VisADException(exc.toString());
+          }
+        }
+        client.send(full);
+      }
+      else {
+        client.send(frame);
+      }
+    }
+  }
+
+  /**
+   * Read from a binary mode client: its handshake, then nothing.
+   */
+  private void readClient(BinaryClient client)
+    throws VisADException, IOException
+  {
+    ByteBuffer in = client.handshake;
+    if (!in.hasRemaining()) {
+      // the protocol has no client messages after the handshake
+      in = ByteBuffer.allocate(256);
+    }
+    if (client.channel.read(in) < 0) throw new EOFException();
+    if (in != client.handshake || in.hasRemaining()) return;
+
+    in.flip();
+    if (in.getInt() != SocketDataProtocol.MAGIC ||
+        in.getInt() != SocketDataProtocol.VERSION) {
+      throw new IOException("not a binary SocketDataSource");
+    }
+
+    // bring the other clients to the current data, then send it all
+    // to the new one
+    synchronized (sockets) {
+      try {
+        sendUpdate();
+      }
+      catch (RemoteException exc) {
+        throw new VisADException(exc.toString());
+      }
+      ByteBuffer full = protocol.full(ref.getData());
+      if (full != null) client.send(full);
+      clients.add(client);
+    }
+  }
+
+  /**
+   * Write waiting frames to a binary mode client, until its channel
+   * is full.
+   */
+  private void writeClient(BinaryClient client) throws IOException {
+    synchronized (sockets) {
+      client.write();
+    }
+  }
+
+  /**
+   * Close a binary mode client's channel and forget it.
+   */
+  private void dropClient(SelectionKey key) {
+    key.cancel();
+    Object client = key.attachment();
+    if (client instanceof BinaryClient) {
+      synchronized (sockets) {
+        clients.remove(client);
+      }
+      try {
+        ((BinaryClient) client).channel.close();
+      }
+      catch (IOException exc) { }
+    }
+  }
+
   /**
    * Shut down the given socket, and removes it from the socket vector.
    */
@@ -179,7 +473,15 @@ public class SocketDataServer {
     // shut down all client sockets
     synchronized (sockets) {
       while (sockets.size() > 0) killSocket(0);
+      for (int i=0; i<clients.size(); i++) {
+        try {
+          ((BinaryClient) clients.elementAt(i)).channel.close();
+        }
+        catch (IOException exc) { }
+      }
+      clients.clear();
     }
+    if (selector != null) selector.wakeup();
 
     // shut down server socket
     try {
@@ -34,7 +34,11 @@ import visad.*;
 /**
  * A class for linking a socket stream to a DataReference. Whenever the source
  * data changes, the source presumably sends the change through the linked
- * socket, and the DataReference is set to point at the new data.
+ * socket, and the DataReference is set to point at the new data.<P>
+ *
+ * In binary mode the source must be a SocketDataServer in binary mode.
+ * Changes to the samples of a FlatField then arrive as deltas, which are
+ * applied to the current FlatField in place rather than replacing it.
  */
 public class SocketDataSource extends LinkedDataSource {
 
@@ -53,6 +57,59 @@ public class SocketDataSource extends LinkedDataSource {
    */
   protected ObjectInputStream in;
 
+  /**
+   * Whether the source sends binary frames.
+   */
+  private boolean binary = false;
+
+  /**
+   * The binary mode input stream for the socket connection.
+   */
+  private DataInputStream binaryIn;
+
+  /**
+   * Code for reading binary frames from the socket.
+   */
+  private Runnable binaryComm = new Runnable() {
+    public void run() {
+      DataImpl data = null;
+      while (true) {
+        try {
+          DataImpl next = SocketDataProtocol.read(binaryIn, data);
+          if (next != data) {
+            data = next;
+            dataChanged(data);
+          }
+        }
+        catch (IOException exc) {
+          if (DEBUG) exc.printStackTrace();
+          break;
+        }
+        catch (VisADException exc) {
+          if (DEBUG) exc.printStackTrace();
+          break;
+        }
+      }
+
+      // socket has died; shut everything down
+      try {
+        dataChanged(null);
+      }
+      catch (VisADException exc) {
+        if (DEBUG) exc.printStackTrace();
+      }
+      catch (RemoteException exc) {
+        if (DEBUG) exc.printStackTrace();
+      }
+      try {
+        socket.close();
+      }
+      catch (IOException exc) {
+        if (DEBUG) exc.printStackTrace();
+      }
+    }
+  };
+
   /**
    * Code for monitoring socket for incoming source data changes.
    */
@@ -127,6 +184,22 @@ public class SocketDataSource extends LinkedDataSource {
     super(name);
   }
 
+  /**
+   * Construct a SocketDataSource with the given name, reading binary
+   * frames from the source if <tt>binary</tt> is true.
+   */
+  public SocketDataSource(String name, boolean binary) {
+    super(name);
+    this.binary = binary;
+  }
+
+  /**
+   * Whether this SocketDataSource reads binary frames.
+   */
+  public boolean isBinary() {
+    return binary;
+  }
+
   /**
    * Link to the given socket, updating the local data whenever an
    * update event is sent through that socket.
@@ -150,6 +223,18 @@ public class SocketDataSource extends LinkedDataSource {
 
     // open the socket
     socket = new Socket(host, port);
+    if (binary) {
+      DataOutputStream handshake =
+        new DataOutputStream(socket.getOutputStream());
+      handshake.writeInt(SocketDataProtocol.MAGIC);
+      handshake.writeInt(SocketDataProtocol.VERSION);
+      handshake.flush();
+      binaryIn = new DataInputStream(
+        new BufferedInputStream(socket.getInputStream()));
+      Thread t = new Thread(binaryComm);
+      t.start();
+      return;
+    }
     out = new ObjectOutputStream(socket.getOutputStream());
     in = new ObjectInputStream(socket.getInputStream());
 
@@ -166,9 +251,11 @@ public class SocketDataSource extends LinkedDataSource {
   }
 
   /**
-   * Writes the specified object out to the socket.
+   * Writes the specified object out to the socket.  Does nothing in
+   * binary mode.
    */
   public void writeObject(Object o) {
+    if (out == null) return;
     try {
       out.writeObject(o);
     }
@@ -33,11 +33,13 @@ import java.util.*;
 import visad.Set;
 
 import java.net.URL;
+import java.rmi.RemoteException;
 
 import visad.*;
 import visad.VisADException;
 import visad.data.in.ArithProg;
 import visad.util.DataUtility;
+import visad.util.ParallelChunks;
 
 import java.util.regex.*;
 
@@ -91,6 +93,24 @@ public class TextAdapter {
   private static final String BLANK = " ";
   private static final String BLANK_DELIM = "\\s+";
 
+  /** number of data lines parsed together by the column reader */
+  private static final int LINES_PER_BATCH = 16384;
+
+  /** number of data lines per parallel task of the column reader */
+  private static final int LINES_PER_CHUNK = 1024;
+
+  /** exactly representable powers of ten */
+  private static final double[] POW10 = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private static boolean columnarIngest =
+    Boolean.getBoolean("visad.data.text.columnar");
+
+  private static boolean parallelIngest =
+    Boolean.getBoolean("visad.data.text.parallel");
+
 
 
   private FlatField ff = null;
@@ -930,32 +950,25 @@ public class TextAdapter {
     if (countRange == 1 && numRng == 1 && 
                 numDom == 2 && countDomain < 2) isRaster = true;
 
+    // all-numeric files may be read straight into columns
+    ColumnReader columns = null;
+    if (canReadColumns(isRaster, rangeType, nhdr)) {
+      columns = new ColumnReader(nhdr, numDom, numRng);
+      columns.read(bis);
+    }
+
     Real[] prototypeReals = new Real[nhdr];
     TupleType tupleType = null;
     int index;
     int lineCnt = 0;
-    while (true) {
+    while (columns == null) {
       String line = readLine(bis);
       if (debug) System.out.println("read:"+line);
       if (line == null) break;
       if(skipPattern!=null && skipPattern.matcher(line).find()) continue;
       if((index=line.indexOf("="))>=0) {  // fixed value
-        String name  = line.substring(0,index).trim();
-        String value  = line.substring(index+1).trim();
-        boolean foundIt = false;
-        for(int paramIdx=0;paramIdx<infos.length;paramIdx++) {
-            if(infos[paramIdx].isParam(name)) {
-                if(infos[paramIdx].fixedValue==null) {
-                    numHdrValues++;
-                }
-                infos[paramIdx].fixedValue = value;
-                foundIt = true;
-                break;
-            }
-        }
-        if(!foundIt) {
-           throw new VisADException(
-                    "TextAdapter: Cannot find field with name:" +name +" from line:" + line);
+        if (setFixedValue(line, index)) {
+            numHdrValues++;
         }
         continue;
       }
@@ -1201,12 +1214,59 @@ public class TextAdapter {
 	bis.close();
         return;
     }
-    int numSamples = rangeValues.size(); // # lines of data
+    int numSamples = (columns != null) 
+                     ? columns.getLength() 
+                     : rangeValues.size(); // # lines of data
 
     if (numSamples == 0) {
         throw new VisADException("No data available to read");
     }
 
+    double[][] domainColumns;
+    double[][] a;
+    Tuple[] at = null;
+
+    if (columns != null) {
+      domainColumns = columns.getDomainColumns();
+      a = columns.getRangeColumns();
+
+    } else {
+      domainColumns = new double[numDom][numSamples];
+      for (int i=0; i<numSamples; i++) {
+        double[] ds = (double[])(domainValues.get(i));
+        for (int k=0; k<numDom; k++) {
+          domainColumns[k][i] = ds[k];
+        }
+      }
+
+      a = new double[numRng][numSamples * numElements];
+      at = new Tuple[numSamples];
+    
+      // if this is a raster then the samples are in a slightly
+      // difielderent form ...
+
+      if (isRaster) {
+        int samPointer = 0;
+        for (int i=0; i<numSamples; i++) {
+          double[] rs = (double[])(rangeValues.get(i));
+          for (int j=0; j<numElements; j++) {
+            a[0][samPointer] = rs[j];
+            samPointer ++;
+          }
+        }
+      } else {
+        for (int i=0; i<numSamples; i++) {
+          double[] rs = (double[])(rangeValues.get(i));
+          for (int j=0; j<numRng; j++) {
+            a[j][i] = rs[j];
+          }
+          if (!tupleValues.isEmpty()) {
+            at[i] = (Tuple) tupleValues.get(i); 
+          }
+        }
+      }
+    }
+
 // ***********************************************************
     if (debug) {
       try {
@@ -1263,7 +1323,8 @@ public class TextAdapter {
     if (numDom == 1) {  // for 1-D domains
 
       if (lset[0] == null) {
-        domain = createAppropriate1DDomain(domType, numSamples, domainValues);
+        domain = createAppropriate1DDomain(domType, numSamples, 
+                                           domainColumns[0]);
 
       } else {
         domain = lset[0];
@@ -1279,7 +1340,7 @@ public class TextAdapter {
 
         for (int k = 0; k < numDom; k++) {
           if (lset[k] == null) {
-            samples[k] = (getDomSamples(k, numSamples, domainValues))[0];
+            samples[k] = (getDomSamples(k, numSamples, domainColumns))[0];
           } else {
             samples[k] = (lset[k].getSamples())[0];
           }
@@ -1299,7 +1360,7 @@ public class TextAdapter {
 
         for (int k = 0; k < numDom; k++) {
           if (lset[k] == null) {
-            samples[k] = (getDomSamples(k, numSamples, domainValues))[0];
+            samples[k] = (getDomSamples(k, numSamples, domainColumns))[0];
           } else {
             samples[k] = (lset[k].getSamples())[0];
           }
@@ -1326,7 +1387,7 @@ public class TextAdapter {
 
         for (int k=0; k<numDom; k++) {
           if (lset[k] == null) {
-            samples[k] = (getDomSamples(k, numSamples, domainValues))[0];
+            samples[k] = (getDomSamples(k, numSamples, domainColumns))[0];
           } else {
             samples[k] = (lset[k].getSamples())[0];
           }
@@ -1363,35 +1424,6 @@ public class TextAdapter {
     }
 //*************************************************
 
-    double[][]a = new double[numRng][numSamples * numElements];
-    Tuple[] at = new Tuple[numSamples];
-    
-    // if this is a raster then the samples are in a slightly
-    // difielderent form ...
-
-    if (isRaster) {
-      int samPointer = 0;
-      for (int i=0; i<numSamples; i++) {
-        double[] rs = (double[])(rangeValues.get(i));
-        for (int j=0; j<numElements; j++) {
-          a[0][samPointer] = rs[j];
-          samPointer ++;
-        }
-      }
-    } else {
-      for (int i=0; i<numSamples; i++) {
-        double[] rs = (double[])(rangeValues.get(i));
-        for (int j=0; j<numRng; j++) {
-          a[j][i] = rs[j];
-        }
-        if (!tupleValues.isEmpty()) {
-          at[i] = (Tuple) tupleValues.get(i); 
-        }
-      }
-    }
-
-
-
 // set samples
     if (debug) System.out.println("about to field.setSamples");
     try {
@@ -1402,6 +1434,7 @@ public class TextAdapter {
 
     } else {
       if (debug) System.out.println("####   ff is null..use FieldImpl");
+      if (at == null) at = makeTuples(rangeType, a, numSamples);
       field.setSamples(at, false);
     }
     } catch (Exception ffe) {ffe.printStackTrace(); }
@@ -1611,16 +1644,407 @@ public class TextAdapter {
     return Double.NaN;
   }
 
-  // get the samples from the ArrayList.
-  float[][] getDomSamples(int comp, int numDomValues, ArrayList domValues) {
+  /**
+   * Set the fixed value of a parameter from a "name=value" line.
+   *
+   * @return true if the parameter did not have a fixed value before
+   */
+  private boolean setFixedValue(String line, int index) 
+          throws VisADException {
+    String name  = line.substring(0,index).trim();
+    String value  = line.substring(index+1).trim();
+    for(int paramIdx=0;paramIdx<infos.length;paramIdx++) {
+        if(infos[paramIdx].isParam(name)) {
+            boolean isNew = (infos[paramIdx].fixedValue==null);
+            infos[paramIdx].fixedValue = value;
+            return isNew;
+        }
+    }
+    throw new VisADException(
+             "TextAdapter: Cannot find field with name:" +name +" from line:" + line);
+  }
+
+  /**
+   * Can the data lines be read by a {@link ColumnReader}: only numeric
+   * values, one file column per value and a delimiter of a single
+   * character or blanks.
+   */
+  private boolean canReadColumns(boolean isRaster, TupleType rangeType,
+                                 int nhdr) throws VisADException {
+    if (!columnarIngest || isRaster || onlyReadOneLine || 
+        streamProcessor != null) {
+      return false;
+    }
+    if (DELIM != null && !DELIM.equals(BLANK) && !DELIM.equals(BLANK_DELIM) &&
+        !DELIM.equals(COMMA) && !DELIM.equals(SEMICOLON) && 
+        !DELIM.equals(TAB)) {
+      return false;
+    }
+    for (int i=0; i<rangeType.getDimension(); i++) {
+      if (!(rangeType.getComponent(i) instanceof RealType)) return false;
+    }
+    for (int i=0; i<nhdr; i++) {
+      if (infos[i].colspan != 1 || infos[i].isText) return false;
+    }
+    return true;
+  }
+
+  /** make the range Tuples of a FieldImpl from range columns */
+  private Tuple[] makeTuples(TupleType rangeType, double[][] values,
+                             int numSamples) 
+          throws VisADException, RemoteException {
+    int numRng = values.length;
+    Real[] prototypes = new Real[numRng];
+    for (int j=0; j<numRng; j++) {
+      prototypes[j] = new Real((RealType) rangeType.getComponent(j), 
+                               Double.NaN, rangeUnits[j]);
+    }
+    Tuple[] tuples = new Tuple[numSamples];
+    for (int i=0; i<numSamples; i++) {
+      Real[] reals = new Real[numRng];
+      for (int j=0; j<numRng; j++) {
+        reals[j] = prototypes[j].cloneButValue(values[j][i]);
+      }
+      tuples[i] = new RealTuple(reals);
+    }
+    return tuples;
+  }
+
+  /**
+   * Parse a plain decimal number (optional sign, digits, fraction and
+   * exponent) whose value can be computed exactly by one multiply or
+   * divide, giving the same result as Double.parseDouble.
+   *
+   * @return the value, or NaN if the text must be parsed another way
+   */
+  static double parseDecimal(String s, int start, int end) {
+    int i = start;
+    boolean negative = false;
+    char c = s.charAt(i);
+    if (c == '-' || c == '+') {
+      negative = (c == '-');
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean gotDigit = false;
+    for (; i<end; i++) {
+      c = s.charAt(i);
+      if (c < '0' || c > '9') break;
+      gotDigit = true;
+      if (mantissa != 0 || c != '0') {
+        if (++digits > 18) return Double.NaN;
+        mantissa = mantissa * 10 + (c - '0');
+      }
+    }
+    if (i < end && s.charAt(i) == '.') {
+      for (i++; i<end; i++) {
+        c = s.charAt(i);
+        if (c < '0' || c > '9') break;
+        gotDigit = true;
+        if (mantissa != 0 || c != '0') {
+          if (++digits > 18) return Double.NaN;
+          mantissa = mantissa * 10 + (c - '0');
+        }
+        exponent--;
+      }
+    }
+    if (!gotDigit) return Double.NaN;
+    if (i < end) {
+      c = s.charAt(i++);
+      if ((c != 'e' && c != 'E') || i == end) return Double.NaN;
+      boolean negativeExp = false;
+      c = s.charAt(i);
+      if (c == '-' || c == '+') {
+        negativeExp = (c == '-');
+        if (++i == end) return Double.NaN;
+      }
+      int e = 0;
+      for (; i<end; i++) {
+        c = s.charAt(i);
+        if (c < '0' || c > '9' || e > 1000) return Double.NaN;
+        e = e * 10 + (c - '0');
+      }
+      exponent += negativeExp ? -e : e;
+    }
+    if (mantissa > (1L << 53)) return Double.NaN;
+    double v = mantissa;
+    if (exponent < 0) {
+      if (exponent < -22) return Double.NaN;
+      v /= POW10[-exponent];
+    } else if (exponent > 0) {
+      if (exponent > 22) return Double.NaN;
+      v *= POW10[exponent];
+    }
+    return negative ? -v : v;
+  }
+
+  /**
+   * Reads the data lines of a file into one column of doubles per
+   * domain and range component, without making a Real or Tuple for
+   * each line.  Values are tokenized without regular expressions and
+   * plain decimals are parsed in place; anything else goes through
+   * {@link #getVal}.  Lines are parsed in batches, concurrently if
+   * parallel ingest is enabled.
+   */
+  private class ColumnReader {
+
+    private final int nhdr;
+    private double[][] domain;
+    private double[][] range;
+    private int length = 0;
+
+    /** delimiter character, or 0 for blank-separated values */
+    private char delimiter = 0;
+    private boolean gotDelimiter = false;
+
+    private final String[] batch = new String[LINES_PER_BATCH];
+    private int batchCount = 0;
+
+    /** parsed fixed values of the current batch */
+    private final double[] fixed;
+    private final boolean parallel;
+
+    ColumnReader(int nhdr, int numDom, int numRng) {
+      this.nhdr = nhdr;
+      domain = new double[numDom][LINES_PER_BATCH];
+      range = new double[numRng][LINES_PER_BATCH];
+      fixed = new double[nhdr];
+      boolean formatted = false;
+      for (int i=0; i<nhdr; i++) {
+        int k = values_to_index[2][i];
+        if (k >= 0 && infos[k].formatString != null) formatted = true;
+      }
+      // date/time parsing shares formats between threads
+      parallel = parallelIngest && !formatted;
+      if (DELIM != null) setDelimiter(DELIM);
+    }
+
+    int getLength() {
+      return length;
+    }
+
+    double[][] getDomainColumns() {
+      return domain;
+    }
+
+    double[][] getRangeColumns() {
+      return range;
+    }
+
+    void read(BufferedReader bis) throws IOException, VisADException {
+      String line;
+      int index;
+      while ((line = readLine(bis)) != null) {
+        if (skipPattern != null && skipPattern.matcher(line).find()) continue;
+        if ((index = line.indexOf("=")) >= 0) {  // fixed value
+          flush();
+          setFixedValue(line, index);
+          continue;
+        }
+        if (!gotDelimiter) {
+          String dataDelim = null;
+          if (line.indexOf(BLANK) != -1) dataDelim = BLANK_DELIM; 
+          if (line.indexOf(COMMA) != -1) dataDelim = COMMA; 
+          if (line.indexOf(SEMICOLON) != -1) dataDelim = SEMICOLON; 
+          if (line.indexOf(TAB) != -1) dataDelim = TAB; 
+          setDelimiter((dataDelim == null) ? BLANK_DELIM : dataDelim);
+        }
+        // as with split(), a line of only delimiters has no tokens and is
+        // skipped, but an empty one has one empty token and is a row
+        if (delimiter != 0 && line.length() > 0 && isDelimiters(line)) {
+          continue;
+        }
+        batch[batchCount++] = line;
+        if (batchCount == LINES_PER_BATCH) flush();
+      }
+      flush();
+      for (int k=0; k<domain.length; k++) {
+        domain[k] = Arrays.copyOf(domain[k], length);
+      }
+      for (int k=0; k<range.length; k++) {
+        range[k] = Arrays.copyOf(range[k], length);
+      }
+    }
+
+    private void setDelimiter(String dataDelim) {
+      delimiter = (dataDelim.equals(BLANK) || dataDelim.equals(BLANK_DELIM))
+                  ? 0 : dataDelim.charAt(0);
+      gotDelimiter = true;
+    }
+
+    /** a line of delimiters has no values */
+    private boolean isDelimiters(String line) {
+      for (int i=0; i<line.length(); i++) {
+        if (line.charAt(i) != delimiter) return false;
+      }
+      return true;
+    }
+
+    /** parse the lines of the batch into the columns */
+    private void flush() throws VisADException {
+      if (batchCount == 0) return;
+      int needed = length + batchCount;
+      if (needed > range[0].length) {
+        int capacity = Math.max(needed, 2 * range[0].length);
+        for (int k=0; k<domain.length; k++) {
+          domain[k] = Arrays.copyOf(domain[k], capacity);
+        }
+        for (int k=0; k<range.length; k++) {
+          range[k] = Arrays.copyOf(range[k], capacity);
+        }
+      }
+      for (int i=0; i<nhdr; i++) {
+        if (infos[i].fixedValue != null) {
+          fixed[i] = getVal(infos[i].fixedValue, i);
+        }
+      }
+
+      final int base = length;
+      if (parallel) {
+        try {
+          ParallelChunks.run(batchCount, LINES_PER_CHUNK,
+            new ParallelChunks.Chunk() {
+              public void run(int start, int end) {
+                for (int l=start; l<end; l++) {
+                  parseLine(batch[l], base + l);
+                }
+              }
+            });
+        } catch (RemoteException e) {
+          throw new VisADException(e.toString());
+        }
+      } else {
+        for (int l=0; l<batchCount; l++) {
+          parseLine(batch[l], base + l);
+        }
+      }
+
+      length += batchCount;
+      Arrays.fill(batch, 0, batchCount, null);
+      batchCount = 0;
+    }
+
+    private void parseLine(String line, int row) {
+      int len = line.length();
+      int pos = 0;  // start of the next token; past len when none are left
+      for (int i=0; i<nhdr; i++) {
+        double value;
+        int start = pos;
+        int end = pos;
+        if (infos[i].fixedValue == null) {
+          if (delimiter == 0) {
+            while (start < len && isBlank(line.charAt(start))) start++;
+            end = start;
+            while (end < len && !isBlank(line.charAt(end))) end++;
+            pos = end;
+          } else if (pos <= len) {
+            end = line.indexOf(delimiter, pos);
+            if (end < 0) end = len;
+            pos = end + 1;
+          } else {
+            start = end = len;
+          }
+        }
+
+        int d = values_to_index[0][i];
+        int r = values_to_index[1][i];
+        if (d == -1 && r == -1) continue;
+
+        if (infos[i].fixedValue != null) {
+          value = fixed[i];
+        } else {
+          value = parseValue(line, start, end, i);
+        }
+        if (d != -1) {
+          domain[d][row] = value;
+        } else {
+          range[r][row] = value;
+        }
+      }
+    }
+
+    /** same as getVal for the token line[start, end) of column k */
+    private double parseValue(String line, int start, int end, int k) {
+      while (start < end && line.charAt(start) <= ' ') start++;
+      while (end > start && line.charAt(end - 1) <= ' ') end--;
+      int i = values_to_index[2][k];
+      if (i < 0 || start == end) return Double.NaN;
+      HeaderInfo info = infos[i];
+      String missing = info.missingString;
+      if (missing != null && missing.length() == end - start &&
+          line.regionMatches(start, missing, 0, end - start)) {
+        return Double.NaN;
+      }
+      if (info.formatString == null) {
+        double v = parseDecimal(line, start, end);
+        if (v == v) {
+          if (v == info.missingValue) return Double.NaN;
+          return v * info.scale + info.offset;
+        }
+      }
+      return getVal(line.substring(start, end), k);
+    }
+  }
+
+  /** the white space characters matched by \s */
+  private static boolean isBlank(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || 
+           c == '\f' || c == '\u000B';
+  }
+
+  // get the samples from the domain columns.
+  float[][] getDomSamples(int comp, int numDomValues, double[][] domValues) {
     float [][] a = new float[1][numDomValues];
+    double[] d = domValues[comp];
     for (int i=0; i<numDomValues; i++) {
-      double[] d = (double[])(domValues.get(i));
-      a[0][i] = (float)d[comp];
+      a[0][i] = (float)d[i];
     }
     return a;
   }
 
+  /**
+   * Set whether numeric files are read directly into columns of
+   * doubles rather than through a Real and Tuple per line.  Files
+   * with Text components, multi-column values, a single raster
+   * range or a StreamProcessor are always read line by line.  The
+   * default is taken from the visad.data.text.columnar system
+   * property.
+   *
+   * @param columnar true to read eligible files by columns
+   */
+  public static void setColumnarIngest(boolean columnar) {
+    columnarIngest = columnar;
+  }
+
+  /**
+   * @return true if eligible files are read directly into columns
+   */
+  public static boolean getColumnarIngest() {
+    return columnarIngest;
+  }
+
+  /**
+   * Set whether the column reader parses batches of lines
+   * concurrently, using {@link ParallelChunks}.  Files with a
+   * date/time format on any column are parsed serially.  The
+   * default is taken from the visad.data.text.parallel system
+   * property.
+   *
+   * @param parallel true to parse lines concurrently
+   */
+  public static void setParallelIngest(boolean parallel) {
+    parallelIngest = parallel;
+  }
+
+  /**
+   * @return true if the column reader parses lines concurrently
+   */
+  public static boolean getParallelIngest() {
+    return parallelIngest;
+  }
+
   /** get the data
   * @return a Field of the data read from the file
   *
@@ -1634,7 +2058,7 @@ public class TextAdapter {
    *
    * @param type the math-type of the domain
    * @param numSamples the number of samples in the domain
-   * @param domValues domain values are extracted from this array list.
+   * @param domValues the domain values.
    *
    * @return a Linear1DSet if the domain samples form an arithmetic
    *   progression, a Gridded1DDoubleSet if the domain samples are ordered
@@ -1643,7 +2067,7 @@ public class TextAdapter {
    * @throws VisADException there was a problem creating the domain set.
    */
   private Set createAppropriate1DDomain(MathType type, int numSamples,
-                                       ArrayList domValues)
+                                       double[] domValues)
                                          throws VisADException {
 
     if (0 == numSamples) {
@@ -1651,12 +2075,8 @@ public class TextAdapter {
       return null;
     }
 
-    // Extract the first element from each element of the array list.
-    double[][] values = new double[1][numSamples];
-    for (int i=0; i<numSamples; ++i) {
-      double[] d = (double []) domValues.get(i);
-      values[0][i] = d[0];
-    }
+    double[][] values = new double[1][];
+    values[0] = domValues;
 
     // This implementation for testing that the values are ordered
     // is based on visad.Gridded1DDoubleSet.java
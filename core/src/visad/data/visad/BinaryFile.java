@@ -67,6 +67,7 @@ public interface BinaryFile
   byte FLD_LINEAR_SETS = 13;
   byte FLD_INTEGER_SETS = 14;
   byte FLD_SET_LIST = 15;
+  byte FLD_CHUNKED_SAMPLES = 16;
 
   byte FLD_COORDSYS_SERIAL = 20;
   byte FLD_DELAUNAY_SERIAL = 21;
@@ -31,6 +31,10 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import java.nio.ByteBuffer;
+
+import java.nio.channels.FileChannel;
+
 import visad.*;
 
 import visad.data.visad.object.*;
@@ -48,6 +52,9 @@ public class BinaryReader
 
   private int version;
 
+  /** smallest block worth mapping rather than copying */
+  private static final int MAP_THRESHOLD = 256 * 1024;
+
   private BinaryObjectCache unitCache, errorCache, cSysCache, typeCache;
 
   /**
@@ -84,6 +91,46 @@ public class BinaryReader
     this(new FileInputStream(ref));
   }
 
+  /**
+   * Open the referenced file, optionally through a memory map.
+   * <br><br>
+   * A mapped file is read in random-access mode: each
+   * {@link visad.FlatField FlatField} in the file is only indexed when
+   * the file is opened, and is returned as a
+   * {@link visad.data.FileFlatField FileFlatField} whose range values
+   * are read from the mapping the first time they are needed.  The
+   * reader must stay open while those fields are in use.
+   * <br><br>
+   * The first few bytes will be read to verify that the file starts
+   * with the appropriate <tt>MAGIC_STR</tt> characters and that this
+   * class can read the format version used by the file.
+   *
+   * @param ref File to be read.
+   * @param mapped <tt>true</tt> to map the file and read it in
+   *               random-access mode.
+   *
+   * @exception IOException If the file cannot be opened.
+   */
+  public BinaryReader(File ref, boolean mapped)
+    throws IOException
+  {
+    if (mapped) {
+      file = new MappedDataInput(ref);
+      isRandom = true;
+    } else {
+      InputStream stream = new FileInputStream(ref);
+      file = new DataInputStream(new BufferedInputStream(stream));
+      isRandom = false;
+    }
+
+    version = checkMagic(file);
+
+    unitCache = new BinaryObjectCache();
+    errorCache = new BinaryObjectCache();
+    cSysCache = new BinaryObjectCache();
+    typeCache = new BinaryObjectCache();
+  }
+
   /**
    * Prepare to read a binary object from the specified stream.
    * <br><br>
@@ -186,6 +233,8 @@ public class BinaryReader
       ((java.io.RandomAccessFile )file).close();
     } else if (file instanceof ucar.netcdf.RandomAccessFile) {
       ((ucar.netcdf.RandomAccessFile )file).close();
+    } else if (file instanceof MappedDataInput) {
+      ((MappedDataInput )file).close();
     } else {
       throw new IOException("Unknown file class \"" +
                             file.getClass().getName() + "\"");
@@ -275,12 +324,53 @@ if(DEBUG_RD_TIME){
       return ((java.io.RandomAccessFile )file).getFilePointer();
     } else if (file instanceof ucar.netcdf.RandomAccessFile) {
       return ((ucar.netcdf.RandomAccessFile )file).getFilePointer();
+    } else if (file instanceof MappedDataInput) {
+      return ((MappedDataInput )file).getFilePointer();
     }
 
     return -1;
   }
 
   public final DataInput getInput() { return file; }
+
+  /**
+   * Read the next block of bytes into a big-endian buffer.  Blocks of
+   * a memory-mapped file, and large blocks of a
+   * {@link java.io.RandomAccessFile}, are mapped rather than copied.
+   *
+   * @param len number of bytes to read
+   *
+   * @return buffer holding the bytes, positioned at its start
+   *
+   * @exception IOException if the bytes cannot be read.
+   */
+  public final ByteBuffer readBuffer(int len)
+    throws IOException
+  {
+    if (file instanceof MappedDataInput) {
+      return ((MappedDataInput )file).slice(len);
+    }
+
+    if (len >= MAP_THRESHOLD && file instanceof java.io.RandomAccessFile) {
+      java.io.RandomAccessFile raf = (java.io.RandomAccessFile )file;
+      final long pos = raf.getFilePointer();
+      if (pos + len <= raf.length()) {
+        try {
+          ByteBuffer buf =
+            raf.getChannel().map(FileChannel.MapMode.READ_ONLY, pos, len);
+          raf.seek(pos + len);
+          return buf;
+        } catch (IOException ioe) {
+          // the block can't be mapped, e.g. for lack of address space,
+          // so copy it
+        }
+      }
+    }
+
+    byte[] bytes = new byte[len];
+    file.readFully(bytes);
+    return ByteBuffer.wrap(bytes);
+  }
   public final BinaryObjectCache getTypeCache() { return typeCache; }
   public final BinaryObjectCache getUnitCache() { return unitCache; }
 
@@ -563,6 +653,8 @@ if(DEBUG_RD_TIME){
       ((java.io.RandomAccessFile )file).seek(pos);
     } else if (file instanceof ucar.netcdf.RandomAccessFile) {
       ((ucar.netcdf.RandomAccessFile )file).seek(pos);
+    } else if (file instanceof MappedDataInput) {
+      ((MappedDataInput )file).seek(pos);
     } else {
       throw new IOException("Seek not supported for " +
                             file.getClass().getName());
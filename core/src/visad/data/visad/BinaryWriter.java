@@ -30,6 +30,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import java.nio.ByteBuffer;
+
+import java.nio.channels.FileChannel;
+
 import visad.*;
 
 import visad.data.BaseDataProcessor;
@@ -48,6 +52,10 @@ public class BinaryWriter
 {
   private boolean initialized;
   private DataOutputStream file;
+  private FileChannel channel;
+
+  private int chunkLength =
+    Integer.getInteger("visad.data.visad.chunkLength", 0).intValue();
 
   private BinaryObjectCache unitCache, errorCache, cSysCache, typeCache;
 
@@ -65,7 +73,7 @@ public class BinaryWriter
   public BinaryWriter(File ref)
     throws IOException
   {
-    this(new BufferedOutputStream(new FileOutputStream(ref)));
+    this(new FileOutputStream(ref));
   }
 
   public BinaryWriter(OutputStream stream)
@@ -79,6 +87,7 @@ public class BinaryWriter
   {
     file.close();
     file = null;
+    channel = null;
   }
 
   public void flush()
@@ -91,6 +100,71 @@ public class BinaryWriter
     file.flush();
   }
 
+  /**
+   * Get the number of samples in each chunk of FlatField range values.
+   *
+   * @return the chunk length, or 0 if FlatField range values are
+   *         written as a single matrix
+   */
+  public int getChunkLength()
+  {
+    return chunkLength;
+  }
+
+  /**
+   * Write FlatField range values in chunks of the given number of
+   * samples, pulling each chunk from the field and writing it with a
+   * single bulk transfer, rather than unpacking the entire field
+   * into one matrix first.  Files written this way can only be read
+   * by readers that know the chunked format.
+   * <br><br>
+   * The default is taken from the <tt>visad.data.visad.chunkLength</tt>
+   * system property, or 0 if it is not set.
+   *
+   * @param samples number of samples in each chunk, or 0 to write
+   *                range values as a single matrix
+   */
+  public void setChunkLength(int samples)
+  {
+    if (samples < 0) {
+      throw new IllegalArgumentException("Bad chunk length " + samples);
+    }
+
+    chunkLength = samples;
+  }
+
+  /**
+   * Write the remaining bytes of a buffer.  When writing to a file,
+   * buffered output is flushed and the buffer is handed directly to
+   * the file's channel.
+   *
+   * @param buf bytes to write
+   *
+   * @exception IOException if the write fails.
+   */
+  public void writeBuffer(ByteBuffer buf)
+    throws IOException
+  {
+    if (file == null) {
+      throw new IOException("No active file");
+    }
+
+    if (channel != null) {
+      file.flush();
+      while (buf.hasRemaining()) {
+        channel.write(buf);
+      }
+    } else if (buf.hasArray()) {
+      file.write(buf.array(), buf.arrayOffset() + buf.position(),
+                 buf.remaining());
+      buf.position(buf.limit());
+    } else {
+      byte[] bytes = new byte[buf.remaining()];
+      buf.get(bytes);
+      file.write(bytes);
+    }
+  }
+
   public final BinaryObjectCache getCoordinateSystemCache() { return cSysCache; }
   public final BinaryObjectCache getErrorEstimateCache() { return errorCache; }
   public final DataOutput getOutput() { return file; }
@@ -995,6 +1069,11 @@ public class BinaryWriter
     }
 
     file = new DataOutputStream(new BufferedOutputStream(stream));
+    if (stream instanceof FileOutputStream) {
+      channel = ((FileOutputStream )stream).getChannel();
+    } else {
+      channel = null;
+    }
 
     file.writeBytes(MAGIC_STR);
     file.writeInt(FORMAT_VERSION);
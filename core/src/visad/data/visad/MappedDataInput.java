@@ -0,0 +1,320 @@
+//
+// MappedDataInput.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.data.visad;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only memory map of a file, read through the {@link DataInput}
+ * interface with a movable file pointer.  Files larger than a single
+ * mapping are mapped in several regions.  Blocks of bytes can be
+ * handed out as buffers over the mapping without copying them.
+ * <br><br>
+ * Like a {@link RandomAccessFile}, an instance has one file pointer
+ * and must not be read by several threads at once.
+ */
+final class MappedDataInput
+  implements DataInput
+{
+  /** maximum number of bytes in one mapped region */
+  private static final int REGION_SIZE = 1 << 30;
+
+  /** the mapped regions, in file order */
+  private ByteBuffer[] regions;
+
+  /** length of the file */
+  private final long length;
+
+  /** file pointer */
+  private long pos;
+
+  /**
+   * Map a file.
+   *
+   * @param ref the file
+   *
+   * @exception IOException if the file cannot be opened or mapped.
+   */
+  MappedDataInput(File ref)
+    throws IOException
+  {
+    RandomAccessFile raf = new RandomAccessFile(ref, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      length = channel.size();
+      final int count = (int )((length + REGION_SIZE - 1) / REGION_SIZE);
+      regions = new ByteBuffer[count];
+      for (int r = 0; r < count; r++) {
+        final long start = (long )r * REGION_SIZE;
+        regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                 Math.min(REGION_SIZE, length - start));
+      }
+    } finally {
+      // the mappings stay valid after the channel is closed
+      raf.close();
+    }
+    pos = 0;
+  }
+
+  /**
+   * Release the mapping.  The regions are unmapped once they are no
+   * longer referenced by any buffer returned by {@link #slice(int)}.
+   */
+  void close()
+  {
+    regions = null;
+  }
+
+  long getFilePointer()
+  {
+    return pos;
+  }
+
+  long length()
+  {
+    return length;
+  }
+
+  void seek(long pos)
+    throws IOException
+  {
+    if (pos < 0) {
+      throw new IOException("Negative seek offset " + pos);
+    }
+    this.pos = pos;
+  }
+
+  /**
+   * Get the next <tt>len</tt> bytes as a big-endian buffer.  If the
+   * bytes lie in a single region the buffer shares the mapping;
+   * otherwise they are copied.
+   *
+   * @param len number of bytes
+   *
+   * @return buffer holding the bytes, positioned at its start
+   *
+   * @exception EOFException if the file ends first.
+   */
+  ByteBuffer slice(int len)
+    throws IOException
+  {
+    checkAvailable(len);
+    final int r = (int )(pos / REGION_SIZE);
+    final int start = (int )(pos - (long )r * REGION_SIZE);
+    if (start + len <= regions[r].limit()) {
+      ByteBuffer buf = regions[r].duplicate();
+      buf.position(start);
+      buf.limit(start + len);
+      pos += len;
+      return buf.slice();
+    }
+
+    byte[] bytes = new byte[len];
+    readFully(bytes);
+    return ByteBuffer.wrap(bytes);
+  }
+
+  private void checkAvailable(long len)
+    throws IOException
+  {
+    if (regions == null) {
+      throw new IOException("File is closed");
+    }
+    if (pos + len > length) {
+      throw new EOFException();
+    }
+  }
+
+  /**
+   * Get the region holding the next <tt>len</tt> bytes, or null if
+   * they straddle two regions.
+   */
+  private ByteBuffer region(int len)
+    throws IOException
+  {
+    checkAvailable(len);
+    final int r = (int )(pos / REGION_SIZE);
+    if (pos + len > (long )r * REGION_SIZE + regions[r].limit()) {
+      return null;
+    }
+    return regions[r];
+  }
+
+  private int index()
+  {
+    return (int )(pos % REGION_SIZE);
+  }
+
+  public void readFully(byte[] b)
+    throws IOException
+  {
+    readFully(b, 0, b.length);
+  }
+
+  public void readFully(byte[] b, int off, int len)
+    throws IOException
+  {
+    checkAvailable(len);
+    while (len > 0) {
+      final int r = (int )(pos / REGION_SIZE);
+      ByteBuffer region = regions[r].duplicate();
+      final int start = index();
+      final int n = Math.min(len, region.limit() - start);
+      region.position(start);
+      region.get(b, off, n);
+      pos += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  public int skipBytes(int n)
+  {
+    final int skip = (int )Math.max(0, Math.min(n, length - pos));
+    pos += skip;
+    return skip;
+  }
+
+  public boolean readBoolean()
+    throws IOException
+  {
+    return readByte() != 0;
+  }
+
+  public byte readByte()
+    throws IOException
+  {
+    final byte b = region(1).get(index());
+    pos++;
+    return b;
+  }
+
+  public int readUnsignedByte()
+    throws IOException
+  {
+    return readByte() & 0xff;
+  }
+
+  public short readShort()
+    throws IOException
+  {
+    ByteBuffer region = region(2);
+    if (region == null) {
+      return (short )((readUnsignedByte() << 8) | readUnsignedByte());
+    }
+    final short s = region.getShort(index());
+    pos += 2;
+    return s;
+  }
+
+  public int readUnsignedShort()
+    throws IOException
+  {
+    return readShort() & 0xffff;
+  }
+
+  public char readChar()
+    throws IOException
+  {
+    return (char )readShort();
+  }
+
+  public int readInt()
+    throws IOException
+  {
+    ByteBuffer region = region(4);
+    if (region == null) {
+      return (readUnsignedShort() << 16) | readUnsignedShort();
+    }
+    final int i = region.getInt(index());
+    pos += 4;
+    return i;
+  }
+
+  public long readLong()
+    throws IOException
+  {
+    ByteBuffer region = region(8);
+    if (region == null) {
+      return ((long )readInt() << 32) | (readInt() & 0xffffffffL);
+    }
+    final long l = region.getLong(index());
+    pos += 8;
+    return l;
+  }
+
+  public float readFloat()
+    throws IOException
+  {
+    return Float.intBitsToFloat(readInt());
+  }
+
+  public double readDouble()
+    throws IOException
+  {
+    return Double.longBitsToDouble(readLong());
+  }
+
+  public String readLine()
+    throws IOException
+  {
+    if (pos >= length) {
+      return null;
+    }
+
+    StringBuffer buf = new StringBuffer();
+    while (pos < length) {
+      final int c = readUnsignedByte();
+      if (c == '\n') {
+        break;
+      }
+      if (c == '\r') {
+        if (pos < length && region(1).get(index()) == '\n') {
+          pos++;
+        }
+        break;
+      }
+      buf.append((char )c);
+    }
+    return buf.toString();
+  }
+
+  public String readUTF()
+    throws IOException
+  {
+    return DataInputStream.readUTF(this);
+  }
+}
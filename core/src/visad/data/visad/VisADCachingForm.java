@@ -26,13 +26,13 @@ MA 02111-1307, USA
 
 package visad.data.visad;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 
 import java.net.URL;
 
-import ucar.netcdf.RandomAccessFile;
-
 import visad.DataImpl;
 import visad.VisADException;
 
@@ -70,7 +70,14 @@ public class VisADCachingForm
 
     // try to read a binary object
     try {
-      return readData(new BinaryReader(new RandomAccessFile(id, "r")));
+      BinaryReader rdr;
+      try {
+        rdr = new BinaryReader(new File(id), true);
+      } catch (IOException ioe) {
+        // the file may not be mappable, e.g. for lack of address space
+        rdr = new BinaryReader(new RandomAccessFile(id, "r"));
+      }
+      return readData(rdr);
     } catch (IOException ioe) {
       savedIOE = ioe;
     } catch (VisADException ve) {
@@ -0,0 +1,193 @@
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.data.visad.object;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import visad.FlatField;
+import visad.FloatSet;
+import visad.Set;
+import visad.VisADException;
+
+import visad.data.visad.BinaryReader;
+import visad.data.visad.BinaryWriter;
+
+/**
+ * FlatField range values written as a series of chunks, so that a
+ * large field never has to be unpacked or buffered all at once.
+ * <br><br>
+ * The samples start with the size of each value (4 if all range
+ * values are exactly representable as floats, otherwise 8), the
+ * range dimension, the number of samples and the number of samples
+ * in each chunk.  Each chunk then holds, for each range component,
+ * the values of its samples in order.  Values are in the units in
+ * which the field stores them, as with <tt>FLD_DOUBLE_SAMPLES</tt>.
+ */
+public class BinaryChunkedSamples
+  implements BinaryObject
+{
+  public static final long computeBytes(FlatField fld)
+  {
+    return 1 + 4 + 4 + 4 +
+      (long )fld.getRangeDimension() * (long )fld.getLength() *
+      (long )elementSize(fld);
+  }
+
+  private static final int elementSize(FlatField fld)
+  {
+    Set[] sets = fld.getRangeSets();
+    for (int i = 0; i < sets.length; i++) {
+      if (!(sets[i] instanceof FloatSet)) {
+        return 8;
+      }
+    }
+    return 4;
+  }
+
+  /**
+   * Read chunked samples.
+   *
+   * @return a <tt>float[][]</tt> or <tt>double[][]</tt> matrix
+   *         of range values
+   */
+  public static final Object read(BinaryReader reader)
+    throws IOException
+  {
+    DataInput file = reader.getInput();
+
+    final int size = file.readByte();
+    final int dim = file.readInt();
+    final int len = file.readInt();
+    final int chunkLength = file.readInt();
+if(DEBUG_RD_DATA)System.err.println("rdChnkSmp: size (" + size + ") dim (" + dim + ") len (" + len + ") chunk (" + chunkLength + ")");
+    if (size != 4 && size != 8) {
+      throw new IOException("Bad chunked sample size " + size);
+    }
+
+    float[][] floats = null;
+    double[][] doubles = null;
+    if (size == 4) {
+      floats = new float[dim][len];
+    } else {
+      doubles = new double[dim][len];
+    }
+
+    for (int start = 0; start < len; start += chunkLength) {
+      final int count = Math.min(chunkLength, len - start);
+      ByteBuffer buf = reader.readBuffer(dim * count * size);
+      for (int i = 0; i < dim; i++) {
+        buf.position(i * count * size);
+        if (floats != null) {
+          buf.asFloatBuffer().get(floats[i], start, count);
+        } else {
+          buf.asDoubleBuffer().get(doubles[i], start, count);
+        }
+      }
+    }
+
+    if (floats != null) {
+      return floats;
+    }
+    return doubles;
+  }
+
+  /**
+   * Move past chunked samples without reading their values.
+   */
+  public static final void skip(BinaryReader reader)
+    throws IOException
+  {
+    DataInput file = reader.getInput();
+
+    final int size = file.readByte();
+    final int dim = file.readInt();
+    final int len = file.readInt();
+    file.readInt();
+if(DEBUG_RD_DATA)System.err.println("skChnkSmp: size (" + size + ") dim (" + dim + ") len (" + len + ")");
+    reader.seek(reader.getFilePointer() + (long )dim * len * size);
+  }
+
+  public static final void write(BinaryWriter writer, FlatField fld,
+                                 int chunkLength, Object token)
+    throws IOException, VisADException
+  {
+    DataOutput file = writer.getOutput();
+
+    final int size = elementSize(fld);
+    final int dim = fld.getRangeDimension();
+    final int len = fld.getLength();
+    chunkLength = Math.max(1, Math.min(chunkLength, len));
+    if ((long )dim * chunkLength * size > Integer.MAX_VALUE) {
+      chunkLength = (int )(Integer.MAX_VALUE / ((long )dim * size));
+    }
+
+if(DEBUG_WR_DATA)System.err.println("wrChnkSmp: size (" + size + ") dim (" + dim + ") len (" + len + ") chunk (" + chunkLength + ")");
+    file.writeByte(size);
+    file.writeInt(dim);
+    file.writeInt(len);
+    file.writeInt(chunkLength);
+
+    // fields that can't be read a block at a time are unpacked once
+    final boolean blocks = fld.hasBlockAccessors();
+    float[][] floats = null;
+    double[][] doubles = null;
+    if (!blocks) {
+      if (size == 4) {
+        floats = fld.unpackFloats();
+      } else {
+        doubles = fld.unpackValues();
+      }
+    }
+
+    ByteBuffer buf = ByteBuffer.allocate(dim * chunkLength * size);
+    for (int start = 0; start < len; start += chunkLength) {
+      final int count = Math.min(chunkLength, len - start);
+      int offset = start;
+      if (blocks) {
+        if (size == 4) {
+          floats = fld.unpackFloats(start, count);
+        } else {
+          doubles = fld.unpackValues(start, count);
+        }
+        offset = 0;
+      }
+
+      buf.clear();
+      for (int i = 0; i < dim; i++) {
+        buf.position(i * count * size);
+        if (size == 4) {
+          buf.asFloatBuffer().put(floats[i], offset, count);
+        } else {
+          buf.asDoubleBuffer().put(doubles[i], offset, count);
+        }
+      }
+      buf.position(0);
+      buf.limit(dim * count * size);
+      writer.writeBuffer(buf);
+    }
+  }
+}
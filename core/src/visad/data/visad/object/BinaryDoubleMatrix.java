@@ -46,6 +46,9 @@ public class BinaryDoubleMatrix
     return len;
   }
 
+  /** number of values read from the file at a time */
+  private static final int BLOCK_LENGTH = 1 << 20;
+
   public static final double[][] read(BinaryReader reader)
     throws IOException
   {
@@ -62,15 +65,36 @@ if(DEBUG_RD_DATA)System.err.println("rdDblMtx: len (" + len + ")");
       final int len2 = file.readInt();
 if(DEBUG_RD_DATA)System.err.println("rdDblMtx: #" + i + " len (" + len2 + ")");
       matrix[i] = new double[len2];
-      for (int j = 0; j < len2; j++) {
-        matrix[i][j] = file.readDouble();
-if(DEBUG_RD_DATA_DETAIL)System.err.println("rdDblMtx: #" + i + "," + j +" (" + matrix[i][j] + ")");
+      for (int j = 0; j < len2; j += BLOCK_LENGTH) {
+        final int n = Math.min(BLOCK_LENGTH, len2 - j);
+        reader.readBuffer(n * 8).asDoubleBuffer().get(matrix[i], j, n);
       }
+if(DEBUG_RD_DATA_DETAIL){
+  for (int j = 0; j < len2; j++) {
+    System.err.println("rdDblMtx: #" + i + "," + j +" (" + matrix[i][j] + ")");
+  }
+}
     }
 
     return matrix;
   }
 
+  /**
+   * Move past a matrix without reading its values.
+   */
+  public static final void skip(BinaryReader reader)
+    throws IOException
+  {
+    DataInput file = reader.getInput();
+
+    final int len = file.readInt();
+if(DEBUG_RD_DATA)System.err.println("skDblMtx: len (" + len + ")");
+    for (int i = 0; i < len; i++) {
+      final int len2 = file.readInt();
+      reader.seek(reader.getFilePointer() + (long )len2 * 8);
+    }
+  }
+
   private static final boolean fasterButUglier = true;
 
   public static final void write(BinaryWriter writer, double[][] matrix,
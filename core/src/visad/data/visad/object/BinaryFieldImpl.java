@@ -175,8 +175,10 @@ if(DEBUG_RD_DATA)System.err.println("rdFldI: FLD_END (" + FLD_END + ")");
                      new FieldImpl(ft, set));
     if (samples != null) {
       final int len = samples.length;
+      // samples were just read, so there is no need to copy them; this
+      // also keeps the FileFlatFields of random-access readers unread
       for (int i = 0; i < len; i++) {
-        fld.setSample(i, samples[i]);
+        fld.setSample(i, samples[i], false);
       }
     }
 
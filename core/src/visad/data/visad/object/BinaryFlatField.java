@@ -38,6 +38,7 @@ import visad.Unit;
 import visad.VisADException;
 
 import visad.data.CacheStrategy;
+import visad.data.CachedFlatField;
 import visad.data.FileAccessor;
 import visad.data.FileFlatField;
 
@@ -65,11 +66,14 @@ class BinaryAccessor
   {
     FlatField ff;
     try {
-      final long curPtr = rdr.getFilePointer();
+      // the reader has a single file pointer shared by all its fields
+      synchronized (rdr) {
+        final long curPtr = rdr.getFilePointer();
 
-      rdr.seek(filePtr);
-      ff = BinaryFlatField.read(rdr, 0, false);
-      rdr.seek(curPtr);
+        rdr.seek(filePtr);
+        ff = BinaryFlatField.read(rdr, 0, false);
+        rdr.seek(curPtr);
+      }
     } catch (IOException ioe) {
       throw new VisADException(ioe.getClass().getName() + ": " +
                                ioe.getMessage());
@@ -111,13 +115,31 @@ public class BinaryFlatField
                                        Set[] rangeSets, Unit[] units,
                                        FlatField fld)
   {
-    int samplesLen = 0;
+    return (int )computeBytes(domainSet, cs, rangeCS, rangeSets, units, fld,
+                              0);
+  }
+
+  /**
+   * Compute the length of a FlatField whose range values are written
+   * in chunks of <tt>chunkLength</tt> samples, or as a single matrix
+   * if <tt>chunkLength</tt> is 0.
+   */
+  public static final long computeBytes(Set domainSet, CoordinateSystem cs,
+                                        CoordinateSystem[] rangeCS,
+                                        Set[] rangeSets, Unit[] units,
+                                        FlatField fld, int chunkLength)
+  {
+    long samplesLen = 0;
     if (!fld.isMissing()) {
       final int dim = fld.getRangeDimension();
       final int len = fld.getLength();
 
       if (dim > 0 && len > 0) {
-        samplesLen = 4 + dim * (4 + len * 8);
+        if (chunkLength > 0) {
+          samplesLen = 1 + BinaryChunkedSamples.computeBytes(fld);
+        } else {
+          samplesLen = 1 + 4 + dim * (4 + len * 8);
+        }
       }
     }
 
@@ -208,8 +230,11 @@ if(DEBUG_RD_MATH)System.err.println("rdFlFld: type index (" + typeIndex + ")");
     System.err.println("Expected ptr " + expectedPtr + ", got " + postPtr);
   }
 }
-    // skip to the end of this object
-    rdr.seek(filePtr + (long )objLen);
+    // find the end of this object by reading everything but the
+    // samples; objLen cannot be trusted, as older versions wrote
+    // lengths one byte short and large chunked objects have no length
+    rdr.seek(filePtr);
+    read(rdr, true);
 
     return new FileFlatField(new BinaryAccessor(rdr, filePtr, ft), strategy);
   }
@@ -236,6 +261,19 @@ if(DEBUG_RD_DATA)System.err.println("rdSetRA: len (" + len + ")");
       return createFileFlatField(reader, objLen);
     }
 
+    return read(reader, false);
+  }
+
+  /**
+   * Read a FlatField, or if <tt>skipSamples</tt> is <tt>true</tt>
+   * just move past one, leaving the file pointer after its end.
+   *
+   * @return the FlatField, or <tt>null</tt> if skipping
+   */
+  private static final FlatField read(BinaryReader reader,
+                                      boolean skipSamples)
+    throws IOException, VisADException
+  {
     BinaryObjectCache cSysCache = reader.getCoordinateSystemCache();
     BinaryObjectCache typeCache = reader.getTypeCache();
     DataInput file = reader.getInput();
@@ -256,6 +294,7 @@ if(DEBUG_RD_DATA&&!DEBUG_RD_MATH)System.err.println("rdFlFld: type index (" + ty
     Set[] rangeSets = null;
     Unit[] units = null;
     double[][] samples = null;
+    float[][] floatSamples = null;
 
     boolean reading = true;
     while (reading) {
@@ -280,7 +319,25 @@ if(DEBUG_RD_TIME)dsTime += System.currentTimeMillis() - tmpStart;
         break;
       case FLD_DOUBLE_SAMPLES:
 if(DEBUG_RD_DATA)System.err.println("rdFlFld: FLD_DOUBLE_SAMPLES (" + FLD_DOUBLE_SAMPLES + ")");
-        samples = BinaryDoubleMatrix.read(reader);
+        if (skipSamples) {
+          BinaryDoubleMatrix.skip(reader);
+        } else {
+          samples = BinaryDoubleMatrix.read(reader);
+        }
+if(DEBUG_RD_TIME)dbTime += System.currentTimeMillis() - tmpStart;
+        break;
+      case FLD_CHUNKED_SAMPLES:
+if(DEBUG_RD_DATA)System.err.println("rdFlFld: FLD_CHUNKED_SAMPLES (" + FLD_CHUNKED_SAMPLES + ")");
+        if (skipSamples) {
+          BinaryChunkedSamples.skip(reader);
+          break;
+        }
+        Object chunked = BinaryChunkedSamples.read(reader);
+        if (chunked instanceof float[][]) {
+          floatSamples = (float[][] )chunked;
+        } else {
+          samples = (double[][] )chunked;
+        }
 if(DEBUG_RD_TIME)dbTime += System.currentTimeMillis() - tmpStart;
         break;
       case FLD_INDEX_COORDSYS:
@@ -320,11 +377,17 @@ if(DEBUG_RD_DATA)System.err.println("rdFlFld: FLD_END (" + FLD_END + ")");
       throw new IOException("No FunctionType found for FlatField");
     }
 
+    if (skipSamples) {
+      return null;
+    }
+
 long tmpStart = System.currentTimeMillis();
     FlatField fld = new FlatField(ft, domainSet, rangeCS, rangeSets, units);
 long c1Time = System.currentTimeMillis() - tmpStart;
 tmpStart = System.currentTimeMillis();
-    if (samples != null) {
+    if (floatSamples != null) {
+      fld.setSamples(floatSamples, false);
+    } else if (samples != null) {
       fld.setSamples(0, samples);
     } else if (oldSamples != null) {
       final int len = oldSamples.length;
@@ -357,6 +420,21 @@ if(DEBUG_RD_TIME){
     return fld;
   }
 
+  /**
+   * FlatFields which are written here; all others are written by
+   * BinaryUnknown.  A CachedFlatField is only written here when range
+   * values are written in chunks, as it may be too big to serialize.
+   */
+  private static final boolean isWritable(BinaryWriter writer,
+                                          FlatField fld)
+  {
+    return fld.getClass().equals(FlatField.class) ||
+      fld.getClass().equals(FileFlatField.class) ||
+      (writer.getChunkLength() > 0 &&
+       fld.getClass().equals(CachedFlatField.class)) ||
+      fld instanceof Saveable;
+  }
+
   public static final void writeDependentData(BinaryWriter writer,
                                               FunctionType type,
                                               Set domainSet,
@@ -366,10 +444,7 @@ if(DEBUG_RD_TIME){
                                               FlatField fld, Object token)
     throws IOException
   {
-    if (!fld.getClass().equals(FlatField.class) &&
-        !fld.getClass().equals(FileFlatField.class) &&
-        !(fld instanceof FlatField && fld instanceof Saveable))
-    {
+    if (!isWritable(writer, fld)) {
       return;
     }
 
@@ -433,10 +508,7 @@ if(DEBUG_WR_DATA&&!DEBUG_WR_UNIT){
       return;
     }
 
-    if (!fld.getClass().equals(FlatField.class) &&
-        !fld.getClass().equals(FileFlatField.class) &&
-        !(fld instanceof FlatField && fld instanceof Saveable))
-    {
+    if (!isWritable(writer, fld)) {
 if(DEBUG_WR_DATA)System.err.println("wrFlFld: punt "+fld.getClass().getName());
       BinaryUnknown.write(writer, fld, token);
       return;
@@ -466,8 +538,17 @@ if(DEBUG_WR_DATA)System.err.println("wrFlFld: punt "+fld.getClass().getName());
       unitsIndex = BinaryUnit.lookupList(writer.getUnitCache(), units);
     }
 
-    final int objLen = computeBytes(domainSet, cs, rangeCS, rangeSets, units,
-                                    fld);
+    final int chunkLength = writer.getChunkLength();
+
+    final long fullLen = computeBytes(domainSet, cs, rangeCS, rangeSets,
+                                      units, fld, chunkLength);
+    final int objLen;
+    if (chunkLength > 0 && fullLen > Integer.MAX_VALUE) {
+      // too big to record; readers find the end by parsing
+      objLen = -1;
+    } else {
+      objLen = (int )fullLen;
+    }
 
     DataOutput file = writer.getOutput();
 
@@ -487,7 +568,18 @@ if(DEBUG_WR_DATA)System.err.println("wrFlFld: FLD_SET (" + FLD_SET + ")");
       BinaryGeneric.write(writer, domainSet, token);
     }
 
-    if (!fld.isMissing() && fld.getLength() > 0) {
+    if (chunkLength > 0 && !fld.isMissing() && fld.getLength() > 0 &&
+        fld.getRangeDimension() > 0)
+    {
+if(DEBUG_WR_DATA)System.err.println("wrFlFld: FLD_CHUNKED_SAMPLES (" + FLD_CHUNKED_SAMPLES + ")");
+      file.writeByte(FLD_CHUNKED_SAMPLES);
+      try {
+        BinaryChunkedSamples.write(writer, fld, chunkLength, token);
+      } catch (VisADException ve) {
+        throw new IOException("Couldn't write chunked samples: " +
+                              ve.getMessage());
+      }
+    } else if (!fld.isMissing() && fld.getLength() > 0) {
       double[][] dblSamples;
       try {
         dblSamples = fld.unpackValues();
@@ -46,6 +46,9 @@ public class BinaryFloatMatrix
     return len;
   }
 
+  /** number of values read from the file at a time */
+  private static final int BLOCK_LENGTH = 1 << 20;
+
   public static final float[][] read(BinaryReader reader)
     throws IOException
   {
@@ -62,10 +65,15 @@ if(DEBUG_RD_DATA)System.err.println("rdFltMtx: len (" + len + ")");
       final int len2 = file.readInt();
 if(DEBUG_RD_DATA)System.err.println("rdFltMtx: #" + i + " len (" + len2 + ")");
       matrix[i] = new float[len2];
-      for (int j = 0; j < len2; j++) {
-        matrix[i][j] = file.readFloat();
-if(DEBUG_RD_DATA_DETAIL)System.err.println("rdFltMtx: #" + i + "," + j +" (" + matrix[i][j] + ")");
+      for (int j = 0; j < len2; j += BLOCK_LENGTH) {
+        final int n = Math.min(BLOCK_LENGTH, len2 - j);
+        reader.readBuffer(n * 4).asFloatBuffer().get(matrix[i], j, n);
       }
+if(DEBUG_RD_DATA_DETAIL){
+  for (int j = 0; j < len2; j++) {
+    System.err.println("rdFltMtx: #" + i + "," + j +" (" + matrix[i][j] + ")");
+  }
+}
     }
 
     return matrix;
@@ -0,0 +1,451 @@
+//
+// CompiledFormula.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.formula;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.rmi.RemoteException;
+import java.util.Stack;
+import java.util.Vector;
+import visad.*;
+
+/** A formula in postfix notation, compiled into a tree of operations
+    whose methods, constants and variables are resolved once, so that
+    the formula can be evaluated repeatedly without parsing tokens or
+    searching the FormulaManager's operator tables.  Operations that are
+    standard Data arithmetic methods are called directly rather than
+    through reflection.<P>
+
+    When {@link FormulaManager#setFusedEvaluation} is enabled and every
+    variable of an arithmetic formula is a FlatField on the same domain
+    Set or a Real, the formula is built as a {@link DerivedFlatField}
+    expression and computed in a single pass over the samples.<P>
+
+    Evaluation reports the same errors as FormulaVar's postfix
+    evaluation.<P> */
+class CompiledFormula {
+
+  /** Data methods called directly with one Data argument */
+  private static final String[] BINARY_METHODS = {
+    "add", "subtract", "multiply", "divide", "pow", "remainder",
+    "max", "min", "atan2", "atan2Degrees"
+  };
+
+  /** Data methods called directly with no arguments */
+  private static final String[] UNARY_METHODS = {
+    "abs", "acos", "acosDegrees", "asin", "asinDegrees", "atan",
+    "atanDegrees", "ceil", "cos", "cosDegrees", "exp", "floor", "log",
+    "negate", "rint", "round", "sin", "sinDegrees", "sqrt", "tan",
+    "tanDegrees"
+  };
+
+  /** root of the operation tree */
+  private Node root;
+
+  /** variables used by the formula */
+  private FormulaVar[] vars;
+
+  /** whether every operation is direct Data arithmetic */
+  private boolean arithmetic;
+
+  private CompiledFormula(Node root, FormulaVar[] vars, boolean arithmetic) {
+    this.root = root;
+    this.vars = vars;
+    this.arithmetic = arithmetic;
+  }
+
+  /** compile a postfix formula, or return null if it is not well formed,
+      in which case it should be evaluated by FormulaVar to report its
+      errors */
+  static CompiledFormula compile(Postfix formula, FormulaManager fm) {
+    if (formula.tokens == null) return null;
+    int len = formula.tokens.length;
+    Stack stack = new Stack();
+    Vector vars = new Vector();
+    boolean arithmetic = true;
+    for (int i=0; i<len; i++) {
+      String token = formula.tokens[i];
+      String op = "\"" + token + "\"";
+      int code = formula.codes[i];
+      if (code == Postfix.BINARY) {
+        if (stack.size() < 2) return null;
+        Node[] args = new Node[2];
+        args[1] = (Node) stack.pop();
+        args[0] = (Node) stack.pop();
+        Call call = new Call(select(fm.bOps, fm.bMethods, token, false), args,
+          "Cannot access binary method for operator " + op,
+          "Invalid argument to binary method for operator " + op,
+          "Binary method for operator " + op + " threw an exception",
+          "Could not evaluate binary operator " + op);
+        arithmetic &= call.isArithmetic();
+        stack.push(call);
+      }
+      else if (code == Postfix.UNARY) {
+        if (stack.empty()) return null;
+        Node[] args = {(Node) stack.pop()};
+        Call call = new Call(select(fm.uOps, fm.uMethods, token, false), args,
+          "Cannot access unary method for operator " + op,
+          "Invalid argument to unary method for operator " + op,
+          "Unary method for operator " + op + " threw an exception",
+          "Could not evaluate unary operator " + op);
+        arithmetic &= call.isArithmetic();
+        stack.push(call);
+      }
+      else if (code == Postfix.FUNC) {
+        Call call;
+        if (fm.isFunction(token)) {
+          // defined function - preceded by its number of arguments
+          if (stack.empty() || !(stack.peek() instanceof Value)) return null;
+          Thing count = ((Value) stack.pop()).value;
+          if (!(count instanceof Real)) return null;
+          int num = (int) ((Real) count).getValue();
+          if (num < 0 || stack.size() < num) return null;
+          Node[] args = new Node[num];
+          for (int j=num-1; j>=0; j--) args[j] = (Node) stack.pop();
+          call = new Call(select(fm.funcs, fm.fMethods, token, true), args,
+            "Cannot access method for function " + op,
+            "Invalid argument to method for function " + op,
+            "Method for function " + op + " threw an exception",
+            "Could not evaluate function " + op);
+        }
+        else {
+          // implicit function - token is a non-negative integer
+          int num = 0;
+          try {
+            num = Integer.parseInt(token) + 1;
+          }
+          catch (NumberFormatException exc) { }
+          if (num <= 0 || stack.size() < num) return null;
+          Node[] args = new Node[num];
+          for (int j=num-1; j>=0; j--) args[j] = (Node) stack.pop();
+          call = new Call(fm.iMethods, args,
+            "Cannot access method for implicit function",
+            "Invalid argument to method for implicit function",
+            "Method for implicit function threw an exception",
+            "Could not evaluate implicit function");
+        }
+        arithmetic &= call.isArithmetic();
+        stack.push(call);
+      }
+      else { // code == Postfix.OTHER or Postfix.FUNCCONST
+        Double d = null;
+        try {
+          d = Double.valueOf(token);
+        }
+        catch (NumberFormatException exc) { }
+        if (d == null) {
+          // token is a variable name
+          FormulaVar v;
+          try {
+            v = fm.getVarByNameOrCreate(token);
+          }
+          catch (VisADException exc) {
+            return null;
+          }
+          if (!vars.contains(v)) vars.add(v);
+          stack.push(new Variable(v, op));
+        }
+        else {
+          if (code == Postfix.OTHER) {
+            // convert constant to Real object with "CONSTANT" RealType
+            Real r = new Real(FormulaVar.CONSTANT, d.doubleValue());
+            stack.push(new Value(r));
+          }
+          else {
+            // constant is a function counter
+            stack.push(new Value(new Real(d.doubleValue())));
+          }
+        }
+      }
+    }
+    if (stack.size() != 1) return null;
+    FormulaVar[] v = new FormulaVar[vars.size()];
+    vars.copyInto(v);
+    return new CompiledFormula((Node) stack.pop(), v, arithmetic);
+  }
+
+  /** get the methods for the given operator or function name, in the
+      order in which they are tried */
+  private static Method[] select(String[] names, Method[] methods,
+    String token, boolean ignoreCase)
+  {
+    Vector v = new Vector();
+    for (int j=0; j<methods.length; j++) {
+      if (ignoreCase ? names[j].equalsIgnoreCase(token)
+                     : names[j].equals(token)) {
+        v.add(methods[j]);
+      }
+    }
+    Method[] m = new Method[v.size()];
+    v.copyInto(m);
+    return m;
+  }
+
+  /** evaluate the formula; errors are reported to the given variable */
+  Thing evaluate(FormulaVar owner) {
+    boolean fuse = arithmetic && FormulaManager.getFusedEvaluation() &&
+      hasCommonDomain();
+    if (!fuse) return root.evaluate(owner);
+
+    Boolean previous = FlatField.setThreadLazyDerivation(Boolean.TRUE);
+    Thing answer;
+    try {
+      answer = root.evaluate(owner);
+    }
+    finally {
+      FlatField.setThreadLazyDerivation(previous);
+    }
+    if (answer instanceof DerivedFlatField) {
+      // compute now, so the result does not refer to the operands
+      try {
+        ((DerivedFlatField) answer).evaluate();
+      }
+      catch (VisADException exc) {
+        if (FormulaVar.DEBUG) exc.printStackTrace();
+        owner.evalError("Could not compute formula", exc);
+        answer = null;
+      }
+    }
+    return answer;
+  }
+
+  /** return whether the variables are Reals and at least one FlatField,
+      all with the same domain Set */
+  private boolean hasCommonDomain() {
+    Set domain = null;
+    for (int i=0; i<vars.length; i++) {
+      Thing t = vars[i].getThing();
+      if (t instanceof FlatField) {
+        Set set = ((FlatField) t).getDomainSet();
+        if (domain == null) domain = set;
+        else if (set != domain && !set.equals(domain)) return false;
+      }
+      else if (!(t instanceof Real)) return false;
+    }
+    return domain != null;
+  }
+
+  /** get the code for calling a method directly, or -1 if it must be
+      called through reflection */
+  private static int getDirectCode(Method m) {
+    if (m.getDeclaringClass() != Data.class) return -1;
+    Class[] c = m.getParameterTypes();
+    String name = m.getName();
+    if (c.length == 1 && c[0] == Data.class) {
+      for (int i=0; i<BINARY_METHODS.length; i++) {
+        if (BINARY_METHODS[i].equals(name)) return i;
+      }
+    }
+    else if (c.length == 0) {
+      for (int i=0; i<UNARY_METHODS.length; i++) {
+        if (UNARY_METHODS[i].equals(name)) return BINARY_METHODS.length + i;
+      }
+    }
+    return -1;
+  }
+
+  /** call the Data method with the given code */
+  private static Data callDirect(int code, Data a, Data b)
+    throws VisADException, RemoteException
+  {
+    switch (code) {
+      case 0: return a.add(b);
+      case 1: return a.subtract(b);
+      case 2: return a.multiply(b);
+      case 3: return a.divide(b);
+      case 4: return a.pow(b);
+      case 5: return a.remainder(b);
+      case 6: return a.max(b);
+      case 7: return a.min(b);
+      case 8: return a.atan2(b);
+      case 9: return a.atan2Degrees(b);
+      case 10: return a.abs();
+      case 11: return a.acos();
+      case 12: return a.acosDegrees();
+      case 13: return a.asin();
+      case 14: return a.asinDegrees();
+      case 15: return a.atan();
+      case 16: return a.atanDegrees();
+      case 17: return a.ceil();
+      case 18: return a.cos();
+      case 19: return a.cosDegrees();
+      case 20: return a.exp();
+      case 21: return a.floor();
+      case 22: return a.log();
+      case 23: return a.negate();
+      case 24: return a.rint();
+      case 25: return a.round();
+      case 26: return a.sin();
+      case 27: return a.sinDegrees();
+      case 28: return a.sqrt();
+      case 29: return a.tan();
+      case 30: return a.tanDegrees();
+      default: throw new VisADException("CompiledFormula: bad code " + code);
+    }
+  }
+
+  /** a node of the operation tree */
+  private abstract static class Node {
+
+    /** compute the value of this node, or return null after reporting
+        an error to owner */
+    abstract Thing evaluate(FormulaVar owner);
+  }
+
+  /** a constant */
+  private static class Value extends Node {
+
+    final Thing value;
+
+    Value(Thing value) {
+      this.value = value;
+    }
+
+    Thing evaluate(FormulaVar owner) {
+      return value;
+    }
+  }
+
+  /** the current value of a variable */
+  private static class Variable extends Node {
+
+    final FormulaVar var;
+
+    /** quoted variable name, for error messages */
+    final String op;
+
+    Variable(FormulaVar var, String op) {
+      this.var = var;
+      this.op = op;
+    }
+
+    Thing evaluate(FormulaVar owner) {
+      ThingReference r = var.getReference();
+      Thing t = null;
+      if (r != null) {
+        try {
+          t = r.getThing();
+        }
+        catch (VisADException exc) {
+          if (FormulaVar.DEBUG) exc.printStackTrace();
+        }
+        catch (RemoteException exc) {
+          if (FormulaVar.DEBUG) exc.printStackTrace();
+        }
+      }
+      if (t == null) owner.evalError("Variable " + op + " has no value");
+      return t;
+    }
+  }
+
+  /** an operator or function, trying each of its methods in turn until
+      one returns a value */
+  private static class Call extends Node {
+
+    final Method[] methods;
+
+    /** direct call code of each method, or -1 */
+    final int[] direct;
+
+    final Node[] args;
+
+    /** error messages */
+    final String access, argument, threw, failed;
+
+    Call(Method[] methods, Node[] args, String access, String argument,
+      String threw, String failed)
+    {
+      this.methods = methods;
+      this.args = args;
+      this.access = access;
+      this.argument = argument;
+      this.threw = threw;
+      this.failed = failed;
+      direct = new int[methods.length];
+      for (int j=0; j<methods.length; j++) {
+        int code = getDirectCode(methods[j]);
+        int num = (code < BINARY_METHODS.length) ? 2 : 1;
+        direct[j] = (code >= 0 && num == args.length) ? code : -1;
+      }
+    }
+
+    /** return whether every method is called directly */
+    boolean isArithmetic() {
+      if (methods.length == 0) return false;
+      for (int j=0; j<methods.length; j++) {
+        if (direct[j] < 0) return false;
+      }
+      return true;
+    }
+
+    Thing evaluate(FormulaVar owner) {
+      Object[] o = (args.length > 0) ? new Object[args.length] : null;
+      boolean eflag = false;
+      for (int j=0; j<args.length; j++) {
+        o[j] = args[j].evaluate(owner);
+        if (o[j] == null) eflag = true;
+      }
+      Thing ans = null;
+      if (!eflag) {
+        for (int j=0; j<methods.length && ans == null; j++) {
+          if (direct[j] >= 0 && o[0] instanceof Data &&
+            (o.length == 1 || o[1] instanceof Data))
+          {
+            try {
+              ans = callDirect(direct[j], (Data) o[0],
+                (o.length == 1) ? null : (Data) o[1]);
+            }
+            catch (Exception exc) {
+              if (FormulaVar.DEBUG) exc.printStackTrace();
+              owner.evalError(threw, exc);
+            } // method threw exception
+            continue;
+          }
+          try {
+            ans = (Thing) FormulaUtil.invokeMethod(methods[j], o);
+          }
+          catch (IllegalAccessException exc) {
+            if (FormulaVar.DEBUG) exc.printStackTrace();
+            owner.evalError(access, exc);
+          } // no access
+          catch (IllegalArgumentException exc) {
+            if (FormulaVar.DEBUG) exc.printStackTrace();
+            owner.evalError(argument, exc);
+          } // wrong type of method
+          catch (InvocationTargetException exc) {
+            Throwable t = exc.getTargetException();
+            if (FormulaVar.DEBUG) t.printStackTrace();
+            owner.evalError(threw, t);
+          } // method threw exception
+        }
+      }
+      if (ans == null) owner.evalError(failed);
+      return ans;
+    }
+  }
+
+}
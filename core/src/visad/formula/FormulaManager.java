@@ -78,6 +78,27 @@ public class FormulaManager {
       not need such functionality, the preParseMethod argument can be null. */
   Method ppMethod;
 
+  /** whether arithmetic formulas on FlatFields are computed in one pass */
+  private static boolean fusedEvaluation =
+    Boolean.getBoolean("visad.formula.fused");
+
+  /** set whether a formula whose operations are all standard Data
+      arithmetic, and whose variables are FlatFields on the same domain
+      Set or Reals, is computed in a single pass over the samples rather
+      than one pass per operation, without range arrays for the
+      intermediate results.  The values are the same either way.  The
+      default is set by the <code>visad.formula.fused</code> system
+      property. */
+  public static void setFusedEvaluation(boolean fused) {
+    fusedEvaluation = fused;
+  }
+
+  /** return whether arithmetic formulas on FlatFields are computed in
+      a single pass */
+  public static boolean getFusedEvaluation() {
+    return fusedEvaluation;
+  }
+
   /** construct a new FormulaManager object */
   public FormulaManager(String[] binOps, int[] binPrec, String[] binMethods,
     String[] unaryOps, int[] unaryPrec, String[] unaryMethods,
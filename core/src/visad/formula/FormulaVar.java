@@ -53,6 +53,9 @@ public class FormulaVar extends ActionImpl {
   /** formula in postfix notation, if it has been converted */
   private Postfix postfix;
 
+  /** compiled form of the postfix formula, if it is well formed */
+  private CompiledFormula compiled;
+
   /** reference of this variable */
   private ThingReference tref;
 
@@ -178,6 +181,7 @@ public class FormulaVar extends ActionImpl {
               evalError("Preparsing exception", t);
             }
             postfix = new Postfix(pf, fm);
+            compiled = null;
             int len = (postfix.tokens == null ? 0 : postfix.tokens.length);
             for (int i=0; i<len; i++) {
               String token = postfix.tokens[i];
@@ -210,6 +214,7 @@ public class FormulaVar extends ActionImpl {
                 }
               }
             }
+            compiled = CompiledFormula.compile(postfix, fm);
           }
           catch (FormulaException exc) {
             evalError("Syntax error in formula", exc);
@@ -249,6 +254,7 @@ public class FormulaVar extends ActionImpl {
       }
     }
     postfix = null;
+    compiled = null;
     computing = true;
     rebuildDependencies();
   }
@@ -322,6 +328,7 @@ public class FormulaVar extends ActionImpl {
     synchronized (Lock) {
       formula = null;
       postfix = null;
+      compiled = null;
       clearDependencies();
       if (t == null || t != tref.getThing()) tref.setThing(t);
     }
@@ -395,7 +402,7 @@ public class FormulaVar extends ActionImpl {
 
   /** add an error to the list of errors that have occurred during
       formula evaluation */
-  private void evalError(String s) {
+  void evalError(String s) {
     synchronized (errors) {
       errors.add(s);
     }
@@ -403,7 +410,7 @@ public class FormulaVar extends ActionImpl {
 
   /** add an error to the list of errors that have occurred during formula
       evaluation, appending the given exception's message if any */
-  private void evalError(String s, Throwable t) {
+  void evalError(String s, Throwable t) {
     String msg = (t == null ? null : t.getMessage());
     evalError(s + (msg == null ? "" : ": " + msg));
   }
@@ -412,7 +419,10 @@ public class FormulaVar extends ActionImpl {
   public void doAction() {
     synchronized (Lock) {
       try {
-        if (postfix != null) tref.setThing(compute(postfix));
+        if (postfix != null) {
+          tref.setThing(compiled == null ? compute(postfix)
+                                         : localAnswer(compiled.evaluate(this)));
+        }
       }
       catch (VisADException exc) {
         evalError("Could not store final value in variable");
@@ -682,7 +692,11 @@ public class FormulaVar extends ActionImpl {
     if (!stack.empty()) {
       evalError("Syntax error in formula (leftover objects on stack)");
     }
-    // return answer in local form
+    return localAnswer(answer);
+  }
+
+  /** return the answer in local form */
+  private Thing localAnswer(Thing answer) {
     if (answer instanceof Data) {
       try {
         answer = ((Data) answer).local();
@@ -168,6 +168,13 @@ public class DisplayImplJ2D extends DisplayImpl {
   /** flag to scratch images in VisADCanvasJ2D */
   private boolean scratch;
 
+  /** default for softwareRendering of new displays */
+  private static boolean defaultSoftwareRendering =
+    Boolean.getBoolean("visad.java2d.softwarerendering");
+
+  /** set to draw the scene graph with RasterizerJ2D */
+  private boolean softwareRendering = defaultSoftwareRendering;
+
   public DisplayImplJ2D(RemoteDisplay rmtDpy)
          throws VisADException, RemoteException {
     this(rmtDpy, null);
@@ -319,6 +326,49 @@ System.out.println("DisplayImplJ2D.doAction: scratch = " + scratch);
     }
   }
 
+  /**
+   * Set whether VisADCanvasJ2D draws the scene graph with a
+   * {@link RasterizerJ2D}, directly into the pixels of its images and
+   * concurrently on the pool of {@link visad.util.ParallelChunks},
+   * rather than through java.awt.Graphics.  Primitives are then drawn
+   * without antialiasing.  Mainly useful for large offscreen images
+   * with dense geometry.
+   * @param software flag indicating whether to use RasterizerJ2D
+   */
+  public void setSoftwareRendering(boolean software) {
+    if (softwareRendering == software) return;
+    softwareRendering = software;
+    VisADCanvasJ2D canvas =
+      ((DisplayRendererJ2D) getDisplayRenderer()).getCanvas();
+    if (canvas != null) canvas.scratchImages();
+  }
+
+  /**
+   * @return flag indicating whether the scene graph is drawn with
+   *         RasterizerJ2D
+   */
+  public boolean getSoftwareRendering() {
+    return softwareRendering;
+  }
+
+  /**
+   * Set the default for {@link #setSoftwareRendering} of displays
+   * constructed after this call; initially set by the
+   * <code>visad.java2d.softwarerendering</code> system property.
+   * @param software flag indicating whether to use RasterizerJ2D
+   */
+  public static void setDefaultSoftwareRendering(boolean software) {
+    defaultSoftwareRendering = software;
+  }
+
+  /**
+   * @return default for whether new displays draw the scene graph
+   *         with RasterizerJ2D
+   */
+  public static boolean getDefaultSoftwareRendering() {
+    return defaultSoftwareRendering;
+  }
+
   /* CTR 14 Nov 2000 - support for auto-aspect to canvas size */
 
   public boolean getAutoAspect() {
@@ -0,0 +1,973 @@
+//
+// RasterizerJ2D.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.java2d;
+
+import visad.*;
+import visad.util.ParallelChunks;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.rmi.RemoteException;
+
+import java.util.*;
+
+/**
+ * <CODE>RasterizerJ2D</CODE> draws the <CODE>VisADAppearance</CODE>s
+ * of a Java2D scene graph directly into an <CODE>int[]</CODE> raster
+ * of RGB pixels, rather than through <CODE>java.awt.Graphics</CODE>
+ * one primitive at a time.  Appearances are added in drawing order;
+ * their vertices are transformed to pixels as they are added.  The
+ * raster is then drawn in horizontal tiles, concurrently on the pool
+ * of {@link visad.util.ParallelChunks}.  Each tile draws the primitives
+ * that touch it in the order they were added, so the image does not
+ * depend on the number of threads.<P>
+ *
+ * Primitives are drawn without antialiasing, in the flat colors
+ * that <CODE>VisADCanvasJ2D</CODE> uses: the average of the vertex
+ * colors of each point, segment, triangle or quad.<P>
+ */
+public class RasterizerJ2D {
+
+  /** number of raster rows in each tile */
+  private static final int TILE_ROWS = 32;
+
+  /** line patterns, as in VisADCanvasJ2D */
+  private static final float[][] LINE_PATTERN = {
+    null, {8}, {1, 7}, {7, 4, 1, 4}
+  };
+
+  /** kinds of Batch */
+  private static final int PIXELS = 0;   // one pixel per vertex
+  private static final int LINES = 1;    // one pixel wide segments
+  private static final int POLYGONS = 2; // triangles or quads
+  private static final int IMAGE = 3;    // image mapped onto a quad
+
+  private final int width, height;
+  private final int ntiles;
+
+  /** transform from scene graph coordinates to pixels */
+  private final double m00, m01, m02, m10, m11, m12;
+  private final AffineTransform transform;
+
+  /** the whole raster, used as clip for appearances without one */
+  private final Clip frame;
+
+  /** Batches in drawing order */
+  private final Vector<Batch> batches = new Vector<Batch>();
+
+  private boolean binned = false;
+
+  /**
+   * Construct a rasterizer for an image of the given size.
+   * @param width width of the image in pixels
+   * @param height height of the image in pixels
+   * @param transform transform from scene graph coordinates to pixels
+   */
+  public RasterizerJ2D(int width, int height, AffineTransform transform) {
+    this.width = Math.max(width, 1);
+    this.height = Math.max(height, 1);
+    ntiles = (this.height + TILE_ROWS - 1) / TILE_ROWS;
+    this.transform = new AffineTransform(transform);
+    m00 = transform.getScaleX();
+    m01 = transform.getShearX();
+    m02 = transform.getTranslateX();
+    m10 = transform.getShearY();
+    m11 = transform.getScaleY();
+    m12 = transform.getTranslateY();
+    frame = new Clip(0, 0, this.width, this.height);
+  }
+
+  /**
+   * Add the geometry of an appearance that is drawn in the given pass,
+   * following the rules of <CODE>VisADCanvasJ2D</CODE>: images and
+   * filled geometry in pass 0, points and lines in pass 1.
+   * @param appearance appearance to draw
+   * @param pass 0 or 1
+   * @param clip rectangle in scene graph coordinates to clip against,
+   *             or null
+   */
+  public void add(VisADAppearance appearance, int pass,
+                  Rectangle2D.Float clip) {
+    VisADGeometryArray array = appearance.array;
+    if (array == null) return;
+    binned = false;
+    Clip c = (clip == null) ? frame : clipFor(clip);
+    if (c.isEmpty()) return;
+
+    BufferedImage image = (BufferedImage) appearance.image;
+    if (image != null) {
+      if (pass != 0) return;
+      if (!(array instanceof VisADQuadArray)) {
+        throw new VisADError("RasterizerJ2D.add: array must be quad");
+      }
+      addImage(array, image, c);
+      return;
+    }
+
+    boolean lines = array instanceof VisADPointArray ||
+                    array instanceof VisADLineArray ||
+                    array instanceof VisADLineStripArray;
+    if (pass != (lines ? 1 : 0)) return;
+    int count = array.vertexCount;
+    if (count == 0) return;
+
+    float[] coordinates = array.coordinates;
+    byte[] colors = array.colors;
+    int jinc = 0;
+    if (colors != null) {
+      jinc = (colors.length == coordinates.length) ? 3 : 4;
+    }
+    int color = 0xffffff;
+    if (appearance.color_flag) {
+      color = (component(appearance.red) << 16) |
+              (component(appearance.green) << 8) |
+              component(appearance.blue);
+    }
+
+    if (lines) {
+      float fsize = (array instanceof VisADPointArray) ?
+                    appearance.pointSize : appearance.lineWidth;
+      // points and lines of width 1 are single pixels, without
+      // patterns; others are stroked at least 1.05 pixels wide
+      boolean single = !(array instanceof VisADLineStripArray) &&
+                       Math.abs(fsize - 1.0f) < 0.1f;
+      float size = Math.max(fsize, 1.05f);
+      float[] pattern = null;
+      float[] style = LINE_PATTERN[appearance.lineStyle];
+      if (!single && style != null) {
+        pattern = new float[style.length];
+        float scale = size / appearance.lineWidth;
+        float sum = 0.0f;
+        for (int i=0; i<style.length; i++) {
+          pattern[i] = scale * style[i];
+          sum += pattern[i];
+        }
+        if (!(sum > 0.0f)) pattern = null;
+      }
+
+      if (array instanceof VisADPointArray) {
+        Batch b = single ? new Batch(PIXELS, 1, c) : new Batch(POLYGONS, 4, c);
+        float hsize = 0.5f * size;
+        for (int i=0, j=0; i<3*count; i+=3, j+=jinc) {
+          int rgb = (colors == null) ? color : average(colors, 1, j, 0, 0, 0);
+          float x = x(coordinates, i);
+          float y = y(coordinates, i);
+          if (single) {
+            b.vertex(x, y);
+          }
+          else {
+            b.vertex(x - hsize, y - hsize);
+            b.vertex(x + hsize, y - hsize);
+            b.vertex(x + hsize, y + hsize);
+            b.vertex(x - hsize, y + hsize);
+          }
+          b.end(rgb);
+        }
+        batches.addElement(b);
+      }
+      else {
+        // lines under 1.5 pixels wide are drawn one pixel wide
+        boolean thin = single || size < 1.5f;
+        Batch b = thin ? new Batch(LINES, 2, c) : new Batch(POLYGONS, 4, c);
+        if (array instanceof VisADLineArray) {
+          for (int i=0, j=0; i<3*(count-1); i+=6, j+=2*jinc) {
+            int rgb = (colors == null) ? color :
+                      average(colors, 2, j, j+jinc, 0, 0);
+            segment(b, x(coordinates, i), y(coordinates, i),
+                    x(coordinates, i+3), y(coordinates, i+3),
+                    rgb, thin ? 0.0f : size, pattern);
+          }
+        }
+        else {
+          int[] stripVertexCounts =
+            ((VisADLineStripArray) array).stripVertexCounts;
+          int base = 0;
+          int basec = 0;
+          for (int strip=0; strip<stripVertexCounts.length; strip++) {
+            count = stripVertexCounts[strip];
+            for (int i=3, j=jinc; i<3*count; i+=3, j+=jinc) {
+              int rgb = (colors == null) ? color :
+                        average(colors, 2, basec+j-jinc, basec+j, 0, 0);
+              segment(b, x(coordinates, base+i-3), y(coordinates, base+i-3),
+                      x(coordinates, base+i), y(coordinates, base+i),
+                      rgb, thin ? 0.0f : size, pattern);
+            }
+            base += 3 * count;
+            basec += jinc * count;
+          }
+        }
+        batches.addElement(b);
+      }
+    }
+    else if (array instanceof VisADTriangleArray ||
+             array instanceof VisADQuadArray) {
+      int corners = (array instanceof VisADQuadArray) ? 4 : 3;
+      Batch b = new Batch(POLYGONS, corners, c);
+      for (int i=0, j=0; i<3*(count-corners+1); i+=3*corners,
+                                                j+=corners*jinc) {
+        int rgb = (colors == null) ? color :
+                  average(colors, corners, j, j+jinc, j+2*jinc, j+3*jinc);
+        for (int k=0; k<corners; k++) {
+          b.vertex(x(coordinates, i+3*k), y(coordinates, i+3*k));
+        }
+        b.end(rgb);
+      }
+      batches.addElement(b);
+    }
+    else if (array instanceof VisADIndexedTriangleStripArray) {
+      int[] indices = ((VisADIndexedTriangleStripArray) array).indices;
+      int[] stripVertexCounts =
+        ((VisADIndexedTriangleStripArray) array).stripVertexCounts;
+      Batch b = new Batch(POLYGONS, 3, c);
+      int base = 0;
+      for (int strip=0; strip<stripVertexCounts.length; strip++) {
+        count = stripVertexCounts[strip];
+        for (int i=base+2; i<base+count; i++) {
+          int index0 = indices[i-2];
+          int index1 = indices[i-1];
+          int index2 = indices[i];
+          int rgb = (colors == null) ? color :
+                    average(colors, 3, jinc*index0, jinc*index1,
+                            jinc*index2, 0);
+          b.vertex(x(coordinates, 3*index0), y(coordinates, 3*index0));
+          b.vertex(x(coordinates, 3*index1), y(coordinates, 3*index1));
+          b.vertex(x(coordinates, 3*index2), y(coordinates, 3*index2));
+          b.end(rgb);
+        }
+        base += count;
+      }
+      batches.addElement(b);
+    }
+    else if (array instanceof VisADTriangleStripArray) {
+      int[] stripVertexCounts =
+        ((VisADTriangleStripArray) array).stripVertexCounts;
+      Batch b = new Batch(POLYGONS, 3, c);
+      int base = 0;
+      int basec = 0;
+      for (int strip=0; strip<stripVertexCounts.length; strip++) {
+        count = stripVertexCounts[strip];
+        for (int i=6, j=2*jinc; i<3*count; i+=3, j+=jinc) {
+          int rgb = (colors == null) ? color :
+                    average(colors, 3, basec+j-2*jinc, basec+j-jinc,
+                            basec+j, 0);
+          b.vertex(x(coordinates, base+i-6), y(coordinates, base+i-6));
+          b.vertex(x(coordinates, base+i-3), y(coordinates, base+i-3));
+          b.vertex(x(coordinates, base+i), y(coordinates, base+i));
+          b.end(rgb);
+        }
+        base += 3 * count;
+        basec += jinc * count;
+      }
+      batches.addElement(b);
+    }
+    else {
+      throw new VisADError("RasterizerJ2D.add: bad array class");
+    }
+  }
+
+  /**
+   * Draw everything added so far into a new image.
+   * @param background background color
+   * @return the image
+   * @throws VisADException if drawing fails
+   */
+  public BufferedImage render(Color background) throws VisADException {
+    BufferedImage image =
+      new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    draw(image, background);
+    return image;
+  }
+
+  /**
+   * Draw everything added so far into an image of the size of this
+   * rasterizer, replacing its contents.  Images of type
+   * <CODE>TYPE_INT_RGB</CODE> or <CODE>TYPE_INT_ARGB</CODE> are drawn
+   * into directly; others through a copy.
+   * @param image image to draw into
+   * @param background background color
+   * @throws VisADException if drawing fails
+   */
+  public void draw(BufferedImage image, Color background)
+         throws VisADException {
+    int[] pixels = pixelsOf(image);
+    if (pixels != null) {
+      draw(pixels, background.getRGB());
+    }
+    else {
+      pixels = new int[width * height];
+      draw(pixels, background.getRGB());
+      image.setRGB(0, 0, Math.min(width, image.getWidth()),
+                   Math.min(height, image.getHeight()), pixels, 0, width);
+    }
+  }
+
+  /**
+   * Draw everything added so far into a raster of
+   * <CODE>width * height</CODE> ARGB pixels in row order, replacing
+   * its contents.
+   * @param pixels the raster
+   * @param background background color, as ARGB
+   * @throws VisADException if drawing fails
+   */
+  public void draw(final int[] pixels, int background)
+         throws VisADException {
+    if (pixels.length < width * height) {
+      throw new DisplayException("RasterizerJ2D.draw: raster too small");
+    }
+    if (!binned) {
+      for (int i=0; i<batches.size(); i++) {
+        batches.elementAt(i).bin();
+      }
+      binned = true;
+    }
+    final int fill = background | 0xff000000;
+    try {
+      ParallelChunks.run(ntiles, 1, new ParallelChunks.Chunk() {
+        public void run(int start, int end) {
+          for (int tile=start; tile<end; tile++) {
+            drawTile(pixels, fill, tile);
+          }
+        }
+      });
+    }
+    catch (RemoteException e) {
+      throw new VisADException(e.toString());
+    }
+  }
+
+  /** draw the rows of one tile */
+  private void drawTile(int[] pixels, int background, int tile) {
+    int row0 = tile * TILE_ROWS;
+    int row1 = Math.min(row0 + TILE_ROWS, height);
+    Arrays.fill(pixels, row0 * width, row1 * width, background);
+    int n = batches.size();
+    for (int i=0; i<n; i++) {
+      Batch b = batches.elementAt(i);
+      for (int k=b.tileStart[tile]; k<b.tileStart[tile+1]; k++) {
+        int p = b.items[k];
+        switch (b.kind) {
+          case PIXELS:
+            pixel(pixels, b.clip, row0, row1, (int) b.xy[2*p],
+                  (int) b.xy[2*p+1], b.rgb[p]);
+            break;
+          case LINES:
+            line(pixels, b.clip, row0, row1, b.xy, 4*p, b.rgb[p]);
+            break;
+          case POLYGONS:
+            polygon(pixels, b.clip, row0, row1, b.xy, 2*b.corners*p,
+                    b.corners, b.rgb[p]);
+            break;
+          default:
+            image(pixels, b, row0, row1);
+        }
+      }
+    }
+  }
+
+  /** set one pixel, if it is inside clip and rows [row0, row1) */
+  private void pixel(int[] pixels, Clip clip, int row0, int row1,
+                     int x, int y, int rgb) {
+    if (y < row0 || y >= row1 || !clip.contains(x, y)) return;
+    pixels[y * width + x] = rgb | 0xff000000;
+  }
+
+  /**
+   * draw a one pixel wide segment between the pixels containing its
+   * ends, in the rows [row0, row1)
+   */
+  private void line(int[] pixels, Clip clip, int row0, int row1,
+                    float[] xy, int o, int rgb) {
+    int xa = (int) xy[o];
+    int ya = (int) xy[o+1];
+    int xb = (int) xy[o+2];
+    int yb = (int) xy[o+3];
+    int dx = xb - xa;
+    int dy = yb - ya;
+    if (Math.abs(dx) >= Math.abs(dy)) {
+      if (dx == 0) {
+        pixel(pixels, clip, row0, row1, xa, ya, rgb);
+        return;
+      }
+      double slope = (double) dy / dx;
+      int x0 = Math.max(Math.min(xa, xb), clip.x0);
+      int x1 = Math.min(Math.max(xa, xb), clip.x1 - 1);
+      for (int x=x0; x<=x1; x++) {
+        int y = ya + (int) Math.floor((x - xa) * slope + 0.5);
+        pixel(pixels, clip, row0, row1, x, y, rgb);
+      }
+    }
+    else {
+      double slope = (double) dx / dy;
+      int y0 = Math.max(Math.min(ya, yb), row0);
+      int y1 = Math.min(Math.max(ya, yb), row1 - 1);
+      for (int y=y0; y<=y1; y++) {
+        int x = xa + (int) Math.floor((y - ya) * slope + 0.5);
+        pixel(pixels, clip, row0, row1, x, y, rgb);
+      }
+    }
+  }
+
+  /**
+   * fill a convex polygon, setting the pixels whose centers are
+   * inside it, in the rows [row0, row1)
+   */
+  private void polygon(int[] pixels, Clip clip, int row0, int row1,
+                       float[] xy, int o, int corners, int rgb) {
+    float ymin = xy[o+1];
+    float ymax = ymin;
+    for (int k=1; k<corners; k++) {
+      float y = xy[o+2*k+1];
+      if (y < ymin) ymin = y;
+      if (y > ymax) ymax = y;
+    }
+    int y0 = Math.max(Math.max(row0, clip.y0), ceil(ymin - 0.5f));
+    int y1 = Math.min(Math.min(row1, clip.y1), ceil(ymax - 0.5f));
+    rgb |= 0xff000000;
+    for (int y=y0; y<y1; y++) {
+      float yc = y + 0.5f;
+      float xl = Float.POSITIVE_INFINITY;
+      float xr = Float.NEGATIVE_INFINITY;
+      for (int k=0; k<corners; k++) {
+        int a = o + 2 * k;
+        int b = o + 2 * ((k + 1) % corners);
+        float ya = xy[a+1];
+        float yb = xy[b+1];
+        if ((ya <= yc && yc < yb) || (yb <= yc && yc < ya)) {
+          // in double, as far off screen vertices overflow floats here
+          float x = (float) (xy[a] + ((double) yc - ya) *
+                             ((double) xy[b] - xy[a]) / ((double) yb - ya));
+          if (x < xl) xl = x;
+          if (x > xr) xr = x;
+        }
+      }
+      if (!(xl <= xr)) continue;
+      int x0 = Math.max(clip.x0, ceil(xl - 0.5f));
+      int x1 = Math.min(clip.x1, ceil(xr - 0.5f));
+      int row = y * width;
+      if (clip.rectangle) {
+        for (int x=x0; x<x1; x++) pixels[row + x] = rgb;
+      }
+      else {
+        for (int x=x0; x<x1; x++) {
+          if (clip.contains(x, y)) pixels[row + x] = rgb;
+        }
+      }
+    }
+  }
+
+  /** draw the image of b, in the rows [row0, row1) */
+  private void image(int[] pixels, Batch b, int row0, int row1) {
+    Clip clip = b.clip;
+    int x0 = Math.max(clip.x0, b.x0);
+    int x1 = Math.min(clip.x1, b.x1);
+    int y0 = Math.max(Math.max(row0, clip.y0), b.y0);
+    int y1 = Math.min(Math.min(row1, clip.y1), b.y1);
+    double[] inv = b.inverse;
+    int tw = b.texWidth;
+    int th = b.texHeight;
+    int[] texels = b.texels;
+    for (int y=y0; y<y1; y++) {
+      int row = y * width;
+      double yc = y + 0.5;
+      for (int x=x0; x<x1; x++) {
+        double xc = x + 0.5;
+        double u = inv[0] * xc + inv[2] * yc + inv[4];
+        double v = inv[1] * xc + inv[3] * yc + inv[5];
+        if (!(u >= 0.0 && u < tw && v >= 0.0 && v < th)) continue;
+        if (!clip.rectangle && !clip.contains(x, y)) continue;
+        int t = texels[((int) v) * tw + (int) u];
+        int alpha = t >>> 24;
+        if (alpha == 255) {
+          pixels[row + x] = t;
+        }
+        else if (alpha != 0) {
+          int p = pixels[row + x];
+          int beta = 255 - alpha;
+          int r = (((t >> 16) & 0xff) * alpha + ((p >> 16) & 0xff) * beta
+                   + 127) / 255;
+          int g = (((t >> 8) & 0xff) * alpha + ((p >> 8) & 0xff) * beta
+                   + 127) / 255;
+          int bl = ((t & 0xff) * alpha + (p & 0xff) * beta + 127) / 255;
+          pixels[row + x] = 0xff000000 | (r << 16) | (g << 8) | bl;
+        }
+      }
+    }
+  }
+
+  /** add an image mapped onto the quad of array */
+  private void addImage(VisADGeometryArray array, BufferedImage image,
+                        Clip clip) {
+    float[] coordinates = array.coordinates;
+    int tw = image.getWidth();
+    int th = image.getHeight();
+    // map image pixels onto the quad as VisADCanvasJ2D does
+    float x00 = coordinates[0];
+    float y00 = coordinates[1];
+    float xw0 = coordinates[3];
+    float yw0 = coordinates[4];
+    float x0h = coordinates[9];
+    float y0h = coordinates[10];
+    AffineTransform t = new AffineTransform(transform);
+    t.concatenate(new AffineTransform((xw0 - x00) / tw, (yw0 - y00) / tw,
+                                      (x0h - x00) / th, (y0h - y00) / th,
+                                      x00, y00));
+    double[] inverse = new double[6];
+    try {
+      t.createInverse().getMatrix(inverse);
+    }
+    catch (NoninvertibleTransformException e) {
+      return;
+    }
+    double[] corners = {0, 0, tw, 0, tw, th, 0, th};
+    t.transform(corners, 0, corners, 0, 4);
+
+    Batch b = new Batch(IMAGE, 4, clip);
+    for (int k=0; k<4; k++) {
+      b.vertex((float) corners[2*k], (float) corners[2*k+1]);
+    }
+    b.end(0);
+    b.inverse = inverse;
+    b.texWidth = tw;
+    b.texHeight = th;
+    b.texels = image.getRGB(0, 0, tw, th, null, 0, tw);
+    double xmin = Math.min(Math.min(corners[0], corners[2]),
+                           Math.min(corners[4], corners[6]));
+    double xmax = Math.max(Math.max(corners[0], corners[2]),
+                           Math.max(corners[4], corners[6]));
+    double ymin = Math.min(Math.min(corners[1], corners[3]),
+                           Math.min(corners[5], corners[7]));
+    double ymax = Math.max(Math.max(corners[1], corners[3]),
+                           Math.max(corners[5], corners[7]));
+    if (!(xmin <= xmax && ymin <= ymax)) return;
+    b.x0 = (int) Math.max(0.0, Math.floor(xmin));
+    b.x1 = (int) Math.min(width, Math.ceil(xmax));
+    b.y0 = (int) Math.max(0.0, Math.floor(ymin));
+    b.y1 = (int) Math.min(height, Math.ceil(ymax));
+    batches.addElement(b);
+  }
+
+  /**
+   * add a segment between pixel coordinates to b, split into dashes
+   * if pattern is not null; one pixel wide if size is 0, otherwise a
+   * quad size pixels wide with square caps.  Only the part near the
+   * clip of b is added, so far off screen ends cost nothing.
+   */
+  private static void segment(Batch b, float xa, float ya, float xb,
+                              float yb, int rgb, float size,
+                              float[] pattern) {
+    double margin = size + 2.0;
+    double dx = (double) xb - xa;
+    double dy = (double) yb - ya;
+    double[] t = visible(b.clip, margin, xa, ya, dx, dy);
+    if (t == null) return;
+    // the visible part; its ends are moved along the segment, as t
+    // is too coarse for them when a vertex is very far off screen
+    double[] e0 = visibleEnd(b.clip, margin, xa, ya, dx, dy);
+    double[] e1 = visibleEnd(b.clip, margin, xb, yb, dx, dy);
+    double x0 = e0[0];
+    double y0 = e0[1];
+    double vx = e1[0] - x0;
+    double vy = e1[1] - y0;
+    double length = Math.sqrt(vx * vx + vy * vy);
+    if (pattern == null || !(length > 0.0)) {
+      segment(b, (float) x0, (float) y0, (float) e1[0], (float) e1[1], rgb,
+              size);
+      return;
+    }
+
+    // start the pattern where it would be at the first visible point
+    double period = 0.0;
+    for (int i=0; i<pattern.length; i++) period += pattern[i];
+    if (pattern.length % 2 != 0) period *= 2.0;
+    double skipped = t[0] * Math.sqrt(dx * dx + dy * dy);
+    double phase = skipped - period * Math.floor(skipped / period);
+    int i = 0;
+    boolean on = true;
+    while (phase >= pattern[i]) {
+      phase -= pattern[i];
+      i = (i + 1) % pattern.length;
+      on = !on;
+    }
+    double position = 0.0;
+    double next = Math.min(pattern[i] - phase, length);
+    for (; position<length; i=(i+1)%pattern.length, on=!on) {
+      if (on && next > position) {
+        segment(b, (float) (x0 + vx * position / length),
+                (float) (y0 + vy * position / length),
+                (float) (x0 + vx * next / length),
+                (float) (y0 + vy * next / length), rgb, size);
+      }
+      position = next;
+      next = Math.min(position + pattern[(i + 1) % pattern.length], length);
+    }
+  }
+
+  /**
+   * the point (x, y), moved along the direction (dx, dy) to within
+   * margin pixels of the bounds of clip
+   */
+  private static double[] visibleEnd(Clip clip, double margin, double x,
+                                     double y, double dx, double dy) {
+    double xmin = clip.x0 - margin;
+    double xmax = clip.x1 + margin;
+    double ymin = clip.y0 - margin;
+    double ymax = clip.y1 + margin;
+    if (x < xmin || x > xmax) {
+      double xe = (x < xmin) ? xmin : xmax;
+      y += (xe - x) * dy / dx;
+      x = xe;
+    }
+    if (y < ymin || y > ymax) {
+      double ye = (y < ymin) ? ymin : ymax;
+      x += (ye - y) * dx / dy;
+      y = ye;
+    }
+    return new double[] {Math.max(xmin, Math.min(xmax, x)),
+                         Math.max(ymin, Math.min(ymax, y))};
+  }
+
+  /**
+   * the range [t0, t1] of t for which (xa + t * dx, ya + t * dy), with
+   * t in [0, 1], is within margin pixels of the bounds of clip; null if
+   * there is none
+   */
+  private static double[] visible(Clip clip, double margin, double xa,
+                                  double ya, double dx, double dy) {
+    double[] t = {0.0, 1.0};
+    if (!inside(t, -dx, xa - (clip.x0 - margin)) ||
+        !inside(t, dx, (clip.x1 + margin) - xa) ||
+        !inside(t, -dy, ya - (clip.y0 - margin)) ||
+        !inside(t, dy, (clip.y1 + margin) - ya)) {
+      return null;
+    }
+    return t;
+  }
+
+  /** narrow t to where p * t <= q; return false if that is empty */
+  private static boolean inside(double[] t, double p, double q) {
+    if (p == 0.0) return q >= 0.0;
+    double r = q / p;
+    if (p < 0.0) {
+      if (r > t[1]) return false;
+      if (r > t[0]) t[0] = r;
+    }
+    else {
+      if (r < t[0]) return false;
+      if (r < t[1]) t[1] = r;
+    }
+    return true;
+  }
+
+  private static void segment(Batch b, float xa, float ya, float xb,
+                              float yb, int rgb, float size) {
+    if (size == 0.0f) {
+      b.vertex(xa, ya);
+      b.vertex(xb, yb);
+    }
+    else {
+      float dx = xb - xa;
+      float dy = yb - ya;
+      float length = (float) Math.sqrt(dx * dx + dy * dy);
+      float hsize = 0.5f * size;
+      float ux = hsize;
+      float uy = 0.0f;
+      if (length > 0.0f) {
+        ux = dx * hsize / length;
+        uy = dy * hsize / length;
+      }
+      b.vertex(xa - ux - uy, ya - uy + ux);
+      b.vertex(xb + ux - uy, yb + uy + ux);
+      b.vertex(xb + ux + uy, yb + uy - ux);
+      b.vertex(xa - ux + uy, ya - uy - ux);
+    }
+    b.end(rgb);
+  }
+
+  /** the clip for a rectangle in scene graph coordinates */
+  private Clip clipFor(Rectangle2D.Float clip) {
+    float x = (float) clip.getX();
+    float y = (float) clip.getY();
+    float w = (float) clip.getWidth();
+    float h = (float) clip.getHeight();
+    double[] corners = {x, y, x, y+h, x+w, y+h, x+w, y};
+    transform.transform(corners, 0, corners, 0, 4);
+    return new Clip(corners, frame);
+  }
+
+  private float x(float[] coordinates, int i) {
+    return (float) (m00 * coordinates[i] + m01 * coordinates[i+1] + m02);
+  }
+
+  private float y(float[] coordinates, int i) {
+    return (float) (m10 * coordinates[i] + m11 * coordinates[i+1] + m12);
+  }
+
+  private static int ceil(float f) {
+    return (int) Math.ceil(f);
+  }
+
+  /** color component in [0, 255] of an intensity in [0.0f, 1.0f] */
+  private static int component(float c) {
+    c = Math.max(Math.min(c, 1.0f), 0.0f);
+    return (int) (c * 255.0f + 0.5f);
+  }
+
+  /** average of the colors of n vertices at offsets j0 to j3 */
+  private static int average(byte[] colors, int n, int j0, int j1,
+                             int j2, int j3) {
+    int r = colors[j0] & 0xff;
+    int g = colors[j0+1] & 0xff;
+    int b = colors[j0+2] & 0xff;
+    if (n > 1) {
+      r += colors[j1] & 0xff;
+      g += colors[j1+1] & 0xff;
+      b += colors[j1+2] & 0xff;
+    }
+    if (n > 2) {
+      r += colors[j2] & 0xff;
+      g += colors[j2+1] & 0xff;
+      b += colors[j2+2] & 0xff;
+    }
+    if (n > 3) {
+      r += colors[j3] & 0xff;
+      g += colors[j3+1] & 0xff;
+      b += colors[j3+2] & 0xff;
+    }
+    return ((r / n) << 16) | ((g / n) << 8) | (b / n);
+  }
+
+  /**
+   * @return the pixels of image if they can be written directly,
+   *         otherwise null
+   */
+  private int[] pixelsOf(BufferedImage image) {
+    int type = image.getType();
+    if (type != BufferedImage.TYPE_INT_RGB &&
+        type != BufferedImage.TYPE_INT_ARGB) {
+      return null;
+    }
+    WritableRaster raster = image.getRaster();
+    if (raster.getParent() != null || raster.getWidth() != width ||
+        raster.getHeight() != height ||
+        raster.getSampleModelTranslateX() != 0 ||
+        raster.getSampleModelTranslateY() != 0 ||
+        !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel) ||
+        ((SinglePixelPackedSampleModel) raster.getSampleModel())
+          .getScanlineStride() != width ||
+        !(raster.getDataBuffer() instanceof DataBufferInt) ||
+        raster.getDataBuffer().getNumBanks() != 1 ||
+        raster.getDataBuffer().getOffset() != 0) {
+      return null;
+    }
+    return ((DataBufferInt) raster.getDataBuffer()).getData();
+  }
+
+  /** pixels that may be drawn, as [x0, x1) by [y0, y1) and, if the
+      clip is not a rectangle of pixels, the half planes of its edges */
+  private static final class Clip {
+    final int x0, y0, x1, y1;
+    final boolean rectangle;
+    private final double[] edges;
+
+    Clip(int x0, int y0, int x1, int y1) {
+      this.x0 = x0;
+      this.y0 = y0;
+      this.x1 = x1;
+      this.y1 = y1;
+      rectangle = true;
+      edges = null;
+    }
+
+    /** the clip inside a quad with corners in pixel coordinates */
+    Clip(double[] corners, Clip frame) {
+      double xmin = corners[0], xmax = corners[0];
+      double ymin = corners[1], ymax = corners[1];
+      for (int k=1; k<4; k++) {
+        xmin = Math.min(xmin, corners[2*k]);
+        xmax = Math.max(xmax, corners[2*k]);
+        ymin = Math.min(ymin, corners[2*k+1]);
+        ymax = Math.max(ymax, corners[2*k+1]);
+      }
+      x0 = Math.max(frame.x0, (int) Math.ceil(xmin - 0.5));
+      x1 = Math.min(frame.x1, (int) Math.ceil(xmax - 0.5));
+      y0 = Math.max(frame.y0, (int) Math.ceil(ymin - 0.5));
+      y1 = Math.min(frame.y1, (int) Math.ceil(ymax - 0.5));
+
+      // a quad with edges along the axes is its bounding box
+      boolean axes = true;
+      for (int k=0; k<4; k++) {
+        int l = (k + 1) % 4;
+        if (corners[2*k] != corners[2*l] &&
+            corners[2*k+1] != corners[2*l+1]) {
+          axes = false;
+        }
+      }
+      rectangle = axes;
+      if (axes) {
+        edges = null;
+        return;
+      }
+      // half planes a * x + b * y + c >= 0, oriented by the signed area
+      double area = 0.0;
+      for (int k=0; k<4; k++) {
+        int l = (k + 1) % 4;
+        area += corners[2*k] * corners[2*l+1] - corners[2*l] * corners[2*k+1];
+      }
+      double sign = (area < 0.0) ? -1.0 : 1.0;
+      edges = new double[12];
+      for (int k=0; k<4; k++) {
+        int l = (k + 1) % 4;
+        double a = -(corners[2*l+1] - corners[2*k+1]) * sign;
+        double b = (corners[2*l] - corners[2*k]) * sign;
+        edges[3*k] = a;
+        edges[3*k+1] = b;
+        edges[3*k+2] = -(a * corners[2*k] + b * corners[2*k+1]);
+      }
+    }
+
+    boolean isEmpty() {
+      return x0 >= x1 || y0 >= y1;
+    }
+
+    /** true if pixel (x, y) may be drawn */
+    boolean contains(int x, int y) {
+      if (x < x0 || x >= x1 || y < y0 || y >= y1) return false;
+      if (rectangle) return true;
+      double xc = x + 0.5;
+      double yc = y + 0.5;
+      for (int k=0; k<12; k+=3) {
+        if (edges[k] * xc + edges[k+1] * yc + edges[k+2] < 0.0) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /** primitives of one kind, in pixel coordinates, from one appearance */
+  private final class Batch {
+    final int kind;
+    final int corners;   // vertices per primitive
+    final Clip clip;
+    int count = 0;       // number of primitives
+    float[] xy;          // vertices of primitive p start at 2*corners*p
+    int[] rgb;           // color of each primitive
+    private int nxy = 0;
+
+    // for IMAGE
+    double[] inverse;    // transform from pixels to image pixels
+    int[] texels;
+    int texWidth, texHeight;
+    int x0, x1, y0, y1;  // bounds of the image in pixels
+
+    // primitives touching tile t are items[tileStart[t]] to
+    // items[tileStart[t+1] - 1], in order
+    int[] tileStart;
+    int[] items;
+
+    Batch(int kind, int corners, Clip clip) {
+      this.kind = kind;
+      this.corners = corners;
+      this.clip = clip;
+      xy = new float[2 * corners * 16];
+      rgb = new int[16];
+    }
+
+    void vertex(float x, float y) {
+      if (nxy + 2 > xy.length) {
+        float[] f = new float[2 * xy.length];
+        System.arraycopy(xy, 0, f, 0, nxy);
+        xy = f;
+      }
+      xy[nxy++] = x;
+      xy[nxy++] = y;
+    }
+
+    void end(int color) {
+      if (count >= rgb.length) {
+        int[] c = new int[2 * rgb.length];
+        System.arraycopy(rgb, 0, c, 0, count);
+        rgb = c;
+      }
+      rgb[count++] = color;
+    }
+
+    /** set range to the first and last tiles touched by primitive p;
+        return false if it touches none */
+    private boolean tiles(int p, int[] range) {
+      float ymin = Float.POSITIVE_INFINITY;
+      float ymax = Float.NEGATIVE_INFINITY;
+      int o = 2 * corners * p;
+      for (int k=0; k<corners; k++) {
+        float x = xy[o+2*k];
+        float y = xy[o+2*k+1];
+        if (x != x || y != y) return false;
+        if (y < ymin) ymin = y;
+        if (y > ymax) ymax = y;
+      }
+      // allow for the truncation of the ends of one pixel segments;
+      // clamp before the cast, as vertices may be far off screen
+      int r0 = (int) Math.max(clip.y0, Math.floor(ymin) - 1.0);
+      int r1 = (int) Math.min(clip.y1 - 1, Math.ceil(ymax) + 1.0);
+      if (kind == IMAGE) {
+        r0 = Math.max(r0, y0);
+        r1 = Math.min(r1, y1 - 1);
+      }
+      if (r0 > r1) return false;
+      range[0] = r0 / TILE_ROWS;
+      range[1] = r1 / TILE_ROWS;
+      return true;
+    }
+
+    /** sort the primitives into the tiles they touch */
+    void bin() {
+      tileStart = new int[ntiles + 1];
+      int[] range = new int[2];
+      for (int p=0; p<count; p++) {
+        if (tiles(p, range)) {
+          for (int t=range[0]; t<=range[1]; t++) tileStart[t+1]++;
+        }
+      }
+      for (int t=0; t<ntiles; t++) tileStart[t+1] += tileStart[t];
+      items = new int[tileStart[ntiles]];
+      int[] next = new int[ntiles];
+      System.arraycopy(tileStart, 0, next, 0, ntiles);
+      for (int p=0; p<count; p++) {
+        if (tiles(p, range)) {
+          for (int t=range[0]; t<=range[1]; t++) items[next[t]++] = p;
+        }
+      }
+    }
+  }
+
+}
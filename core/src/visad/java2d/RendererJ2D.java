@@ -46,6 +46,14 @@ public abstract class RendererJ2D extends DataRenderer {
 
   VisADSwitch swit;
 
+  /** state passed from transformAction to attachAction */
+  private boolean pendingAction = false;
+  private boolean pendingTransform = false;
+  private VisADGroup pendingBranch = null;
+
+  /** whether doAction may be split; set on first use */
+  private Boolean concurrentTransform = null;
+
   public RendererJ2D() {
     super();
   }
@@ -126,12 +134,39 @@ public abstract class RendererJ2D extends DataRenderer {
   /** re-transform if needed;
       return false if not done */
   public boolean doAction() throws VisADException, RemoteException {
+    transformAction();
+    return attachAction();
+  }
+
+  /**
+   * @return true unless a subclass overrides doAction, in which case
+   *         its transform cannot be split
+   */
+  public boolean isConcurrentTransformSupported() {
+    if (concurrentTransform == null) {
+      boolean supported = false;
+      try {
+        supported = (getClass().getMethod("doAction").getDeclaringClass() ==
+                     RendererJ2D.class);
+      }
+      catch (NoSuchMethodException e) {
+      }
+      concurrentTransform = Boolean.valueOf(supported);
+    }
+    return concurrentTransform.booleanValue();
+  }
+
+  /** re-transform if needed, keeping the new VisADGroup for
+      attachAction */
+  public void transformAction() throws VisADException, RemoteException {
+    pendingBranch = null;
+    pendingAction = true;
     VisADGroup branch;
     boolean all_feasible = get_all_feasible();
     boolean any_changed = get_any_changed();
     boolean any_transform_control = get_any_transform_control();
-    boolean scratch = false;
-    if (all_feasible && (any_changed || any_transform_control)) {
+    pendingTransform = all_feasible && (any_changed || any_transform_control);
+    if (pendingTransform) {
       // exceptionVector.removeAllElements();
       clearAVControls();
       try {
@@ -180,7 +215,21 @@ public abstract class RendererJ2D extends DataRenderer {
       catch (DisplayInterruptException e) {
         branch = null;
       }
+      pendingBranch = branch;
+    }
+  }
 
+  /** attach the VisADGroup made by transformAction;
+      return false if no transform was done */
+  public boolean attachAction() throws VisADException, RemoteException {
+    if (!pendingAction) return false;
+    VisADGroup branch = pendingBranch;
+    pendingAction = false;
+    pendingBranch = null;
+    // transformAction only transforms if all_feasible
+    boolean all_feasible = pendingTransform;
+    boolean scratch = false;
+    if (pendingTransform) {
       if (branch != null) {
         swParent.setChild(branch, 0);
         scratch = true;
@@ -208,7 +257,7 @@ public abstract class RendererJ2D extends DataRenderer {
     return all_feasible;
 */
     /* WLH 28 Oct 98 */
-    return (all_feasible && (any_changed || any_transform_control));
+    return all_feasible;
 
   }
 
@@ -448,8 +448,16 @@ System.out.println("VisADCanvasJ2D.paint: current_image = " + current_image +
         }
         try {
           if (animate_control != null) animate_control.init();
-          render(g2, ggg, root, 0, null);
-          render(g2, ggg, root, 1, null);
+          if (display.getSoftwareRendering()) {
+            RasterizerJ2D raster = new RasterizerJ2D(w, h, tsave);
+            rasterize(raster, root, 0, null);
+            rasterize(raster, root, 1, null);
+            raster.draw(image, getBackground());
+          }
+          else {
+            render(g2, ggg, root, 0, null);
+            render(g2, ggg, root, 1, null);
+          }
           // draw Animation string in upper right corner of screen
           String[] animation_string = displayRenderer.getAnimationString();
           if (animation_string[0] != null) {
@@ -1110,6 +1118,36 @@ System.out.println(i + " " + oldx + " " + oldy + " " + lastx + " " + lasty +
     } // end if (scene instanceof VisADAppearance)
   }
 
+  /**
+   * Add the appearances under scene that are drawn in pass to raster,
+   * in the order that render draws them.
+   */
+  private void rasterize(RasterizerJ2D raster,
+                         VisADSceneGraphObject scene, int pass,
+                         Rectangle2D.Float clip) {
+    if (scene == null) return;
+    if (scene instanceof VisADSwitch) {
+      VisADSceneGraphObject child =
+        ((VisADSwitch) scene).getSelectedChild();
+      if (child != null) rasterize(raster, child, pass, clip);
+    }
+    else if (scene instanceof VisADGroup) {
+      if (clip_rectangle != null &&
+          (scene.equals(direct) || scene.equals(non_direct))) {
+        clip = clip_rectangle;
+      }
+      Vector children = ((VisADGroup) scene).getChildren();
+      for (int i=children.size()-1; i>=0; i--) {
+        VisADSceneGraphObject child =
+          (VisADSceneGraphObject) children.elementAt(i);
+        if (child != null) rasterize(raster, child, pass, clip);
+      }
+    }
+    else { // scene instanceof VisADAppearance
+      raster.add((VisADAppearance) scene, pass, clip);
+    }
+  }
+
   /**
    * This assumes only VisADPointArray or VisADLineArray.
    * @param graphics
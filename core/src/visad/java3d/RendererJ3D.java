@@ -59,6 +59,14 @@ public abstract class RendererJ3D extends DataRenderer {
   boolean[] switchFlags = {false, false, false};
   boolean[] branchNonEmpty = {false, false, false};
 
+  /** state passed from transformAction to attachAction */
+  private boolean pendingAction = false;
+  private boolean pendingTransform = false;
+  private BranchGroup pendingBranch = null;
+
+  /** whether doAction may be split; set on first use */
+  private Boolean concurrentTransform = null;
+
   
   public RendererJ3D() {
     super();
@@ -156,25 +164,40 @@ System.out.println("setLinks: sw.setWhichChild(" + currentIndex + ")");
       return false if not done */
   public boolean doAction() throws VisADException, RemoteException {
     if (branches == null) return false;
+    transformAction();
+    return attachAction();
+  }
+
+  /**
+   * @return true unless a subclass overrides doAction, in which case
+   *         its transform cannot be split
+   */
+  public boolean isConcurrentTransformSupported() {
+    if (concurrentTransform == null) {
+      boolean supported = false;
+      try {
+        supported = (getClass().getMethod("doAction").getDeclaringClass() ==
+                     RendererJ3D.class);
+      }
+      catch (NoSuchMethodException e) {
+      }
+      concurrentTransform = Boolean.valueOf(supported);
+    }
+    return concurrentTransform.booleanValue();
+  }
+
+  /** re-transform if needed, keeping the new BranchGroup for
+      attachAction */
+  public void transformAction() throws VisADException, RemoteException {
+    pendingBranch = null;
+    pendingAction = (branches != null);
+    if (!pendingAction) return;
     BranchGroup branch; // J3D
     boolean all_feasible = get_all_feasible();
     boolean any_changed = get_any_changed();
     boolean any_transform_control = get_any_transform_control();
-/*
-System.out.println("doAction " + getDisplay().getName() + " " +
-                   getLinks()[0].getThingReference().getName() +
-                   " any_changed = " + any_changed +
-                   " all_feasible = " + all_feasible +
-                   " any_transform_control = " + any_transform_control);
-*/
-    if (all_feasible && (any_changed || any_transform_control)) {
-/*
-System.out.println("doAction " + getDisplay().getName() + " " +
-                   getLinks()[0].getThingReference().getName() +
-                   " any_changed = " + any_changed +
-                   " all_feasible = " + all_feasible +
-                   " any_transform_control = " + any_transform_control);
-*/
+    pendingTransform = all_feasible && (any_changed || any_transform_control);
+    if (pendingTransform) {
       // exceptionVector.removeAllElements();
       clearAVControls();
       try {
@@ -222,7 +245,20 @@ System.out.println("doAction " + getDisplay().getName() + " " +
       catch (DisplayInterruptException e) {
         branch = null;
       }
+      pendingBranch = branch;
+    }
+  }
 
+  /** attach the BranchGroup made by transformAction;
+      return false if no transform was done */
+  public boolean attachAction() throws VisADException, RemoteException {
+    if (!pendingAction) return false;
+    BranchGroup branch = pendingBranch;
+    pendingAction = false;
+    pendingBranch = null;
+    // transformAction only transforms if all_feasible
+    boolean all_feasible = pendingTransform;
+    if (pendingTransform) {
       if (branch != null) {
         synchronized (this) {
           if (!branchNonEmpty[currentIndex] ||
@@ -254,7 +290,7 @@ System.out.println("doAction " + getDisplay().getName() + " " +
         links[i].clearData();
       }
     }
-    return (all_feasible && (any_changed || any_transform_control));
+    return all_feasible;
   }
 
   public BranchGroup getBranch() {
@@ -30,14 +30,22 @@ import visad.*;
 
 import java.rmi.*;
 
+import visad.util.ParallelChunks;
+
 /**
  FFT is the VisAD class for Fourier Transforms, using
- the Fast Fourier Transform when the domain length is
- a power of two.<p>
+ the Fast Fourier Transform for any domain length: a mixed-radix
+ FFT when the length has only small prime factors, and Bluestein's
+ algorithm otherwise.  Real input is transformed using complex
+ transforms of half the length, and the rows and columns of 2-D
+ transforms are transformed in parallel for large arrays.<p>
 */
 
 public class FFT {
 
+  /** minimum 2-D array size for transforming lines in parallel */
+  private static final int PARALLEL_THRESHOLD = 65536;
+
   /** 
    * for use by SpreadSheet only - ordinary applications
    * should use other method signatures;
@@ -85,8 +93,8 @@ public class FFT {
   }
 
   /**
-   * return Fourier Transform of field, use FFT if domain dimension(s)
-   * are powers of 2
+   * return Fourier Transform of field, using FFT for any domain
+   * length(s)
    * @param field Field with domain dimension = 1 (1-D FT) or 2 (2-D FT)
    *              and 1 (real part) or 2 (real & imaginary) range RealTypes
    * @param forward true for forward and false for backward
@@ -100,8 +108,8 @@ public class FFT {
   }
 
   /**
-   * return Fourier Transform of field, use FFT if domain dimension(s)
-   * are powers of 2
+   * return Fourier Transform of field, using FFT for any domain
+   * length(s)
    * @param field Field with domain dimension = 1 (1-D FT) or 2 (2-D FT)
    *              and 1 (real part) or 2 (real & imaginary) range RealTypes
    * @param forward true for forward and false for backward
@@ -258,13 +266,15 @@ public class FFT {
     if (use_double) {
       double[][] values = field.getValues(false);
       if (values.length == 1) {
-        int n = values[0].length;
-        double[][] new_values = new double[2][n];
-        System.arraycopy(values[0], 0, new_values[0], 0, n);
-        for (int i=0; i<n; i++) new_values[1][i] = 0.0;
-        values = new_values;
+        // real input, no need for imaginary parts
+        if (ddim == 1) {
+          values = realFT1D(values[0], forward);
+        }
+        else { // ddim == 2
+          values = realFT2D(field_lens[0], field_lens[1], values[0], forward);
+        }
       }
-      if (ddim == 1) {
+      else if (ddim == 1) {
         values = FT1D(values, forward);
       }
       else { // ddim == 2
@@ -275,13 +285,15 @@ public class FFT {
     else { // !use_double
       float[][] values = field.getFloats(false);
       if (values.length == 1) {
-        int n = values[0].length;
-        float[][] new_values = new float[2][n];
-        System.arraycopy(values[0], 0, new_values[0], 0, n);
-        for (int i=0; i<n; i++) new_values[1][i] = 0.0f;
-        values = new_values;
+        // real input, no need for imaginary parts
+        if (ddim == 1) {
+          values = realFT1D(values[0], forward);
+        }
+        else { // ddim == 2
+          values = realFT2D(field_lens[0], field_lens[1], values[0], forward);
+        }
       }
-      if (ddim == 1) {
+      else if (ddim == 1) {
         values = FT1D(values, forward);
       }
       else { // ddim == 2
@@ -294,8 +306,9 @@ public class FFT {
 
 
   /**
-   * compute 2-D Fourier transform, calling 1-D FT twice
-   * use FFT if rows and cols are powers of 2
+   * compute 2-D Fourier transform, calling 1-D FT twice;
+   * the rows and the columns are each transformed in parallel
+   * for large arrays
    * @param rows first dimension for 2-D
    * @param cols second dimension for 2-D
    * @param x array for take Fourier transform of, dimensioned
@@ -312,45 +325,16 @@ public class FFT {
     if (x.length != 2 || x[0].length != x[1].length) {
       throw new FieldException("bad x lengths");
     }
-    int n = x[0].length;
-    if (rows * cols != n) {
-      throw new FieldException(rows + " * " + cols + " must equal " + n);
-    }
-    float[][] y = new float[2][n];
-    float[][] z = new float[2][rows];
-    for (int c=0; c<cols; c++) {
-      int i = c * rows;
-      for (int r=0; r<rows; r++) {
-        z[0][r] = x[0][i + r];
-        z[1][r] = x[1][i + r];
-      }
-      z = FT1D(z, forward);
-      for (int r=0; r<rows; r++) {
-        y[0][i + r] = z[0][r];
-        y[1][i + r] = z[1][r];
-      }
-    }
-
-    float[][] u = new float[2][n];
-    float[][] v = new float[2][cols];
-    for (int r=0; r<rows; r++) {
-      int i = r;
-      for (int c=0; c<cols; c++) {
-        v[0][c] = y[0][i + c * rows];
-        v[1][c] = y[1][i + c * rows];
-      }
-      v = FT1D(v, forward);
-      for (int c=0; c<cols; c++) {
-        u[0][i + c * rows] = v[0][c];
-        u[1][i + c * rows] = v[1][c];
-      }
-    }
-    return u;
+    checkLength(rows, cols, x[0].length);
+    float[][] y = new float[2][x[0].length];
+    FT2D(rows, cols, x[0], x[1], y[0], y[1], forward);
+    return y;
   }
 
   /**
-   * compute 2-D Fourier transform, calling 1-D FT twice
-   * use FFT if rows and cols are powers of 2
+   * compute 2-D Fourier transform, calling 1-D FT twice;
+   * the rows and the columns are each transformed in parallel
+   * for large arrays
    * @param rows first dimension for 2-D
    * @param cols second dimension for 2-D
    * @param x array for take Fourier transform of, dimensioned
@@ -367,45 +351,180 @@ public class FFT {
     if (x.length != 2 || x[0].length != x[1].length) {
       throw new FieldException("bad x lengths");
     }
-    int n = x[0].length;
+    checkLength(rows, cols, x[0].length);
+    double[][] y = new double[2][x[0].length];
+    FT2D(rows, cols, x[0], x[1], y[0], y[1], forward);
+    return y;
+  }
+
+  /**
+   * compute 2-D Fourier transform of real values, using half
+   * length complex transforms for the first dimension
+   * @param rows first dimension for 2-D
+   * @param cols second dimension for 2-D
+   * @param x real values to take Fourier transform of, with
+   *          length = rows * cols
+   * @param forward true for forward and false for backward
+   * @return Fourier transform of x, dimensioned [2][length]
+   * @throws VisADException  a VisAD error occurred
+   */
+  public static float[][] realFT2D(int rows, int cols, float[] x,
+                                   boolean forward)
+         throws VisADException {
+    if (x == null) return null;
+    checkLength(rows, cols, x.length);
+    float[][] y = new float[2][x.length];
+    FT2D(rows, cols, x, null, y[0], y[1], forward);
+    return y;
+  }
+
+  /**
+   * compute 2-D Fourier transform of real values, using half
+   * length complex transforms for the first dimension
+   * @param rows first dimension for 2-D
+   * @param cols second dimension for 2-D
+   * @param x real values to take Fourier transform of, with
+   *          length = rows * cols
+   * @param forward true for forward and false for backward
+   * @return Fourier transform of x, dimensioned [2][length]
+   * @throws VisADException  a VisAD error occurred
+   */
+  public static double[][] realFT2D(int rows, int cols, double[] x,
+                                    boolean forward)
+         throws VisADException {
+    if (x == null) return null;
+    checkLength(rows, cols, x.length);
+    double[][] y = new double[2][x.length];
+    FT2D(rows, cols, x, null, y[0], y[1], forward);
+    return y;
+  }
+
+  private static void checkLength(int rows, int cols, int n)
+          throws VisADException {
     if (rows * cols != n) {
       throw new FieldException(rows + " * " + cols + " must equal " + n);
     }
-    double[][] y = new double[2][n];
-    double[][] z = new double[2][rows];
-    for (int c=0; c<cols; c++) {
-      int i = c * rows;
-      for (int r=0; r<rows; r++) {
-        z[0][r] = x[0][i + r];
-        z[1][r] = x[1][i + r];
+  }
+
+  /**
+   * 2-D transform of (xRe, xIm), or of real xRe if xIm is null, into
+   * (yRe, yIm); the arrays are all float[] or all double[], and only
+   * one line at a time is held as doubles
+   */
+  private static void FT2D(final int rows, final int cols,
+                           final Object xRe, final Object xIm,
+                           final Object yRe, final Object yIm,
+                           final boolean forward)
+          throws VisADException {
+    final int n = rows * cols;
+    final FFTPlan rowPlan = FFTPlan.get(rows);
+    final FFTPlan colPlan = FFTPlan.get(cols);
+
+    // transform the first dimension, which is contiguous
+    runLines(cols, n, new ParallelChunks.Chunk() {
+      public void run(int start, int end) {
+        double[] zRe = new double[rows];
+        double[] zIm = new double[rows];
+        double[] outRe = new double[rows];
+        double[] outIm = new double[rows];
+        for (int c=start; c<end; c++) {
+          int i = c * rows;
+          load(xRe, i, 1, zRe, rows);
+          if (xIm == null) {
+            rowPlan.realTransform(zRe, outRe, outIm);
+            if (!forward) {
+              // backward transform of real values is the conjugate
+              // of the forward transform
+              for (int r=0; r<rows; r++) outIm[r] = -outIm[r];
+            }
+          }
+          else {
+            load(xIm, i, 1, zIm, rows);
+            rowPlan.transform(zRe, zIm, outRe, outIm, forward);
+          }
+          store(outRe, 1.0, yRe, i, 1, rows);
+          store(outIm, 1.0, yIm, i, 1, rows);
+        }
       }
-      z = FT1D(z, forward);
-      for (int r=0; r<rows; r++) {
-        y[0][i + r] = z[0][r];
-        y[1][i + r] = z[1][r];
+    });
+
+    // transform the second dimension, in place
+    final double scale = forward ? 1.0 : 1.0 / n;
+    runLines(rows, n, new ParallelChunks.Chunk() {
+      public void run(int start, int end) {
+        double[] zRe = new double[cols];
+        double[] zIm = new double[cols];
+        double[] outRe = new double[cols];
+        double[] outIm = new double[cols];
+        for (int r=start; r<end; r++) {
+          load(yRe, r, rows, zRe, cols);
+          load(yIm, r, rows, zIm, cols);
+          colPlan.transform(zRe, zIm, outRe, outIm, forward);
+          store(outRe, scale, yRe, r, rows, cols);
+          store(outIm, scale, yIm, r, rows, cols);
+        }
       }
+    });
+  }
+
+  /**
+   * copy count values of x, a float[] or double[], from offset with
+   * the given stride into z
+   */
+  private static void load(Object x, int offset, int stride, double[] z,
+                           int count) {
+    if (x instanceof float[]) {
+      float[] f = (float[]) x;
+      for (int k=0; k<count; k++) z[k] = f[offset + k * stride];
     }
+    else {
+      double[] d = (double[]) x;
+      for (int k=0; k<count; k++) z[k] = d[offset + k * stride];
+    }
+  }
 
-    double[][] u = new double[2][n];
-    double[][] v = new double[2][cols];
-    for (int r=0; r<rows; r++) {
-      int i = r;
-      for (int c=0; c<cols; c++) {
-        v[0][c] = y[0][i + c * rows];
-        v[1][c] = y[1][i + c * rows];
-      }
-      v = FT1D(v, forward);
-      for (int c=0; c<cols; c++) {
-        u[0][i + c * rows] = v[0][c];
-        u[1][i + c * rows] = v[1][c];
+  /**
+   * copy count values of z, times scale, into y, a float[] or
+   * double[], from offset with the given stride
+   */
+  private static void store(double[] z, double scale, Object y, int offset,
+                            int stride, int count) {
+    if (y instanceof float[]) {
+      float[] f = (float[]) y;
+      for (int k=0; k<count; k++) {
+        f[offset + k * stride] = (float) (z[k] * scale);
       }
     }
-    return u;
+    else {
+      double[] d = (double[]) y;
+      for (int k=0; k<count; k++) d[offset + k * stride] = z[k] * scale;
+    }
+  }
+
+  /**
+   * run chunk over lines [0, lines) of an array of n values,
+   * in parallel if the array is large
+   */
+  private static void runLines(int lines, int n, ParallelChunks.Chunk chunk)
+          throws VisADException {
+    int chunkSize = lines;
+    int threads = ParallelChunks.getParallelism();
+    if (n >= PARALLEL_THRESHOLD && threads > 1) {
+      // a few chunks per thread, for load balance
+      chunkSize = Math.max(1, lines / (4 * threads));
+    }
+    try {
+      ParallelChunks.run(lines, chunkSize, chunk);
+    }
+    catch (RemoteException e) {
+      throw new VisADException(e.toString());
+    }
   }
 
   /**
-   * compute 1-D Fourier transform
-   * use FFT if length (2nd dimension of x) is a power of 2
+   * compute 1-D Fourier transform, using a mixed-radix FFT or
+   * (for lengths with large prime factors) Bluestein's algorithm;
+   * the cost is O(n log n) for any length
    * @param x array for take Fourier transform of, dimensioned
    *          [2][length], the first index (2) is over real &
    *          imaginary parts
@@ -419,43 +538,7 @@ public class FFT {
     if (x.length != 2 || x[0].length != x[1].length) {
       throw new FieldException("bad x lengths");
     }
-    int n = x[0].length;
-    int n2 = 1;
-    boolean fft = true;
-    while (n2 < n) {
-      n2 *= 2;
-      if (n2 > n) {
-        fft = false;
-      }
-    }
-    if (fft) return FFT1D(x, forward);
-
-    float[][] temp = new float[2][n];
-    float angle = (float) (-2.0 * Math.PI / n);
-    if (!forward) angle = -angle;
-    for (int i=0; i<n; i++) {
-      temp[0][i] = (float) Math.cos(i * angle);
-      temp[1][i] = (float) Math.sin(i * angle);
-    }
-    float[][] y = new float[2][n];
-    for (int i=0; i<n; i++) {
-      float re = 0.0f;
-      float im = 0.0f;
-      for (int j=0; j<n; j++) {
-        int m = (i * j) % n;
-        re += x[0][j] * temp[0][m] - x[1][j] * temp[1][m];
-        im += x[0][j] * temp[1][m] + x[1][j] * temp[0][m];
-      }
-      y[0][i] = re;
-      y[1][i] = im;
-    }
-    if (!forward) {
-      for(int i=0; i<n; i++) {
-        y[0][i] /= n;
-        y[1][i] /= n;
-      }
-    }
-    return y;
+    return toFloats(FT1D(toDoubles(x[0]), toDoubles(x[1]), forward));
   }
 
   /**
@@ -474,82 +557,41 @@ public class FFT {
     if (x.length != 2 || x[0].length != x[1].length) {
       throw new FieldException("bad x lengths");
     }
-    int n = x[0].length;
-    int n2 = 1;
-    while (n2 < n) {
-      n2 *= 2;
-      if (n2 > n) {
-        throw new FieldException("x length must be power of 2");
-      }
-    }
-    n2 = n/2;
-    float[][] temp = new float[2][n2];
-    float angle = (float) (-2.0 * Math.PI / n);
-    if (!forward) angle = -angle;
-    for (int i=0; i<n2; i++) { 
-      temp[0][i] = (float) Math.cos(i * angle);
-      temp[1][i] = (float) Math.sin(i * angle);
-    }
-    float[][] y = FFT1D(x, temp);
-    if (!forward) {
-      for(int i=0; i<n; i++) {
-        y[0][i] /= n;
-        y[1][i] /= n; 
-      }
-    }
-    return y; 
+    checkPowerOfTwo(x[0].length);
+    return FT1D(x, forward);
   }
 
-  /** inner function for 1-D Fast Fourier Transform */
-  private static float[][] FFT1D(float[][] x, float[][] temp) {
-    int n = x[0].length;
-    int n2 = n/2;
-    int k=0;
-    int butterfly;
-    int buttered=0; 
-    if (n==1) {
-      float[][] z1 = {{x[0][0]}, {x[1][0]}};
-      return z1;
-    }
-
-    butterfly= (temp[0].length/n2);
-
-    float[][] z = new float[2][n2];
-    float[][] w = new float[2][n2];
-
-    for (k=0; k<n/2; k++) {  
-      int k2 = 2*k;
-      z[0][k] = x[0][k2];
-      z[1][k] = x[1][k2];
-      w[0][k] = x[0][k2 + 1];
-      w[1][k] = x[1][k2 + 1];
-    }
-
-    z = FFT1D(z, temp);
-    w = FFT1D(w, temp);
-
+  /**
+   * compute 1-D Fourier transform of real values, using a complex
+   * transform of half the length when the length is even
+   * @param x real values to take Fourier transform of
+   * @param forward true for forward and false for backward
+   * @return Fourier transform of x, dimensioned [2][length], the
+   *         first index (2) is over real & imaginary parts
+   * @throws VisADException  a VisAD error occurred
+   */
+  public static float[][] realFT1D(float[] x, boolean forward)
+         throws VisADException {
+    if (x == null) return null;
+    int n = x.length;
     float[][] y = new float[2][n];
-    for (k=0; k<n2;k++) {
-      y[0][k] = z[0][k];
-      y[1][k] = z[1][k];
-
-      float re = w[0][k] * temp[0][buttered] - w[1][k] * temp[1][buttered];
-      float im = w[0][k] * temp[1][buttered] + w[1][k] * temp[0][buttered];
-      w[0][k] = re;
-      w[1][k] = im;
-
-      y[0][k] += w[0][k];
-      y[1][k] += w[1][k];
-      y[0][k + n2] = z[0][k] - w[0][k];
-      y[1][k + n2] = z[1][k] - w[1][k];
-      buttered += butterfly;
+    if (n == 0) return y;
+    FFTPlan.get(n).realTransform(x, y[0], y[1]);
+    if (!forward) {
+      // backward transform of real values is the conjugate of
+      // the forward transform
+      for (int i=0; i<n; i++) {
+        y[0][i] /= n;
+        y[1][i] = -y[1][i] / n;
+      }
     }
     return y;
   }
 
   /**
-   * compute 1-D Fourier transform
-   * use FFT if length (2nd dimension of x) is a power of 2
+   * compute 1-D Fourier transform, using a mixed-radix FFT or
+   * (for lengths with large prime factors) Bluestein's algorithm;
+   * the cost is O(n log n) for any length
    * @param x array for take Fourier transform of, dimensioned
    *          [2][length], the first index (2) is over real &
    *          imaginary parts
@@ -563,43 +605,7 @@ public class FFT {
     if (x.length != 2 || x[0].length != x[1].length) {
       throw new FieldException("bad x lengths");
     }
-    int n = x[0].length;
-    int n2 = 1;
-    boolean fft = true;
-    while (n2 < n) {
-      n2 *= 2;
-      if (n2 > n) {
-        fft = false;
-      }
-    }
-    if (fft) return FFT1D(x, forward);
-
-    double[][] temp = new double[2][n];
-    double angle = -2.0 * Math.PI / n;
-    if (!forward) angle = -angle;
-    for (int i=0; i<n; i++) {
-      temp[0][i] = Math.cos(i * angle);
-      temp[1][i] = Math.sin(i * angle);
-    }
-    double[][] y = new double[2][n];
-    for (int i=0; i<n; i++) {
-      double re = 0.0;
-      double im = 0.0;
-      for (int j=0; j<n; j++) {
-        int m = (i * j) % n;
-        re += x[0][j] * temp[0][m] - x[1][j] * temp[1][m];
-        im += x[0][j] * temp[1][m] + x[1][j] * temp[0][m];
-      }
-      y[0][i] = re;
-      y[1][i] = im;
-    }
-    if (!forward) {
-      for(int i=0; i<n; i++) {
-        y[0][i] /= n;
-        y[1][i] /= n;
-      }
-    }
-    return y;
+    return FT1D(x[0], x[1], forward);
   }
 
   /**
@@ -618,75 +624,72 @@ public class FFT {
     if (x.length != 2 || x[0].length != x[1].length) {
       throw new FieldException("bad x lengths");
     }
-    int n = x[0].length;
-    int n2 = 1;
-    while (n2 < n) {
-      n2 *= 2;
-      if (n2 > n) {
-        throw new FieldException("x length must be power of 2");
+    checkPowerOfTwo(x[0].length);
+    return FT1D(x, forward);
+  }
+
+  /**
+   * compute 1-D Fourier transform of real values, using a complex
+   * transform of half the length when the length is even
+   * @param x real values to take Fourier transform of
+   * @param forward true for forward and false for backward
+   * @return Fourier transform of x, dimensioned [2][length], the
+   *         first index (2) is over real & imaginary parts
+   * @throws VisADException  a VisAD error occurred
+   */
+  public static double[][] realFT1D(double[] x, boolean forward)
+         throws VisADException {
+    if (x == null) return null;
+    int n = x.length;
+    double[][] y = new double[2][n];
+    if (n == 0) return y;
+    FFTPlan.get(n).realTransform(x, y[0], y[1]);
+    if (!forward) {
+      // backward transform of real values is the conjugate of
+      // the forward transform
+      for (int i=0; i<n; i++) {
+        y[0][i] /= n;
+        y[1][i] = -y[1][i] / n;
       }
     }
-    n2 = n/2;
-    double[][] temp = new double[2][n2];
-    double angle = (double) (-2.0 * Math.PI / n);
-    if (!forward) angle = -angle;
-    for (int i=0; i<n2; i++) {
-      temp[0][i] = (double) Math.cos(i * angle);
-      temp[1][i] = (double) Math.sin(i * angle);
-    }
-    double[][] y = FFT1D(x, temp);
+    return y;
+  }
+
+  private static double[][] FT1D(double[] re, double[] im, boolean forward) {
+    int n = re.length;
+    double[][] y = new double[2][n];
+    if (n == 0) return y;
+    FFTPlan.get(n).transform(re, im, y[0], y[1], forward);
     if (!forward) {
       for(int i=0; i<n; i++) {
         y[0][i] /= n;
-        y[1][i] /= n; 
+        y[1][i] /= n;
       }
     }
-    return y; 
+    return y;
   }
 
-  /** inner function for 1-D Fast Fourier Transform */
-  private static double[][] FFT1D(double[][] x, double[][] temp) {
-    int n = x[0].length;
-    int n2 = n/2;
-    int k=0;
-    int butterfly;
-    int buttered=0; 
-    if (n==1) {
-      double[][] z1 = {{x[0][0]}, {x[1][0]}};
-      return z1;
-    }
-
-    butterfly= (temp[0].length/n2);
-
-    double[][] z = new double[2][n2];
-    double[][] w = new double[2][n2];
-
-    for (k=0; k<n2; k++) {
-      int k2 = 2 * k;
-      z[0][k] = x[0][k2];
-      z[1][k] = x[1][k2];
-      w[0][k] = x[0][k2 + 1];
-      w[1][k] = x[1][k2 + 1];
+  private static void checkPowerOfTwo(int n) throws VisADException {
+    int n2 = 1;
+    while (n2 < n) {
+      n2 *= 2;
+      if (n2 > n) {
+        throw new FieldException("x length must be power of 2");
+      }
     }
+  }
 
-    z = FFT1D(z, temp);
-    w = FFT1D(w, temp);
+  private static double[] toDoubles(float[] x) {
+    double[] y = new double[x.length];
+    for (int i=0; i<x.length; i++) y[i] = x[i];
+    return y;
+  }
 
-    double[][] y = new double[2][n];
-    for (k=0; k<n2;k++) {
-      y[0][k] = z[0][k];
-      y[1][k] = z[1][k];
-
-      double re = w[0][k] * temp[0][buttered] - w[1][k] * temp[1][buttered];
-      double im = w[0][k] * temp[1][buttered] + w[1][k] * temp[0][buttered];
-      w[0][k] = re;
-      w[1][k] = im;
-
-      y[0][k] += w[0][k];
-      y[1][k] += w[1][k];
-      y[0][k + n2] = z[0][k] - w[0][k];
-      y[1][k + n2] = z[1][k] - w[1][k];
-      buttered += butterfly;
+  private static float[][] toFloats(double[][] x) {
+    float[][] y = new float[x.length][];
+    for (int j=0; j<x.length; j++) {
+      y[j] = new float[x[j].length];
+      for (int i=0; i<x[j].length; i++) y[j][i] = (float) x[j][i];
     }
     return y;
   }
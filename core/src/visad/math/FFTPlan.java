@@ -0,0 +1,432 @@
+//
+// FFTPlan.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.math;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ FFTPlan holds the factorization and twiddle factors for Fourier
+ transforms of one length, for use by FFT.  Lengths whose prime
+ factors are all small use a mixed-radix Cooley-Tukey FFT; other
+ lengths use Bluestein's algorithm, which computes the transform as
+ a convolution using power of two FFTs.  Either way the cost is
+ O(n log n).  Plans are immutable and may be shared between threads.<p>
+*/
+final class FFTPlan {
+
+  /** largest prime factor handled by the mixed-radix FFT */
+  private static final int MAX_RADIX = 31;
+
+  /** number of recently used plans kept for reuse */
+  private static final int MAX_PLANS = 8;
+
+  private static final LinkedHashMap<Integer, FFTPlan> plans =
+    new LinkedHashMap<Integer, FFTPlan>(16, 0.75f, true);
+
+  /** transform length */
+  private final int n;
+
+  /** cos(2 pi j / n) and sin(2 pi j / n), j = 0, ..., n-1 */
+  private final double[] cos;
+  private final double[] sin;
+
+  /** radices, in order of application; null if using Bluestein */
+  private final int[] factors;
+  private final int maxFactor;
+
+  /** power of two plan for the Bluestein convolution */
+  private final FFTPlan conv;
+
+  /** Bluestein chirp exp(-i pi k^2 / n), k = 0, ..., n-1 */
+  private final double[] chirpRe;
+  private final double[] chirpIm;
+
+  /** FFT of the Bluestein convolution kernel for forward and
+      backward transforms */
+  private final double[][] kernelForward;
+  private final double[][] kernelBackward;
+
+  /**
+   * return a plan for transforms of length n, reusing a recently
+   * used plan if there is one
+   */
+  static FFTPlan get(int n) {
+    Integer key = Integer.valueOf(n);
+    synchronized (plans) {
+      FFTPlan plan = plans.get(key);
+      if (plan != null) return plan;
+    }
+    FFTPlan plan = new FFTPlan(n);
+    synchronized (plans) {
+      plans.put(key, plan);
+      if (plans.size() > MAX_PLANS) {
+        Iterator<Map.Entry<Integer, FFTPlan>> iter =
+          plans.entrySet().iterator();
+        iter.next();
+        iter.remove();
+      }
+    }
+    return plan;
+  }
+
+  private FFTPlan(int n) {
+    this.n = n;
+    cos = new double[n];
+    sin = new double[n];
+    for (int j=0; j<n; j++) {
+      double angle = 2.0 * Math.PI * j / n;
+      cos[j] = Math.cos(angle);
+      sin[j] = Math.sin(angle);
+    }
+
+    int[] f = factor(n);
+    if (f != null) {
+      factors = f;
+      int max = 1;
+      for (int i=0; i<f.length; i++) max = Math.max(max, f[i]);
+      maxFactor = max;
+      conv = null;
+      chirpRe = null;
+      chirpIm = null;
+      kernelForward = null;
+      kernelBackward = null;
+    }
+    else {
+      factors = null;
+      maxFactor = 0;
+      int m = 1;
+      while (m < 2 * n - 1) m *= 2;
+      conv = get(m);
+
+      chirpRe = new double[n];
+      chirpIm = new double[n];
+      long n2 = 2L * n;
+      for (int k=0; k<n; k++) {
+        // reduce k^2 modulo 2n to keep the angle accurate
+        long kk = ((long) k * (long) k) % n2;
+        double angle = Math.PI * kk / n;
+        chirpRe[k] = Math.cos(angle);
+        chirpIm[k] = -Math.sin(angle);
+      }
+      kernelForward = kernel(true);
+      kernelBackward = kernel(false);
+    }
+  }
+
+  /**
+   * return factors of n with radix 4 first, or null if n has a prime
+   * factor larger than MAX_RADIX
+   */
+  private static int[] factor(int n) {
+    int[] f = new int[32];
+    int nf = 0;
+    int rest = n;
+    while (rest % 4 == 0) {
+      f[nf++] = 4;
+      rest /= 4;
+    }
+    int p = 2;
+    while (rest > 1) {
+      if (p > MAX_RADIX) return null;
+      if (rest % p == 0) {
+        f[nf++] = p;
+        rest /= p;
+      }
+      else {
+        p = (p == 2) ? 3 : p + 2;
+      }
+    }
+    int[] factors = new int[nf];
+    System.arraycopy(f, 0, factors, 0, nf);
+    return factors;
+  }
+
+  /** FFT of the Bluestein kernel conj(chirp), wrapped to length m */
+  private double[][] kernel(boolean forward) {
+    int m = conv.n;
+    double[] re = new double[m];
+    double[] im = new double[m];
+    // chirp for the backward transform is the conjugate of the forward
+    double sign = forward ? 1.0 : -1.0;
+    re[0] = chirpRe[0];
+    im[0] = -sign * chirpIm[0];
+    for (int k=1; k<n; k++) {
+      re[k] = re[m - k] = chirpRe[k];
+      im[k] = im[m - k] = -sign * chirpIm[k];
+    }
+    double[] outRe = new double[m];
+    double[] outIm = new double[m];
+    conv.transform(re, im, outRe, outIm, true);
+    return new double[][] {outRe, outIm};
+  }
+
+  int getLength() {
+    return n;
+  }
+
+  /**
+   * compute the unnormalized discrete Fourier transform of (re, im)
+   * into (outRe, outIm); the input arrays are not modified and must
+   * not be the same as the output arrays
+   * @param forward true for exp(-2 pi i j k / n) and false for
+   *                exp(+2 pi i j k / n)
+   */
+  void transform(double[] re, double[] im, double[] outRe, double[] outIm,
+                 boolean forward) {
+    if (n == 1) {
+      outRe[0] = re[0];
+      outIm[0] = im[0];
+      return;
+    }
+    if (factors != null) {
+      double[] scratchRe = new double[maxFactor];
+      double[] scratchIm = new double[maxFactor];
+      mixedRadix(re, im, 0, 1, outRe, outIm, 0, n, 0,
+                 forward ? -1.0 : 1.0, scratchRe, scratchIm);
+    }
+    else {
+      bluestein(re, im, outRe, outIm, forward);
+    }
+  }
+
+  /**
+   * decimation in time: transform the length len subsequence of x
+   * starting at xoff with the given stride into y at yoff
+   */
+  private void mixedRadix(double[] xRe, double[] xIm, int xoff, int stride,
+                          double[] yRe, double[] yIm, int yoff, int len,
+                          int fi, double sign,
+                          double[] tRe, double[] tIm) {
+    if (len == 1) {
+      yRe[yoff] = xRe[xoff];
+      yIm[yoff] = xIm[xoff];
+      return;
+    }
+    int p = factors[fi];
+    int m = len / p;
+    for (int q=0; q<p; q++) {
+      mixedRadix(xRe, xIm, xoff + q * stride, stride * p,
+                 yRe, yIm, yoff + q * m, m, fi + 1, sign, tRe, tIm);
+    }
+
+    // twiddle step for roots of unity of order len, and of order p
+    int step = n / len;
+    int pstep = n / p;
+    for (int k=0; k<m; k++) {
+      // twiddled outputs of the p sub-transforms
+      for (int q=0; q<p; q++) {
+        int i = yoff + q * m + k;
+        int w = q * k * step;
+        double c = cos[w];
+        double s = sign * sin[w];
+        tRe[q] = yRe[i] * c - yIm[i] * s;
+        tIm[q] = yRe[i] * s + yIm[i] * c;
+      }
+
+      // p-point DFTs
+      if (p == 2) {
+        int i0 = yoff + k;
+        int i1 = i0 + m;
+        yRe[i0] = tRe[0] + tRe[1];
+        yIm[i0] = tIm[0] + tIm[1];
+        yRe[i1] = tRe[0] - tRe[1];
+        yIm[i1] = tIm[0] - tIm[1];
+      }
+      else if (p == 4) {
+        double a0Re = tRe[0] + tRe[2];
+        double a0Im = tIm[0] + tIm[2];
+        double a1Re = tRe[0] - tRe[2];
+        double a1Im = tIm[0] - tIm[2];
+        double b0Re = tRe[1] + tRe[3];
+        double b0Im = tIm[1] + tIm[3];
+        // multiply t1 - t3 by exp(sign * i pi / 2) = sign * i
+        double b1Re = -sign * (tIm[1] - tIm[3]);
+        double b1Im = sign * (tRe[1] - tRe[3]);
+        int i0 = yoff + k;
+        yRe[i0] = a0Re + b0Re;
+        yIm[i0] = a0Im + b0Im;
+        yRe[i0 + m] = a1Re + b1Re;
+        yIm[i0 + m] = a1Im + b1Im;
+        yRe[i0 + 2 * m] = a0Re - b0Re;
+        yIm[i0 + 2 * m] = a0Im - b0Im;
+        yRe[i0 + 3 * m] = a1Re - b1Re;
+        yIm[i0 + 3 * m] = a1Im - b1Im;
+      }
+      else {
+        for (int s=0; s<p; s++) {
+          double re = tRe[0];
+          double im = tIm[0];
+          for (int q=1; q<p; q++) {
+            int w = ((q * s) % p) * pstep;
+            double c = cos[w];
+            double sn = sign * sin[w];
+            re += tRe[q] * c - tIm[q] * sn;
+            im += tRe[q] * sn + tIm[q] * c;
+          }
+          yRe[yoff + k + s * m] = re;
+          yIm[yoff + k + s * m] = im;
+        }
+      }
+    }
+  }
+
+  /**
+   * Bluestein's algorithm: x_k * chirp_k convolved with conj(chirp),
+   * then multiplied by chirp
+   */
+  private void bluestein(double[] re, double[] im,
+                         double[] outRe, double[] outIm, boolean forward) {
+    int m = conv.n;
+    double sign = forward ? 1.0 : -1.0;
+    double[] aRe = new double[m];
+    double[] aIm = new double[m];
+    for (int k=0; k<n; k++) {
+      double c = chirpRe[k];
+      double s = sign * chirpIm[k];
+      aRe[k] = re[k] * c - im[k] * s;
+      aIm[k] = re[k] * s + im[k] * c;
+    }
+    double[] fRe = new double[m];
+    double[] fIm = new double[m];
+    conv.transform(aRe, aIm, fRe, fIm, true);
+
+    double[][] kernel = forward ? kernelForward : kernelBackward;
+    for (int k=0; k<m; k++) {
+      double r = fRe[k] * kernel[0][k] - fIm[k] * kernel[1][k];
+      double i = fRe[k] * kernel[1][k] + fIm[k] * kernel[0][k];
+      fRe[k] = r;
+      fIm[k] = i;
+    }
+    conv.transform(fRe, fIm, aRe, aIm, false);
+
+    for (int k=0; k<n; k++) {
+      double c = chirpRe[k] / m;
+      double s = sign * chirpIm[k] / m;
+      outRe[k] = aRe[k] * c - aIm[k] * s;
+      outIm[k] = aRe[k] * s + aIm[k] * c;
+    }
+  }
+
+  /**
+   * compute the unnormalized forward transform of the real sequence x
+   * into (outRe, outIm), using a complex transform of half the length
+   * when n is even
+   */
+  void realTransform(double[] x, double[] outRe, double[] outIm) {
+    if (n % 2 != 0 || n < 4) {
+      transform(x, new double[n], outRe, outIm, true);
+      return;
+    }
+
+    // pack even and odd samples as real and imaginary parts
+    int h = n / 2;
+    double[] zRe = new double[h];
+    double[] zIm = new double[h];
+    for (int k=0; k<h; k++) {
+      zRe[k] = x[2 * k];
+      zIm[k] = x[2 * k + 1];
+    }
+    separate(zRe, zIm, outRe, outIm);
+    for (int k=1; k<h; k++) {
+      outRe[n - k] = outRe[k];
+      outIm[n - k] = -outIm[k];
+    }
+  }
+
+  /**
+   * as realTransform(double[], double[], double[]), for floats; only
+   * half length arrays of doubles are used
+   */
+  void realTransform(float[] x, float[] outRe, float[] outIm) {
+    if (n % 2 != 0 || n < 4) {
+      double[] re = new double[n];
+      for (int k=0; k<n; k++) re[k] = x[k];
+      double[] yRe = new double[n];
+      double[] yIm = new double[n];
+      transform(re, new double[n], yRe, yIm, true);
+      for (int k=0; k<n; k++) {
+        outRe[k] = (float) yRe[k];
+        outIm[k] = (float) yIm[k];
+      }
+      return;
+    }
+
+    // pack even and odd samples as real and imaginary parts, then
+    // reuse the packed arrays for the first half of the result
+    int h = n / 2;
+    double[] zRe = new double[h + 1];
+    double[] zIm = new double[h + 1];
+    for (int k=0; k<h; k++) {
+      zRe[k] = x[2 * k];
+      zIm[k] = x[2 * k + 1];
+    }
+    separate(zRe, zIm, zRe, zIm);
+    for (int k=0; k<=h; k++) {
+      outRe[k] = (float) zRe[k];
+      outIm[k] = (float) zIm[k];
+    }
+    for (int k=1; k<h; k++) {
+      outRe[n - k] = outRe[k];
+      outIm[n - k] = -outIm[k];
+    }
+  }
+
+  /**
+   * transform the n / 2 packed even and odd samples (zRe, zIm) and
+   * write elements 0 to n / 2 of the transform of the real sequence
+   * to (outRe, outIm), which may be (zRe, zIm)
+   */
+  private void separate(double[] zRe, double[] zIm, double[] outRe,
+                        double[] outIm) {
+    int h = n / 2;
+    double[] fRe = new double[h];
+    double[] fIm = new double[h];
+    get(h).transform(zRe, zIm, fRe, fIm, true);
+
+    // separate the transforms of the even and odd samples
+    for (int k=0; k<=h; k++) {
+      int k1 = (k == h) ? 0 : k;
+      int k2 = (k == 0) ? 0 : h - k;
+      double aRe = fRe[k1];
+      double aIm = fIm[k1];
+      double bRe = fRe[k2];
+      double bIm = -fIm[k2];
+      // even = (a + b) / 2, odd = -i (a - b) / 2
+      double eRe = 0.5 * (aRe + bRe);
+      double eIm = 0.5 * (aIm + bIm);
+      double oRe = 0.5 * (aIm - bIm);
+      double oIm = -0.5 * (aRe - bRe);
+      // X_k = even + exp(-2 pi i k / n) odd
+      double c = cos[k];
+      double s = -sin[k];
+      outRe[k] = eRe + oRe * c - oIm * s;
+      outIm[k] = eIm + oRe * s + oIm * c;
+    }
+  }
+}
@@ -28,6 +28,7 @@ package visad.math;
 
 import visad.*;
 import visad.java3d.*;
+import visad.util.ParallelChunks;
 
 import java.rmi.*;
 import java.awt.*;
@@ -37,10 +38,41 @@ import javax.swing.*;
 /**
  Histogram is the VisAD class for creating histograms of Field
  values.<p>
+
+ The static makeHistogram methods histogram a single Field.  To
+ accumulate a histogram over many Fields, e.g. the steps of a time
+ sequence, construct a Histogram with the bins Set, call add for each
+ Field, and then call getHistogram; only the counts are kept between
+ calls to add.<p>
+
+ Bin indices are computed arithmetically for bins that are
+ Linear1DSet, Linear2DSet, Linear3DSet or LinearNDSet (or their
+ Integer subclasses), and with Set.valueToIndex otherwise.  Large
+ Fields are counted in parallel chunks, with per-chunk counts merged
+ at the end.<p>
 */
 
 public class Histogram {
 
+  /** minimum number of samples for counting in parallel */
+  private static final int PARALLEL_THRESHOLD = 65536;
+
+  /** maximum number of samples passed to Set.valueToIndex at once */
+  private static final int INDEX_CHUNK = 16384;
+
+  /** the bins */
+  private final Set set;
+
+  /** RealTypes of the bins Set components */
+  private final RealType[] srealComponents;
+
+  /** for each Set component, the Linear1DSet of its grid; null if
+      bin indices must be computed by Set.valueToIndex */
+  private final Linear1DSet[] linear;
+
+  /** count of values in each bin */
+  private final long[] counts;
+
   /** invoke in SpreadSheet by:
       link(visad.math.Histogram.makeHistogram(A1, A2))
   */
@@ -74,14 +106,71 @@ public class Histogram {
       defined by the samples of set */
   public static FlatField makeHistogram(Field field, Set set)
          throws VisADException, RemoteException {
-    FunctionType ftype = (FunctionType) field.getType();
-    RealType[] frealComponents = ftype.getRealComponents();
+    Histogram histogram = new Histogram(set);
+    histogram.add(field);
+    return histogram.getHistogram();
+  }
 
+  /**
+   * construct an empty histogram
+   * @param set defines the bins; each range value of an added
+   *            Field is counted in the bin of the nearest sample
+   *            of set, or not at all if it is outside set
+   * @throws VisADException  a VisAD error occurred
+   */
+  public Histogram(Set set) throws VisADException {
+    this.set = set;
     RealTupleType stype = ((SetType) set.getType()).getDomain();
-    RealType[] srealComponents = stype.getRealComponents();
+    srealComponents = stype.getRealComponents();
+    counts = new long[set.getLength()];
+    linear = linearComponents(set);
+  }
 
-    RealType count = RealType.getRealType("count");
-    FunctionType htype = new FunctionType(stype, count);
+  /**
+   * return the 1-D components of set if bin indices can be computed
+   * from them arithmetically, otherwise null
+   */
+  private static Linear1DSet[] linearComponents(Set set)
+          throws VisADException {
+    // subclasses such as LinearLatLonSet may override valueToGrid
+    Class c = set.getClass();
+    if (c != Linear1DSet.class && c != Integer1DSet.class &&
+        c != Linear2DSet.class && c != Integer2DSet.class &&
+        c != Linear3DSet.class && c != Integer3DSet.class &&
+        c != LinearNDSet.class && c != IntegerNDSet.class) {
+      return null;
+    }
+    int dim = set.getDimension();
+    Linear1DSet[] components = new Linear1DSet[dim];
+    for (int i=0; i<dim; i++) {
+      components[i] = ((LinearSet) set).getLinear1DComponent(i);
+      // valueToGrid of a multi-dimensional set throws an Exception
+      // for degenerate components, so let it do that
+      if (dim > 1 && components[i].getLength() < 2) return null;
+    }
+    return components;
+  }
+
+  /**
+   * add the range values of field to the counts; if the range of
+   * field is itself a Field (e.g. a time sequence), add the range
+   * values of each of its samples, one sample at a time
+   * @param field Field whose range includes the RealTypes of
+   *              the components of the bins Set
+   * @throws VisADException  a VisAD error occurred
+   * @throws RemoteException  an RMI error occurred
+   */
+  public synchronized void add(Field field)
+         throws VisADException, RemoteException {
+    FunctionType ftype = (FunctionType) field.getType();
+    if (ftype.getRange() instanceof FunctionType) {
+      int len = field.getLength();
+      for (int i=0; i<len; i++) {
+        add((Field) field.getSample(i));
+      }
+      return;
+    }
+    RealType[] frealComponents = ftype.getRealComponents();
 
     int dim = srealComponents.length;
     float[][] field_values = field.getFloats(false);
@@ -98,13 +187,148 @@ public class Histogram {
                                 " does not occur in " + ftype);
       }
     }
-    int[] indices = set.valueToIndex(set_values);
-    int len = set.getLength();
-    float[][] hist_values = new float[1][len];
-    for (int i=0; i<len; i++) hist_values[0][i] = 0.0f;
-    for (int j=0; j<indices.length; j++) {
-      if (indices[j] >= 0) hist_values[0][indices[j]]++;
+    add(set_values);
+  }
+
+  /**
+   * add values to the counts
+   * @param values values dimensioned [set dimension][number of values]
+   * @throws VisADException  a VisAD error occurred
+   */
+  public synchronized void add(final float[][] values)
+         throws VisADException {
+    if (values.length != srealComponents.length) {
+      throw new SetException("Histogram.add: value dimension " +
+                             values.length + " not equal to Set dimension " +
+                             srealComponents.length);
+    }
+    int n = values[0].length;
+    if (n == 0) return;
+
+    int threads = ParallelChunks.getParallelism();
+    if (n < PARALLEL_THRESHOLD || threads < 2) {
+      count(values, 0, n, counts);
+      return;
+    }
+
+    // one chunk, with its own counts, per thread
+    int chunkSize = (n + threads - 1) / threads;
+    int nchunks = (n + chunkSize - 1) / chunkSize;
+    final long[][] partial = new long[nchunks][];
+    final int size = chunkSize;
+    try {
+      ParallelChunks.run(n, chunkSize, new ParallelChunks.Chunk() {
+        public void run(int start, int end) throws VisADException {
+          long[] c = new long[counts.length];
+          count(values, start, end, c);
+          partial[start / size] = c;
+        }
+      });
     }
+    catch (RemoteException e) {
+      throw new VisADException(e.toString());
+    }
+    for (int k=0; k<nchunks; k++) {
+      long[] c = partial[k];
+      for (int i=0; i<c.length; i++) counts[i] += c[i];
+    }
+  }
+
+  /** count values with indices [start, end) into c */
+  private void count(float[][] values, int start, int end, long[] c)
+          throws VisADException {
+    if (linear != null) {
+      countLinear(values, start, end, c);
+      return;
+    }
+    int dim = values.length;
+    for (int s=start; s<end; s+=INDEX_CHUNK) {
+      int len = Math.min(INDEX_CHUNK, end - s);
+      float[][] chunk = new float[dim][len];
+      for (int i=0; i<dim; i++) {
+        System.arraycopy(values[i], s, chunk[i], 0, len);
+      }
+      int[] indices = set.valueToIndex(chunk);
+      for (int j=0; j<len; j++) {
+        if (indices[j] >= 0) c[indices[j]]++;
+      }
+    }
+  }
+
+  /**
+   * count values into the bins of a cross product of arithmetic
+   * progressions, with the same arithmetic as Linear1DSet.valueToGrid
+   * and GriddedSet.valueToIndex
+   */
+  private void countLinear(float[][] values, int start, int end, long[] c)
+          throws VisADException {
+    int dim = linear.length;
+    float[] low = new float[dim];
+    float[] high = new float[dim];
+    double[] first = new double[dim];
+    double[] invstep = new double[dim];
+    int[] lengths = new int[dim];
+    for (int i=0; i<dim; i++) {
+      Linear1DSet l = linear[i];
+      first[i] = l.getFirst();
+      double step = l.getStep();
+      invstep[i] = l.getInvstep();
+      lengths[i] = l.getLength();
+      low[i] = (float) (first[i] - 0.5 * step);
+      high[i] = (float) (first[i] + (((float) lengths[i]) - 0.5) * step);
+      if (high[i] < low[i]) {
+        float temp = low[i];
+        low[i] = high[i];
+        high[i] = temp;
+      }
+    }
+
+    for (int j=start; j<end; j++) {
+      int index = 0;
+      int stride = 1;
+      for (int i=0; i<dim; i++) {
+        float v = values[i][j];
+        if (!(low[i] < v && v < high[i])) {
+          index = -1;
+          break;
+        }
+        float g = (float) ((v - first[i]) * invstep[i]);
+        index += stride * ((int) (g + 0.5));
+        stride *= lengths[i];
+      }
+      if (index >= 0) c[index]++;
+    }
+  }
+
+  /**
+   * @return a copy of the count of values in each bin
+   */
+  public synchronized long[] getCounts() {
+    return (long[]) counts.clone();
+  }
+
+  /**
+   * set all counts to zero
+   */
+  public synchronized void clear() {
+    for (int i=0; i<counts.length; i++) counts[i] = 0;
+  }
+
+  /**
+   * @return the histogram of the values added so far, as a Field
+   *         with the bins Set as its domain and "count" as its range
+   * @throws VisADException  a VisAD error occurred
+   * @throws RemoteException  an RMI error occurred
+   */
+  public synchronized FlatField getHistogram()
+         throws VisADException, RemoteException {
+    RealTupleType stype = ((SetType) set.getType()).getDomain();
+    RealType count = RealType.getRealType("count");
+    FunctionType htype = new FunctionType(stype, count);
+
+    int len = counts.length;
+    float[][] hist_values = new float[1][len];
+    for (int i=0; i<len; i++) hist_values[0][i] = (float) counts[i];
 
     FlatField result = new FlatField(htype, set);
     result.setSamples(hist_values, false);
@@ -0,0 +1,203 @@
+//
+// ParallelChunks.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.util;
+
+import visad.VisADException;
+
+import java.rmi.RemoteException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a computation over an index range [0, length) by splitting the
+ * range into contiguous chunks and running the chunks concurrently on a
+ * shared ForkJoinPool.  Each chunk must only write to the part of its
+ * output arrays that corresponds to its own index range, so that the
+ * result is the same as running the whole range on one thread.<P>
+ *
+ * Exceptions thrown by chunks are collected; once all chunks have
+ * finished the exception from the lowest-indexed failing chunk is
+ * thrown, with the others attached as suppressed exceptions.
+ */
+public final class ParallelChunks {
+
+  /** shared pool, created lazily */
+  private static ForkJoinPool pool = null;
+
+  /** number of worker threads for the shared pool */
+  private static int parallelism =
+    Runtime.getRuntime().availableProcessors();
+
+  private ParallelChunks() {
+  }
+
+  /**
+   * A unit of work over the index range [start, end).
+   */
+  public interface Chunk {
+
+    /**
+     * Process indices start (inclusive) to end (exclusive).
+     *
+     * @param start first index of this chunk
+     * @param end   one past the last index of this chunk
+     *
+     * @throws Exception
+     */
+    public void run(int start, int end) throws Exception;
+  }
+
+  /**
+   * Set the number of worker threads used by the shared pool.  Takes
+   * effect for a pool created after this call; an existing pool keeps
+   * its size.
+   *
+   * @param threads number of threads; values < 1 mean the number
+   *                of available processors
+   */
+  public static synchronized void setParallelism(int threads) {
+    if (threads < 1) {
+      threads = Runtime.getRuntime().availableProcessors();
+    }
+    parallelism = threads;
+  }
+
+  /**
+   * @return the number of worker threads used by the shared pool
+   */
+  public static synchronized int getParallelism() {
+    return (pool != null) ? pool.getParallelism() : parallelism;
+  }
+
+  /**
+   * @return the shared pool, creating it if necessary
+   */
+  public static synchronized ForkJoinPool getPool() {
+    if (pool == null) {
+      pool = new ForkJoinPool(parallelism);
+    }
+    return pool;
+  }
+
+  /**
+   * Split [0, length) into chunks of at most chunkSize indices and run
+   * them concurrently, returning when all have finished.  If there is
+   * only one chunk or the pool has a single thread, the chunks are run
+   * on the calling thread.
+   *
+   * @param length    total number of indices
+   * @param chunkSize maximum number of indices per chunk
+   * @param chunk     the work to do for each chunk
+   *
+   * @throws VisADException  if a chunk threw a VisADException
+   * @throws RemoteException if a chunk threw a RemoteException
+   */
+  public static void run(int length, int chunkSize, final Chunk chunk)
+         throws VisADException, RemoteException {
+    if (length <= 0) return;
+    if (chunkSize < 1) chunkSize = 1;
+    int n = (length + chunkSize - 1) / chunkSize;
+    final Exception[] exceptions = new Exception[n];
+
+    if (n == 1 || getParallelism() < 2) {
+      for (int c=0; c<n; c++) {
+        int start = c * chunkSize;
+        try {
+          chunk.run(start, Math.min(length, start + chunkSize));
+        }
+        catch (Exception e) {
+          exceptions[c] = e;
+          break;
+        }
+      }
+    }
+    else {
+      List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(n);
+      for (int c=0; c<n; c++) {
+        final int index = c;
+        final int start = c * chunkSize;
+        final int end = Math.min(length, start + chunkSize);
+        tasks.add(new RecursiveAction() {
+          protected void compute() {
+            try {
+              chunk.run(start, end);
+            }
+            catch (Exception e) {
+              exceptions[index] = e;
+            }
+          }
+        });
+      }
+      if (ForkJoinTask.inForkJoinPool()) {
+        // already on a pool thread, so let this thread help
+        ForkJoinTask.invokeAll(tasks);
+      }
+      else {
+        ForkJoinPool p = getPool();
+        for (ForkJoinTask<?> task : tasks) {
+          p.execute(task);
+        }
+        for (ForkJoinTask<?> task : tasks) {
+          task.join();
+        }
+      }
+    }
+    throwExceptions(exceptions);
+  }
+
+  /**
+   * Throw the first non-null exception in the given array (if any),
+   * with the remaining ones added as suppressed exceptions.
+   *
+   * @param exceptions exceptions in chunk order; may contain nulls
+   *
+   * @throws VisADException
+   * @throws RemoteException
+   */
+  static void throwExceptions(Exception[] exceptions)
+         throws VisADException, RemoteException {
+    Exception first = null;
+    for (int i=0; i<exceptions.length; i++) {
+      if (exceptions[i] == null) continue;
+      if (first == null) {
+        first = exceptions[i];
+      }
+      else {
+        first.addSuppressed(exceptions[i]);
+      }
+    }
+    if (first == null) return;
+    if (first instanceof VisADException) throw (VisADException) first;
+    if (first instanceof RemoteException) throw (RemoteException) first;
+    if (first instanceof RuntimeException) throw (RuntimeException) first;
+    throw new RuntimeException(first);
+  }
+}
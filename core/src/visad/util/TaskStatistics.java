@@ -0,0 +1,178 @@
+//
+// TaskStatistics.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2021 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts of queued, running and completed tasks, and the times
+ * completed tasks spent waiting to start and running, kept without
+ * locking.  Used by {@link ThreadPool} and {@link ThreadManager},
+ * which also share the lookup of virtual threads here.
+ */
+public final class TaskStatistics {
+
+  /** tasks waiting to start */
+  private final AtomicInteger queued = new AtomicInteger(0);
+
+  /** tasks running */
+  private final AtomicInteger active = new AtomicInteger(0);
+
+  /** tasks finished, and their total and maximum queue waits and run
+      times, in nanoseconds */
+  private final AtomicLong completed = new AtomicLong(0);
+  private final AtomicLong totalWait = new AtomicLong(0);
+  private final AtomicLong maxWait = new AtomicLong(0);
+  private final AtomicLong totalRun = new AtomicLong(0);
+  private final AtomicLong maxRun = new AtomicLong(0);
+
+  TaskStatistics() {
+  }
+
+  /**
+   * Get an executor starting a new virtual thread for each task.
+   *
+   * @return the executor, or null if this Java runtime has no virtual
+   *         threads
+   */
+  static ExecutorService newVirtualThreadExecutor() {
+    try {
+      // Java 21 and later; look it up so this compiles on older Javas
+      return (ExecutorService)
+        Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    }
+    catch (Exception exc) {
+      return null;
+    }
+  }
+
+  /** count tasks that were queued, or with count < 0 that were not */
+  void queued(int count) {
+    queued.addAndGet(count);
+  }
+
+  /** count a queued task that started */
+  void started() {
+    queued.decrementAndGet();
+    active.incrementAndGet();
+  }
+
+  /**
+   * count a started task that finished
+   *
+   * @param wait nanoseconds it waited to start
+   * @param run  nanoseconds it ran
+   */
+  void finished(long wait, long run) {
+    active.decrementAndGet();
+    completed.incrementAndGet();
+    totalWait.addAndGet(wait);
+    raise(maxWait, wait);
+    totalRun.addAndGet(run);
+    raise(maxRun, run);
+  }
+
+  private static void raise(AtomicLong max, long value) {
+    long old = max.get();
+    while (value > old && !max.compareAndSet(old, value)) {
+      old = max.get();
+    }
+  }
+
+  /**
+   * @return number of tasks waiting to start
+   */
+  public int getQueueLength() {
+    return Math.max(0, queued.get());
+  }
+
+  /**
+   * @return number of tasks running
+   */
+  public int getActiveCount() {
+    return active.get();
+  }
+
+  /**
+   * @return number of tasks finished since the statistics were created
+   *         or last reset
+   */
+  public long getCompletedCount() {
+    return completed.get();
+  }
+
+  /**
+   * @return mean time, in milliseconds, finished tasks waited to
+   *         start, or 0 if none have finished
+   */
+  public double getMeanWaitTime() {
+    return mean(totalWait);
+  }
+
+  /**
+   * @return maximum time, in milliseconds, a finished task waited to
+   *         start
+   */
+  public double getMaxWaitTime() {
+    return maxWait.get() / 1.0e6;
+  }
+
+  /**
+   * @return mean run time, in milliseconds, of finished tasks, or 0 if
+   *         none have finished
+   */
+  public double getMeanRunTime() {
+    return mean(totalRun);
+  }
+
+  /**
+   * @return maximum run time, in milliseconds, of a finished task
+   */
+  public double getMaxRunTime() {
+    return maxRun.get() / 1.0e6;
+  }
+
+  private double mean(AtomicLong total) {
+    long count = completed.get();
+    return (count == 0) ? 0.0 : total.get() / (1.0e6 * count);
+  }
+
+  /**
+   * Reset the counts and times of finished tasks.
+   */
+  public void reset() {
+    completed.set(0);
+    totalWait.set(0);
+    maxWait.set(0);
+    totalRun.set(0);
+    maxRun.set(0);
+  }
+}
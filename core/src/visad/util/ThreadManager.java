@@ -35,12 +35,28 @@ import java.rmi.RemoteException;
 import java.util.Hashtable;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class provides support for running a collection of Runnables
  * concurrently. It will collect and then throw any exceptions that
- * are thrown. It uses the static maxThreads as the number of threads
- * to run. The default is 1, resulting in sequential execution.
+ * are thrown. It uses the static maxThreads as the maximum number of
+ * Runnables to run at once. The default is the number of available
+ * processors, and can be set with the visad.threadmanager.maxthreads
+ * system property; 1 results in sequential execution.
+ * <P>
+ * The Runnables are run on the calling thread and on the
+ * ForkJoinPool shared with {@link ParallelChunks}, or on virtual
+ * threads if they are available and enabled with
+ * {@link #setUseVirtualThreads} or the
+ * visad.threadmanager.virtualthreads system property. Counts and
+ * times of the Runnables run by all ThreadManagers are available
+ * from {@link #getStatistics}.
  */
 
 public class ThreadManager {
@@ -49,7 +65,18 @@ public class ThreadManager {
   private String name = "ThreadManager";
 
   /**           */
-  private static int maxThreads = 1;
+  private static int maxThreads =
+    Integer.getInteger("visad.threadmanager.maxthreads", 0).intValue();
+
+  /** run Runnables on virtual threads, if available */
+  private static boolean useVirtualThreads =
+    Boolean.getBoolean("visad.threadmanager.virtualthreads");
+
+  /** shared virtual thread executor, created lazily */
+  private static ExecutorService virtualExecutor = null;
+
+  /** counts and times of the Runnables of all ThreadManagers */
+  private static final TaskStatistics statistics = new TaskStatistics();
 
   /**           */
   private List<VisADException> visadExceptions =
@@ -129,6 +156,50 @@ public class ThreadManager {
      return maxThreads;
   }
 
+  /**
+   * Run Runnables on virtual threads rather than on the shared
+   * ForkJoinPool. Has no effect if the Java runtime does not
+   * support virtual threads.
+   *
+   * @param use true to use virtual threads
+   */
+  public static synchronized void setUseVirtualThreads(boolean use) {
+    useVirtualThreads = use;
+  }
+
+  /**
+   * @return true if Runnables are run on virtual threads
+   */
+  public static synchronized boolean getUseVirtualThreads() {
+    return getVirtualExecutor() != null;
+  }
+
+  /**
+   * @return the shared virtual thread executor, or null if not
+   *         enabled or not supported
+   */
+  private static synchronized ExecutorService getVirtualExecutor() {
+    if (!useVirtualThreads) return null;
+    if (virtualExecutor == null) {
+      virtualExecutor = TaskStatistics.newVirtualThreadExecutor();
+      if (virtualExecutor == null) {
+        System.err.println("ThreadManager: virtual threads not supported");
+        useVirtualThreads = false;
+      }
+    }
+    return virtualExecutor;
+  }
+
+  /**
+   * @return counts of the Runnables of all ThreadManagers that are
+   *         waiting to start, running and finished, and the times
+   *         from the start of runInParallel until they started and
+   *         their run times
+   */
+  public static TaskStatistics getStatistics() {
+    return statistics;
+  }
+
   public void debug(String msg) {
 
   }
@@ -156,7 +227,7 @@ public class ThreadManager {
    *
    * @param exc 
    */
-  public void handleException(Exception exc) {
+  public synchronized void handleException(Exception exc) {
     if (exc instanceof VisADException) {
       visadExceptions.add((VisADException)exc);
     }
@@ -265,53 +336,32 @@ public class ThreadManager {
         myMaxThreads = Math.max(myMaxThreads, 1);
         myMaxThreads = Math.min(myMaxThreads, MAX_THREADS);
         int max = Math.min(myMaxThreads, runnables.size());
-        int min = max;
         running = true;
         //If we are not running in parallel then just run in this thread
         //so we minimize any side effects
         long t1 = System.currentTimeMillis();
         if(max<2) {
             for (MyRunnable myRunnable : runnables) {
-                try {
-                    myRunnable.run();
-                } catch (Exception exc) {
-                    handleException(exc);
-                } 
+                statistics.queued(1);
+                runTask(myRunnable, System.nanoTime());
                 checkErrors();
             }
         } else {
-            ThreadPool pool;
-            try {
-                pool = new ThreadPool("thread util", min, max);
-            } catch (Exception exc) {
-                throw new RuntimeException(exc);
-            }
-            for (MyRunnable myRunnable : runnables) {
-                runnableStarted();
-                final MyRunnable theRunnable = myRunnable;
-                Runnable runnable = new Runnable() {
-                        public void run() {
-                            try {
-                                theRunnable.run();
-                            } catch (Exception exc) {
-                                handleException(exc);
-                            } finally {
-                                runnableStopped();
-                            }
+            final int n = runnables.size();
+            final AtomicInteger next = new AtomicInteger(0);
+            final long queued = System.nanoTime();
+            statistics.queued(n);
+            // each worker runs Runnables, in order, until none are left
+            Runnable worker = new Runnable() {
+                    public void run() {
+                        int i;
+                        while ((i = next.getAndIncrement()) < n) {
+                            runTask(runnables.get(i), queued);
                         }
-                    };
-                pool.queue(runnable);
-            }
-
-            try {
-                pool.waitForTasks();
-                checkErrors();
-            }  finally {
-                try {
-                    pool.stopThreads();
-                } catch (Exception ignoreThis) {}
-            }
-
+                    }
+                };
+            runWorkers(worker, max);
+            checkErrors();
         }
 
 
@@ -344,16 +394,96 @@ public class ThreadManager {
 
 
   /**
-   * 
+   * Run one Runnable, recording its exception and metrics
+   *
+   * @param runnable the Runnable
+   * @param queued   System.nanoTime() when it was queued
+   */
+  private void runTask(MyRunnable runnable, long queued) {
+    long start = System.nanoTime();
+    statistics.started();
+    runnableStarted();
+    try {
+      runnable.run();
+    } catch (Exception exc) {
+      handleException(exc);
+    } finally {
+      runnableStopped();
+      long end = System.nanoTime();
+      statistics.finished(start - queued, end - start);
+    }
+  }
+
+  /**
+   * Run worker on the calling thread and on count - 1 threads of
+   * the shared executor, and wait for all of them to finish
+   *
+   * @param worker the worker
+   * @param count  number of copies of worker to run
+   *
+   * @throws VisADException if interrupted while waiting
+   */
+  private void runWorkers(Runnable worker, int count)
+          throws VisADException {
+    ExecutorService virtual = getVirtualExecutor();
+    if (virtual != null) {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int i=1; i<count; i++) {
+        futures.add(virtual.submit(worker));
+      }
+      worker.run();
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (InterruptedException exc) {
+          throw new VisADException(name + " interrupted");
+        } catch (ExecutionException exc) {
+          Throwable cause = exc.getCause();
+          if (cause instanceof Error) throw (Error) cause;
+          handleException(cause instanceof Exception ?
+                          (Exception) cause : exc);
+        }
+      }
+    }
+    else {
+      List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+      for (int i=1; i<count; i++) {
+        tasks.add(ForkJoinTask.adapt(worker));
+      }
+      if (ForkJoinTask.inForkJoinPool()) {
+        // nested inside other parallel work, so fork onto this pool
+        for (ForkJoinTask<?> task : tasks) task.fork();
+      }
+      else {
+        ForkJoinPool pool = ParallelChunks.getPool();
+        for (ForkJoinTask<?> task : tasks) pool.execute(task);
+      }
+      worker.run();
+      for (ForkJoinTask<?> task : tasks) task.join();
+    }
+  }
+
+  /**
+   * Throw the first exception thrown by a Runnable, if any, with the
+   * others attached as suppressed exceptions
    *
    * @throws RemoteException 
    * @throws VisADException 
    */
-  private void checkErrors() throws VisADException, RemoteException {
+  private synchronized void checkErrors()
+          throws VisADException, RemoteException {
     try {
-      if (visadExceptions.size() > 0) throw visadExceptions.get(0);
-      if (remoteExceptions.size() > 0) throw remoteExceptions.get(0);
-      if (runtimeExceptions.size() > 0) throw runtimeExceptions.get(0);
+      Exception first = null;
+      if (visadExceptions.size() > 0) first = visadExceptions.get(0);
+      else if (remoteExceptions.size() > 0) first = remoteExceptions.get(0);
+      else if (runtimeExceptions.size() > 0) first = runtimeExceptions.get(0);
+      if (first == null) return;
+      for (Exception exc : getExceptions()) {
+        if (exc != first) first.addSuppressed(exc);
+      }
+      if (first instanceof VisADException) throw (VisADException) first;
+      if (first instanceof RemoteException) throw (RemoteException) first;
+      throw (RuntimeException) first;
     }
     finally {
       running = false;
@@ -366,7 +496,7 @@ public class ThreadManager {
    * 
    * @return The exceptions that were thrown
    */
-  public List<Exception> getExceptions() {
+  public synchronized List<Exception> getExceptions() {
       List<Exception> exceptions = new ArrayList<Exception>();
       exceptions.addAll(visadExceptions);
       exceptions.addAll(remoteExceptions);
@@ -22,12 +22,13 @@ MA 02111-1307, USA
 
 package visad.util;
 
-import java.util.Collection;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A pool of threads which can be used to execute any Runnable tasks. Internally
@@ -37,24 +38,36 @@ import java.util.concurrent.ThreadPoolExecutor;
  * original API. Note that a java.util.concurrent.ThreadPoolExecutor does not
  * support the notion of minimum and maximum threads so minimum threads is
  * ignored, and maximum threads is simply the size of the thread pool.
+ * <P>
+ * A pool may instead run each task in its own virtual thread, when the Java
+ * runtime supports them; the maximum number of threads is then ignored.
+ * <P>
+ * The pool keeps counts of its queued and running tasks, and the time tasks
+ * spend waiting in the queue and running; see {@link #getStatistics()}.
  */
 public class ThreadPool {
 
 	/** Default prefix */
 	private static final String DEFAULT_PREFIX = ThreadPool.class.toString();
 
-	/** Thread pool from core Java */
+	/** Thread pool from core Java, or null if tasks run in virtual threads */
 	private final ThreadPoolExecutor exec;
 
-	/**
-	 * We just need a thread-safe, lock-free, high-performance bag. It does not
-	 * matter that it is a queue.
-	 */
-	private final Collection<Future<?>> bagOfFutures = new ConcurrentLinkedQueue<Future<?>>();
+	/** Executor running the tasks */
+	private final ExecutorService service;
+
+	/** Number of tasks queued or running */
+	private final AtomicInteger pending = new AtomicInteger(0);
 
-	/** waitForTasks requires that we lock this class for a moment */
+	/** Counts and times of the tasks of this pool */
+	private final TaskStatistics statistics = new TaskStatistics();
+
+	/** waitForTasks waits on this until no tasks are pending */
 	private final Object mutex = new Object();
 
+	/** Is the current thread running a task of a ThreadPool */
+	private static final ThreadLocal<ThreadPool> runningIn = new ThreadLocal<ThreadPool>();
+
 	/**
 	 * The available processors on the system. Java Concurrency in Practice, 8.2
 	 * has more information on tuning this number
@@ -87,6 +100,21 @@ public class ThreadPool {
 		this(prefix, 0, PROCESSORS);
 	}
 
+	/**
+	 * Build a thread pool with the specified thread name prefix and the default
+	 * minimum and maximum numbers of threads, optionally running each task in a
+	 * new virtual thread instead.
+	 * 
+	 * @param prefix
+	 * @param virtual
+	 *          <tt>true</tt> to run tasks in virtual threads
+	 * 
+	 * @throws Exception
+	 */
+	public ThreadPool(String prefix, boolean virtual) throws Exception {
+		this(prefix, 0, PROCESSORS, virtual);
+	}
+
 	/**
 	 * Build a thread pool with the specified maximum number of threads, and the
 	 * default thread name prefix and minimum number of threads
@@ -123,6 +151,25 @@ public class ThreadPool {
 	 * @throws Exception
 	 */
 	public ThreadPool(String prefix, int min, int max) throws Exception {
+		this(prefix, min, max, false);
+	}
+
+	/**
+	 * Build a thread pool with the specified thread name prefix and minimum and
+	 * maximum numbers of threads, optionally running each task in a new virtual
+	 * thread instead. Virtual threads are only used if the Java runtime
+	 * supports them; see {@link #isVirtual()}.
+	 * 
+	 * @param prefix
+	 * @param min
+	 * @param max
+	 * @param virtual
+	 *          <tt>true</tt> to run tasks in virtual threads
+	 * 
+	 * @throws Exception
+	 */
+	public ThreadPool(String prefix, int min, int max, boolean virtual)
+			throws Exception {
 		this.prefix = prefix;
 
 		// Tom & Don TODO:
@@ -130,8 +177,77 @@ public class ThreadPool {
 		// test I ran assume this. But I also want to keep the API as it stands now.
 		// I'll let you make the final call here.
 
-		// Could check for this: exec = (ThreadPoolExecutor) Executors.newFixedThreadPool(max < PROCESSORS ? PROCESSORS : max);
-		exec = (ThreadPoolExecutor) Executors.newFixedThreadPool(max);
+		ExecutorService virtualService = virtual ? TaskStatistics
+				.newVirtualThreadExecutor() : null;
+		if (virtualService != null) {
+			exec = null;
+			service = virtualService;
+		}
+		else {
+			// Could check for this: max < PROCESSORS ? PROCESSORS : max
+			exec = new ThreadPoolExecutor(max, max, 0L, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory(prefix));
+			service = exec;
+		}
+	}
+
+	/** Names the threads of a pool after its prefix */
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final ThreadFactory factory = Executors.defaultThreadFactory();
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger(0);
+
+		NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread t = factory.newThread(r);
+			t.setName(prefix + "-" + count.incrementAndGet());
+			return t;
+		}
+	}
+
+	/** Runs a queued task and keeps the statistics */
+	private class Task implements Runnable {
+		private final Runnable task;
+		private final long queued = System.nanoTime();
+
+		Task(Runnable task) {
+			this.task = task;
+		}
+
+		public void run() {
+			long start = System.nanoTime();
+			statistics.started();
+			ThreadPool outer = runningIn.get();
+			runningIn.set(ThreadPool.this);
+			try {
+				task.run();
+			}
+			catch (Throwable t) {
+				// The ThreadPool has always swallowed exceptions of its tasks
+			}
+			finally {
+				runningIn.set(outer);
+				long end = System.nanoTime();
+				statistics.finished(start - queued, end - start);
+				taskDone();
+			}
+		}
+
+		public String toString() {
+			return task.toString();
+		}
+	}
+
+	/** Count a task that has run or been removed, and wake waitForTasks */
+	private void taskDone() {
+		if (pending.decrementAndGet() <= 1) {
+			synchronized (mutex) {
+				mutex.notifyAll();
+			}
+		}
 	}
 
 	/**
@@ -141,26 +257,49 @@ public class ThreadPool {
 	 * @return a rough number of queued and active tasks
 	 */
 	public int getTaskCount() {
-		synchronized (mutex) {
-			for (Future<?> f : bagOfFutures) {
-				if (f.isDone()) {
-					bagOfFutures.remove(f);
-				}
-			}
-			return bagOfFutures.size();
-		}
+		return pending.get();
+	}
+
+	/**
+	 * Get the counts of queued, running and completed tasks, and the times
+	 * completed tasks spent waiting in the queue and running.
+	 * 
+	 * @return the statistics of this pool
+	 */
+	public TaskStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Are tasks run in virtual threads?
+	 * 
+	 * @return <tt>true</tt> if each task runs in a new virtual thread
+	 */
+	public boolean isVirtual() {
+		return exec == null;
 	}
 
 	// WLH 17 Dec 2001
 
 	/**
-	 * Remove this task from the tread pool.
+	 * Remove this task from the tread pool, if it has not started. Tasks run
+	 * in virtual threads start at once, so they are never removed.
 	 * 
 	 * @param r
 	 *          the runnable to remove from the queue
 	 */
 	public void remove(Runnable r) {
-		exec.remove(r);
+		if (exec == null) {
+			return;
+		}
+		// tasks are queued wrapped in a Task
+		for (Runnable queued : exec.getQueue()) {
+			if (((Task) queued).task.equals(r) && exec.remove(queued)) {
+				statistics.queued(-1);
+				taskDone();
+				return;
+			}
+		}
 	}
 
 	/**
@@ -169,7 +308,7 @@ public class ThreadPool {
 	 * @return <tt>true</tt> if the pool has been terminated.
 	 */
 	public boolean isTerminated() {
-		return exec.isTerminated();
+		return service.isTerminated();
 	}
 
 	/**
@@ -177,16 +316,13 @@ public class ThreadPool {
 	 */
 
 	public void printPool() {
-		System.err.println("Busy Tasks:");
-		for (Future<?> f : bagOfFutures) {
-			if (!f.isDone()) {
-				System.out.println(f.toString());
-			}
-		}
-		System.err.println("Completed Tasks:");
-		for (Future<?> f : bagOfFutures) {
-			if (f.isDone()) {
-				System.out.println(f.toString());
+		System.err.println(prefix + ": " + statistics.getActiveCount() +
+				" busy, " + statistics.getQueueLength() + " queued, " +
+				statistics.getCompletedCount() + " completed");
+		if (exec != null) {
+			System.err.println("Queued Tasks:");
+			for (Runnable r : exec.getQueue()) {
+				System.out.println(r.toString());
 			}
 		}
 	}
@@ -199,48 +335,45 @@ public class ThreadPool {
 	 *          the runnable that will be executed by this thread pool.
 	 */
 	public void queue(Runnable r) {
-		Future<?> submit = exec.submit(r);
-		bagOfFutures.add(submit);
-
-		// While we are at it, clean out the bag of completed tasks.
-		for (Future<?> f : bagOfFutures) {
-			if (f.isDone()) {
-				bagOfFutures.remove(f);
-			}
+		pending.incrementAndGet();
+		statistics.queued(1);
+		try {
+			service.execute(new Task(r));
+		}
+		catch (RuntimeException e) {
+			statistics.queued(-1);
+			pending.decrementAndGet();
+			throw e;
 		}
 	}
 
 	/**
-	 * Wait for currently-running tasks to finish. Blocks while the internal queue
-	 * of tasks is completed.
+	 * Wait for currently-running tasks to finish. Blocks until no task is queued
+	 * or running, apart from the task calling this method if it is run by this
+	 * pool.
 	 * 
 	 * @return true
 	 */
 	public boolean waitForTasks() {
-		// Lock the thread pool and drain all pending task.
+		int self = (runningIn.get() == this) ? 1 : 0;
 		synchronized (mutex) {
-			for (Future<?> f : bagOfFutures) {
+			while (pending.get() > self) {
 				try {
-					f.get();
-					// Tom & Don TODO: handle the exception in whatever way you think is
-					// best. The TheadPool previously just swallowed exceptions so that is 
-					// how I am leaving it, but in principle, this is not advisable.
-				} catch (InterruptedException e) {
+					mutex.wait();
+				}
+				catch (InterruptedException e) {
 					// http://www.ibm.com/developerworks/java/library/j-jtp05236/index.html
 					Thread.currentThread().interrupt();
-				} catch (ExecutionException e) {
-					// The runnable threw exception.
-					//e.printStackTrace();
+					break;
 				}
 			}
-			// We are now clear of futures.
-			bagOfFutures.clear();
 		}
 		return true;
 	}
 
 	/**
-	 * Set the maximum number of pooled threads
+	 * Set the maximum number of pooled threads. This has no effect if tasks run
+	 * in virtual threads.
 	 * 
 	 * @param num
 	 *          the number of threads
@@ -248,11 +381,22 @@ public class ThreadPool {
 	 * @throws Exception
 	 */
 	public void setThreadMaximum(int num) throws Exception {
-		exec.setCorePoolSize(num);
+		if (exec == null) {
+			return;
+		}
+		// the maximum may not be below the core size, so order the updates
+		if (num > exec.getMaximumPoolSize()) {
+			exec.setMaximumPoolSize(num);
+			exec.setCorePoolSize(num);
+		}
+		else {
+			exec.setCorePoolSize(num);
+			exec.setMaximumPoolSize(num);
+		}
 	}
 
 	/** Shut down this thread pool. */
 	public void stopThreads() {
-		exec.shutdown();
+		service.shutdown();
 	}
 }
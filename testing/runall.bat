@@ -12,6 +12,9 @@
 @echo test of FlatField
 @java visad.FlatField
 
+@echo test of DerivedFlatField serialization
+@java visad.DerivedFlatField
+
 @echo test of VerySimple
 @java VerySimple
 
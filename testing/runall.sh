@@ -18,6 +18,9 @@ java visad.java3d.VisADCanvasJ3D
 echo 'test of FlatField'
 java visad.FlatField
 
+echo 'test of DerivedFlatField serialization'
+java visad.DerivedFlatField
+
 echo 'test of VerySimple'
 java VerySimple
 